@@ -0,0 +1,96 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import java.lang.management.ManagementFactory;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Camera;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.CameraNTListener;
+
+/**
+ * The {@code AllocationCheck} class checks that {@link Camera#getNTInfo()}
+ * does not allocate once warmed up, so it never makes the garbage collector
+ * pause the scheduler loop.
+ * <p>
+ * For 0, 1, 8 and 64 contours, it calls {@code getNTInfo()} until the JIT has
+ * compiled it, then counts the bytes the thread allocates during each of
+ * CHECKED_CALLS calls with {@code ThreadMXBean.getThreadAllocatedBytes}. A
+ * new frame is published before each call, outside the counted bytes, so
+ * every call copies and processes a frame like on the robot. The bytes the
+ * counter itself allocates are measured first and taken off.
+ * </p>
+ * <p>
+ * Run with {@code ant alloc-check}; it exits with status 1 if any call
+ * allocated, which fails the build.
+ * </p>
+ */
+public class AllocationCheck {
+	private static final int[] CONTOUR_COUNTS = { 0, 1, 8, 64 };
+	private static final double TARGET_CENTER_X = 170;
+	private static final int FRAMES = 2; // alternated, so every call sees a new frame
+	private static final int WARMUP_CALLS = 50000;
+	private static final int CHECKED_CALLS = 10000;
+
+	private static final com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static volatile double sink;
+
+	public static void main(String[] args) {
+		long thread = Thread.currentThread().getId();
+		long overhead = measureOverhead(thread);
+		boolean allocated = false;
+		for (int count : CONTOUR_COUNTS) {
+			allocated |= check(count, thread, overhead);
+		}
+		if (allocated) {
+			System.out.println("FAILED: Camera.getNTInfo allocates");
+			System.exit(1);
+		}
+		System.out.println("Camera.getNTInfo does not allocate");
+	}
+
+	// The fewest bytes counted between two reads of the counter, which is what reading it allocates
+	private static long measureOverhead(long thread) {
+		long overhead = Long.MAX_VALUE;
+		for (int i = 0; i < WARMUP_CALLS; i++) {
+			long bytes = threads.getThreadAllocatedBytes(thread);
+			overhead = Math.min(overhead, threads.getThreadAllocatedBytes(thread) - bytes);
+		}
+		return overhead;
+	}
+
+	// Returns true and prints the calls that allocated if any did
+	private static boolean check(int count, long thread, long overhead) {
+		SyntheticContours contours = new SyntheticContours(count);
+		double[][][] frames = new double[FRAMES][][];
+		for (int i = 0; i < FRAMES; i++) {
+			frames[i] = contours.frame(count, TARGET_CENTER_X, 1.0);
+		}
+		CameraNTListener listener = new CameraNTListener(null);
+		Camera camera = new Camera(listener);
+
+		for (int i = 0; i < WARMUP_CALLS; i++) {
+			SyntheticContours.publish(listener, frames[i % FRAMES]);
+			camera.getNTInfo();
+			sink += camera.getTurnAngle();
+		}
+
+		int allocatingCalls = 0;
+		long maxBytes = 0;
+		long totalBytes = 0;
+		for (int i = 0; i < CHECKED_CALLS; i++) {
+			SyntheticContours.publish(listener, frames[i % FRAMES]);
+			long before = threads.getThreadAllocatedBytes(thread);
+			camera.getNTInfo();
+			long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+			sink += camera.getTurnAngle();
+			if (bytes > 0) {
+				allocatingCalls++;
+				maxBytes = Math.max(maxBytes, bytes);
+				totalBytes += bytes;
+			}
+		}
+		System.out.printf("Camera.getNTInfo [%d contours]: %d of %d calls allocated, %d B total, %d B at most%n",
+				count, allocatingCalls, CHECKED_CALLS, totalBytes, maxBytes);
+		return allocatingCalls > 0;
+	}
+}
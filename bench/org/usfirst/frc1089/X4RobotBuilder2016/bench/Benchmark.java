@@ -0,0 +1,114 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The {@code Benchmark} class is a minimal micro-benchmark harness: it warms a
+ * piece of code up, then times it over several measurement iterations and
+ * reports the mean time and the bytes allocated per operation.
+ * <p>
+ * Subclasses implement {@link #run(int)} to perform the operation the given
+ * number of times and return a value derived from the results, which is kept
+ * so the JIT cannot remove the work.
+ * </p>
+ */
+public abstract class Benchmark {
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASUREMENT_ITERATIONS = 10;
+	private static final long TARGET_ITERATION_NANOS = 100000000L; // 100 ms
+	private static final int MAX_OPS = 1 << 30;
+
+	private static volatile double sink;
+
+	private final String name;
+
+	/**
+	 * <pre>
+	 * protected Benchmark(String name)
+	 * </pre>
+	 *
+	 * @param name the name printed in the report
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * <pre>
+	 * protected abstract double run(int ops)
+	 * </pre>
+	 *
+	 * Performs the benchmarked operation.
+	 *
+	 * @param ops the number of operations to perform
+	 * @return any value depending on the results of the operations
+	 */
+	protected abstract double run(int ops);
+
+	/**
+	 * <pre>
+	 * protected void setUp()
+	 * </pre>
+	 *
+	 * Called once before warm up, e.g. to start helper threads.
+	 */
+	protected void setUp() {
+	}
+
+	/**
+	 * <pre>
+	 * protected void tearDown()
+	 * </pre>
+	 *
+	 * Called once after measurement, e.g. to stop helper threads.
+	 */
+	protected void tearDown() {
+	}
+
+	/**
+	 * <pre>
+	 * public void measure()
+	 * </pre>
+	 *
+	 * Runs the benchmark and prints one report line.
+	 */
+	public void measure() {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		setUp();
+		try {
+			// Size iterations so each takes about TARGET_ITERATION_NANOS
+			int ops = 1;
+			long elapsed = 0;
+			while (elapsed < TARGET_ITERATION_NANOS / 10 && ops < MAX_OPS) {
+				ops *= 2;
+				long start = System.nanoTime();
+				sink += run(ops);
+				elapsed = System.nanoTime() - start;
+			}
+			ops = (int) Math.max(1, Math.min(MAX_OPS, ops * (TARGET_ITERATION_NANOS / (double) Math.max(1, elapsed))));
+
+			for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+				sink += run(ops);
+			}
+
+			long totalNanos = 0;
+			long totalBytes = 0;
+			for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+				long bytes = threads.getThreadAllocatedBytes(thread);
+				long start = System.nanoTime();
+				sink += run(ops);
+				totalNanos += System.nanoTime() - start;
+				totalBytes += threads.getThreadAllocatedBytes(thread) - bytes;
+			}
+
+			double totalOps = (double) ops * MEASUREMENT_ITERATIONS;
+			System.out.printf("%-50s %12.1f ns/op %10.2f B/op%n", name, totalNanos / totalOps,
+					totalBytes / totalOps);
+		} finally {
+			tearDown();
+		}
+	}
+}
@@ -0,0 +1,225 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Camera;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.CameraNTListener;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.RollingPercentile;
+
+/**
+ * The {@code GripStressTest} class stands in for GRIP: it publishes synthetic
+ * contours to a {@link CameraNTListener} at a configurable rate while a second
+ * thread runs {@link Camera#getNTInfo()} at the 50 Hz scheduler rate, then
+ * reports how the listener and the camera coped.
+ * <p>
+ * Updates are delivered to the listener on the generator thread, the same way
+ * the NetworkTables listener thread delivers them on the robot. Options are
+ * given as {@code name=value} arguments:
+ * </p>
+ * <ul>
+ * <li>{@code rate} frames per second (default 30)</li>
+ * <li>{@code duration} seconds to run (default 10)</li>
+ * <li>{@code minContours}, {@code maxContours} contours per frame; all but the
+ * first are noise (default 1 and 1)</li>
+ * <li>{@code noise} standard deviation of the target's pixel noise (default 1)</li>
+ * <li>{@code shuffle} probability that a frame's keys are sent in random order (default 0)</li>
+ * <li>{@code skew} probability that one key of a frame is sent after the next
+ * frame has started (default 0)</li>
+ * </ul>
+ * <p>
+ * The listener holds no lock and Camera no longer retries, so the report shows
+ * the time spent in listener callbacks and in getNTInfo() instead of lock hold
+ * times and retry counts.
+ * </p>
+ */
+public class GripStressTest {
+	private static final double SCHEDULER_PERIOD_SECS = 0.020;
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final double MICROS_IN_SECOND = 1.0e6;
+	private static final int STATS_WINDOW = 8192;
+	private static final long SPIN_THRESHOLD_NANOS = 100000; // spin instead of parking for shorter waits
+
+	private final double rate;
+	private final double duration;
+	private final int minContours;
+	private final int maxContours;
+	private final double noise;
+	private final double shuffle;
+	private final double skew;
+
+	private final CameraNTListener listener = new CameraNTListener(null);
+	private final Camera camera = new Camera(listener);
+	private final RollingPercentile callbackTime = new RollingPercentile(STATS_WINDOW);
+	private final RollingPercentile getNTInfoTime = new RollingPercentile(STATS_WINDOW);
+	private volatile boolean running = true;
+	private long framesGenerated = 0;
+	private long loops = 0;
+	private long loopsWithoutTarget = 0;
+
+	public GripStressTest(double rate, double duration, int minContours, int maxContours, double noise,
+			double shuffle, double skew) {
+		this.rate = rate;
+		this.duration = duration;
+		this.minContours = minContours;
+		this.maxContours = maxContours;
+		this.noise = noise;
+		this.shuffle = shuffle;
+		this.skew = skew;
+	}
+
+	/**
+	 * <pre>
+	 * public void run() throws InterruptedException
+	 * </pre>
+	 *
+	 * Runs the generator and the scheduler loop for the configured duration and prints the report.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public void run() throws InterruptedException {
+		Thread generator = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				generate();
+			}
+		}, "GRIP stand-in");
+		Thread scheduler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				schedule();
+			}
+		}, "Scheduler");
+		generator.start();
+		scheduler.start();
+		Thread.sleep((long) (duration * 1000));
+		running = false;
+		generator.join();
+		scheduler.join();
+		report();
+	}
+
+	private void generate() {
+		SyntheticContours contours = new SyntheticContours(1089);
+		Random random = new Random(1089);
+		int[] order = new int[SyntheticContours.KEYS.length];
+		long period = (long) (NANOS_IN_SECOND / rate);
+		long next = System.nanoTime();
+		int heldKey = -1;
+		double[] heldValue = null;
+
+		while (running) {
+			int count = minContours + random.nextInt(maxContours - minContours + 1);
+			double targetX = 160 + 40 * Math.sin(framesGenerated / 50.0);
+			double[][] frame = contours.frame(count, targetX, noise);
+
+			for (int k = 0; k < order.length; k++) {
+				order[k] = k;
+			}
+			if (random.nextDouble() < shuffle) {
+				for (int k = order.length - 1; k > 0; k--) {
+					int j = random.nextInt(k + 1);
+					int swap = order[k];
+					order[k] = order[j];
+					order[j] = swap;
+				}
+			}
+			int skewedKey = random.nextDouble() < skew ? order[random.nextInt(order.length)] : -1;
+
+			for (int k = 0; k < order.length; k++) {
+				int key = order[k];
+				if (key == skewedKey) {
+					continue;
+				}
+				deliver(key, frame[key]);
+				if (k == 0 && heldKey >= 0) {
+					// The key held back from the previous frame arrives late
+					deliver(heldKey, heldValue);
+					heldKey = -1;
+				}
+			}
+			if (skewedKey >= 0) {
+				heldKey = skewedKey;
+				heldValue = frame[skewedKey];
+			}
+			framesGenerated++;
+
+			next += period;
+			waitUntil(next);
+		}
+	}
+
+	private void deliver(int key, double[] value) {
+		long start = System.nanoTime();
+		listener.valueChanged(null, SyntheticContours.KEYS[key], value, false);
+		callbackTime.record(System.nanoTime() - start);
+	}
+
+	private void schedule() {
+		long period = (long) (SCHEDULER_PERIOD_SECS * NANOS_IN_SECOND);
+		long next = System.nanoTime();
+		while (running) {
+			long start = System.nanoTime();
+			camera.getNTInfo();
+			camera.getTurnAngle();
+			getNTInfoTime.record(System.nanoTime() - start);
+			loops++;
+			if (!camera.isTargetFound()) {
+				loopsWithoutTarget++;
+			}
+			next += period;
+			waitUntil(next);
+		}
+	}
+
+	private void waitUntil(long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > SPIN_THRESHOLD_NANOS) {
+				LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+			}
+		}
+	}
+
+	private void report() {
+		System.out.printf("Generated %d frames in %.1f s (%.0f Hz requested)%n", framesGenerated, duration, rate);
+		System.out.printf("Listener: %d frames published, %d incoherent frames discarded%n",
+				listener.getFrameCount(), listener.getIncoherentFrameCount());
+		System.out.printf("Camera: %d loops, %d without a target, %d frames dropped between loops%n", loops,
+				loopsWithoutTarget, camera.getDroppedFrames());
+		printPercentiles("valueChanged callback", callbackTime, MICROS_IN_SECOND, "us");
+		printPercentiles("getNTInfo + getTurnAngle", getNTInfoTime, MICROS_IN_SECOND, "us");
+		System.out.printf("%-28s p50 %9.1f ms  p99 %9.1f ms  max %9.1f ms%n", "Frame age when consumed",
+				camera.getFrameAgePercentileSecs(50) * 1000, camera.getFrameAgePercentileSecs(99) * 1000,
+				camera.getFrameAgePercentileSecs(100) * 1000);
+		System.out.printf("%-28s p50 %9.1f ms  p99 %9.1f ms  max %9.1f ms%n", "Interval between used frames",
+				camera.getFrameIntervalPercentileSecs(50) * 1000, camera.getFrameIntervalPercentileSecs(99) * 1000,
+				camera.getFrameIntervalPercentileSecs(100) * 1000);
+	}
+
+	private static void printPercentiles(String name, RollingPercentile stats, double scale, String unit) {
+		System.out.printf("%-28s p50 %9.1f %s  p99 %9.1f %s  max %9.1f %s%n", name,
+				stats.getPercentileSecs(50) * scale, unit, stats.getPercentileSecs(99) * scale, unit,
+				stats.getPercentileSecs(100) * scale, unit);
+	}
+
+	private static double option(String[] args, String name, double defaultValue) {
+		for (String arg : args) {
+			if (arg.startsWith(name + "=")) {
+				return Double.parseDouble(arg.substring(name.length() + 1));
+			}
+		}
+		return defaultValue;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		new GripStressTest(
+				option(args, "rate", 30),
+				option(args, "duration", 10),
+				(int) option(args, "minContours", 1),
+				(int) option(args, "maxContours", 1),
+				option(args, "noise", 1),
+				option(args, "shuffle", 0),
+				option(args, "skew", 0)).run();
+	}
+}
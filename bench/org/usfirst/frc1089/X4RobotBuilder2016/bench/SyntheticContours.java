@@ -0,0 +1,86 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import java.util.Random;
+
+import edu.wpi.first.wpilibj.tables.ITableListener;
+
+/**
+ * The {@code SyntheticContours} class builds GRIP-like contour reports and
+ * publishes them to a table listener the way GRIP updates its NetworkTable:
+ * one key at a time.
+ * <p>
+ * The first contour is a plausible goal target; the others are random noise.
+ * </p>
+ */
+public class SyntheticContours {
+	public static final String[] KEYS = { "area", "width", "height", "centerX", "centerY" };
+	public static final int AREA = 0, WIDTH = 1, HEIGHT = 2, CENTER_X = 3, CENTER_Y = 4;
+
+	private static final double IMAGE_WIDTH = 320;
+	private static final double IMAGE_HEIGHT = 240;
+
+	private final Random random;
+
+	/**
+	 * <pre>
+	 * public SyntheticContours(long seed)
+	 * </pre>
+	 *
+	 * @param seed the random seed, so runs are repeatable
+	 */
+	public SyntheticContours(long seed) {
+		random = new Random(seed);
+	}
+
+	/**
+	 * <pre>
+	 * public double[][] frame(int count, double targetCenterX, double noisePixels)
+	 * </pre>
+	 *
+	 * Builds a new frame.
+	 *
+	 * @param count the number of contours
+	 * @param targetCenterX the center X of the goal target in pixels
+	 * @param noisePixels the standard deviation of the measurement noise added to the target
+	 * @return the arrays of the frame, indexed by AREA, WIDTH, HEIGHT, CENTER_X and CENTER_Y
+	 */
+	public double[][] frame(int count, double targetCenterX, double noisePixels) {
+		double[][] frame = new double[KEYS.length][count];
+		for (int i = 0; i < count; i++) {
+			double width, height, centerX, centerY;
+			if (i == 0) {
+				width = 40 + random.nextGaussian() * noisePixels;
+				height = 24 + random.nextGaussian() * noisePixels;
+				centerX = targetCenterX + random.nextGaussian() * noisePixels;
+				centerY = 60 + random.nextGaussian() * noisePixels;
+			} else {
+				width = 1 + random.nextDouble() * 20;
+				height = 1 + random.nextDouble() * 20;
+				centerX = random.nextDouble() * IMAGE_WIDTH;
+				centerY = random.nextDouble() * IMAGE_HEIGHT;
+			}
+			frame[AREA][i] = width * height;
+			frame[WIDTH][i] = width;
+			frame[HEIGHT][i] = height;
+			frame[CENTER_X][i] = centerX;
+			frame[CENTER_Y][i] = centerY;
+		}
+		return frame;
+	}
+
+	/**
+	 * <pre>
+	 * public static void publish(ITableListener listener, double[][] frame)
+	 * </pre>
+	 *
+	 * Sends every key of a frame to the listener, in GRIP's order.
+	 *
+	 * @param listener the listener to feed
+	 * @param frame the frame built by {@link #frame(int, double, double)}
+	 */
+	public static void publish(ITableListener listener, double[][] frame) {
+		for (int k = 0; k < KEYS.length; k++) {
+			listener.valueChanged(null, KEYS[k], frame[k], false);
+		}
+	}
+}
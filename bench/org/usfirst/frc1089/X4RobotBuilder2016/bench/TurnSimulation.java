@@ -0,0 +1,136 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.ProfiledTurn;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+
+/**
+ * The {@code TurnSimulation} class compares turns in place made by the
+ * profiled {@code DegreeRotate} with the original one (a P-only controller on
+ * an absolute setpoint that finishes on the first {@code onTarget()}), on a
+ * simple simulated drive train, and reports settle time and overshoot.
+ * <p>
+ * The drive train turns at up to {@code MAX_RATE} degrees per second with a
+ * first order lag of {@code TIME_CONSTANT_SECS}, and friction worth
+ * {@code STATIC_FRICTION} of output that opposes the motion.
+ * Run with {@code ant turn-sim}.
+ * </p>
+ */
+public class TurnSimulation {
+	private static final double MAX_RATE = 400; // degrees per second at full output
+	private static final double TIME_CONSTANT_SECS = 0.12;
+	private static final double STATIC_FRICTION = 0.08; // output that only overcomes friction
+	private static final double PHYSICS_STEP_SECS = 0.0005;
+	private static final double SIMULATED_SECS = 5.0;
+
+	private static final double PROFILED_PERIOD_SECS = 0.01; // DriveTrain.TURN_PERIOD_SECS
+	private static final double LEGACY_PERIOD_SECS = 0.05; // PIDSubsystem default period
+	private static final double SCHEDULER_PERIOD_SECS = 0.02;
+	private static final double LEGACY_P = 0.1;
+	private static final double LEGACY_TOLERANCE_DEGREES = 0.2;
+
+	private static final double[] TURNS_DEGREES = { 2, 10, 45, 90, 180 };
+
+	private double heading;
+	private double rate;
+
+	private void step(double output) {
+		if (rate == 0 && Math.abs(output) <= STATIC_FRICTION) {
+			return; // stuck
+		}
+		// Friction opposes the motion, or the output when starting
+		double friction = STATIC_FRICTION * Math.signum(rate != 0 ? rate : output);
+		double newRate = rate + (MAX_RATE * (output - friction) - rate) / TIME_CONSTANT_SECS * PHYSICS_STEP_SECS;
+		rate = Math.signum(newRate) == -Math.signum(rate) ? 0 : newRate; // friction stops, never reverses
+		heading += rate * PHYSICS_STEP_SECS;
+	}
+
+	private void reset() {
+		heading = 0;
+		rate = 0;
+	}
+
+	/**
+	 * Results of one simulated turn.
+	 */
+	private static class Result {
+		double finishedSecs = Double.NaN; // when the command finished
+		double errorAtFinish;
+		double rateAtFinish;
+		double settledSecs = Double.NaN; // from when the robot stayed on target
+		double overshootDegrees;
+	}
+
+	private Result simulateProfiled(double degrees, Config config) {
+		reset();
+		ProfiledTurn turn = new ProfiledTurn(config);
+		turn.start(heading, degrees);
+		return simulate(degrees, PROFILED_PERIOD_SECS, turn);
+	}
+
+	private Result simulateLegacy(double degrees) {
+		reset();
+		return simulate(degrees, LEGACY_PERIOD_SECS, null);
+	}
+
+	private Result simulate(double degrees, double controlPeriod, ProfiledTurn turn) {
+		Result result = new Result();
+		double output = 0;
+		double nextControl = 0;
+		double nextScheduler = SCHEDULER_PERIOD_SECS;
+		boolean running = true;
+		boolean onTarget = false;
+		int steps = (int) (SIMULATED_SECS / PHYSICS_STEP_SECS);
+		for (int n = 0; n <= steps; n++) {
+			double t = n * PHYSICS_STEP_SECS;
+			if (t >= nextControl) {
+				nextControl += controlPeriod;
+				if (turn != null) {
+					output = running ? turn.calculate(t, heading, rate) : 0;
+				} else {
+					double error = degrees - heading;
+					output = Math.max(-1, Math.min(1, LEGACY_P * error));
+					onTarget = Math.abs(error) <= LEGACY_TOLERANCE_DEGREES;
+				}
+			}
+			if (running && t >= nextScheduler) {
+				nextScheduler += SCHEDULER_PERIOD_SECS;
+				boolean finished = turn != null ? turn.isSettled(t, heading, rate) : onTarget;
+				if (finished) {
+					// DegreeRotate ends; the profiled one stops the drive, the original keeps its PID enabled
+					running = false;
+					result.finishedSecs = t;
+					result.errorAtFinish = degrees - heading;
+					result.rateAtFinish = rate;
+				}
+			}
+
+			double overshoot = Math.signum(degrees) * (heading - degrees);
+			result.overshootDegrees = Math.max(result.overshootDegrees, overshoot);
+			boolean settled = Math.abs(degrees - heading) <= 0.5 && Math.abs(rate) <= 5;
+			if (!settled) {
+				result.settledSecs = Double.NaN;
+			} else if (Double.isNaN(result.settledSecs)) {
+				result.settledSecs = t;
+			}
+			step(output);
+		}
+		return result;
+	}
+
+	private static void print(String name, double degrees, Result result) {
+		System.out.printf("%-10s %7.1f %11.3f %10.2f %13.1f %11.3f %13.2f%n", name, degrees, result.finishedSecs,
+				result.errorAtFinish, result.rateAtFinish, result.settledSecs, result.overshootDegrees);
+	}
+
+	public static void main(String[] args) {
+		Config config = Config.getInstance();
+		TurnSimulation simulation = new TurnSimulation();
+		System.out.println("Simulated " + config + " drive train; times in seconds, angles in degrees");
+		System.out.printf("%-10s %7s %11s %10s %13s %11s %13s%n", "command", "turn", "finished", "error",
+				"rate (deg/s)", "settled", "overshoot");
+		for (double degrees : TURNS_DEGREES) {
+			print("original", degrees, simulation.simulateLegacy(degrees));
+			print("profiled", degrees, simulation.simulateProfiled(degrees, config));
+		}
+	}
+}
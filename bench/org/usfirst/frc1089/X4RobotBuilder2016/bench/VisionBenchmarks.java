@@ -0,0 +1,210 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.bench;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Camera;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.CameraNTListener;
+
+/**
+ * The {@code VisionBenchmarks} class measures the vision and targeting hot
+ * paths of {@link Camera} and {@link CameraNTListener} off the robot.
+ * <p>
+ * The listener is fed directly through {@code valueChanged}, so no
+ * NetworkTable is needed. Every benchmark runs for 0, 1, 8 and 64 contours
+ * and reports nanoseconds and bytes allocated per operation. The concurrent
+ * benchmarks run a producer (or consumer) thread alongside the measured one,
+ * like the NT listener thread runs alongside the scheduler on the robot.
+ * </p>
+ * <p>
+ * Run with {@code ant bench}. Simple getters and predicates may report close
+ * to 0 ns/op when the JIT hoists them out of the measurement loop.
+ * </p>
+ */
+public class VisionBenchmarks {
+	private static final int[] CONTOUR_COUNTS = { 0, 1, 8, 64 };
+	private static final double TARGET_CENTER_X = 170;
+
+	public static void main(String[] args) {
+		for (int count : CONTOUR_COUNTS) {
+			runAll(count);
+		}
+	}
+
+	private static void runAll(final int count) {
+		final double[][] frame = new SyntheticContours(count).frame(count, TARGET_CENTER_X, 1.0);
+		final CameraNTListener listener = new CameraNTListener(null);
+		final Camera camera = new Camera(listener);
+		SyntheticContours.publish(listener, frame);
+		camera.getNTInfo();
+		String suffix = " [" + count + " contours]";
+
+		new Benchmark("Camera.getNTInfo" + suffix) {
+			@Override
+			protected double run(int ops) {
+				double sum = 0;
+				for (int i = 0; i < ops; i++) {
+					camera.getNTInfo();
+					sum += camera.getHorizontalDist();
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.isCoherent" + suffix) {
+			@Override
+			protected double run(int ops) {
+				int sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.isCoherent() ? 1 : 0;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.isTargetFound" + suffix) {
+			@Override
+			protected double run(int ops) {
+				int sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.isTargetFound() ? 1 : 0;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.getTurnAngle" + suffix) {
+			@Override
+			protected double run(int ops) {
+				double sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.getTurnAngle();
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.isInDistance" + suffix) {
+			@Override
+			protected double run(int ops) {
+				int sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.isInDistance() ? 1 : 0;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.isInFarDistance" + suffix) {
+			@Override
+			protected double run(int ops) {
+				int sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.isInFarDistance() ? 1 : 0;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("Camera.isInCloseDistance" + suffix) {
+			@Override
+			protected double run(int ops) {
+				int sum = 0;
+				for (int i = 0; i < ops; i++) {
+					sum += camera.isInCloseDistance() ? 1 : 0;
+				}
+				return sum;
+			}
+		}.measure();
+
+		new Benchmark("CameraNTListener.valueChanged (frame of 5 keys)" + suffix) {
+			@Override
+			protected double run(int ops) {
+				for (int i = 0; i < ops; i++) {
+					SyntheticContours.publish(listener, frame);
+				}
+				return listener.getFrameCount();
+			}
+		}.measure();
+
+		new Benchmark("CameraNTListener.getRectangles" + suffix) {
+			@Override
+			protected double run(int ops) {
+				for (int i = 0; i < ops; i++) {
+					listener.getRectangles(camera);
+				}
+				return camera.getTargetCount();
+			}
+		}.measure();
+
+		new ConcurrentBenchmark("getNTInfo with concurrent producer" + suffix) {
+			@Override
+			protected void background() {
+				SyntheticContours.publish(listener, frame);
+			}
+
+			@Override
+			protected double run(int ops) {
+				double sum = 0;
+				for (int i = 0; i < ops; i++) {
+					camera.getNTInfo();
+					sum += camera.getTurnAngle();
+				}
+				return sum;
+			}
+		}.measure();
+
+		// The camera is not thread safe, so the consumer uses a camera of its own
+		final Camera consumerCamera = new Camera(listener);
+		new ConcurrentBenchmark("valueChanged with concurrent consumer" + suffix) {
+			@Override
+			protected void background() {
+				listener.getRectangles(consumerCamera);
+			}
+
+			@Override
+			protected double run(int ops) {
+				for (int i = 0; i < ops; i++) {
+					SyntheticContours.publish(listener, frame);
+				}
+				return listener.getFrameCount();
+			}
+		}.measure();
+	}
+
+	/**
+	 * A benchmark that runs {@link #background()} in a loop on another thread while measuring.
+	 */
+	private static abstract class ConcurrentBenchmark extends Benchmark {
+		private volatile boolean running;
+		private Thread thread;
+
+		ConcurrentBenchmark(String name) {
+			super(name);
+		}
+
+		protected abstract void background();
+
+		@Override
+		protected void setUp() {
+			running = true;
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (running) {
+						background();
+					}
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override
+		protected void tearDown() {
+			running = false;
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,304 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.diagnostics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code FlightLogDecoder} class reads the records of a ring file written
+ * by {@link FlightRecorder}, oldest first, off the robot. It lives in bench/,
+ * in the package of the recorder so it shares the file layout, and is not
+ * deployed.
+ * <p>
+ * Run it as a program to print every record of a flight log as CSV, with the
+ * columns sequence, time_secs since recording started and one per field:
+ * </p>
+ * <pre>
+ * java -cp ... org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightLogDecoder flight.log
+ * </pre>
+ * <p>
+ * or with {@code ant flight-log -Dflight.log=flight.log}.
+ * </p>
+ */
+public class FlightLogDecoder {
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final MappedByteBuffer log;
+	private final int recordBytes;
+	private final long capacity;
+	private final String[] fieldNames;
+	private final byte[] fieldTypes;
+	private final int[] fieldOffsets;
+	private final String[] symbols;
+	private final long startMillis;
+	private final long startNanos;
+	private final long endSequence;
+	private int recordOffset = -1;
+
+	/**
+	 * <pre>
+	 * public FlightLogDecoder(File logFile) throws IOException
+	 * </pre>
+	 *
+	 * Opens a flight log and reads its header.
+	 *
+	 * @param logFile the log to decode, e.g. copied off /home/lvuser
+	 * @throws IOException if the file cannot be read or is not a flight log
+	 */
+	public FlightLogDecoder(File logFile) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(logFile, "r");
+		try {
+			log = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+		} finally {
+			in.close();
+		}
+		if (log.capacity() < FlightRecorder.RECORDS_OFFSET || log.getInt(0) != FlightRecorder.MAGIC) {
+			throw new IOException(logFile + " is not a flight log");
+		}
+		int version = log.getInt(4);
+		if (version != FlightRecorder.VERSION) {
+			throw new IOException("Unsupported flight log version " + version);
+		}
+		recordBytes = log.getInt(FlightRecorder.RECORD_BYTES_OFFSET);
+		capacity = log.getInt(FlightRecorder.CAPACITY_OFFSET);
+		startMillis = log.getLong(FlightRecorder.START_MILLIS_OFFSET);
+		startNanos = log.getLong(FlightRecorder.START_NANOS_OFFSET);
+		endSequence = log.getLong(FlightRecorder.END_SEQUENCE_OFFSET);
+
+		int fieldCount = log.getInt(FlightRecorder.FIELD_COUNT_OFFSET);
+		fieldNames = new String[fieldCount];
+		fieldTypes = new byte[fieldCount];
+		fieldOffsets = new int[fieldCount];
+		log.position(FlightRecorder.FIELD_TABLE_OFFSET);
+		int offset = FlightRecorder.RECORD_HEADER_BYTES;
+		for (int i = 0; i < fieldCount; i++) {
+			fieldTypes[i] = log.get();
+			fieldNames[i] = readString();
+			fieldOffsets[i] = offset;
+			offset += fieldTypes[i] == FlightRecorder.BOOLEAN ? 1 : fieldTypes[i] == FlightRecorder.SYMBOL ? 2 : 4;
+		}
+		if (offset != recordBytes) {
+			throw new IOException("The fields of " + logFile + " do not add up to its record size");
+		}
+
+		symbols = new String[log.getInt(FlightRecorder.SYMBOL_COUNT_OFFSET)];
+		symbols[0] = "";
+		log.position(FlightRecorder.SYMBOL_TABLE_OFFSET);
+		for (int i = 1; i < symbols.length; i++) {
+			symbols[i] = readString();
+		}
+	}
+
+	private String readString() {
+		byte[] bytes = new byte[log.getShort()];
+		log.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the number of fields in each record
+	 */
+	public int getFieldCount() {
+		return fieldNames.length;
+	}
+
+	/**
+	 * @param field the index of the field
+	 * @return the name of the field
+	 */
+	public String getFieldName(int field) {
+		return fieldNames[field];
+	}
+
+	/**
+	 * @param field the index of the field
+	 * @return {@code FlightRecorder.FLOAT}, {@code INT}, {@code BOOLEAN} or {@code SYMBOL}
+	 */
+	public byte getFieldType(int field) {
+		return fieldTypes[field];
+	}
+
+	/**
+	 * <pre>
+	 * public int indexOf(String name)
+	 * </pre>
+	 *
+	 * @param name the name of a field
+	 * @return the index of the field, or -1 if the log does not have it
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (fieldNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the wall clock time recording started, in milliseconds since 1970
+	 */
+	public long getStartMillis() {
+		return startMillis;
+	}
+
+	/**
+	 * @return the sequence number of the oldest record still in the log
+	 */
+	public long getFirstSequence() {
+		return Math.max(0, endSequence - capacity);
+	}
+
+	/**
+	 * @return one more than the sequence number of the newest record
+	 */
+	public long getEndSequence() {
+		return endSequence;
+	}
+
+	/**
+	 * <pre>
+	 * public boolean read(long sequence)
+	 * </pre>
+	 *
+	 * Makes a record the current one, for the getters below.
+	 *
+	 * @param sequence the sequence number of the record, from {@link #getFirstSequence()}
+	 *            to before {@link #getEndSequence()}
+	 * @return false if the record is not in the log, e.g. it was dropped while
+	 *         recording
+	 */
+	public boolean read(long sequence) {
+		if (sequence < getFirstSequence() || sequence >= endSequence) {
+			return false;
+		}
+		int offset = FlightRecorder.RECORDS_OFFSET + (int) (sequence % capacity) * recordBytes;
+		// A dropped record, or one of an earlier lap
+		if (log.getLong(offset) != sequence) {
+			return false;
+		}
+		recordOffset = offset;
+		return true;
+	}
+
+	/**
+	 * @return the sequence number of the current record; dropped records leave gaps
+	 */
+	public long getSequence() {
+		return log.getLong(recordOffset);
+	}
+
+	/**
+	 * @return the {@link org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock
+	 *         RobotClock} time of the current record in nanoseconds
+	 */
+	public long getTimeNanos() {
+		return log.getLong(recordOffset + 8);
+	}
+
+	/**
+	 * @return the time of the current record in seconds since recording started
+	 */
+	public double getTimeSecs() {
+		return (getTimeNanos() - startNanos) / NANOS_IN_SECOND;
+	}
+
+	/**
+	 * <pre>
+	 * public double getNumber(int field)
+	 * </pre>
+	 *
+	 * @param field the index of a float, int or boolean field
+	 * @return its value in the current record, 1 or 0 for a boolean
+	 */
+	public double getNumber(int field) {
+		int offset = recordOffset + fieldOffsets[field];
+		switch (fieldTypes[field]) {
+		case FlightRecorder.FLOAT:
+			return log.getFloat(offset);
+		case FlightRecorder.INT:
+			return log.getInt(offset);
+		case FlightRecorder.BOOLEAN:
+			return log.get(offset);
+		default:
+			throw new IllegalArgumentException(fieldNames[field] + " is not a number");
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public boolean getBoolean(int field)
+	 * </pre>
+	 *
+	 * @param field the index of a boolean field
+	 * @return its value in the current record
+	 */
+	public boolean getBoolean(int field) {
+		return getNumber(field) != 0;
+	}
+
+	/**
+	 * <pre>
+	 * public String getSymbol(int field)
+	 * </pre>
+	 *
+	 * @param field the index of a symbol field
+	 * @return its value in the current record, "" for none, or "?" if the
+	 *         symbol was not in the symbol table when the header was last written
+	 */
+	public String getSymbol(int field) {
+		if (fieldTypes[field] != FlightRecorder.SYMBOL) {
+			throw new IllegalArgumentException(fieldNames[field] + " is not a symbol");
+		}
+		int index = log.getShort(recordOffset + fieldOffsets[field]);
+		return index >= 0 && index < symbols.length ? symbols[index] : "?";
+	}
+
+	/**
+	 * <pre>
+	 * public String format(int field)
+	 * </pre>
+	 *
+	 * @param field the index of a field
+	 * @return its value in the current record, as it goes in a CSV file
+	 */
+	public String format(int field) {
+		switch (fieldTypes[field]) {
+		case FlightRecorder.FLOAT:
+			return Float.toString(log.getFloat(recordOffset + fieldOffsets[field]));
+		case FlightRecorder.INT:
+			return Integer.toString(log.getInt(recordOffset + fieldOffsets[field]));
+		case FlightRecorder.BOOLEAN:
+			return Boolean.toString(getBoolean(field));
+		default:
+			return getSymbol(field).replace(',', ' ');
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: FlightLogDecoder <flight log>");
+			System.exit(1);
+		}
+		FlightLogDecoder decoder = new FlightLogDecoder(new File(args[0]));
+		StringBuilder line = new StringBuilder("sequence,time_secs");
+		for (int i = 0; i < decoder.getFieldCount(); i++) {
+			line.append(',').append(decoder.getFieldName(i).replace(',', ' '));
+		}
+		System.out.println(line);
+		for (long sequence = decoder.getFirstSequence(); sequence < decoder.getEndSequence(); sequence++) {
+			if (!decoder.read(sequence)) {
+				continue;
+			}
+			line.setLength(0);
+			line.append(sequence).append(',').append(decoder.getTimeSecs());
+			for (int i = 0; i < decoder.getFieldCount(); i++) {
+				line.append(',').append(decoder.format(i));
+			}
+			System.out.println(line);
+		}
+	}
+}
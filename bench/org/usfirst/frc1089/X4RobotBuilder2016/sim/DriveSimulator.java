@@ -0,0 +1,531 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
+import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
+import org.usfirst.frc1089.X4RobotBuilder2016.commands.DegreeRotate;
+import org.usfirst.frc1089.X4RobotBuilder2016.commands.DriveWithJoysticks;
+import org.usfirst.frc1089.X4RobotBuilder2016.commands.MoveDistance;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightLogDecoder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.TimingHistogram;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescedOutput;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CurrentBudget;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.MotionProfile;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.Odometry;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.TurnGains;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.TurnTuner;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.DriftCorrectedGyro;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config.ConfigType;
+import org.usfirst.frc1089.X4RobotBuilder2016.subsystems.DriveTrain;
+
+import edu.wpi.first.wpilibj.HLUsageReporting;
+import edu.wpi.first.wpilibj.RobotState;
+import edu.wpi.first.wpilibj.command.Command;
+import edu.wpi.first.wpilibj.command.Scheduler;
+
+/**
+ * The {@code DriveSimulator} class runs the real {@code DriveTrain} and its
+ * commands headless against a {@link DrivetrainPlant}, in simulated time on a
+ * {@link SimClock}, many times faster than real time.
+ * <p>
+ * It stands in for {@code RobotMap.init()}: the Talons are
+ * {@link SimTalonSRX}s with the same CAN IDs, the gyro is a {@link SimGyro},
+ * and the encoders are fed by the plant. The scheduler runs every
+ * {@code SCHEDULER_PERIOD_SECS} like the driver station loop, the Talons
+ * every millisecond, and the physics every {@code PHYSICS_STEP_SECS}. The
+ * driver sticks are set with {@link #setSticks(double, double)} and read by
+ * the {@code DriveWithJoysticks} default command. The robot is in teleop,
+ * and enabled unless {@link #setDisabled(boolean) disabled}. Only one simulator can be created per JVM, since subsystems
+ * register with the {@code Scheduler} singleton.
+ * </p>
+ * <p>
+ * {@link #main(String[])} runs turns, driving with the sticks, a
+ * {@code MoveDistance}, and gyro drift estimation on the PROTO or COMPETITION robot
+ * ({@code ant drive-sim -Dsim.robot=PROTO}) and prints what the robot did.
+ * With {@code -Dsim.tune=tune} it first tunes the turn gains in simulated
+ * test mode, and runs the turns before and after. The run is recorded by the
+ * {@link FlightRecorder} into a temporary flight log, which is then decoded.
+ * </p>
+ */
+public class DriveSimulator {
+	public static final double PHYSICS_STEP_SECS = 0.00025;
+	public static final double SCHEDULER_PERIOD_SECS = 0.02;
+	private static final double GYRO_DRIFT_DEGREES_PER_SEC = 0.05;
+	private static final double DRIFT_PHASE_SECS = 20;
+	private static final double MILLIS_IN_SECOND = 1000.0;
+
+	private final SimClock clock = new SimClock();
+	private final Map<Integer, SimTalonSRX> bus = new HashMap<Integer, SimTalonSRX>();
+	private final SimTalonSRX leftFront = new SimTalonSRX(4, bus, clock);
+	private final SimTalonSRX leftBack = new SimTalonSRX(3, bus, clock);
+	private final SimTalonSRX rightFront = new SimTalonSRX(2, bus, clock);
+	private final SimTalonSRX rightBack = new SimTalonSRX(1, bus, clock);
+	private final SimGyro gyro = new SimGyro();
+	private final DrivetrainPlant plant;
+	private final DriveTrain driveTrain;
+	private final DriveWithJoysticks sticksCommand;
+
+	private double leftY = 0;
+	private double rightY = 0;
+	private Runnable monitor = null;
+	private volatile boolean testMode = false;
+	private volatile boolean disabled = false;
+
+	/**
+	 * <pre>
+	 * public DriveSimulator(Config config)
+	 * </pre>
+	 *
+	 * Builds the simulated robot at rest at the origin, with the sticks
+	 * centered, and creates {@code Robot.driveTrain} on it.
+	 *
+	 * @param config the robot to simulate
+	 */
+	public DriveSimulator(Config config) {
+		clock.install();
+		HLUsageReporting.SetImplementation(new HLUsageReporting.Interface() {
+			@Override
+			public void reportScheduler() {
+			}
+
+			@Override
+			public void reportPIDController(int num) {
+			}
+
+			@Override
+			public void reportSmartDashboard() {
+			}
+		});
+		RobotState.SetImplementation(new RobotState.Interface() {
+			@Override
+			public boolean isDisabled() {
+				return disabled;
+			}
+
+			@Override
+			public boolean isEnabled() {
+				return !disabled;
+			}
+
+			@Override
+			public boolean isOperatorControl() {
+				return true;
+			}
+
+			@Override
+			public boolean isAutonomous() {
+				return false;
+			}
+
+			@Override
+			public boolean isTest() {
+				return testMode;
+			}
+		});
+
+		plant = new DrivetrainPlant(config, new SimTalonSRX[] { leftFront, leftBack },
+				new SimTalonSRX[] { rightFront, rightBack }, gyro);
+		clock.newPeriodic(new Runnable() {
+			@Override
+			public void run() {
+				plant.step(PHYSICS_STEP_SECS);
+				if (monitor != null) {
+					monitor.run();
+				}
+			}
+		}).startPeriodic(PHYSICS_STEP_SECS);
+		clock.newPeriodic(new Runnable() {
+			@Override
+			public void run() {
+				for (SimTalonSRX talon : bus.values()) {
+					talon.update();
+				}
+			}
+		}).startPeriodic(SimTalonSRX.UPDATE_PERIOD_SECS);
+
+		RobotMap.initSimulation(leftBack, rightBack, leftFront, rightFront, gyro);
+		driveTrain = new DriveTrain();
+		Robot.driveTrain = driveTrain;
+		sticksCommand = new DriveWithJoysticks(new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return leftY;
+			}
+		}, new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return rightY;
+			}
+		});
+		driveTrain.setDefaultCommand(sticksCommand);
+		final TimingHistogram teleopTiming = TimingHistogram.get("Robot teleopPeriodic");
+		clock.newPeriodic(new Runnable() {
+			@Override
+			public void run() {
+				if (!testMode) { // like Robot.testPeriodic(), which leaves the scheduler out
+					long start = System.nanoTime();
+					Scheduler.getInstance().run();
+					CoalescedOutput.flushAll();
+					FlightRecorder.getInstance().capture();
+					Telemetry.getInstance().update(start);
+					teleopTiming.record(System.nanoTime() - start);
+					FlightRecorder.getInstance().flush();
+				}
+			}
+		}).startPeriodic(SCHEDULER_PERIOD_SECS);
+	}
+
+	/**
+	 * <pre>
+	 * public void setSticks(double leftY, double rightY)
+	 * </pre>
+	 *
+	 * @param leftY the left stick Y value, negative forward
+	 * @param rightY the right stick Y value, negative forward
+	 */
+	public void setSticks(double leftY, double rightY) {
+		this.leftY = leftY;
+		this.rightY = rightY;
+	}
+
+	/**
+	 * @param disabled whether the robot is disabled; the drive train still runs, so leave the sticks centered
+	 */
+	public void setDisabled(boolean disabled) {
+		this.disabled = disabled;
+	}
+
+	/**
+	 * @param testMode whether the robot is in test mode, where the scheduler does not run
+	 */
+	public void setTestMode(boolean testMode) {
+		this.testMode = testMode;
+	}
+
+	/**
+	 * @param monitor run after every physics step, e.g. to record the state; null for none
+	 */
+	public void setMonitor(Runnable monitor) {
+		this.monitor = monitor;
+	}
+
+	/**
+	 * <pre>
+	 * public void run(double secs)
+	 * </pre>
+	 *
+	 * @param secs the simulated time to run for in seconds
+	 */
+	public void run(double secs) {
+		clock.advance(secs);
+	}
+
+	/**
+	 * <pre>
+	 * public boolean runCommand(Command command, double timeoutSecs)
+	 * </pre>
+	 *
+	 * Starts a command and runs until it ends.
+	 *
+	 * @param command the command to run
+	 * @param timeoutSecs the longest simulated time to wait in seconds
+	 * @return true if the command ended, false if it was still running at the timeout
+	 */
+	public boolean runCommand(Command command, double timeoutSecs) {
+		command.start();
+		double end = clock.getSeconds() + timeoutSecs;
+		clock.advance(SCHEDULER_PERIOD_SECS); // the scheduler picks it up
+		while (command.isRunning()) {
+			if (clock.getSeconds() >= end) {
+				return false;
+			}
+			clock.advance(SCHEDULER_PERIOD_SECS);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the simulated time in seconds
+	 */
+	public double getSeconds() {
+		return clock.getSeconds();
+	}
+
+	/**
+	 * @return the clock of the simulation
+	 */
+	public SimClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * @return the physics of the simulated robot
+	 */
+	public DrivetrainPlant getPlant() {
+		return plant;
+	}
+
+	/**
+	 * @return the simulated gyro
+	 */
+	public SimGyro getGyro() {
+		return gyro;
+	}
+
+	/**
+	 * @return the drive train running on the simulated robot
+	 */
+	public DriveTrain getDriveTrain() {
+		return driveTrain;
+	}
+
+	/**
+	 * @return the number of times motor safety stopped a front Talon
+	 */
+	public int getSafetyTimeouts() {
+		return leftFront.getSafetyTimeouts() + rightFront.getSafetyTimeouts();
+	}
+
+	/**
+	 * Peak electrical load seen by the monitor.
+	 */
+	private static class Load implements Runnable {
+		private final DrivetrainPlant plant;
+		double peakCurrent = 0;
+		double minVoltage = Double.MAX_VALUE;
+		double maxSlip = 0;
+
+		Load(DrivetrainPlant plant) {
+			this.plant = plant;
+		}
+
+		@Override
+		public void run() {
+			peakCurrent = Math.max(peakCurrent, plant.getSupplyCurrent());
+			minVoltage = Math.min(minVoltage, plant.getBusVoltage());
+			maxSlip = Math.max(maxSlip, plant.getMaxSlipInchesPerSec());
+		}
+	}
+
+	private void simulateTurns() {
+		System.out.println("DegreeRotate (relative); times in seconds, angles in degrees");
+		System.out.printf("%7s %9s %9s %10s %10s %11s %9s %8s%n", "turn", "finished", "ended", "error", "overshoot",
+				"error +1 s", "peak A", "min V");
+		final double[] turns = { 10, 45, 90, 180, -90 };
+		for (final double degrees : turns) {
+			final double target = gyro.getAngle() + degrees;
+			final double[] overshoot = { 0 };
+			final Load load = new Load(plant);
+			setMonitor(new Runnable() {
+				@Override
+				public void run() {
+					load.run();
+					overshoot[0] = Math.max(overshoot[0], Math.signum(degrees) * (gyro.getAngle() - target));
+				}
+			});
+			double start = clock.getSeconds();
+			runCommand(new DegreeRotate(degrees, true), 10);
+			double finished = clock.getSeconds() - start;
+			double errorAtEnd = target - gyro.getAngle();
+			boolean settled = driveTrain.isTurnSettled();
+			run(1);
+			System.out.printf("%7.0f %9.3f %9s %10.2f %10.2f %11.2f %9.0f %8.2f%n", degrees, finished,
+					settled ? "settled" : "timed out", errorAtEnd, overshoot[0], target - gyro.getAngle(),
+					load.peakCurrent, load.minVoltage);
+		}
+		setMonitor(null);
+	}
+
+	private void simulateTuning(File saveTo) {
+		System.out.println();
+		System.out.println("Turn gain tuning in test mode");
+		TurnGains untuned = driveTrain.getGains();
+		Load load = new Load(plant);
+		setMonitor(load);
+		setTestMode(true);
+		double start = clock.getSeconds();
+		driveTrain.startTuning(saveTo);
+		while (driveTrain.isTuning() && clock.getSeconds() - start < 60) {
+			if (driveTrain.getTuner().getState() == TurnTuner.State.SEARCHING) {
+				// The search runs on a thread of its own in real time; hold the simulated clock meanwhile
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				continue;
+			}
+			run(SCHEDULER_PERIOD_SECS);
+		}
+		setTestMode(false);
+		setMonitor(null);
+		TurnTuner tuner = driveTrain.getTuner();
+		System.out.printf("%s after %.2f s; peak %.0f A, min %.2f V%n", tuner.getState(), clock.getSeconds() - start,
+				load.peakCurrent, load.minVoltage);
+		if (tuner.getFailure() != null) {
+			System.out.println("Failed: " + tuner.getFailure());
+		}
+		System.out.printf("Identified dead time %.3f s, time constant %.3f s, heading noise %.3f deg%n",
+				tuner.getDeadTimeSecs(), tuner.getTimeConstantSecs(), tuner.getHeadingNoiseDegrees());
+		System.out.println("Untuned: " + untuned);
+		System.out.println("Tuned:   " + driveTrain.getGains());
+		if (saveTo != null && tuner.getState() == TurnTuner.State.DONE) {
+			System.out.println("Saved to " + saveTo);
+		}
+	}
+
+	private void simulateSticks() {
+		System.out.println();
+		System.out.println("DriveWithJoysticks; speeds in inches per second, positions in inches");
+		System.out.printf("%-22s %6s %6s %8s %8s %9s %8s %9s %8s %8s %8s%n", "sticks (left, right Y)", "secs", "speed",
+				"turn/s", "x", "y", "heading", "odom err", "slip", "peak A", "min V");
+		Odometry odometry = driveTrain.getOdometry();
+		// Left Y, right Y, seconds, and 1 to push against a wall
+		double[][] phases = { { -1, -1, 2, 0 }, { -1, -0.4, 2, 0 }, { 0.5, -0.5, 1, 0 }, { 0, 0, 1, 0 },
+				{ -1, -1, 3, 1 }, { 0, 0, 1, 0 } };
+		for (double[] phase : phases) {
+			Load load = new Load(plant);
+			setMonitor(load);
+			setSticks(phase[0], phase[1]);
+			plant.setBlocked(phase[3] != 0);
+			run(phase[2]);
+			plant.setBlocked(false);
+			double odometryError = Math.hypot(odometry.getX() - plant.getXInches(),
+					odometry.getY() - plant.getYInches());
+			System.out.printf("%-22s %6.1f %6.1f %8.1f %8.1f %9.1f %8.1f %9.1f %8.1f %8.0f %8.2f%n",
+					String.format(phase[3] != 0 ? "(%.1f, %.1f) at a wall" : "(%.1f, %.1f)", phase[0], phase[1]),
+					phase[2], plant.getVelocityInchesPerSec(),
+					plant.getTurnRateDegreesPerSec(), plant.getXInches(), plant.getYInches(),
+					plant.getHeadingDegrees(), odometryError, load.maxSlip, load.peakCurrent, load.minVoltage);
+		}
+		setMonitor(null);
+		// The simulated clock stands still during a loop, so only outputs the output layer holds back add latency
+		System.out.printf("Stick to CAN latency: p50 %.1f ms, p99 %.1f ms%n",
+				sticksCommand.getStickToCanLatencyPercentileSecs(50) * MILLIS_IN_SECOND,
+				sticksCommand.getStickToCanLatencyPercentileSecs(99) * MILLIS_IN_SECOND);
+	}
+
+	private void simulateMoveDistance() {
+		System.out.println();
+		System.out.println("MoveDistance; distances in inches");
+		System.out.printf("%9s %9s %9s %9s %9s %9s%n", "distance", "profile", "finished", "ended", "encoders",
+				"ground");
+		double[] distances = { 24, 120, -60 };
+		for (double distance : distances) {
+			double startX = plant.getXInches();
+			double startY = plant.getYInches();
+			MoveDistance command = new MoveDistance(distance);
+			double start = clock.getSeconds();
+			runCommand(command, 15);
+			double finished = clock.getSeconds() - start;
+			run(0.5);
+			// Starting the profile resets the encoder distances
+			double encoders = (driveTrain.getLeftDistanceInches() + driveTrain.getRightDistanceInches()) / 2;
+			double ground = Math.signum(encoders)
+					* Math.hypot(plant.getXInches() - startX, plant.getYInches() - startY);
+			System.out.printf("%9.0f %9.3f %9.3f %9s %9.1f %9.1f%n", distance,
+					MotionProfile.forDistance(distance).getDurationSecs(), finished,
+					driveTrain.isMotionProfileFinished() ? "finished" : "timed out", encoders, ground);
+		}
+	}
+
+	private void simulateDrift() {
+		System.out.println();
+		System.out.printf("Gyro drifting %.2f degrees per second; heading change at rest%n", GYRO_DRIFT_DEGREES_PER_SEC);
+		System.out.printf("%-26s %6s %9s %12s%n", "", "secs", "heading", "drift est");
+		DriftCorrectedGyro corrected = RobotMap.driveTrainGyro;
+		gyro.setDrift(GYRO_DRIFT_DEGREES_PER_SEC);
+		String[] phases = { "enabled, not estimated", "disabled, estimating", "enabled, estimated" };
+		for (int phase = 0; phase < phases.length; phase++) {
+			setDisabled(phase == 1);
+			double start = corrected.getAngle();
+			run(DRIFT_PHASE_SECS);
+			System.out.printf("%-26s %6.0f %9.2f %12.4f%n", phases[phase], DRIFT_PHASE_SECS,
+					corrected.getAngle() - start, corrected.getDriftDegreesPerSec());
+		}
+		setDisabled(false);
+		gyro.setDrift(0);
+	}
+
+	/**
+	 * <pre>
+	 * public static void main(String[] args)
+	 * </pre>
+	 *
+	 * Simulates the robot named by the first argument, PROTO or COMPETITION
+	 * (the default configuration if none). A second argument of "tune" tunes
+	 * the turn gains first; a third names a file to save them to, to copy to
+	 * the robot.
+	 *
+	 * @param args the robot to simulate, then optionally "tune" and a gains file
+	 * @throws IOException if the flight log cannot be written or read
+	 * @throws InterruptedException if interrupted finishing the flight log
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && !args[0].isEmpty()) {
+			Config.init(ConfigType.valueOf(args[0].toUpperCase()));
+		}
+		Config config = Config.getInstance();
+		long wallStart = System.nanoTime();
+		DriveSimulator simulator = new DriveSimulator(config);
+		File flightLog = File.createTempFile("drive-sim", ".flight");
+		flightLog.delete(); // or the recorder keeps it as the previous log
+		flightLog.deleteOnExit();
+		FlightRecorder recorder = FlightRecorder.getInstance();
+		// Flushed every loop, since the simulation runs many times faster than real time
+		recorder.start(flightLog, FlightRecorder.DEFAULT_FILE_BYTES, FlightRecorder.DEFAULT_BYTES_PER_SEC);
+		System.out.println("Simulated " + config + " drive train");
+		simulator.simulateTurns();
+		if (args.length > 1 && args[1].equalsIgnoreCase("tune")) {
+			simulator.simulateTuning(args.length > 2 && !args[2].isEmpty() ? new File(args[2]) : null);
+			simulator.simulateTurns();
+		}
+		simulator.simulateSticks();
+		simulator.simulateMoveDistance();
+		simulator.simulateDrift();
+		double wallSecs = (System.nanoTime() - wallStart) / 1.0e9;
+		System.out.println();
+		System.out.printf("Simulated %.1f s in %.2f s of wall time (%.0fx real time); %d motor safety timeouts%n",
+				simulator.getSeconds(), wallSecs, simulator.getSeconds() / wallSecs, simulator.getSafetyTimeouts());
+		CurrentBudget.Channel current = simulator.driveTrain.getCurrentChannel();
+		System.out.printf("Drive current budget: throttled %d times for %.2f s, lowest scale %.2f%n",
+				current.getThrottleEvents(), current.getThrottledSecs(), current.getLowestScale());
+		for (CoalescedOutput output : CoalescedOutput.getOutputs()) {
+			System.out.printf("%s: %d writes, %d frames sent, %d saved%n", output.getName(), output.getRequests(),
+					output.getFrames(), output.getFramesSaved());
+		}
+		Telemetry telemetry = Telemetry.getInstance();
+		System.out.printf("Telemetry: %d values sent, %d unchanged, %d dropped over the loop budget%n",
+				telemetry.getPublishedCount(), telemetry.getUnchangedCount(), telemetry.getDroppedCount());
+		recorder.stop();
+		FlightLogDecoder decoder = new FlightLogDecoder(flightLog);
+		long decoded = 0;
+		for (long sequence = decoder.getFirstSequence(); sequence < decoder.getEndSequence(); sequence++) {
+			if (decoder.read(sequence)) {
+				decoded++;
+			}
+		}
+		System.out.printf("Flight log: %d records of %d bytes captured, %d written, %d dropped, %d decoded%n",
+				recorder.getCapturedCount(), recorder.getRecordBytes(), recorder.getWrittenCount(),
+				recorder.getDroppedCount(), decoded);
+		System.out.println();
+		System.out.println("Loop timings on this computer, in milliseconds");
+		System.out.printf("%-32s %7s %7s %7s %7s%n", "", "calls", "p50", "p99", "max");
+		for (TimingHistogram timing : TimingHistogram.getHistograms()) {
+			if (timing.getCount() > 0) {
+				System.out.printf("%-32s %7d %7.3f %7.3f %7.3f%n", timing.getName(), timing.getCount(),
+						timing.getPercentileMillis(50), timing.getPercentileMillis(99), timing.getMaxMillis());
+			}
+		}
+		System.exit(0); // the PID controller timer thread is not a daemon
+	}
+}
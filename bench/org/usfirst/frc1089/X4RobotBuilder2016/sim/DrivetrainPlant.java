@@ -0,0 +1,293 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+
+/**
+ * The {@code DrivetrainPlant} class simulates the physics of the skid steer
+ * drive train described by a {@link Config}: CIM motors driven by the
+ * {@link SimTalonSRX}s, a battery that sags under load, wheels that slip on
+ * the carpet, and the mass and moment of inertia of the robot.
+ * <p>
+ * Each side is a set of motors geared to a wheel surface with the reflected
+ * rotor inertia. Traction between the wheels and the carpet grows smoothly
+ * with the slip speed up to the friction limit, so the wheels spin when
+ * pushed too hard, and the encoders (which turn with the wheels) read the
+ * wheel distance, not the ground distance. Turning is resisted by the scrub
+ * of the wheels, modelled as Coulomb friction on the turn rate.
+ * </p>
+ * <p>
+ * The Talons output positive to drive their side in the direction of
+ * {@code LEFT_DRIVE_SIGN} / {@code RIGHT_DRIVE_SIGN}, and the encoders count
+ * forward in the direction of {@code LEFT_ENC_SIGN} / {@code RIGHT_ENC_SIGN}.
+ * The first Talon of each side has the encoder. Internally units are SI;
+ * getters use inches and degrees, headings clockwise positive.
+ * </p>
+ */
+public class DrivetrainPlant {
+	// CIM motor at 12 V, from the datasheet
+	private static final double MOTOR_STALL_TORQUE = 2.42; // N m
+	private static final double MOTOR_STALL_CURRENT = 133; // A
+	private static final double MOTOR_FREE_SPEED = 5310 * 2 * Math.PI / 60; // rad/s
+	private static final double MOTOR_FREE_CURRENT = 2.7; // A
+	private static final double MOTOR_NOMINAL_VOLTAGE = 12;
+	private static final double MOTOR_ROTOR_INERTIA = 7.75e-5; // kg m^2
+	private static final double MOTOR_RESISTANCE = MOTOR_NOMINAL_VOLTAGE / MOTOR_STALL_CURRENT; // ohms
+	private static final double TORQUE_PER_AMP = MOTOR_STALL_TORQUE / MOTOR_STALL_CURRENT;
+	private static final double VOLTS_PER_RAD_PER_SEC = (MOTOR_NOMINAL_VOLTAGE
+			- MOTOR_FREE_CURRENT * MOTOR_RESISTANCE) / MOTOR_FREE_SPEED;
+	private static final double CIRCUIT_RESISTANCE = MOTOR_RESISTANCE + 0.015; // with the Talon and its wires
+
+	private static final double BATTERY_VOLTAGE = 12.7;
+	private static final double BATTERY_RESISTANCE = 0.02; // ohms, battery and wiring
+	private static final double GRAVITY = 9.81; // m/s^2
+	private static final double WHEEL_MASS_KG = 0.5; // wheels and chain per side, at the wheel surface
+	private static final double SLIP_SPEED = 0.05; // m/s of wheel slip giving 76% of full traction
+	private static final double SCRUB_RATE = 0.05; // rad/s of turn rate giving 76% of full scrub
+	private static final double ROLLING_RESISTANCE = 0.015; // of the weight
+	private static final double INCHES_PER_METER = 1 / 0.0254;
+	private static final double KG_PER_POUND = 0.45359;
+	private static final double SECS_IN_MINUTE = 60;
+
+	private static final int LEFT = 0;
+	private static final int RIGHT = 1;
+
+	private final SimTalonSRX[][] talons;
+	private final SimGyro gyro;
+	private final double[] driveSign = new double[2];
+	private final double[] encoderSign = new double[2];
+
+	private final double mass;
+	private final double momentOfInertia;
+	private final double halfTrack;
+	private final double wheelRadius;
+	private final double reduction;
+	private final double encoderRevsPerMeter;
+	private final double sideMass; // reflected inertia of motors and wheels
+	private final double maxTraction; // per side
+	private final double maxScrubTorque;
+
+	// State
+	private final double[] wheelSpeed = new double[2]; // m/s at the wheel surface, positive forward
+	private final double[] wheelDistance = new double[2]; // m
+	private final double[] current = new double[2]; // total motor current per side
+	private final double[] traction = new double[2]; // N, positive forward
+	private final double[] sideForce = new double[2]; // N from the motors, positive forward
+	private final double[] groundSpeed = new double[2]; // m/s, positive forward
+	private double velocity = 0; // m/s
+	private double turnRate = 0; // rad/s, clockwise positive
+	private double heading = 0; // rad
+	private double x = 0; // m
+	private double y = 0; // m
+	private double busVoltage = BATTERY_VOLTAGE;
+	private double supplyCurrent = 0;
+	private boolean blocked = false;
+
+	/**
+	 * <pre>
+	 * public DrivetrainPlant(Config config, SimTalonSRX[] leftTalons, SimTalonSRX[] rightTalons, SimGyro gyro)
+	 * </pre>
+	 *
+	 * Constructs a new {@code DrivetrainPlant} at rest at the origin.
+	 *
+	 * @param config the robot to simulate
+	 * @param leftTalons the Talons of the left motors, the first one with the encoder
+	 * @param rightTalons the Talons of the right motors, the first one with the encoder
+	 * @param gyro the gyro to feed
+	 */
+	public DrivetrainPlant(Config config, SimTalonSRX[] leftTalons, SimTalonSRX[] rightTalons, SimGyro gyro) {
+		talons = new SimTalonSRX[][] { leftTalons, rightTalons };
+		this.gyro = gyro;
+		driveSign[LEFT] = config.LEFT_DRIVE_SIGN;
+		driveSign[RIGHT] = config.RIGHT_DRIVE_SIGN;
+		encoderSign[LEFT] = config.LEFT_ENC_SIGN;
+		encoderSign[RIGHT] = config.RIGHT_ENC_SIGN;
+
+		mass = config.ROBOT_MASS_LBS * KG_PER_POUND;
+		double gyration = config.ROBOT_RADIUS_OF_GYRATION_INCHES / INCHES_PER_METER;
+		momentOfInertia = mass * gyration * gyration;
+		halfTrack = config.AXLE_TRACK_INCHES / INCHES_PER_METER / 2;
+		wheelRadius = config.WHEEL_SIZE_INCHES / INCHES_PER_METER / 2;
+		reduction = config.DRIVE_MOTOR_REDUCTION;
+		encoderRevsPerMeter = config.GEAR_RATIO / (2 * Math.PI * wheelRadius);
+		sideMass = config.DRIVE_MOTORS_PER_SIDE * MOTOR_ROTOR_INERTIA * (reduction / wheelRadius)
+				* (reduction / wheelRadius) + WHEEL_MASS_KG;
+		maxTraction = config.WHEEL_FRICTION_COEFFICIENT * mass * GRAVITY / 2;
+		maxScrubTorque = config.DRIVE_SCRUB_COEFFICIENT * mass * GRAVITY * halfTrack;
+		updateSensors(0);
+	}
+
+	/**
+	 * <pre>
+	 * public void step(double dt)
+	 * </pre>
+	 *
+	 * Advances the physics using the current Talon outputs, then updates the
+	 * encoders, currents and gyro.
+	 *
+	 * @param dt the time step in seconds; 0.25 ms or less keeps wheel slip stable
+	 */
+	public void step(double dt) {
+		double totalSupply = 0;
+		for (int side = LEFT; side <= RIGHT; side++) {
+			// Motor speed in the direction of a positive output
+			double motorSpeed = driveSign[side] * wheelSpeed[side] / wheelRadius * reduction;
+			double torque = 0;
+			current[side] = 0;
+			for (SimTalonSRX talon : talons[side]) {
+				double output = talon.getMotorOutput();
+				double amps;
+				if (output == 0 && !talon.isBrakeEnabled()) {
+					amps = 0; // coasting, the bridge is open
+				} else {
+					amps = (output * busVoltage - VOLTS_PER_RAD_PER_SEC * motorSpeed) / CIRCUIT_RESISTANCE;
+				}
+				// Bearing and brush friction is what the free current overcomes
+				torque += TORQUE_PER_AMP * (amps - MOTOR_FREE_CURRENT * Math.tanh(motorSpeed));
+				current[side] += Math.abs(amps);
+				totalSupply += Math.abs(amps * output);
+				talon.setElectrical(busVoltage, Math.abs(amps));
+			}
+			sideForce[side] = driveSign[side] * torque * reduction / wheelRadius;
+		}
+
+		// Ground speed of each side; turning clockwise moves the left side forward
+		groundSpeed[LEFT] = velocity + turnRate * halfTrack;
+		groundSpeed[RIGHT] = velocity - turnRate * halfTrack;
+		for (int side = LEFT; side <= RIGHT; side++) {
+			traction[side] = maxTraction * Math.tanh((wheelSpeed[side] - groundSpeed[side]) / SLIP_SPEED);
+			wheelSpeed[side] += (sideForce[side] - traction[side]) / sideMass * dt;
+			wheelDistance[side] += wheelSpeed[side] * dt;
+		}
+
+		if (blocked) {
+			velocity = 0;
+			turnRate = 0;
+		} else {
+			double rolling = ROLLING_RESISTANCE * mass * GRAVITY * Math.tanh(velocity / SLIP_SPEED);
+			velocity += (traction[LEFT] + traction[RIGHT] - rolling) / mass * dt;
+			double scrub = maxScrubTorque * Math.tanh(turnRate / SCRUB_RATE);
+			turnRate += ((traction[LEFT] - traction[RIGHT]) * halfTrack - scrub) / momentOfInertia * dt;
+		}
+		double midHeading = heading + turnRate * dt / 2;
+		heading += turnRate * dt;
+		x += velocity * Math.cos(midHeading) * dt;
+		y += velocity * Math.sin(midHeading) * dt;
+
+		supplyCurrent = totalSupply;
+		busVoltage = BATTERY_VOLTAGE - BATTERY_RESISTANCE * supplyCurrent;
+		updateSensors(dt);
+	}
+
+	private void updateSensors(double dt) {
+		for (int side = LEFT; side <= RIGHT; side++) {
+			double revs = encoderSign[side] * wheelDistance[side] * encoderRevsPerMeter;
+			double rpm = encoderSign[side] * wheelSpeed[side] * encoderRevsPerMeter * SECS_IN_MINUTE;
+			talons[side][0].setSensor(revs, rpm);
+		}
+		gyro.setState(getHeadingDegrees(), getTurnRateDegreesPerSec(), dt);
+	}
+
+	/**
+	 * <pre>
+	 * public void setBlocked(boolean blocked)
+	 * </pre>
+	 *
+	 * Holds the robot in place, as against a wall or a robot that does not
+	 * give way; the wheels can still spin on the carpet.
+	 *
+	 * @param blocked whether the robot is held in place
+	 */
+	public void setBlocked(boolean blocked) {
+		this.blocked = blocked;
+		if (blocked) {
+			velocity = 0;
+			turnRate = 0;
+		}
+	}
+
+	/**
+	 * @return the X position in inches, along the starting heading
+	 */
+	public double getXInches() {
+		return x * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the Y position in inches, to the right of the starting heading
+	 */
+	public double getYInches() {
+		return y * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the true heading in degrees, clockwise positive
+	 */
+	public double getHeadingDegrees() {
+		return Math.toDegrees(heading);
+	}
+
+	/**
+	 * @return the true turn rate in degrees per second, clockwise positive
+	 */
+	public double getTurnRateDegreesPerSec() {
+		return Math.toDegrees(turnRate);
+	}
+
+	/**
+	 * @return the ground speed of the center in inches per second
+	 */
+	public double getVelocityInchesPerSec() {
+		return velocity * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the left wheel surface speed in inches per second, positive forward
+	 */
+	public double getLeftWheelSpeedInchesPerSec() {
+		return wheelSpeed[LEFT] * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the right wheel surface speed in inches per second, positive forward
+	 */
+	public double getRightWheelSpeedInchesPerSec() {
+		return wheelSpeed[RIGHT] * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the fastest slip of a wheel over the carpet in inches per second
+	 */
+	public double getMaxSlipInchesPerSec() {
+		double left = wheelSpeed[LEFT] - (velocity + turnRate * halfTrack);
+		double right = wheelSpeed[RIGHT] - (velocity - turnRate * halfTrack);
+		return Math.max(Math.abs(left), Math.abs(right)) * INCHES_PER_METER;
+	}
+
+	/**
+	 * @return the total motor current of the left side in amps
+	 */
+	public double getLeftCurrent() {
+		return current[LEFT];
+	}
+
+	/**
+	 * @return the total motor current of the right side in amps
+	 */
+	public double getRightCurrent() {
+		return current[RIGHT];
+	}
+
+	/**
+	 * @return the current drawn from the battery by the drive in amps
+	 */
+	public double getSupplyCurrent() {
+		return supplyCurrent;
+	}
+
+	/**
+	 * @return the battery voltage at the Talons
+	 */
+	public double getBusVoltage() {
+		return busVoltage;
+	}
+}
@@ -0,0 +1,505 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.OI;
+import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
+import org.usfirst.frc1089.X4RobotBuilder2016.Robot.Mode;
+import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightLogDecoder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.TimingHistogram;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Camera;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.CameraNTListener;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config.ConfigType;
+
+import edu.wpi.first.wpilibj.HLUsageReporting;
+import edu.wpi.first.wpilibj.RobotState;
+
+/**
+ * The {@code MatchReplayer} class runs the robot code of a match again,
+ * headless and as fast as the computer allows, from the inputs in a
+ * {@link FlightRecorder} log, and compares what it does with what the robot
+ * did.
+ * <p>
+ * It stands in for the {@code IterativeRobot} of {@code Robot}, which needs
+ * the roboRIO, and calls the same static methods of {@code Robot} it does.
+ * The subsystems are created on simulated devices ({@link SimTalonSRX}s, a
+ * {@link SimGyro} and simulated valves) as in
+ * {@code RobotMap.initSimulation(...)}, the {@code OI} reads
+ * {@link ReplayedJoystick}s, and the {@code Camera} is fed through its
+ * {@link CameraNTListener}. Time is a {@link SimClock}, so a replay does the
+ * same thing every time it is run. For each record it
+ * </p>
+ * <ul>
+ * <li>sets the sticks, the gyro, the drive encoders, the bus voltage and the
+ * current of each {@code CurrentBudget} channel as recorded;</li>
+ * <li>passes the camera rectangles to the listener as a new frame when they
+ * changed, as the robot only records the frame in use;</li>
+ * <li>moves the clock to the time of the record, running the control loops
+ * and the Talons that fall due on the way;</li>
+ * <li>follows the recorded robot mode like {@code IterativeRobot}, calling
+ * {@code Robot.enterMode(...)} when it changes, and runs
+ * {@code Robot.runLoop()}, which captures into a flight log of its own.</li>
+ * </ul>
+ * <p>
+ * The flight recorder only keeps one record per loop, so each input is held
+ * over the loop before its record, and only the first rectangles
+ * of each frame are replayed. The fields of the replayed log are then
+ * compared with the recorded ones, floats within {@code FLOAT_TOLERANCE} and
+ * the others exactly, and the loop timings, of {@code Scheduler.run()} above
+ * all, are printed.
+ * </p>
+ * <pre>
+ * ant replay -Dflight.log=flight.log
+ * </pre>
+ */
+public class MatchReplayer {
+	public static final double FLOAT_TOLERANCE = 0.01; // relative, or absolute below 1
+
+	private static final String[] RECT_KEYS = { "area", "width", "height", "centerX", "centerY" };
+	private static final String[] STICKS = { "Left stick", "Right stick", "Game pad" };
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final double SECS_IN_MINUTE = 60;
+	private static final long LOOP_PERIOD_NANOS = 20000000; // of the driver station packets
+
+	private final FlightLogDecoder log;
+	private final Config config;
+	private final SimClock clock = new SimClock();
+	private final Map<Integer, SimTalonSRX> bus = new HashMap<Integer, SimTalonSRX>();
+	private final SimTalonSRX leftFront = new SimTalonSRX(4, bus, clock);
+	private final SimTalonSRX leftBack = new SimTalonSRX(3, bus, clock);
+	private final SimTalonSRX rightFront = new SimTalonSRX(2, bus, clock);
+	private final SimTalonSRX rightBack = new SimTalonSRX(1, bus, clock);
+	private final SimTalonSRX roller = new SimTalonSRX(7, bus, clock);
+	private final SimTalonSRX[] talons = { leftFront, rightFront, leftBack, rightBack, roller };
+	private final SimGyro gyro = new SimGyro();
+	private final ReplayedJoystick[] sticks = { new ReplayedJoystick(), new ReplayedJoystick(),
+			new ReplayedJoystick() };
+	private final CameraNTListener cameraListener = new CameraNTListener(null);
+
+	// The fields of the recorded log fed back into the robot, -1 if missing
+	private final int modeField;
+	private final int[][] stickFields = new int[STICKS.length][];
+	private final int headingField;
+	private final int headingRateField;
+	private final int leftInchesField;
+	private final int rightInchesField;
+	private final int leftSpeedField;
+	private final int rightSpeedField;
+	private final int busVoltsField;
+	private final String[] channelNames = { "DriveTrain", "Intake" };
+	private final SimTalonSRX[][] channelTalons = { { leftFront, rightFront, leftBack, rightBack }, { roller } };
+	private final int[] channelFields = new int[channelNames.length];
+	private final int cameraTargetsField;
+	private final int[][] rectFields;
+
+	// Replay state
+	private boolean modeEntered = false;
+	private double[][] fedRectangles = null;
+	private long[] replayedSequences = new long[0];
+	private long firstTime;
+	private long lastTime;
+
+	/**
+	 * <pre>
+	 * public MatchReplayer(FlightLogDecoder log, Config config)
+	 * </pre>
+	 *
+	 * Builds the whole robot on simulated devices, disabled, with the sticks
+	 * centered, and sets the subsystems, camera and OI of {@code Robot}. Only
+	 * one replayer can be created per JVM, since subsystems register with the
+	 * {@code Scheduler} and the {@code FlightRecorder} singletons.
+	 *
+	 * @param log the flight log to replay
+	 * @param config the robot that recorded it
+	 */
+	public MatchReplayer(FlightLogDecoder log, Config config) {
+		this.log = log;
+		this.config = config;
+		clock.install();
+		HLUsageReporting.SetImplementation(new HLUsageReporting.Interface() {
+			@Override
+			public void reportScheduler() {
+			}
+
+			@Override
+			public void reportPIDController(int num) {
+			}
+
+			@Override
+			public void reportSmartDashboard() {
+			}
+		});
+		RobotState.SetImplementation(new RobotState.Interface() {
+			@Override
+			public boolean isDisabled() {
+				return Robot.getMode() == Mode.DISABLED;
+			}
+
+			@Override
+			public boolean isEnabled() {
+				return !isDisabled();
+			}
+
+			@Override
+			public boolean isOperatorControl() {
+				return Robot.getMode() == Mode.TELEOP;
+			}
+
+			@Override
+			public boolean isAutonomous() {
+				return Robot.getMode() == Mode.AUTONOMOUS;
+			}
+
+			@Override
+			public boolean isTest() {
+				return Robot.getMode() == Mode.TEST;
+			}
+		});
+		clock.newPeriodic(new Runnable() {
+			@Override
+			public void run() {
+				for (SimTalonSRX talon : talons) {
+					talon.update();
+				}
+			}
+		}).startPeriodic(SimTalonSRX.UPDATE_PERIOD_SECS);
+
+		// Robot.robotInit() on simulated devices
+		RobotMap.initSimulation(leftBack, rightBack, leftFront, rightFront, gyro, roller,
+				new SimDoubleSolenoidValve(), new SimDoubleSolenoidValve(), new SimSolenoidValve(),
+				new SimDoubleSolenoidValve());
+		Robot.createSubsystems();
+		Robot.setCamera(new Camera(cameraListener));
+		Robot.setOI(new OI(sticks[2], sticks[1], sticks[0]));
+		Robot.addFlightRecord();
+
+		modeField = log.indexOf("Robot mode");
+		for (int i = 0; i < STICKS.length; i++) {
+			stickFields[i] = new int[] { log.indexOf(STICKS[i] + " x"), log.indexOf(STICKS[i] + " y"),
+					log.indexOf(STICKS[i] + " buttons") };
+		}
+		headingField = log.indexOf("DriveTrain heading");
+		headingRateField = log.indexOf("DriveTrain heading rate");
+		leftInchesField = log.indexOf("DriveTrain left inches");
+		rightInchesField = log.indexOf("DriveTrain right inches");
+		leftSpeedField = log.indexOf("DriveTrain left inches per sec");
+		rightSpeedField = log.indexOf("DriveTrain right inches per sec");
+		busVoltsField = log.indexOf("Robot bus volts");
+		for (int i = 0; i < channelNames.length; i++) {
+			channelFields[i] = log.indexOf("CurrentBudget " + channelNames[i] + " amps");
+		}
+		cameraTargetsField = log.indexOf("Camera targets");
+		int rects = 0;
+		while (log.indexOf("Camera rect " + rects + " " + RECT_KEYS[0]) >= 0) {
+			rects++;
+		}
+		rectFields = new int[rects][RECT_KEYS.length];
+		for (int rect = 0; rect < rects; rect++) {
+			for (int key = 0; key < RECT_KEYS.length; key++) {
+				rectFields[rect][key] = log.indexOf("Camera rect " + rect + " " + RECT_KEYS[key]);
+			}
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void replay(File replayedLog) throws IOException, InterruptedException
+	 * </pre>
+	 *
+	 * Replays every record of the log, recording the replay.
+	 *
+	 * @param replayedLog the flight log to record the replay to
+	 * @throws IOException if the replayed log cannot be written
+	 * @throws InterruptedException if interrupted finishing the replayed log
+	 */
+	public void replay(File replayedLog) throws IOException, InterruptedException {
+		FlightRecorder recorder = FlightRecorder.getInstance();
+		recorder.start(replayedLog, FlightRecorder.DEFAULT_FILE_BYTES, FlightRecorder.DEFAULT_BYTES_PER_SEC);
+
+		long[] sequences = new long[(int) (log.getEndSequence() - log.getFirstSequence())];
+		int replayed = 0;
+		long timeOffset = 0;
+		for (long sequence = log.getFirstSequence(); sequence < log.getEndSequence(); sequence++) {
+			if (!log.read(sequence)) {
+				continue; // dropped while recording; the inputs are held over the gap
+			}
+			if (replayed == 0) {
+				firstTime = log.getTimeNanos();
+				// One loop in, so the samplers ran before the first loop, as on the robot
+				timeOffset = clock.nanoTime() + LOOP_PERIOD_NANOS - firstTime;
+			}
+			lastTime = log.getTimeNanos();
+			// The control loops run up to the time of the record on its inputs, held since the last one
+			setInputs();
+			clock.advance(Math.max(0, lastTime + timeOffset - clock.nanoTime()) / NANOS_IN_SECOND);
+			setMode();
+			Robot.runLoop(); // what the periodic method of the mode runs
+			recorder.flush();
+			sequences[replayed++] = sequence;
+		}
+		replayedSequences = Arrays.copyOf(sequences, replayed);
+		recorder.stop();
+	}
+
+	private void setInputs() {
+		for (int i = 0; i < STICKS.length; i++) {
+			int[] fields = stickFields[i];
+			sticks[i].set(number(fields[0], 0), number(fields[1], 0), (int) number(fields[2], 0));
+		}
+
+		double heading = number(headingField, gyro.getAngle());
+		gyro.setState(heading, number(headingRateField, 0), 0);
+
+		// The drive train reads the front Talons, whose sensors it reverses to count up going forward
+		double inchesPerRev = config.DRIVE_INCHES_PER_ENCODER_REV;
+		if (leftInchesField >= 0 && leftSpeedField >= 0) {
+			leftFront.setMeasured(config.LEFT_DRIVE_SIGN * log.getNumber(leftInchesField) / inchesPerRev,
+					config.LEFT_DRIVE_SIGN * log.getNumber(leftSpeedField) * SECS_IN_MINUTE / inchesPerRev);
+		}
+		if (rightInchesField >= 0 && rightSpeedField >= 0) {
+			rightFront.setMeasured(config.RIGHT_DRIVE_SIGN * log.getNumber(rightInchesField) / inchesPerRev,
+					config.RIGHT_DRIVE_SIGN * log.getNumber(rightSpeedField) * SECS_IN_MINUTE / inchesPerRev);
+		}
+
+		// Each channel's current is split evenly between its Talons
+		double busVolts = number(busVoltsField, leftFront.getBusVoltage());
+		for (int i = 0; i < channelNames.length; i++) {
+			SimTalonSRX[] channel = channelTalons[i];
+			double amps = number(channelFields[i], 0) / channel.length;
+			for (SimTalonSRX talon : channel) {
+				talon.setElectrical(busVolts, amps);
+			}
+		}
+
+		setCameraInputs();
+	}
+
+	// A new frame of the first rectangles when the recorded ones changed
+	private void setCameraInputs() {
+		if (cameraTargetsField < 0 || rectFields.length == 0) {
+			return;
+		}
+		int count = Math.min((int) log.getNumber(cameraTargetsField), rectFields.length);
+		double[][] rectangles = new double[RECT_KEYS.length][count];
+		for (int rect = 0; rect < count; rect++) {
+			for (int key = 0; key < RECT_KEYS.length; key++) {
+				rectangles[key][rect] = number(rectFields[rect][key], Double.NaN);
+			}
+		}
+		if (Arrays.deepEquals(rectangles, fedRectangles)) {
+			return;
+		}
+		fedRectangles = rectangles;
+		for (int key = 0; key < RECT_KEYS.length; key++) {
+			cameraListener.valueChanged(null, RECT_KEYS[key], rectangles[key].clone(), false);
+		}
+	}
+
+	// Enters the recorded mode when it changes, like IterativeRobot calls the init method of a mode
+	private void setMode() {
+		Mode newMode = modeField < 0 ? Mode.TELEOP : getMode(log.getSymbol(modeField));
+		if (modeEntered && newMode == Robot.getMode()) {
+			return;
+		}
+		modeEntered = true;
+		// Tuning in test mode is asked for on the dashboard, which is not recorded, so it is not
+		Robot.enterMode(newMode);
+	}
+
+	// The mode with the given name in the flight log, or the current mode if none
+	private static Mode getMode(String name) {
+		for (Mode mode : Mode.values()) {
+			if (mode.toString().equals(name)) {
+				return mode;
+			}
+		}
+		return Robot.getMode(); // not in the symbol table of the log
+	}
+
+	// The value of a number field of the current record, or a default if the log does not have it
+	private double number(int field, double missing) {
+		return field < 0 ? missing : log.getNumber(field);
+	}
+
+	/**
+	 * @return the number of records replayed
+	 */
+	public int getReplayedCount() {
+		return replayedSequences.length;
+	}
+
+	/**
+	 * @return the time from the first record replayed to the last, in seconds
+	 */
+	public double getReplayedSecs() {
+		return (lastTime - firstTime) / NANOS_IN_SECOND;
+	}
+
+	/**
+	 * <pre>
+	 * public int compare(FlightLogDecoder replayed)
+	 * </pre>
+	 *
+	 * Prints, for each field recorded in both logs that differs in a record,
+	 * the number of records it differs in and the first difference.
+	 *
+	 * @param replayed the log of the replay
+	 * @return the number of fields that differ in any record
+	 */
+	public int compare(FlightLogDecoder replayed) {
+		int fields = replayed.getFieldCount();
+		int[] recordedFields = new int[fields];
+		int[] mismatches = new int[fields];
+		String[] firstMismatch = new String[fields];
+		int compared = 0;
+		for (int field = 0; field < fields; field++) {
+			recordedFields[field] = log.indexOf(replayed.getFieldName(field));
+			if (recordedFields[field] >= 0
+					&& log.getFieldType(recordedFields[field]) != replayed.getFieldType(field)) {
+				System.out.println(replayed.getFieldName(field) + " has another type in the recorded log");
+				recordedFields[field] = -1;
+			}
+			if (recordedFields[field] >= 0) {
+				compared++;
+			}
+		}
+		for (int record = 0; record < replayedSequences.length; record++) {
+			if (!log.read(replayedSequences[record]) || !replayed.read(record)) {
+				continue;
+			}
+			for (int field = 0; field < fields; field++) {
+				int recordedField = recordedFields[field];
+				if (recordedField < 0 || matches(log, recordedField, replayed, field)) {
+					continue;
+				}
+				if (mismatches[field]++ == 0) {
+					firstMismatch[field] = String.format("%9.2f %14s %14s", log.getTimeSecs(),
+							log.format(recordedField), replayed.format(field));
+				}
+			}
+		}
+
+		System.out.printf("%-34s %10s %9s %14s %14s%n", "differs", "records", "first s", "recorded",
+				"replayed");
+		int differing = 0;
+		for (int field = 0; field < fields; field++) {
+			if (mismatches[field] > 0) {
+				differing++;
+				System.out.printf("%-34s %10d %s%n", replayed.getFieldName(field), mismatches[field],
+						firstMismatch[field]);
+			}
+		}
+		System.out.printf("%d of %d fields in both logs matched in every record%n", compared - differing,
+				compared);
+		return differing;
+	}
+
+	private static boolean matches(FlightLogDecoder recorded, int recordedField, FlightLogDecoder replayed,
+			int field) {
+		byte type = replayed.getFieldType(field);
+		if (type == FlightRecorder.SYMBOL) {
+			return recorded.getSymbol(recordedField).equals(replayed.getSymbol(field));
+		}
+		double expected = recorded.getNumber(recordedField);
+		double actual = replayed.getNumber(field);
+		if (type != FlightRecorder.FLOAT) {
+			return expected == actual;
+		}
+		if (Double.isNaN(expected) || Double.isNaN(actual)) {
+			return Double.isNaN(expected) && Double.isNaN(actual);
+		}
+		return Math.abs(actual - expected) <= FLOAT_TOLERANCE * Math.max(1, Math.abs(expected));
+	}
+
+	/**
+	 * <pre>
+	 * public static long digest(FlightLogDecoder replayed)
+	 * </pre>
+	 *
+	 * @param replayed the log of a replay
+	 * @return a CRC-32 of the times and fields of every record, the same for
+	 *         every replay of a log by the same code
+	 */
+	public static long digest(FlightLogDecoder replayed) {
+		CRC32 crc = new CRC32();
+		ByteBuffer time = ByteBuffer.allocate(Long.BYTES);
+		for (long sequence = replayed.getFirstSequence(); sequence < replayed.getEndSequence(); sequence++) {
+			if (!replayed.read(sequence)) {
+				continue;
+			}
+			time.putLong(0, replayed.getTimeNanos());
+			crc.update(time.array());
+			for (int field = 0; field < replayed.getFieldCount(); field++) {
+				crc.update(replayed.format(field).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * <pre>
+	 * public static void main(String[] args)
+	 * </pre>
+	 *
+	 * Replays the flight log named by the first argument, records the replay
+	 * to the file named by the second, if any, and compares the two. The third
+	 * names the robot that recorded it, PROTO or COMPETITION (the default
+	 * configuration if none). Exits with status 1 if a field differs.
+	 *
+	 * @param args the flight log, then optionally the replayed log and the robot
+	 * @throws IOException if a flight log cannot be read or written
+	 * @throws InterruptedException if interrupted finishing the replayed log
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1 || args[0].isEmpty()) {
+			System.err.println("Usage: MatchReplayer <flight log> [replayed log] [PROTO|COMPETITION]");
+			System.exit(2);
+		}
+		if (args.length > 2 && !args[2].isEmpty()) {
+			Config.init(ConfigType.valueOf(args[2].toUpperCase()));
+		}
+		FlightLogDecoder log = new FlightLogDecoder(new File(args[0]));
+		File replayedLog;
+		if (args.length > 1 && !args[1].isEmpty()) {
+			replayedLog = new File(args[1]);
+		} else {
+			replayedLog = File.createTempFile("replay", ".flight");
+			replayedLog.delete(); // or the recorder keeps it as the previous log
+			replayedLog.deleteOnExit();
+		}
+
+		long wallStart = System.nanoTime();
+		MatchReplayer replayer = new MatchReplayer(log, Config.getInstance());
+		replayer.replay(replayedLog);
+		double wallSecs = (System.nanoTime() - wallStart) / NANOS_IN_SECOND;
+		System.out.printf("Replayed %d records, %.1f s of %s, in %.2f s of wall time (%.0fx real time)%n",
+				replayer.getReplayedCount(), replayer.getReplayedSecs(), args[0], wallSecs,
+				replayer.getReplayedSecs() / wallSecs);
+
+		FlightLogDecoder replayed = new FlightLogDecoder(replayedLog);
+		System.out.println();
+		int differing = replayer.compare(replayed);
+		System.out.printf("Replay digest: %08x%n", digest(replayed));
+
+		System.out.println();
+		System.out.println("Loop timings on this computer, in milliseconds");
+		System.out.printf("%-32s %7s %7s %7s %7s%n", "", "calls", "p50", "p99", "max");
+		for (TimingHistogram timing : TimingHistogram.getHistograms()) {
+			if (timing.getCount() > 0) {
+				System.out.printf("%-32s %7d %7.3f %7.3f %7.3f%n", timing.getName(), timing.getCount(),
+						timing.getPercentileMillis(50), timing.getPercentileMillis(99), timing.getMaxMillis());
+			}
+		}
+		System.exit(differing == 0 ? 0 : 1); // the PID controller timer thread is not a daemon
+	}
+}
@@ -0,0 +1,91 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import edu.wpi.first.wpilibj.GenericHID;
+
+/**
+ * The {@code ReplayedJoystick} class is a joystick whose X and Y axes and
+ * buttons are set from a flight log, for the {@code OI} off the robot. The
+ * flight recorder keeps only those, so the other axes read 0, the other
+ * buttons are released and the POV hat is centered.
+ */
+public class ReplayedJoystick extends GenericHID {
+	private static final int X_AXIS = 0;
+	private static final int Y_AXIS = 1;
+	private static final int TRIGGER_BUTTON = 1;
+	private static final int TOP_BUTTON = 2;
+	private static final int POV_CENTERED = -1;
+
+	private double x = 0;
+	private double y = 0;
+	private int buttons = 0;
+
+	/**
+	 * <pre>
+	 * public void set(double x, double y, int buttons)
+	 * </pre>
+	 *
+	 * @param x the X axis, between -1 and 1
+	 * @param y the Y axis, between -1 and 1, negative forward
+	 * @param buttons a bit mask of the buttons pressed, button 1 in the lowest bit
+	 */
+	public void set(double x, double y, int buttons) {
+		this.x = x;
+		this.y = y;
+		this.buttons = buttons;
+	}
+
+	@Override
+	public double getX(Hand hand) {
+		return x;
+	}
+
+	@Override
+	public double getY(Hand hand) {
+		return y;
+	}
+
+	@Override
+	public double getZ(Hand hand) {
+		return 0;
+	}
+
+	@Override
+	public double getTwist() {
+		return 0;
+	}
+
+	@Override
+	public double getThrottle() {
+		return 0;
+	}
+
+	@Override
+	public double getRawAxis(int which) {
+		return which == X_AXIS ? x : which == Y_AXIS ? y : 0;
+	}
+
+	@Override
+	public boolean getTrigger(Hand hand) {
+		return getRawButton(TRIGGER_BUTTON);
+	}
+
+	@Override
+	public boolean getTop(Hand hand) {
+		return getRawButton(TOP_BUTTON);
+	}
+
+	@Override
+	public boolean getBumper(Hand hand) {
+		return false;
+	}
+
+	@Override
+	public boolean getRawButton(int button) {
+		return button >= 1 && button <= Integer.SIZE && (buttons & 1 << (button - 1)) != 0;
+	}
+
+	@Override
+	public int getPOV(int pov) {
+		return POV_CENTERED;
+	}
+}
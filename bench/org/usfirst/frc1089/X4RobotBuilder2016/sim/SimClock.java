@@ -0,0 +1,180 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * The {@code SimClock} class is a discrete event clock: simulated time only
+ * moves in {@link #advance(double)}, which runs every periodic task that falls
+ * due, in time order, on the calling thread. Nothing waits on the wall clock,
+ * so a simulation runs as fast as the tasks allow and the same inputs always
+ * give the same results.
+ * <p>
+ * {@link #install()} makes it both the {@link RobotClock} and the WPILib
+ * {@code Timer} implementation, so Notifier replacements, time stamps and
+ * command timeouts all follow simulated time. Tasks due at the same instant
+ * run in the order they were created. A {@code SimClock} must only be used
+ * from one thread.
+ * </p>
+ */
+public class SimClock extends RobotClock implements Timer.StaticInterface {
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final List<Task> tasks = new ArrayList<Task>();
+	private long now = 0;
+
+	/**
+	 * <pre>
+	 * public void install()
+	 * </pre>
+	 *
+	 * Makes this clock the {@link RobotClock} and the WPILib {@code Timer}
+	 * implementation. Call it before creating any subsystem.
+	 */
+	public void install() {
+		RobotClock.setInstance(this);
+		Timer.SetImplementation(this);
+	}
+
+	@Override
+	public long nanoTime() {
+		return now;
+	}
+
+	@Override
+	public Periodic newPeriodic(Runnable task) {
+		Task periodic = new Task(task);
+		tasks.add(periodic);
+		return periodic;
+	}
+
+	/**
+	 * <pre>
+	 * public void advance(double secs)
+	 * </pre>
+	 *
+	 * Moves simulated time forward, running the tasks that fall due.
+	 *
+	 * @param secs the time to simulate in seconds
+	 */
+	public void advance(double secs) {
+		long end = now + Math.round(secs * NANOS_IN_SECOND);
+		while (true) {
+			Task next = null;
+			for (int i = 0; i < tasks.size(); i++) {
+				Task task = tasks.get(i);
+				if (task.running && (next == null || task.due < next.due)) {
+					next = task;
+				}
+			}
+			if (next == null || next.due > end) {
+				break;
+			}
+			now = next.due;
+			next.due += next.period;
+			next.task.run();
+		}
+		now = end;
+	}
+
+	/**
+	 * @return the simulated time in seconds
+	 */
+	public double getSeconds() {
+		return now / NANOS_IN_SECOND;
+	}
+
+	@Override
+	public double getFPGATimestamp() {
+		return getSeconds();
+	}
+
+	@Override
+	public double getMatchTime() {
+		return getSeconds();
+	}
+
+	@Override
+	public void delay(double secs) {
+		// Blocking would need another thread to move time forward
+		throw new UnsupportedOperationException("Timer.delay() cannot be simulated");
+	}
+
+	@Override
+	public Timer.Interface newTimer() {
+		return new SimTimer();
+	}
+
+	/**
+	 * A periodic task; the first run is one period after it is started, like a {@code Notifier}.
+	 */
+	private class Task implements Periodic {
+		private final Runnable task;
+		private long period;
+		private long due;
+		private boolean running = false;
+
+		Task(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public void startPeriodic(double periodSecs) {
+			period = Math.max(1, Math.round(periodSecs * NANOS_IN_SECOND));
+			due = now + period;
+			running = true;
+		}
+
+		@Override
+		public void stop() {
+			running = false;
+		}
+	}
+
+	/**
+	 * A stopwatch in simulated time, like {@code Timer}.
+	 */
+	private class SimTimer implements Timer.Interface {
+		private long startTime = now;
+		private long accumulated = 0;
+		private boolean running = false;
+
+		@Override
+		public synchronized double get() {
+			long elapsed = running ? accumulated + now - startTime : accumulated;
+			return elapsed / NANOS_IN_SECOND;
+		}
+
+		@Override
+		public synchronized void reset() {
+			accumulated = 0;
+			startTime = now;
+		}
+
+		@Override
+		public synchronized void start() {
+			startTime = now;
+			running = true;
+		}
+
+		@Override
+		public synchronized void stop() {
+			accumulated += running ? now - startTime : 0;
+			running = false;
+		}
+
+		@Override
+		public synchronized boolean hasPeriodPassed(double period) {
+			if (get() > period) {
+				startTime += Math.round(period * NANOS_IN_SECOND);
+				return true;
+			}
+			return false;
+		}
+	}
+}
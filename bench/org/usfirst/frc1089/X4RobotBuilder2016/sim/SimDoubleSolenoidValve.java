@@ -0,0 +1,33 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.DoubleSolenoidValve;
+
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+
+/**
+ * The {@code SimDoubleSolenoidValve} class is a double solenoid that holds
+ * the last state set, {@code kOff} at first like the PCM, and counts how
+ * many times it was set.
+ */
+public class SimDoubleSolenoidValve implements DoubleSolenoidValve {
+	private DoubleSolenoid.Value value = DoubleSolenoid.Value.kOff;
+	private int sets = 0;
+
+	@Override
+	public void set(DoubleSolenoid.Value value) {
+		this.value = value;
+		sets++;
+	}
+
+	@Override
+	public DoubleSolenoid.Value get() {
+		return value;
+	}
+
+	/**
+	 * @return the number of times the valve was set
+	 */
+	public int getSets() {
+		return sets;
+	}
+}
@@ -0,0 +1,64 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import edu.wpi.first.wpilibj.interfaces.Gyro;
+
+/**
+ * The {@code SimGyro} class is a gyro reading the heading of a
+ * {@link DrivetrainPlant}: clockwise positive and not wrapped, like
+ * {@code AnalogGyro}, with an optional constant drift.
+ */
+public class SimGyro implements Gyro {
+	private double heading = 0;
+	private double rate = 0;
+	private double offset = 0;
+	private double driftDegreesPerSec = 0;
+	private double drift = 0;
+
+	/**
+	 * <pre>
+	 * public void setState(double heading, double rate, double dtSecs)
+	 * </pre>
+	 *
+	 * Sets the true heading and turn rate, and accumulates drift.
+	 *
+	 * @param heading the heading in degrees, clockwise positive
+	 * @param rate the turn rate in degrees per second
+	 * @param dtSecs the time since the last call in seconds
+	 */
+	public void setState(double heading, double rate, double dtSecs) {
+		this.heading = heading;
+		this.rate = rate;
+		drift += driftDegreesPerSec * dtSecs;
+	}
+
+	/**
+	 * @param degreesPerSec the drift added to the measured heading
+	 */
+	public void setDrift(double degreesPerSec) {
+		driftDegreesPerSec = degreesPerSec;
+	}
+
+	@Override
+	public void calibrate() {
+		drift = 0;
+	}
+
+	@Override
+	public void reset() {
+		offset = heading + drift;
+	}
+
+	@Override
+	public double getAngle() {
+		return heading + drift - offset;
+	}
+
+	@Override
+	public double getRate() {
+		return rate + driftDegreesPerSec;
+	}
+
+	@Override
+	public void free() {
+	}
+}
@@ -0,0 +1,30 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.SolenoidValve;
+
+/**
+ * The {@code SimSolenoidValve} class is a single solenoid that holds the
+ * last state set, and counts how many times it was set.
+ */
+public class SimSolenoidValve implements SolenoidValve {
+	private boolean on = false;
+	private int sets = 0;
+
+	@Override
+	public void set(boolean on) {
+		this.on = on;
+		sets++;
+	}
+
+	@Override
+	public boolean get() {
+		return on;
+	}
+
+	/**
+	 * @return the number of times the valve was set
+	 */
+	public int getSets() {
+		return sets;
+	}
+}
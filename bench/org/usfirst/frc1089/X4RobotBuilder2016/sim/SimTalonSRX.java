@@ -0,0 +1,426 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sim;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.TalonSRX;
+
+import edu.wpi.first.wpilibj.CANTalon.FeedbackDevice;
+import edu.wpi.first.wpilibj.CANTalon.MotionProfileStatus;
+import edu.wpi.first.wpilibj.CANTalon.SetValueMotionProfile;
+import edu.wpi.first.wpilibj.CANTalon.TalonControlMode;
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+
+/**
+ * The {@code SimTalonSRX} class emulates the firmware of a Talon SRX: percent
+ * output, follower, speed and position closed loops, and motion profiles
+ * with their two level point buffer, plus motor safety.
+ * <p>
+ * Closed loops run in native units (quadrature edges, and edges per 100 ms)
+ * with the Talon's output scale of 1023 at full output, so gains tuned in
+ * simulation carry over to the robot. Call {@link #update()} every
+ * {@code UPDATE_PERIOD_SECS} of simulated time, like the Talon's 1 kHz loop.
+ * The plant feeds the encoder and the electrical state back through
+ * {@link #setSensor(double, double)} and {@link #setElectrical(double, double)};
+ * a replayed match sets them as recorded with
+ * {@link #setMeasured(double, double)}.
+ * </p>
+ */
+public class SimTalonSRX implements TalonSRX {
+	public static final double UPDATE_PERIOD_SECS = 0.001;
+
+	private static final int TOP_BUFFER_CAPACITY = 2048;
+	private static final int BOTTOM_BUFFER_CAPACITY = 128;
+	private static final double FULL_OUTPUT = 1023;
+	private static final int EDGES_PER_CODE = 4;
+	private static final double VELOCITY_PERIODS_PER_MINUTE = 600; // native speed is per 100 ms
+	private static final int SLOTS = 2;
+	private static final double NANOS_IN_MILLI = 1.0e6;
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final int deviceId;
+	private final Map<Integer, SimTalonSRX> bus;
+	private final SimClock clock;
+
+	private TalonControlMode mode = TalonControlMode.PercentVbus;
+	private double value = 0;
+	private int slot = 0;
+	private final double[] p = new double[SLOTS];
+	private final double[] i = new double[SLOTS];
+	private final double[] d = new double[SLOTS];
+	private final double[] f = new double[SLOTS];
+	private double errorSum = 0;
+	private double lastError = Double.NaN;
+	private boolean brake = false;
+
+	// Sensor, in revolutions as seen by the closed loop
+	private double edgesPerRev = 1; // native units until configEncoderCodesPerRev
+	private boolean sensorReversed = false;
+	private double encoderRevs = 0;
+	private double encoderRpm = 0;
+	private double positionOffset = 0;
+
+	// Output and electrical state
+	private double output = 0;
+	private double busVoltage = 12;
+	private double outputCurrent = 0;
+
+	// Motor safety
+	private boolean safetyEnabled = false;
+	private long expirationNanos = (long) (0.1 * NANOS_IN_SECOND);
+	private long lastSetTime = 0;
+	private boolean stopped = false;
+	private int safetyTimeouts = 0;
+
+	// Motion profile
+	private final ArrayDeque<TrajectoryPoint> topBuffer = new ArrayDeque<TrajectoryPoint>();
+	private final ArrayDeque<TrajectoryPoint> bottomBuffer = new ArrayDeque<TrajectoryPoint>();
+	private SetValueMotionProfile profileValue = SetValueMotionProfile.Disable;
+	private TrajectoryPoint activePoint = null;
+	private long activePointEnd = 0;
+	private boolean hasUnderrun = false;
+	private boolean isUnderrun = false;
+
+	/**
+	 * <pre>
+	 * public SimTalonSRX(int deviceId, Map&lt;Integer, SimTalonSRX&gt; bus, SimClock clock)
+	 * </pre>
+	 *
+	 * Constructs a new {@code SimTalonSRX} and puts it on the bus.
+	 *
+	 * @param deviceId the CAN ID
+	 * @param bus the Talons by CAN ID, where followers find their leader
+	 * @param clock the simulation clock, for motor safety and motion profile timing
+	 */
+	public SimTalonSRX(int deviceId, Map<Integer, SimTalonSRX> bus, SimClock clock) {
+		this.deviceId = deviceId;
+		this.bus = bus;
+		this.clock = clock;
+		bus.put(deviceId, this);
+	}
+
+	/**
+	 * <pre>
+	 * public void update()
+	 * </pre>
+	 *
+	 * Runs one period of the Talon's control loop, computing the output.
+	 */
+	public void update() {
+		if (safetyEnabled && !stopped && clock.nanoTime() - lastSetTime > expirationNanos) {
+			// Like CANTalon.stopMotor(): disabled until the next set()
+			stopped = true;
+			safetyTimeouts++;
+		}
+
+		double newOutput;
+		switch (stopped ? TalonControlMode.Disabled : mode) {
+		case PercentVbus:
+			newOutput = value;
+			break;
+		case Follower:
+			SimTalonSRX leader = bus.get((int) value);
+			newOutput = leader != null ? leader.getMotorOutput() : 0;
+			break;
+		case Speed:
+			double targetSpeed = value * edgesPerRev / VELOCITY_PERIODS_PER_MINUTE;
+			newOutput = closedLoop(slot, targetSpeed, getSpeed() * edgesPerRev / VELOCITY_PERIODS_PER_MINUTE,
+					targetSpeed);
+			break;
+		case Position:
+			double targetPosition = value * edgesPerRev;
+			newOutput = closedLoop(slot, targetPosition, getPosition() * edgesPerRev, targetPosition);
+			break;
+		case MotionProfile:
+			newOutput = updateMotionProfile();
+			break;
+		default:
+			newOutput = 0;
+			break;
+		}
+		output = Math.max(-1, Math.min(1, newOutput));
+	}
+
+	// Output of a closed loop in native units; the feedforward multiplies feedforwardTarget
+	private double closedLoop(int gains, double target, double measured, double feedforwardTarget) {
+		double error = target - measured;
+		errorSum += error;
+		double change = Double.isNaN(lastError) ? 0 : error - lastError;
+		lastError = error;
+		return (p[gains] * error + i[gains] * errorSum + d[gains] * change + f[gains] * feedforwardTarget)
+				/ FULL_OUTPUT;
+	}
+
+	private double updateMotionProfile() {
+		if (profileValue == SetValueMotionProfile.Disable) {
+			return 0;
+		}
+		long time = clock.nanoTime();
+		if (profileValue == SetValueMotionProfile.Enable
+				&& (activePoint == null || (time >= activePointEnd && !activePoint.isLastPoint))) {
+			TrajectoryPoint next = bottomBuffer.poll();
+			if (next != null) {
+				activePointEnd = (activePoint == null ? time : activePointEnd)
+						+ Math.round(next.timeDurMs * NANOS_IN_MILLI);
+				activePoint = next;
+				isUnderrun = false;
+				if (next.zeroPos) {
+					setPosition(0);
+				}
+			} else if (activePoint == null || !activePoint.isLastPoint) {
+				hasUnderrun = true;
+				isUnderrun = true;
+			}
+		}
+		if (activePoint == null) {
+			return 0;
+		}
+		boolean moving = profileValue == SetValueMotionProfile.Enable && !activePoint.isLastPoint;
+		double velocity = moving ? activePoint.velocity * edgesPerRev / VELOCITY_PERIODS_PER_MINUTE : 0;
+		return closedLoop(activePoint.profileSlotSelect, activePoint.position * edgesPerRev,
+				getPosition() * edgesPerRev, velocity);
+	}
+
+	/**
+	 * <pre>
+	 * public void setSensor(double revs, double rpm)
+	 * </pre>
+	 *
+	 * Sets the state of the encoder wired to this Talon, before
+	 * {@link #reverseSensor(boolean)} is applied.
+	 *
+	 * @param revs the encoder position in revolutions
+	 * @param rpm the encoder speed in RPM
+	 */
+	public void setSensor(double revs, double rpm) {
+		encoderRevs = revs;
+		encoderRpm = rpm;
+	}
+
+	/**
+	 * <pre>
+	 * public void setMeasured(double position, double speed)
+	 * </pre>
+	 *
+	 * Sets the encoder so that {@link #getPosition()} and {@link #getSpeed()}
+	 * return the given values, e.g. ones recorded on the robot, whatever
+	 * position was set and whether the sensor is reversed.
+	 *
+	 * @param position the position the Talon reads in revolutions
+	 * @param speed the speed the Talon reads in RPM
+	 */
+	public void setMeasured(double position, double speed) {
+		positionOffset = 0;
+		encoderRevs = sensorReversed ? -position : position;
+		encoderRpm = sensorReversed ? -speed : speed;
+	}
+
+	/**
+	 * <pre>
+	 * public void setElectrical(double busVoltage, double outputCurrent)
+	 * </pre>
+	 *
+	 * @param busVoltage the supply voltage in volts
+	 * @param outputCurrent the motor current in amps
+	 */
+	public void setElectrical(double busVoltage, double outputCurrent) {
+		this.busVoltage = busVoltage;
+		this.outputCurrent = outputCurrent;
+	}
+
+	/**
+	 * @return the output computed by the last {@link #update()}, between -1 and 1
+	 */
+	public double getMotorOutput() {
+		return output;
+	}
+
+	/**
+	 * @return true if a neutral output shorts the motor
+	 */
+	public boolean isBrakeEnabled() {
+		return brake;
+	}
+
+	/**
+	 * @return the number of times motor safety stopped the motor
+	 */
+	public int getSafetyTimeouts() {
+		return safetyTimeouts;
+	}
+
+	@Override
+	public int getDeviceID() {
+		return deviceId;
+	}
+
+	@Override
+	public void set(double value) {
+		this.value = value;
+		lastSetTime = clock.nanoTime();
+		stopped = false;
+		if (mode == TalonControlMode.MotionProfile) {
+			SetValueMotionProfile newValue = SetValueMotionProfile.Disable;
+			for (SetValueMotionProfile candidate : SetValueMotionProfile.values()) {
+				if (candidate.value == (int) value) {
+					newValue = candidate;
+				}
+			}
+			profileValue = newValue;
+		}
+	}
+
+	@Override
+	public double get() {
+		return value;
+	}
+
+	@Override
+	public void changeControlMode(TalonControlMode mode) {
+		if (mode != this.mode) {
+			this.mode = mode;
+			value = 0;
+			profileValue = SetValueMotionProfile.Disable;
+			resetClosedLoop();
+		}
+	}
+
+	@Override
+	public void setProfile(int profile) {
+		slot = profile;
+		resetClosedLoop();
+	}
+
+	private void resetClosedLoop() {
+		errorSum = 0;
+		lastError = Double.NaN;
+	}
+
+	@Override
+	public void setPID(double p, double i, double d, double f, int izone, double closeLoopRampRate, int profile) {
+		this.p[profile] = p;
+		this.i[profile] = i;
+		this.d[profile] = d;
+		this.f[profile] = f;
+	}
+
+	@Override
+	public void enableBrakeMode(boolean brake) {
+		this.brake = brake;
+	}
+
+	@Override
+	public void setFeedbackDevice(FeedbackDevice device) {
+		// Always the quadrature encoder fed by the plant
+	}
+
+	@Override
+	public void configEncoderCodesPerRev(int codesPerRev) {
+		edgesPerRev = codesPerRev * EDGES_PER_CODE;
+	}
+
+	@Override
+	public void reverseSensor(boolean flip) {
+		sensorReversed = flip;
+	}
+
+	@Override
+	public double getPosition() {
+		return (sensorReversed ? -encoderRevs : encoderRevs) - positionOffset;
+	}
+
+	@Override
+	public void setPosition(double position) {
+		positionOffset = (sensorReversed ? -encoderRevs : encoderRevs) - position;
+	}
+
+	@Override
+	public double getSpeed() {
+		return sensorReversed ? -encoderRpm : encoderRpm;
+	}
+
+	@Override
+	public double getOutputCurrent() {
+		return outputCurrent;
+	}
+
+	@Override
+	public double getOutputVoltage() {
+		return output * busVoltage;
+	}
+
+	@Override
+	public double getBusVoltage() {
+		return busVoltage;
+	}
+
+	@Override
+	public void setExpiration(double timeout) {
+		expirationNanos = Math.round(timeout * NANOS_IN_SECOND);
+	}
+
+	@Override
+	public void setSafetyEnabled(boolean enabled) {
+		safetyEnabled = enabled;
+		lastSetTime = clock.nanoTime();
+	}
+
+	@Override
+	public void clearMotionProfileTrajectories() {
+		topBuffer.clear();
+		bottomBuffer.clear();
+		activePoint = null;
+	}
+
+	@Override
+	public void clearMotionProfileHasUnderrun() {
+		hasUnderrun = false;
+	}
+
+	@Override
+	public void changeMotionControlFramePeriod(int periodMs) {
+		// Points move to the bottom buffer as soon as they are processed
+	}
+
+	@Override
+	public boolean isMotionProfileTopLevelBufferFull() {
+		return topBuffer.size() >= TOP_BUFFER_CAPACITY;
+	}
+
+	@Override
+	public boolean pushMotionProfileTrajectory(TrajectoryPoint point) {
+		if (isMotionProfileTopLevelBufferFull()) {
+			return false;
+		}
+		// The Talon copies the point into its buffer, so callers may reuse theirs
+		TrajectoryPoint copy = new TrajectoryPoint();
+		copy.position = point.position;
+		copy.velocity = point.velocity;
+		copy.timeDurMs = point.timeDurMs;
+		copy.profileSlotSelect = point.profileSlotSelect;
+		copy.velocityOnly = point.velocityOnly;
+		copy.zeroPos = point.zeroPos;
+		copy.isLastPoint = point.isLastPoint;
+		topBuffer.add(copy);
+		return true;
+	}
+
+	@Override
+	public void processMotionProfileBuffer() {
+		while (bottomBuffer.size() < BOTTOM_BUFFER_CAPACITY && !topBuffer.isEmpty()) {
+			bottomBuffer.add(topBuffer.poll());
+		}
+	}
+
+	@Override
+	public void getMotionProfileStatus(MotionProfileStatus status) {
+		status.topBufferRem = TOP_BUFFER_CAPACITY - topBuffer.size();
+		status.topBufferCnt = topBuffer.size();
+		status.btmBufferCnt = bottomBuffer.size();
+		status.hasUnderrun = hasUnderrun;
+		status.isUnderrun = isUnderrun;
+		status.activePointValid = activePoint != null;
+		status.activePoint = activePoint;
+		status.outputEnable = profileValue;
+	}
+}
@@ -11,8 +11,13 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016;
 
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj.buttons.*;
 import org.usfirst.frc1089.X4RobotBuilder2016.subsystems.*;
@@ -51,32 +56,47 @@ public class OI {
     // button.whenReleased(new ExampleCommand());
 
 
-    // BEGIN AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=DECLARATIONS
     public JoystickButton leftBtn1;
     public JoystickButton leftBtn3;
-    public Joystick leftStick;
+    public GenericHID leftStick;
     public JoystickButton rightBtn1;
     public JoystickButton rightBtn2;
-    public Joystick rightStick;
+    public GenericHID rightStick;
     public JoystickButton gamePadBtnA;
-    public Joystick gamePad;
+    public GenericHID gamePad;
 
-    // END AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=DECLARATIONS
+    // Hold the thumb button of the left stick to drive slowly and precisely
+    private static final int PRECISION_BUTTON = 2;
+    private static final int RECORDED_BUTTONS = 12;
 
     public OI() {
-        // BEGIN AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=CONSTRUCTORS
+        this(new Joystick(2), new Joystick(0), new Joystick(1));
+    }
 
-        gamePad = new Joystick(2);
+    /**
+     * <pre>
+     * public OI(GenericHID gamePad, GenericHID rightStick, GenericHID leftStick)
+     * </pre>
+     *
+     * Binds the commands to given controls, e.g. ones replayed from a flight
+     * log off the robot, instead of the joysticks on the driver station.
+     *
+     * @param gamePad the game pad, USB port 2
+     * @param rightStick the right stick, USB port 0
+     * @param leftStick the left stick, USB port 1
+     */
+    public OI(GenericHID gamePad, GenericHID rightStick, GenericHID leftStick) {
+        this.gamePad = gamePad;
         
         gamePadBtnA = new JoystickButton(gamePad, 1);
         gamePadBtnA.whileHeld(new Raise(0));
-        rightStick = new Joystick(0);
+        this.rightStick = rightStick;
         
         rightBtn2 = new JoystickButton(rightStick, 1);
         rightBtn2.whenPressed(new Raise(Shooter.LOW));
         rightBtn1 = new JoystickButton(rightStick, 1);
         rightBtn1.whenPressed(new Raise(Shooter.DOWN));
-        leftStick = new Joystick(1);
+        this.leftStick = leftStick;
         
         leftBtn3 = new JoystickButton(leftStick, 1);
         leftBtn3.whenPressed(new Raise(Shooter.HIGH));
@@ -95,24 +115,59 @@ public class OI {
         SmartDashboard.putData("MoveBall: OUT", new MoveBall(Intake.ROLLER_OUT));
         SmartDashboard.putData("MoveBall: OFF", new MoveBall(Intake.ROLLER_OFF));
         SmartDashboard.putData("DegreeRotate: Straight", new DegreeRotate(0));
+        SmartDashboard.putData("RotateToTarget", new RotateToTarget());
 
-    // END AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=CONSTRUCTORS
+        addFlightRecord("Left stick", leftStick);
+        addFlightRecord("Right stick", rightStick);
+        addFlightRecord("Game pad", gamePad);
     }
 
-    // BEGIN AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=FUNCTIONS
-    public Joystick getLeftStick() {
+    public GenericHID getLeftStick() {
         return leftStick;
     }
 
-    public Joystick getRightStick() {
+    public GenericHID getRightStick() {
         return rightStick;
     }
 
-    public Joystick getGamePad() {
+    public GenericHID getGamePad() {
         return gamePad;
     }
 
+    // The axes and, as a bit mask with button 1 in the lowest bit, the buttons of a joystick
+    private static void addFlightRecord(String name, final GenericHID stick) {
+        FlightRecorder recorder = FlightRecorder.getInstance();
+        recorder.addFloat(name + " x", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return stick.getX();
+            }
+        });
+        recorder.addFloat(name + " y", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return stick.getY();
+            }
+        });
+        recorder.addInt(name + " buttons", new IntSupplier() {
+            @Override
+            public int getAsInt() {
+                int buttons = 0;
+                for (int button = 1; button <= RECORDED_BUTTONS; button++) {
+                    if (stick.getRawButton(button)) {
+                        buttons |= 1 << (button - 1);
+                    }
+                }
+                return buttons;
+            }
+        });
+    }
 
-    // END AUTOGENERATED CODE, SOURCE=ROBOTBUILDER ID=FUNCTIONS
+    /**
+     * @return whether the driver holds the precision button
+     */
+    public boolean isPrecisionMode() {
+        return leftStick.getRawButton(PRECISION_BUTTON);
+    }
 }
 
@@ -11,12 +11,25 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016;
 
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.IterativeRobot;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.Scheduler;
 import edu.wpi.first.wpilibj.livewindow.LiveWindow;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+import edu.wpi.first.wpilibj.command.Subsystem;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.TimingHistogram;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescedOutput;
 import org.usfirst.frc1089.X4RobotBuilder2016.subsystems.*;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Camera;
 
 /**
  * The VM is configured to automatically run this class, and to call the
@@ -27,7 +40,43 @@ import org.usfirst.frc1089.X4RobotBuilder2016.subsystems.*;
  */
 public class Robot extends IterativeRobot {
 
-    Command autonomousCommand;
+    private static final String TUNE_TURNS_KEY = "DriveTrain: tune turns";
+    private static final String TIMINGS_DIRECTORY = "/home/lvuser";
+    private static final String FLIGHT_LOG_FILE = "/home/lvuser/flight.log";
+
+    /**
+     * The {@code Mode} enum names the modes the driver station runs the robot
+     * in, as they are recorded in the flight log.
+     */
+    public enum Mode {
+        DISABLED("disabled", "Robot disabledPeriodic"),
+        AUTONOMOUS("autonomous", "Robot autonomousPeriodic"),
+        TELEOP("teleop", "Robot teleopPeriodic"),
+        TEST("test", "Robot testPeriodic");
+
+        private final String name;
+        // How long each periodic method takes, scheduler and all
+        private final TimingHistogram timing;
+
+        private Mode(String name, String timingName) {
+            this.name = name;
+            timing = TimingHistogram.get(timingName);
+        }
+
+        /**
+         * @return the name of the mode in the flight log
+         */
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final TimingHistogram schedulerTiming = TimingHistogram.get("Scheduler run");
+    private static volatile Mode mode = Mode.DISABLED;
+    private boolean enabledSinceDump = false;
+
+    private static Command autonomousCommand;
 
     public static OI oi;
 
@@ -35,6 +84,7 @@ public class Robot extends IterativeRobot {
     public static DriveTrain driveTrain;
     public static Intake intake;
     public static IntakeDoor intakeDoor;
+    public static Camera camera;
 
     /**
      * This function is run when the robot is first started up and should be
@@ -43,64 +93,254 @@ public class Robot extends IterativeRobot {
     public void robotInit() {
     RobotMap.init();
 
-        shooter = new Shooter();
-        driveTrain = new DriveTrain();
-        intake = new Intake();
-        intakeDoor = new IntakeDoor();
+        createSubsystems();
+        setCamera(new Camera("GRIP/myContoursReport"));
 
         // OI must be constructed after subsystems. If the OI creates Commands
         //(which it very likely will), subsystems are not guaranteed to be
         // constructed yet. Thus, their requires() statements may grab null
         // pointers. Bad news. Don't move it.
-        oi = new OI();
+        setOI(new OI());
+
+        startFlightRecorder();
+    }
+
+    /**
+     * <pre>
+     * public static void createSubsystems()
+     * </pre>
+     *
+     * Creates the subsystems on the devices of {@link RobotMap}, which must
+     * be initialized. The off-robot tools call it too, on simulated devices.
+     */
+    public static void createSubsystems() {
+        shooter = new Shooter();
+        driveTrain = new DriveTrain();
+        SmartDashboard.putBoolean(TUNE_TURNS_KEY, false);
+        intake = new Intake();
+        intakeDoor = new IntakeDoor();
+    }
+
+    /**
+     * <pre>
+     * public static void setCamera(Camera newCamera)
+     * </pre>
+     *
+     * Sets the camera, corrected with the drive train heading history. Call it
+     * after {@link #createSubsystems()}.
+     *
+     * @param newCamera the camera, on the GRIP NetworkTable or a listener fed off the robot
+     */
+    public static void setCamera(Camera newCamera) {
+        camera = newCamera;
+        camera.setHeadingHistory(RobotMap.driveTrainHeadingHistory);
+    }
 
+    /**
+     * <pre>
+     * public static void setOI(OI newOI)
+     * </pre>
+     *
+     * Sets the OI and creates the autonomous command, which may use it.
+     *
+     * @param newOI the OI, constructed after the subsystems
+     */
+    public static void setOI(OI newOI) {
+        oi = newOI;
         // instantiate the command used for the autonomous period
         autonomousCommand = new StrongholdAuton();
     }
 
+    // Records every loop from here on
+    private void startFlightRecorder() {
+        addFlightRecord();
+        try {
+            FlightRecorder.getInstance().start(new File(FLIGHT_LOG_FILE), FlightRecorder.DEFAULT_FILE_BYTES,
+                    FlightRecorder.DEFAULT_BYTES_PER_SEC);
+        } catch (IOException e) {
+            DriverStation.reportError("Cannot record the flight log: " + e.getMessage() + "\n", false);
+        }
+    }
+
+    /**
+     * <pre>
+     * public static void addFlightRecord()
+     * </pre>
+     *
+     * Adds the fields of the robot itself to the {@link FlightRecorder}: the
+     * mode, the bus voltage and the command running on each subsystem. Call it
+     * once the subsystems and OI added theirs.
+     */
+    public static void addFlightRecord() {
+        FlightRecorder recorder = FlightRecorder.getInstance();
+        recorder.addSymbol("Robot mode", new Supplier<String>() {
+            @Override
+            public String get() {
+                return mode.toString();
+            }
+        });
+        recorder.addFloat("Robot bus volts", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return RobotMap.currentBudget.getBusVoltage();
+            }
+        });
+        addCommandRecord(recorder, "Shooter command", shooter);
+        addCommandRecord(recorder, "DriveTrain command", driveTrain);
+        addCommandRecord(recorder, "Intake command", intake);
+        addCommandRecord(recorder, "IntakeDoor command", intakeDoor);
+    }
+
+    // The name of the command running on a subsystem
+    private static void addCommandRecord(FlightRecorder recorder, String name, final Subsystem subsystem) {
+        recorder.addSymbol(name, new Supplier<String>() {
+            @Override
+            public String get() {
+                Command command = subsystem.getCurrentCommand();
+                return command == null ? null : command.getName();
+            }
+        });
+    }
+
+    /**
+     * <pre>
+     * public static void enterMode(Mode newMode)
+     * </pre>
+     *
+     * Does what the robot code does when the robot enters a mode; the init
+     * method of each mode calls it.
+     *
+     * @param newMode the mode entered
+     */
+    public static void enterMode(Mode newMode) {
+        mode = newMode;
+        switch (newMode) {
+        case DISABLED:
+            driveTrain.stopTuning();
+            driveTrain.resetControlMode();
+            // LiveWindow writes the actuators directly in test mode
+            CoalescedOutput.invalidateAll();
+            break;
+        case AUTONOMOUS:
+            // schedule the autonomous command (example)
+            if (autonomousCommand != null) autonomousCommand.start();
+            break;
+        case TELEOP:
+            // This makes sure that the autonomous stops running when
+            // teleop starts running. If you want the autonomous to
+            // continue until interrupted by another command, remove
+            // this line or comment it out.
+            if (autonomousCommand != null) autonomousCommand.cancel();
+            // Nothing autonomous started may leave the drive under Talon closed loop
+            driveTrain.resetControlMode();
+            break;
+        case TEST:
+            if (SmartDashboard.getBoolean(TUNE_TURNS_KEY, false)) {
+                SmartDashboard.putBoolean(TUNE_TURNS_KEY, false); // once per request
+                driveTrain.startTuning();
+            }
+            break;
+        }
+    }
+
+    /**
+     * @return the mode the robot last entered
+     */
+    public static Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * <pre>
+     * public static void runLoop()
+     * </pre>
+     *
+     * Runs one loop of the current mode, as the periodic method of each mode
+     * does: the scheduler and the outputs it changed, or LiveWindow in test
+     * mode. Then records the loop in the flight log, sends what changed to
+     * the dashboard, as the loop budget allows, and records how long the loop
+     * took.
+     */
+    public static void runLoop() {
+        long start = System.nanoTime();
+        Mode mode = Robot.mode;
+        if (mode == Mode.TEST) {
+            LiveWindow.run();
+        } else {
+            Scheduler.getInstance().run();
+            schedulerTiming.record(System.nanoTime() - start);
+            CoalescedOutput.flushAll();
+        }
+        FlightRecorder.getInstance().capture();
+        Telemetry.getInstance().update(start);
+        mode.timing.record(System.nanoTime() - start);
+    }
+
     /**
      * This function is called when the disabled button is hit.
      * You can use it to reset subsystems before shutting down.
      */
     public void disabledInit(){
+        enterMode(Mode.DISABLED);
+        if (enabledSinceDump) {
+            dumpTimings();
+        }
+    }
 
+    // Saves the loop timings of the match, or test session, that just ended and starts afresh
+    private void dumpTimings() {
+        enabledSinceDump = false;
+        File file = new File(TIMINGS_DIRECTORY, "timings-" + System.currentTimeMillis() + ".csv");
+        try {
+            TimingHistogram.dumpAll(file);
+        } catch (IOException e) {
+            DriverStation.reportError("Cannot save the loop timings: " + e.getMessage() + "\n", false);
+        }
+        TimingHistogram.resetAll();
     }
 
     public void disabledPeriodic() {
-        Scheduler.getInstance().run();
+        runLoop();
     }
 
     public void autonomousInit() {
-        // schedule the autonomous command (example)
-        if (autonomousCommand != null) autonomousCommand.start();
+        enabledSinceDump = true;
+        enterMode(Mode.AUTONOMOUS);
     }
 
     /**
      * This function is called periodically during autonomous
      */
     public void autonomousPeriodic() {
-        Scheduler.getInstance().run();
+        runLoop();
     }
 
     public void teleopInit() {
-        // This makes sure that the autonomous stops running when
-        // teleop starts running. If you want the autonomous to
-        // continue until interrupted by another command, remove
-        // this line or comment it out.
-        if (autonomousCommand != null) autonomousCommand.cancel();
+        enabledSinceDump = true;
+        enterMode(Mode.TELEOP);
     }
 
     /**
      * This function is called periodically during operator control
      */
     public void teleopPeriodic() {
-        Scheduler.getInstance().run();
+        runLoop();
+    }
+
+    /**
+     * This function is called when test mode starts. Turn on the
+     * "DriveTrain: tune turns" SmartDashboard button first to tune the
+     * drive train turn gains (see DriveTrain.startTuning()).
+     */
+    public void testInit() {
+        enabledSinceDump = true;
+        enterMode(Mode.TEST);
     }
 
     /**
      * This function is called periodically during test mode
      */
     public void testPeriodic() {
-        LiveWindow.run();
+        runLoop();
     }
 }
@@ -11,15 +11,34 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
 import edu.wpi.first.wpilibj.AnalogGyro;
 import edu.wpi.first.wpilibj.CANTalon;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 import edu.wpi.first.wpilibj.RobotDrive;
 import edu.wpi.first.wpilibj.Solenoid;
 
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.PIDSourceType;
+import edu.wpi.first.wpilibj.RobotState;
+import edu.wpi.first.wpilibj.interfaces.Gyro;
 import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CANTalonSRX;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CurrentBudget;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.DoubleSolenoidValve;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.PCMDoubleSolenoidValve;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.PCMSolenoidValve;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.SolenoidValve;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.TalonSRX;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.DriftCorrectedGyro;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.GyroCalibration;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.HeadingHistory;
+
 /**
  * The RobotMap is a mapping from the ports sensors and actuators are wired into
  * to a variable name. This provides flexibility changing wiring, makes checking
@@ -28,58 +47,185 @@ import edu.wpi.first.wpilibj.livewindow.LiveWindow;
  */
 public class RobotMap {
 
-    public static DoubleSolenoid shooterLowElevator;
-    public static DoubleSolenoid shooterHighElevator;
-    public static Solenoid shooterShooter;
-    public static AnalogGyro driveTrainGyro;
-    public static CANTalon driveTrainLeftBack;
-    public static CANTalon driveTrainRightBack;
-    public static CANTalon driveTrainLeftFront;
-    public static CANTalon driveTrainRightFront;
+    public static DoubleSolenoidValve shooterLowElevator;
+    public static DoubleSolenoidValve shooterHighElevator;
+    public static SolenoidValve shooterShooter;
+    public static DriftCorrectedGyro driveTrainGyro;
+    public static TalonSRX driveTrainLeftBack;
+    public static TalonSRX driveTrainRightBack;
+    public static TalonSRX driveTrainLeftFront;
+    public static TalonSRX driveTrainRightFront;
     public static RobotDrive driveTrainRobotDrive;
-    public static CANTalon intakeRoller;
-    public static DoubleSolenoid intakeDoorElevator;
+    public static TalonSRX intakeRoller;
+    public static DoubleSolenoidValve intakeDoorElevator;
+    public static HeadingHistory driveTrainHeadingHistory;
+    public static CurrentBudget currentBudget;
+
+    private static final BooleanSupplier ROBOT_DISABLED = new BooleanSupplier() {
+        @Override
+        public boolean getAsBoolean() {
+            return RobotState.isDisabled();
+        }
+    };
 
     public static void init() {
-        shooterLowElevator = new DoubleSolenoid(6, 4, 3);
-        LiveWindow.addActuator("Shooter", "LowElevator", shooterLowElevator);
+        DoubleSolenoid lowElevator = new DoubleSolenoid(6, 4, 3);
+        LiveWindow.addActuator("Shooter", "LowElevator", lowElevator);
+        shooterLowElevator = new PCMDoubleSolenoidValve(lowElevator);
         
-        shooterHighElevator = new DoubleSolenoid(6, 0, 1);
-        LiveWindow.addActuator("Shooter", "HighElevator", shooterHighElevator);
+        DoubleSolenoid highElevator = new DoubleSolenoid(6, 0, 1);
+        LiveWindow.addActuator("Shooter", "HighElevator", highElevator);
+        shooterHighElevator = new PCMDoubleSolenoidValve(highElevator);
         
-        shooterShooter = new Solenoid(6, 7);
-        LiveWindow.addActuator("Shooter", "Shooter", shooterShooter);
+        Solenoid shooter = new Solenoid(6, 7);
+        LiveWindow.addActuator("Shooter", "Shooter", shooter);
+        shooterShooter = new PCMSolenoidValve(shooter);
         
-        driveTrainGyro = new AnalogGyro(0);
-        LiveWindow.addSensor("DriveTrain", "Gyro", driveTrainGyro);
-        driveTrainGyro.setSensitivity(0.007);
-        driveTrainLeftBack = new CANTalon(3);
-        LiveWindow.addActuator("DriveTrain", "LeftBack", driveTrainLeftBack);
+        // Reuse the calibration of an earlier boot instead of sampling the gyro for 5 seconds
+        File gyroCalibrationFile = GyroCalibration.getFile();
+        GyroCalibration gyroCalibration = loadGyroCalibration(gyroCalibrationFile);
+        AnalogGyro gyro = gyroCalibration == null ? new AnalogGyro(0)
+                : new AnalogGyro(0, gyroCalibration.center, gyroCalibration.offset);
+        LiveWindow.addSensor("DriveTrain", "Gyro", gyro);
+        gyro.setSensitivity(Config.getInstance().GYRO_SENSITIVITY_VOLTS_PER_DEGREE_PER_SEC);
+        CANTalon leftBack = new CANTalon(3);
+        LiveWindow.addActuator("DriveTrain", "LeftBack", leftBack);
         
-        driveTrainRightBack = new CANTalon(1);
-        LiveWindow.addActuator("DriveTrain", "RightBack", driveTrainRightBack);
+        CANTalon rightBack = new CANTalon(1);
+        LiveWindow.addActuator("DriveTrain", "RightBack", rightBack);
         
-        driveTrainLeftFront = new CANTalon(4);
-        LiveWindow.addActuator("DriveTrain", "LeftFront", driveTrainLeftFront);
+        CANTalon leftFront = new CANTalon(4);
+        LiveWindow.addActuator("DriveTrain", "LeftFront", leftFront);
         
-        driveTrainRightFront = new CANTalon(2);
-        LiveWindow.addActuator("DriveTrain", "RightFront", driveTrainRightFront);
+        CANTalon rightFront = new CANTalon(2);
+        LiveWindow.addActuator("DriveTrain", "RightFront", rightFront);
         
-        driveTrainRobotDrive = new RobotDrive(driveTrainLeftFront, driveTrainRightFront);
+        driveTrainRobotDrive = new RobotDrive(leftFront, rightFront);
         
         driveTrainRobotDrive.setSafetyEnabled(true);
         driveTrainRobotDrive.setExpiration(0.1);
         driveTrainRobotDrive.setSensitivity(0.5);
         driveTrainRobotDrive.setMaxOutput(1.0);
         driveTrainRobotDrive.setInvertedMotor(RobotDrive.MotorType.kRearLeft, true);
-        intakeRoller = new CANTalon(7);
-        LiveWindow.addActuator("Intake", "Roller", intakeRoller);
+        CANTalon roller = new CANTalon(7);
+        LiveWindow.addActuator("Intake", "Roller", roller);
+        intakeRoller = new CANTalonSRX(roller);
         
-        intakeDoorElevator = new DoubleSolenoid(6, 5, 6);
-        LiveWindow.addActuator("IntakeDoor", "Elevator", intakeDoorElevator);
+        DoubleSolenoid doorElevator = new DoubleSolenoid(6, 5, 6);
+        LiveWindow.addActuator("IntakeDoor", "Elevator", doorElevator);
+        intakeDoorElevator = new PCMDoubleSolenoidValve(doorElevator);
         
 
         // Set the Gyro to return angle for the PID value (pidGet)
-        driveTrainGyro.setPIDSourceType(PIDSourceType.kDisplacement);
+        gyro.setPIDSourceType(PIDSourceType.kDisplacement);
+
+        DriftCorrectedGyro correctedGyro;
+        if (gyroCalibration == null) {
+            correctedGyro = new DriftCorrectedGyro(gyro, new GyroCalibration(gyro.getCenter(), gyro.getOffset(), 0),
+                    gyroCalibrationFile, ROBOT_DISABLED);
+            correctedGyro.saveCalibration();
+        } else {
+            correctedGyro = new DriftCorrectedGyro(gyro, gyroCalibration, gyroCalibrationFile, ROBOT_DISABLED);
+        }
+
+        initDriveTrain(new CANTalonSRX(leftBack), new CANTalonSRX(rightBack), new CANTalonSRX(leftFront),
+                new CANTalonSRX(rightFront), correctedGyro);
+        initCurrentBudget();
+    }
+
+    // Returns the saved gyro calibration, or null to calibrate
+    private static GyroCalibration loadGyroCalibration(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return GyroCalibration.load(file);
+        } catch (IOException e) {
+            DriverStation.reportError("Cannot load the gyro calibration: " + e.getMessage() + "\n", false);
+            return null;
+        }
+    }
+
+    /**
+     * <pre>
+     * public static void initSimulation(TalonSRX leftBack, TalonSRX rightBack,
+     *                                   TalonSRX leftFront, TalonSRX rightFront, Gyro gyro)
+     * </pre>
+     *
+     * Maps the drive train to simulated devices instead of calling {@link #init()},
+     * so the {@code DriveTrain} can be created off the robot. There is no
+     * {@code RobotDrive}, and no other subsystem is mapped. The current budget
+     * is created as on the robot, and so is the drift correction of the gyro,
+     * starting from no drift and never saved.
+     *
+     * @param leftBack the left back Talon, CAN ID 3
+     * @param rightBack the right back Talon, CAN ID 1
+     * @param leftFront the left front Talon, CAN ID 4
+     * @param rightFront the right front Talon, CAN ID 2
+     * @param gyro the gyro, clockwise positive
+     */
+    public static void initSimulation(TalonSRX leftBack, TalonSRX rightBack, TalonSRX leftFront,
+            TalonSRX rightFront, Gyro gyro) {
+        driveTrainRobotDrive = null;
+        initDriveTrain(leftBack, rightBack, leftFront, rightFront,
+                new DriftCorrectedGyro(gyro, new GyroCalibration(0, 0, 0), null, ROBOT_DISABLED));
+        initCurrentBudget();
+    }
+
+    /**
+     * <pre>
+     * public static void initSimulation(TalonSRX leftBack, TalonSRX rightBack,
+     *                                   TalonSRX leftFront, TalonSRX rightFront, Gyro gyro,
+     *                                   TalonSRX roller, DoubleSolenoidValve lowElevator,
+     *                                   DoubleSolenoidValve highElevator, SolenoidValve shooter,
+     *                                   DoubleSolenoidValve doorElevator)
+     * </pre>
+     *
+     * Maps every subsystem to simulated devices instead of calling
+     * {@link #init()}, so the whole robot can be created off the robot, e.g.
+     * to replay a match. The drive train is mapped as by the method above.
+     *
+     * @param leftBack the left back Talon, CAN ID 3
+     * @param rightBack the right back Talon, CAN ID 1
+     * @param leftFront the left front Talon, CAN ID 4
+     * @param rightFront the right front Talon, CAN ID 2
+     * @param gyro the gyro, clockwise positive
+     * @param roller the intake roller Talon, CAN ID 7
+     * @param lowElevator the low shooter elevator, PCM channels 4 and 3
+     * @param highElevator the high shooter elevator, PCM channels 0 and 1
+     * @param shooter the shooter piston, PCM channel 7
+     * @param doorElevator the intake door elevator, PCM channels 5 and 6
+     */
+    public static void initSimulation(TalonSRX leftBack, TalonSRX rightBack, TalonSRX leftFront,
+            TalonSRX rightFront, Gyro gyro, TalonSRX roller, DoubleSolenoidValve lowElevator,
+            DoubleSolenoidValve highElevator, SolenoidValve shooter, DoubleSolenoidValve doorElevator) {
+        initSimulation(leftBack, rightBack, leftFront, rightFront, gyro);
+        intakeRoller = roller;
+        shooterLowElevator = lowElevator;
+        shooterHighElevator = highElevator;
+        shooterShooter = shooter;
+        intakeDoorElevator = doorElevator;
+    }
+
+    private static void initDriveTrain(TalonSRX leftBack, TalonSRX rightBack, TalonSRX leftFront,
+            TalonSRX rightFront, DriftCorrectedGyro gyro) {
+        driveTrainLeftBack = leftBack;
+        driveTrainRightBack = rightBack;
+        driveTrainLeftFront = leftFront;
+        driveTrainRightFront = rightFront;
+        driveTrainGyro = gyro;
+        gyro.start();
+
+        // Sample the gyro at a high rate so vision can look up past headings
+        driveTrainHeadingHistory = new HeadingHistory(gyro);
+        driveTrainHeadingHistory.start();
+    }
+
+    // The subsystems add their Talons as they are created
+    private static void initCurrentBudget() {
+        Config config = Config.getInstance();
+        currentBudget = new CurrentBudget(config.CURRENT_BUDGET_AMPS, config.CURRENT_BUDGET_GUARD_VOLTS,
+                config.CURRENT_BUDGET_RECOVERY_PER_SEC);
+        currentBudget.start();
     }
 }
@@ -11,43 +11,85 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
 
 /**
- *
+ * Turns in place to a gyro heading, or by an angle, along a rate limited
+ * profile with feedforward (see {@link org.usfirst.frc1089.X4RobotBuilder2016.motion.ProfiledTurn}).
+ * Finishes once the robot is stopped on the target, not when it first crosses it.
  */
-public class DegreeRotate extends Command {
+public class DegreeRotate extends TimedCommand {
+
+    // Allowance on top of the profile duration before giving up
+    private static final double TIMEOUT_MARGIN_SECS = 1.0;
 
     private double m_setpoint;
+    private final boolean m_relative;
  
     public DegreeRotate(double setpoint) {
+        this(setpoint, false);
+    }
 
-        m_setpoint = setpoint;
+    /**
+     * @param degrees the heading to turn to in degrees, or the angle to turn by if relative
+     * @param relative true to turn by the angle, false to turn to the heading
+     */
+    public DegreeRotate(double degrees, boolean relative) {
+        m_setpoint = degrees;
+        m_relative = relative;
         requires(Robot.driveTrain);
     }
 
+    /**
+     * Gets the angle to turn when the command starts.
+     *
+     * @return the angle in degrees, positive clockwise
+     */
+    protected double getTurnDegrees() {
+        if (m_relative) {
+            return m_setpoint;
+        }
+        // Go the short way around, like the continuous heading PID did
+        double degrees = (m_setpoint - Robot.driveTrain.getHeading()) % 360;
+        if (degrees > 180) {
+            degrees -= 360;
+        } else if (degrees < -180) {
+            degrees += 360;
+        }
+        return degrees;
+    }
+
+    /**
+     * Starts the turn by {@link #getTurnDegrees()}. Subclasses that wait for
+     * something before turning call it later; the timeout counts from then.
+     */
+    protected void startTurn() {
+        Robot.driveTrain.startTurn(getTurnDegrees());
+        setTimeout(timeSinceInitialized() + Robot.driveTrain.getTurnDurationSecs() + TIMEOUT_MARGIN_SECS);
+    }
+
     // Called just before this Command runs the first time
-    protected void initialize() {
-        Robot.driveTrain.enable();
-        Robot.driveTrain.setSetpoint(m_setpoint);
+    protected void timedInitialize() {
+        startTurn();
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
-        return Robot.driveTrain.onTarget();
+    protected boolean timedIsFinished() {
+        return Robot.driveTrain.isTurnSettled() || isTimedOut();
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
+        Robot.driveTrain.stopTurn();
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
+        timedEnd();
     }
 }
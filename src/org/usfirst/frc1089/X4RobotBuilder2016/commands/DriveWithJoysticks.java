@@ -11,40 +11,160 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
+import java.util.function.DoubleSupplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+import org.usfirst.frc1089.X4RobotBuilder2016.input.StickShaper;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.RollingPercentile;
+import org.usfirst.frc1089.X4RobotBuilder2016.subsystems.DriveTrain;
 
 /**
- *
+ * Drives tank style from the sticks, shaped by a {@link StickShaper} per side
+ * with the driver settings in {@link Config}. Precision mode follows the OI
+ * precision button.
+ * <p>
+ * The stick-to-CAN latency is measured from reading the sticks to the frame
+ * that carries the new outputs to the motors, including any time the output
+ * layer holds it back. Sticks that do not change the outputs send no frame
+ * and give no sample. The 50th and 99th percentiles go on the
+ * {@link Telemetry} bus at low priority.
+ * </p>
  */
-public class DriveWithJoysticks extends Command {
+public class DriveWithJoysticks extends TimedCommand {
+
+    private static final int LATENCY_WINDOW_SIZE = 128; // Number of output changes kept for latency percentiles
+    private static final long NO_READ = -1;
+    private static final double MILLIS_IN_SECOND = 1000.0;
+    private static final double TELEMETRY_DEADBAND_MILLIS = 0.1;
+
+    private final DoubleSupplier leftY;
+    private final DoubleSupplier rightY;
+    private final StickShaper leftShaper;
+    private final StickShaper rightShaper;
+    private final RollingPercentile stickToCan = new RollingPercentile(LATENCY_WINDOW_SIZE);
+    private long unsentReadTime = NO_READ; // when the sticks behind outputs not yet sent were read
 
     public DriveWithJoysticks() {
+        this(null, null);
+    }
+
+    /**
+     * <pre>
+     * public DriveWithJoysticks(DoubleSupplier leftY, DoubleSupplier rightY)
+     * </pre>
+     *
+     * Drives from the given stick axes instead of the OI joysticks, e.g. in a simulation.
+     *
+     * @param leftY the left stick Y value, negative forward; null to use the OI joysticks
+     * @param rightY the right stick Y value, negative forward
+     */
+    public DriveWithJoysticks(DoubleSupplier leftY, DoubleSupplier rightY) {
         requires(Robot.driveTrain);
+        this.leftY = leftY;
+        this.rightY = rightY;
+        Config config = Config.getInstance();
+        leftShaper = new StickShaper(config.STICK_DEADBAND, config.STICK_EXPO, config.STICK_SLEW_RATE_PER_SEC,
+                config.STICK_PRECISION_SCALE);
+        rightShaper = new StickShaper(config.STICK_DEADBAND, config.STICK_EXPO, config.STICK_SLEW_RATE_PER_SEC,
+                config.STICK_PRECISION_SCALE);
+        addTelemetry();
+    }
+
+    private void addTelemetry() {
+    	Telemetry telemetry = Telemetry.getInstance();
+    	telemetry.addNumber("DriveWithJoysticks: stick to CAN p50 ms", Telemetry.LOW, TELEMETRY_DEADBAND_MILLIS,
+    			new DoubleSupplier() {
+    				@Override
+    				public double getAsDouble() {
+    					return getStickToCanLatencyPercentileSecs(50) * MILLIS_IN_SECOND;
+    				}
+    			});
+    	telemetry.addNumber("DriveWithJoysticks: stick to CAN p99 ms", Telemetry.LOW, TELEMETRY_DEADBAND_MILLIS,
+    			new DoubleSupplier() {
+    				@Override
+    				public double getAsDouble() {
+    					return getStickToCanLatencyPercentileSecs(99) * MILLIS_IN_SECOND;
+    				}
+    			});
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
+    	// The sticks drive the motors through RobotDrive, whatever ran before
+    	Robot.driveTrain.setControlMode(DriveTrain.ControlMode.PERCENT_VBUS);
+    	leftShaper.reset();
+    	rightShaper.reset();
+    	unsentReadTime = NO_READ;
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
-    	Robot.driveTrain.tankDrive(Robot.oi.getLeftStick(), Robot.oi.getRightStick());
+    protected void timedExecute() {
+    	recordLatency(); // outputs held back by the output layer go out at the end of the last loop
+    	long readTime = RobotClock.getInstance().nanoTime();
+    	double left;
+    	double right;
+    	boolean precision;
+    	if (leftY == null) {
+    		left = Robot.oi.getLeftStick().getY();
+    		right = Robot.oi.getRightStick().getY();
+    		precision = Robot.oi.isPrecisionMode();
+    	} else {
+    		left = leftY.getAsDouble();
+    		right = rightY.getAsDouble();
+    		precision = false;
+    	}
+    	double lastLeft = leftShaper.getOutput();
+    	double lastRight = rightShaper.getOutput();
+    	left = leftShaper.shape(left, precision);
+    	right = rightShaper.shape(right, precision);
+    	if ((left != lastLeft || right != lastRight) && unsentReadTime == NO_READ) {
+    		unsentReadTime = readTime;
+    	}
+    	Robot.driveTrain.tankDrive(left, right, false);
+    	recordLatency();
+    }
+
+    private void recordLatency() {
+    	if (unsentReadTime != NO_READ) {
+    		long frameTime = Robot.driveTrain.getLastOutputFrameTime();
+    		if (frameTime >= unsentReadTime) {
+    			stickToCan.record(frameTime - unsentReadTime);
+    			unsentReadTime = NO_READ;
+    		}
+    	}
+    }
+
+    /**
+     * <pre>
+     * public double getStickToCanLatencyPercentileSecs(double percentile)
+     * </pre>
+     *
+     * Gets a percentile of the time from reading the sticks to sending the
+     * outputs, over the last output changes.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the latency in seconds, or 0 if no output has changed yet
+     */
+    public double getStickToCanLatencyPercentileSecs(double percentile) {
+    	return stickToCan.getPercentileSecs(percentile);
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
+    protected boolean timedIsFinished() {
         return false;
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
     	Robot.driveTrain.stop();
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
-    	end();
+    protected void timedInterrupted() {
+    	timedEnd();
     }
 }
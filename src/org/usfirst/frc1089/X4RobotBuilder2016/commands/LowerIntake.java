@@ -11,13 +11,12 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
 
 /**
  *
  */
-public class LowerIntake extends Command {
+public class LowerIntake extends TimedCommand {
 
     private boolean m_Lowered;
 
@@ -26,25 +25,25 @@ public class LowerIntake extends Command {
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
     	Robot.intakeDoor.lower(m_Lowered);
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
+    protected boolean timedIsFinished() {
         return false;
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
     }
 }
@@ -11,13 +11,12 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
 
 /**
  *
  */
-public class MoveBall extends Command {
+public class MoveBall extends TimedCommand {
 
     private double m_Speed;
 
@@ -27,25 +26,25 @@ public class MoveBall extends Command {
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
     	Robot.intake.moveBall(m_Speed);
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
+    protected boolean timedIsFinished() {
         return true;
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
     }
 }
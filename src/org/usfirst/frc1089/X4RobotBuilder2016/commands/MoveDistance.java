@@ -11,39 +11,51 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.MotionProfile;
 
 /**
- *
+ * Drives straight for a distance in inches by streaming a motion profile to
+ * the drive Talons. The profile is built when the command is constructed, so
+ * commands created in robotInit() cost nothing at run time.
  */
-public class MoveDistance extends Command {
+public class MoveDistance extends TimedCommand {
+
+    // Allowance on top of the profile duration before giving up, e.g. when pushed
+    private static final double TIMEOUT_MARGIN_SECS = 1.0;
 
     private double m_Distance;
+    private final MotionProfile m_profile;
 
     public MoveDistance(double Distance) {
         m_Distance = Distance;
+        m_profile = MotionProfile.forDistance(m_Distance);
+        requires(Robot.driveTrain);
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
+    	setTimeout(m_profile.getDurationSecs() + TIMEOUT_MARGIN_SECS);
+    	Robot.driveTrain.startMotionProfile(m_profile);
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
-        return false;
+    protected boolean timedIsFinished() {
+        return Robot.driveTrain.isMotionProfileFinished() || isTimedOut();
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
+    	Robot.driveTrain.stopMotionProfile();
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
+    	timedEnd();
     }
 }
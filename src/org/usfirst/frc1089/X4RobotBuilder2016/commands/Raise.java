@@ -11,13 +11,12 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
 
 /**
  *
  */
-public class Raise extends Command {
+public class Raise extends TimedCommand {
 
     private int m_Position;
 
@@ -27,27 +26,27 @@ public class Raise extends Command {
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
 		// Add a delay for shooter movement (upward only)
 		setTimeout(m_Position > Robot.shooter.getPosition() ? Robot.shooter.RAISE_SHOOTER_CATCHUP_DELAY_SECS : 0.0);
     	Robot.shooter.raise(m_Position);
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
+    protected boolean timedIsFinished() {
     	return isTimedOut();
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
     }
 }
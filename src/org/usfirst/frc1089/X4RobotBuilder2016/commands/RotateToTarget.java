@@ -0,0 +1,46 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.commands;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.FrameTicket;
+
+/**
+ * Turns in place to face the vision target, by the turn angle the camera
+ * reports in the first frame captured after the command starts, so the frame
+ * shows where the robot stopped. The frame is waited for without blocking the
+ * scheduler, at most AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS. Does not turn if no
+ * target is in view.
+ */
+public class RotateToTarget extends DegreeRotate {
+
+    private FrameTicket m_ticket;
+    private boolean m_turning;
+
+    public RotateToTarget() {
+        super(0, true);
+    }
+
+    protected double getTurnDegrees() {
+        Robot.camera.getNTInfo();
+        // Already corrected for any rotation since the frame was captured
+        return Robot.camera.getTurnAngle();
+    }
+
+    // Called just before this Command runs the first time
+    protected void timedInitialize() {
+        m_ticket = Robot.camera.requestNextFrame();
+        m_turning = false;
+    }
+
+    // Called repeatedly when this Command is scheduled to run
+    protected void timedExecute() {
+        if (!m_turning && m_ticket.isDone()) {
+            m_turning = true;
+            startTurn();
+        }
+    }
+
+    // Make this return true when this Command no longer needs to run execute()
+    protected boolean timedIsFinished() {
+        return m_turning && super.timedIsFinished();
+    }
+}
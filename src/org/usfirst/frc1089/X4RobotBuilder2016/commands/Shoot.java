@@ -11,37 +11,36 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.commands;
 
-import edu.wpi.first.wpilibj.command.Command;
 import org.usfirst.frc1089.X4RobotBuilder2016.Robot;
 
 /**
  *
  */
-public class Shoot extends Command {
+public class Shoot extends TimedCommand {
     public Shoot() {
         requires(Robot.shooter);
     }
 
     // Called just before this Command runs the first time
-    protected void initialize() {
+    protected void timedInitialize() {
     }
 
     // Called repeatedly when this Command is scheduled to run
-    protected void execute() {
+    protected void timedExecute() {
     	Robot.shooter.shoot();
     }
 
     // Make this return true when this Command no longer needs to run execute()
-    protected boolean isFinished() {
+    protected boolean timedIsFinished() {
         return true;
     }
 
     // Called once after isFinished returns true
-    protected void end() {
+    protected void timedEnd() {
     }
 
     // Called when another command which requires one or more of the same
     // subsystems is scheduled to run
-    protected void interrupted() {
+    protected void timedInterrupted() {
     }
 }
@@ -0,0 +1,97 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.commands;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.TimingHistogram;
+
+import edu.wpi.first.wpilibj.command.Command;
+
+/**
+ * A {@code Command} that times each call the scheduler makes into it, so a
+ * loop overrun can be traced to the command that caused it. Subclasses
+ * implement {@code timedInitialize()}, {@code timedExecute()},
+ * {@code timedIsFinished()}, {@code timedEnd()} and
+ * {@code timedInterrupted()} instead of the {@code Command} methods of the
+ * same names; each call is recorded in the {@link TimingHistogram} named
+ * after the command and the method, e.g. "MoveDistance execute". All
+ * instances of a command share their histograms.
+ */
+public abstract class TimedCommand extends Command {
+
+    private final TimingHistogram initializeTiming;
+    private final TimingHistogram executeTiming;
+    private final TimingHistogram isFinishedTiming;
+    private final TimingHistogram endTiming;
+    private final TimingHistogram interruptedTiming;
+
+    /**
+     * Creates a command named after its class.
+     */
+    public TimedCommand() {
+        String name = getName();
+        initializeTiming = TimingHistogram.get(name + " initialize");
+        executeTiming = TimingHistogram.get(name + " execute");
+        isFinishedTiming = TimingHistogram.get(name + " isFinished");
+        endTiming = TimingHistogram.get(name + " end");
+        interruptedTiming = TimingHistogram.get(name + " interrupted");
+    }
+
+    protected final void initialize() {
+        long start = System.nanoTime();
+        try {
+            timedInitialize();
+        } finally {
+            initializeTiming.record(System.nanoTime() - start);
+        }
+    }
+
+    protected final void execute() {
+        long start = System.nanoTime();
+        try {
+            timedExecute();
+        } finally {
+            executeTiming.record(System.nanoTime() - start);
+        }
+    }
+
+    protected final boolean isFinished() {
+        long start = System.nanoTime();
+        try {
+            return timedIsFinished();
+        } finally {
+            isFinishedTiming.record(System.nanoTime() - start);
+        }
+    }
+
+    protected final void end() {
+        long start = System.nanoTime();
+        try {
+            timedEnd();
+        } finally {
+            endTiming.record(System.nanoTime() - start);
+        }
+    }
+
+    protected final void interrupted() {
+        long start = System.nanoTime();
+        try {
+            timedInterrupted();
+        } finally {
+            interruptedTiming.record(System.nanoTime() - start);
+        }
+    }
+
+    // Called just before this Command runs the first time
+    protected abstract void timedInitialize();
+
+    // Called repeatedly when this Command is scheduled to run
+    protected abstract void timedExecute();
+
+    // Make this return true when this Command no longer needs to run execute()
+    protected abstract boolean timedIsFinished();
+
+    // Called once after isFinished returns true
+    protected abstract void timedEnd();
+
+    // Called when another command which requires one or more of the same
+    // subsystems is scheduled to run
+    protected abstract void timedInterrupted();
+}
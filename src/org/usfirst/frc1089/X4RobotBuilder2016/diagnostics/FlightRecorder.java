@@ -0,0 +1,533 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.diagnostics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * The {@code FlightRecorder} class snapshots every sensor input and actuator
+ * command of the robot once per robot loop into a fixed-size binary ring file
+ * on the roboRIO flash, so that what the robot saw and did in a match can be
+ * looked at afterwards with the {@code FlightLogDecoder} in bench/.
+ * <p>
+ * Subsystems register typed fields, each read from a source when a record is
+ * captured, before recording starts; the fields then make up the fixed schema
+ * of every record. {@link #capture()} fills the next slot of a ring in memory,
+ * allocated once, and never allocates or does I/O. A background thread
+ * copies the new records into the file, memory mapped, at most
+ * {@code bytesPerSec} bytes a second, and forces them to flash once a second.
+ * Records the thread cannot write before the ring wraps are dropped and
+ * counted, rather than slow the loop.
+ * </p>
+ * <p>
+ * The file starts with a header ({@code MAGIC}, {@code VERSION}, the record
+ * size and capacity, the field table, the symbol table and the sequence number
+ * after the last record written) followed by the records, each in the slot
+ * of its sequence number, so the oldest are overwritten first: the sequence
+ * number (long), -1 for a dropped record, the {@link RobotClock} time in nanoseconds (long)
+ * and the fields, floats and ints as 4 bytes, booleans as one byte and
+ * symbols, e.g. command names, as a 2 byte index into the symbol table, 0 for
+ * none. Starting a recording keeps the file of the last one, renamed with
+ * {@code PREVIOUS_SUFFIX}, so rebooting after a bad match does not lose it.
+ * </p>
+ */
+public class FlightRecorder {
+	public static final int MAGIC = 0x46444152; // "FDAR"
+	public static final int VERSION = 1;
+	public static final long DEFAULT_FILE_BYTES = 16 << 20; // about 25 minutes of records
+	public static final int DEFAULT_BYTES_PER_SEC = 32 << 10;
+	public static final String PREVIOUS_SUFFIX = ".previous";
+
+	// Field types
+	public static final byte FLOAT = 0;
+	public static final byte INT = 1;
+	public static final byte BOOLEAN = 2;
+	public static final byte SYMBOL = 3;
+
+	// Header layout
+	static final int RECORD_BYTES_OFFSET = 8;
+	static final int CAPACITY_OFFSET = 12;
+	static final int FIELD_COUNT_OFFSET = 16;
+	static final int SYMBOL_COUNT_OFFSET = 20;
+	static final int START_MILLIS_OFFSET = 24;
+	static final int START_NANOS_OFFSET = 32;
+	static final int END_SEQUENCE_OFFSET = 40;
+	static final int FIELD_TABLE_OFFSET = 64;
+	static final int SYMBOL_TABLE_OFFSET = 8192;
+	static final int RECORDS_OFFSET = 24576; // page aligned
+	static final int RECORD_HEADER_BYTES = 16; // sequence and time
+	static final int MAX_SYMBOLS = 256;
+	static final int MAX_SYMBOL_BYTES = 62; // so MAX_SYMBOLS fit with their lengths
+
+	private static final int RING_RECORDS = 256; // 5 seconds of 50 Hz robot loops
+	private static final long WRITE_PERIOD_MILLIS = 100;
+	private static final long FORCE_PERIOD_NANOS = 1000000000;
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final FlightRecorder instance = new FlightRecorder();
+
+	private Field[] fields = new Field[0]; // fixed once recording starts
+	private final TimingHistogram captureTiming = TimingHistogram.get("FlightRecorder capture");
+	private final Telemetry.NumberChannel droppedChannel = Telemetry.getInstance()
+			.addNumber("FlightRecorder: dropped records", Telemetry.LOW, 0);
+	private volatile boolean recording = false;
+	private boolean started = false;
+
+	// Capture state, on the robot loop; captured is the number of records completed
+	private byte[] ring;
+	private ByteBuffer ringBuffer;
+	private int recordBytes;
+	private volatile long captured = 0;
+	private final String[] symbols = new String[MAX_SYMBOLS]; // index 0 is none
+	private final Map<String, Integer> symbolIndexes = new HashMap<String, Integer>();
+	private volatile int symbolCount = 1;
+
+	// Write state, on the writer thread
+	private MappedByteBuffer file;
+	private long capacity;
+	private int bytesPerSec;
+	private Thread writer;
+	private byte[] scratch;
+	private long nextToWrite = 0;
+	private int symbolsWritten = 1;
+	private int symbolTablePosition = SYMBOL_TABLE_OFFSET;
+	private double allowance;
+	private long lastWriteTime;
+	private long lastForceTime;
+	private volatile long written = 0;
+	private volatile long dropped = 0;
+
+	/**
+	 * @return the flight recorder of the robot
+	 */
+	public static FlightRecorder getInstance() {
+		return instance;
+	}
+
+	/**
+	 * <pre>
+	 * public void addFloat(String name, DoubleSupplier source)
+	 * </pre>
+	 *
+	 * Registers a number, recorded as a float. A field with the same name is
+	 * replaced.
+	 *
+	 * @param name the field name, e.g. "DriveTrain heading"
+	 * @param source the value, read on the robot loop at each capture
+	 * @throws IllegalStateException if recording started
+	 */
+	public void addFloat(String name, final DoubleSupplier source) {
+		add(new Field(name, FLOAT, 4) {
+			@Override
+			void capture(ByteBuffer ring, int offset) {
+				ring.putFloat(offset, (float) source.getAsDouble());
+			}
+		});
+	}
+
+	/**
+	 * <pre>
+	 * public void addInt(String name, IntSupplier source)
+	 * </pre>
+	 *
+	 * Registers an int. A field with the same name is replaced.
+	 *
+	 * @param name the field name, e.g. "Shooter position"
+	 * @param source the value, read on the robot loop at each capture
+	 * @throws IllegalStateException if recording started
+	 */
+	public void addInt(String name, final IntSupplier source) {
+		add(new Field(name, INT, 4) {
+			@Override
+			void capture(ByteBuffer ring, int offset) {
+				ring.putInt(offset, source.getAsInt());
+			}
+		});
+	}
+
+	/**
+	 * <pre>
+	 * public void addBoolean(String name, BooleanSupplier source)
+	 * </pre>
+	 *
+	 * Registers a boolean. A field with the same name is replaced.
+	 *
+	 * @param name the field name, e.g. "Shooter firing"
+	 * @param source the value, read on the robot loop at each capture
+	 * @throws IllegalStateException if recording started
+	 */
+	public void addBoolean(String name, final BooleanSupplier source) {
+		add(new Field(name, BOOLEAN, 1) {
+			@Override
+			void capture(ByteBuffer ring, int offset) {
+				ring.put(offset, source.getAsBoolean() ? (byte) 1 : (byte) 0);
+			}
+		});
+	}
+
+	/**
+	 * <pre>
+	 * public void addSymbol(String name, Supplier&lt;String&gt; source)
+	 * </pre>
+	 *
+	 * Registers a string from a small set that is not built for the capture,
+	 * e.g. a command name or a solenoid value. Each string is kept once, in
+	 * the symbol table; after {@code MAX_SYMBOLS} strings, new ones are
+	 * recorded as none. A field with the same name is replaced.
+	 *
+	 * @param name the field name, e.g. "DriveTrain command"
+	 * @param source the value, or null for none, read on the robot loop at each capture
+	 * @throws IllegalStateException if recording started
+	 */
+	public void addSymbol(String name, final Supplier<String> source) {
+		add(new Field(name, SYMBOL, 2) {
+			@Override
+			void capture(ByteBuffer ring, int offset) {
+				ring.putShort(offset, (short) intern(source.get()));
+			}
+		});
+	}
+
+	private synchronized void add(Field field) {
+		if (started) {
+			throw new IllegalStateException("Cannot add " + field.name + ": the flight record schema is fixed");
+		}
+		for (int i = 0; i < fields.length; i++) {
+			if (fields[i].name.equals(field.name)) {
+				fields[i] = field;
+				return;
+			}
+		}
+		Field[] added = Arrays.copyOf(fields, fields.length + 1);
+		added[fields.length] = field;
+		fields = added;
+	}
+
+	// Gets the index of a symbol, adding it the first time; on the robot loop
+	private int intern(String symbol) {
+		if (symbol == null) {
+			return 0;
+		}
+		Integer index = symbolIndexes.get(symbol);
+		if (index != null) {
+			return index;
+		}
+		int count = symbolCount;
+		if (count == MAX_SYMBOLS) {
+			return 0;
+		}
+		symbols[count] = symbol;
+		symbolIndexes.put(symbol, count);
+		symbolCount = count + 1; // publishes the symbol to the writer
+		return count;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void start(File file, long fileBytes, int bytesPerSec) throws IOException
+	 * </pre>
+	 *
+	 * Fixes the schema, creates the ring file and starts recording. An
+	 * existing file is renamed with {@code PREVIOUS_SUFFIX} first, replacing
+	 * the file of the recording before it.
+	 *
+	 * @param file the ring file, e.g. on /home/lvuser
+	 * @param fileBytes the size of the file, DEFAULT_FILE_BYTES on the robot
+	 * @param bytesPerSec the most bytes written to the file each second,
+	 *            DEFAULT_BYTES_PER_SEC on the robot
+	 * @throws IOException if the file cannot be created
+	 * @throws IllegalStateException if recording started before, or the fields
+	 *             do not fit in the header
+	 */
+	public synchronized void start(File file, long fileBytes, int bytesPerSec) throws IOException {
+		if (started) {
+			throw new IllegalStateException("The flight recorder was started");
+		}
+		recordBytes = RECORD_HEADER_BYTES;
+		for (Field field : fields) {
+			recordBytes += field.size;
+		}
+		capacity = (fileBytes - RECORDS_OFFSET) / recordBytes;
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("A flight log of " + fileBytes + " bytes holds no records");
+		}
+		this.bytesPerSec = bytesPerSec;
+
+		if (file.exists()) {
+			File previous = new File(file.getPath() + PREVIOUS_SUFFIX);
+			previous.delete();
+			if (!file.renameTo(previous)) {
+				throw new IOException("Cannot keep the last flight log " + file);
+			}
+		}
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			// The file has its full size from the start, so it never grows on flash
+			out.setLength(fileBytes);
+			this.file = out.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+		} finally {
+			out.close();
+		}
+		writeHeader();
+
+		started = true;
+		ring = new byte[RING_RECORDS * recordBytes];
+		ringBuffer = ByteBuffer.wrap(ring);
+		scratch = new byte[recordBytes];
+		allowance = bytesPerSec;
+		lastWriteTime = System.nanoTime();
+		lastForceTime = lastWriteTime;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "FlightRecorder");
+		writer.setDaemon(true);
+		writer.setPriority(Thread.MIN_PRIORITY);
+		recording = true;
+		writer.start();
+	}
+
+	private void writeHeader() {
+		file.putInt(0, MAGIC);
+		file.putInt(4, VERSION);
+		file.putInt(RECORD_BYTES_OFFSET, recordBytes);
+		file.putInt(CAPACITY_OFFSET, (int) capacity);
+		file.putInt(FIELD_COUNT_OFFSET, fields.length);
+		file.putInt(SYMBOL_COUNT_OFFSET, 1);
+		file.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+		file.putLong(START_NANOS_OFFSET, RobotClock.getInstance().nanoTime());
+		file.putLong(END_SEQUENCE_OFFSET, 0);
+		file.position(FIELD_TABLE_OFFSET);
+		for (Field field : fields) {
+			byte[] name = field.name.getBytes(StandardCharsets.UTF_8);
+			if (file.position() + 3 + name.length > SYMBOL_TABLE_OFFSET) {
+				throw new IllegalStateException("Too many flight record fields to fit in the header");
+			}
+			file.put(field.type);
+			file.putShort((short) name.length);
+			file.put(name);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void capture()
+	 * </pre>
+	 *
+	 * Reads every field into the next record. Call it once at the end of every
+	 * robot loop, from the scheduler thread only; it does nothing until
+	 * recording starts.
+	 */
+	public void capture() {
+		if (!recording) {
+			return;
+		}
+		long start = System.nanoTime();
+		long sequence = captured;
+		int offset = (int) (sequence % RING_RECORDS) * recordBytes;
+		ringBuffer.putLong(offset, sequence);
+		ringBuffer.putLong(offset + 8, RobotClock.getInstance().nanoTime());
+		offset += RECORD_HEADER_BYTES;
+		Field[] fields = this.fields;
+		for (int i = 0; i < fields.length; i++) {
+			fields[i].capture(ringBuffer, offset);
+			offset += fields[i].size;
+		}
+		captured = sequence + 1; // publishes the record to the writer
+		captureTiming.record(System.nanoTime() - start);
+	}
+
+	private void writeLoop() {
+		try {
+			while (recording) {
+				try {
+					Thread.sleep(WRITE_PERIOD_MILLIS);
+				} catch (InterruptedException e) {
+					// stop() wakes the writer up to finish
+				}
+				write(false);
+			}
+		} catch (RuntimeException e) {
+			recording = false;
+			DriverStation.reportError("Flight recording stopped: " + e + "\n", true);
+		}
+	}
+
+	// Copies the new records into the file, within the bandwidth cap unless uncapped
+	private synchronized void write(boolean uncapped) {
+		long now = System.nanoTime();
+		allowance = Math.min(bytesPerSec, allowance + (now - lastWriteTime) * bytesPerSec / NANOS_IN_SECOND);
+		lastWriteTime = now;
+
+		// Every symbol in the records up to captured was published before them
+		long captured = this.captured;
+		writeSymbols();
+		boolean wrote = false;
+		while (nextToWrite < captured && (uncapped || allowance >= recordBytes)) {
+			if (captured - nextToWrite > RING_RECORDS) {
+				skipTo(captured - RING_RECORDS);
+				continue;
+			}
+			int slot = (int) (nextToWrite % RING_RECORDS) * recordBytes;
+			System.arraycopy(ring, slot, scratch, 0, recordBytes);
+			// The loop may have started overwriting the slot while it was copied
+			if (this.captured - nextToWrite >= RING_RECORDS) {
+				skipTo(this.captured - RING_RECORDS + 1);
+				continue;
+			}
+			file.position(slotOffset(nextToWrite));
+			file.put(scratch);
+			nextToWrite++;
+			allowance -= recordBytes;
+			written++;
+			wrote = true;
+		}
+		if (wrote) {
+			file.putLong(END_SEQUENCE_OFFSET, nextToWrite);
+		}
+		if (now - lastForceTime >= FORCE_PERIOD_NANOS) {
+			lastForceTime = now;
+			file.force();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void flush()
+	 * </pre>
+	 *
+	 * Writes the records captured so far on the calling thread, regardless of
+	 * the bandwidth cap, so none are dropped, e.g. when a match is replayed
+	 * faster than real time. Not for the robot loop, since it does I/O.
+	 */
+	public void flush() {
+		if (recording) {
+			write(true);
+		}
+	}
+
+	// Drops the records before a sequence number, marking their slots so old records there are not read
+	private void skipTo(long sequence) {
+		dropped += sequence - nextToWrite;
+		droppedChannel.set(dropped);
+		for (; nextToWrite < sequence; nextToWrite++) {
+			file.putLong(slotOffset(nextToWrite), -1);
+		}
+	}
+
+	private int slotOffset(long sequence) {
+		return RECORDS_OFFSET + (int) (sequence % capacity) * recordBytes;
+	}
+
+	private void writeSymbols() {
+		int count = symbolCount;
+		if (symbolsWritten == count) {
+			return;
+		}
+		file.position(symbolTablePosition);
+		for (; symbolsWritten < count; symbolsWritten++) {
+			byte[] symbol = symbols[symbolsWritten].getBytes(StandardCharsets.UTF_8);
+			int length = Math.min(symbol.length, MAX_SYMBOL_BYTES);
+			file.putShort((short) length);
+			file.put(symbol, 0, length);
+		}
+		symbolTablePosition = file.position();
+		file.putInt(SYMBOL_COUNT_OFFSET, count);
+	}
+
+	/**
+	 * <pre>
+	 * public void stop() throws InterruptedException
+	 * </pre>
+	 *
+	 * Stops recording, writes the records left regardless of the bandwidth
+	 * cap and forces the file to flash. Recording cannot start again.
+	 *
+	 * @throws InterruptedException if interrupted waiting for the writer
+	 */
+	public void stop() throws InterruptedException {
+		Thread writer;
+		synchronized (this) {
+			if (!recording) {
+				return;
+			}
+			recording = false;
+			writer = this.writer;
+		}
+		writer.interrupt();
+		writer.join();
+		write(true);
+		synchronized (this) {
+			file.force();
+		}
+	}
+
+	/**
+	 * @return true from {@link #start(File, long, int)} until stopped or a write fails
+	 */
+	public boolean isRecording() {
+		return recording;
+	}
+
+	/**
+	 * @return the size of each record in bytes
+	 */
+	public synchronized int getRecordBytes() {
+		return recordBytes;
+	}
+
+	/**
+	 * @return the number of records captured
+	 */
+	public long getCapturedCount() {
+		return captured;
+	}
+
+	/**
+	 * @return the number of records written to the file
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * @return the number of records dropped because the ring wrapped before they were written
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * One value of each record.
+	 */
+	private static abstract class Field {
+		final String name;
+		final byte type;
+		final int size;
+
+		Field(String name, byte type, int size) {
+			this.name = name;
+			this.type = type;
+			this.size = size;
+		}
+
+		// Reads the source into the ring at an offset
+		abstract void capture(ByteBuffer ring, int offset);
+	}
+}
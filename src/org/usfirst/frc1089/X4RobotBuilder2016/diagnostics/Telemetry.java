@@ -0,0 +1,386 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.diagnostics;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * The {@code Telemetry} class is the one way values reach the SmartDashboard,
+ * so that the dashboard costs as little loop time and NetworkTables bandwidth,
+ * which GRIP needs for vision, as it can.
+ * <p>
+ * Subsystems register typed channels, each with a key, a priority and, for
+ * numbers, a deadband. A channel either reads a source when it is published,
+ * or holds the last value {@code set()} on it from any thread without locks.
+ * At the end of each robot loop, {@link #update(long)} flushes every channel
+ * once per flush period, highest priority first:
+ * </p>
+ * <ul>
+ * <li>A value is only sent when it changed, a number by more than its
+ * deadband, since the last value sent. NetworkTables keeps sending the last
+ * value to dashboards that connect later.</li>
+ * <li>Once the loop has run longer than the loop budget, the channels left
+ * are dropped from this flush, except {@code CRITICAL} ones. A dropped
+ * channel keeps its change and is sent at a later flush.</li>
+ * </ul>
+ * <p>
+ * The bus counts the values sent, left unchanged and dropped. Flushing never
+ * allocates, other than what SmartDashboard does to send a value.
+ * </p>
+ */
+public class Telemetry {
+	public static final int CRITICAL = 3; // never dropped
+	public static final int HIGH = 2;
+	public static final int NORMAL = 1;
+	public static final int LOW = 0;
+	public static final double DEFAULT_FLUSH_PERIOD_SECS = 0.1; // 10 Hz
+	public static final double DEFAULT_LOOP_BUDGET_SECS = 0.01; // half of the 20 ms scheduler loop
+
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final Telemetry instance = new Telemetry();
+
+	private volatile Channel[] channels = new Channel[0]; // highest priority first
+	private volatile long flushPeriodNanos = Math.round(DEFAULT_FLUSH_PERIOD_SECS * NANOS_IN_SECOND);
+	private volatile long loopBudgetNanos = Math.round(DEFAULT_LOOP_BUDGET_SECS * NANOS_IN_SECOND);
+
+	// Flush state, on the robot loop
+	private boolean flushed = false;
+	private long nextFlushTime;
+	private volatile long published = 0;
+	private volatile long unchanged = 0;
+	private volatile long dropped = 0;
+
+	/**
+	 * @return the telemetry bus of the robot
+	 */
+	public static Telemetry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * <pre>
+	 * public NumberChannel addNumber(String key, int priority, double deadband)
+	 * </pre>
+	 *
+	 * Registers a number that is {@link NumberChannel#set(double) set} on the
+	 * channel. A channel with the same key is replaced.
+	 *
+	 * @param key the SmartDashboard key, e.g. "DriveTrain: heading"
+	 * @param priority {@code CRITICAL}, {@code HIGH}, {@code NORMAL} or {@code LOW}
+	 * @param deadband the change to ignore, 0 to send every change
+	 * @return the channel
+	 */
+	public NumberChannel addNumber(String key, int priority, double deadband) {
+		return addNumber(key, priority, deadband, null);
+	}
+
+	/**
+	 * <pre>
+	 * public NumberChannel addNumber(String key, int priority, double deadband, DoubleSupplier source)
+	 * </pre>
+	 *
+	 * Registers a number read from a source on the robot loop at each flush.
+	 * A channel with the same key is replaced.
+	 *
+	 * @param key the SmartDashboard key, e.g. "DriveTrain: heading"
+	 * @param priority {@code CRITICAL}, {@code HIGH}, {@code NORMAL} or {@code LOW}
+	 * @param deadband the change to ignore, 0 to send every change
+	 * @param source the value, or null to use the value set on the channel
+	 * @return the channel
+	 */
+	public NumberChannel addNumber(String key, int priority, double deadband, DoubleSupplier source) {
+		NumberChannel channel = new NumberChannel(key, priority, deadband, source);
+		add(channel);
+		return channel;
+	}
+
+	/**
+	 * <pre>
+	 * public BooleanChannel addBoolean(String key, int priority, BooleanSupplier source)
+	 * </pre>
+	 *
+	 * Registers a boolean. A channel with the same key is replaced.
+	 *
+	 * @param key the SmartDashboard key, e.g. "Camera: target found"
+	 * @param priority {@code CRITICAL}, {@code HIGH}, {@code NORMAL} or {@code LOW}
+	 * @param source the value, read on the robot loop at each flush, or null
+	 *            to use the value set on the channel
+	 * @return the channel
+	 */
+	public BooleanChannel addBoolean(String key, int priority, BooleanSupplier source) {
+		BooleanChannel channel = new BooleanChannel(key, priority, source);
+		add(channel);
+		return channel;
+	}
+
+	/**
+	 * <pre>
+	 * public StringChannel addString(String key, int priority, Supplier&lt;String&gt; source)
+	 * </pre>
+	 *
+	 * Registers a string. A channel with the same key is replaced.
+	 *
+	 * @param key the SmartDashboard key, e.g. "DriveTrain: tuning"
+	 * @param priority {@code CRITICAL}, {@code HIGH}, {@code NORMAL} or {@code LOW}
+	 * @param source the value, read on the robot loop at each flush, or null
+	 *            to use the value set on the channel
+	 * @return the channel
+	 */
+	public StringChannel addString(String key, int priority, Supplier<String> source) {
+		StringChannel channel = new StringChannel(key, priority, source);
+		add(channel);
+		return channel;
+	}
+
+	private synchronized void add(Channel channel) {
+		Channel[] added = Arrays.copyOf(channels, channels.length + 1);
+		added[channels.length] = channel;
+		for (int i = 0; i < channels.length; i++) {
+			if (channels[i].key.equals(channel.key)) {
+				added = Arrays.copyOf(channels, channels.length);
+				added[i] = channel;
+				break;
+			}
+		}
+		// A stable sort, so channels of the same priority go in the order they were added
+		Arrays.sort(added, new Comparator<Channel>() {
+			@Override
+			public int compare(Channel a, Channel b) {
+				return Integer.compare(b.priority, a.priority);
+			}
+		});
+		channels = added;
+	}
+
+	/**
+	 * <pre>
+	 * public void setFlushPeriod(double secs)
+	 * </pre>
+	 *
+	 * @param secs the time between flushes, DEFAULT_FLUSH_PERIOD_SECS at first
+	 */
+	public void setFlushPeriod(double secs) {
+		flushPeriodNanos = Math.round(secs * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * <pre>
+	 * public void setLoopBudget(double secs)
+	 * </pre>
+	 *
+	 * @param secs how long a robot loop may have run before a flush drops
+	 *            channels, DEFAULT_LOOP_BUDGET_SECS at first
+	 */
+	public void setLoopBudget(double secs) {
+		loopBudgetNanos = Math.round(secs * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * <pre>
+	 * public void update(long loopStart)
+	 * </pre>
+	 *
+	 * Flushes the channels if a flush period passed since the last flush on
+	 * the {@link RobotClock}. Call it at the end of every robot loop, from the
+	 * scheduler thread only.
+	 *
+	 * @param loopStart when the loop started, from {@code System.nanoTime()}
+	 */
+	public void update(long loopStart) {
+		long now = RobotClock.getInstance().nanoTime();
+		if (flushed && now - nextFlushTime < 0) {
+			return;
+		}
+		long period = flushPeriodNanos;
+		nextFlushTime = flushed && now - nextFlushTime < period ? nextFlushTime + period : now + period;
+		flushed = true;
+		flush(loopStart);
+	}
+
+	/**
+	 * <pre>
+	 * public void flush(long loopStart)
+	 * </pre>
+	 *
+	 * Sends the channels that changed now, highest priority first, until the
+	 * loop runs over the loop budget. Call it from the scheduler thread only.
+	 *
+	 * @param loopStart when the loop started, from {@code System.nanoTime()}
+	 */
+	public void flush(long loopStart) {
+		long budget = loopBudgetNanos;
+		Channel[] channels = this.channels;
+		for (int i = 0; i < channels.length; i++) {
+			Channel channel = channels[i];
+			if (channel.priority < CRITICAL && System.nanoTime() - loopStart > budget) {
+				// The rest keep their changes for the next flush
+				dropped += channels.length - i;
+				return;
+			}
+			if (channel.publish()) {
+				published++;
+			} else {
+				unchanged++;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of values sent to the SmartDashboard
+	 */
+	public long getPublishedCount() {
+		return published;
+	}
+
+	/**
+	 * @return the number of times a channel was flushed but had not changed beyond its deadband
+	 */
+	public long getUnchangedCount() {
+		return unchanged;
+	}
+
+	/**
+	 * @return the number of times a channel was dropped from a flush because the loop was over budget
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * The {@code Channel} class is one value on the SmartDashboard.
+	 */
+	public static abstract class Channel {
+		private final String key;
+		private final int priority;
+
+		private Channel(String key, int priority) {
+			this.key = key;
+			this.priority = priority;
+		}
+
+		/**
+		 * @return the SmartDashboard key
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the priority, higher first
+		 */
+		public int getPriority() {
+			return priority;
+		}
+
+		// Sends the value if it changed; returns true if it was sent
+		abstract boolean publish();
+	}
+
+	/**
+	 * The {@code NumberChannel} class is a number, sent when it moves by more
+	 * than its deadband.
+	 */
+	public static class NumberChannel extends Channel {
+		private final double deadband;
+		private final DoubleSupplier source;
+		private volatile double value = 0;
+		private double lastPublished = Double.NaN; // sends the first value
+
+		private NumberChannel(String key, int priority, double deadband, DoubleSupplier source) {
+			super(key, priority);
+			this.deadband = deadband;
+			this.source = source;
+		}
+
+		/**
+		 * @param value the value to send at the next flush, if it has no source; from any thread
+		 */
+		public void set(double value) {
+			this.value = value;
+		}
+
+		@Override
+		boolean publish() {
+			double value = source == null ? this.value : source.getAsDouble();
+			// Also true for two equal infinities, whose difference is NaN
+			if (Double.compare(value, lastPublished) == 0 || Math.abs(value - lastPublished) <= deadband) {
+				return false;
+			}
+			SmartDashboard.putNumber(getKey(), value);
+			lastPublished = value;
+			return true;
+		}
+	}
+
+	/**
+	 * The {@code BooleanChannel} class is a boolean, sent when it changes.
+	 */
+	public static class BooleanChannel extends Channel {
+		private final BooleanSupplier source;
+		private volatile boolean value = false;
+		private boolean sent = false;
+		private boolean lastPublished;
+
+		private BooleanChannel(String key, int priority, BooleanSupplier source) {
+			super(key, priority);
+			this.source = source;
+		}
+
+		/**
+		 * @param value the value to send at the next flush, if it has no source; from any thread
+		 */
+		public void set(boolean value) {
+			this.value = value;
+		}
+
+		@Override
+		boolean publish() {
+			boolean value = source == null ? this.value : source.getAsBoolean();
+			if (sent && value == lastPublished) {
+				return false;
+			}
+			SmartDashboard.putBoolean(getKey(), value);
+			sent = true;
+			lastPublished = value;
+			return true;
+		}
+	}
+
+	/**
+	 * The {@code StringChannel} class is a string, sent when it changes.
+	 */
+	public static class StringChannel extends Channel {
+		private final Supplier<String> source;
+		private volatile String value = "";
+		private String lastPublished = null;
+
+		private StringChannel(String key, int priority, Supplier<String> source) {
+			super(key, priority);
+			this.source = source;
+		}
+
+		/**
+		 * @param value the value to send at the next flush, if it has no source; from any thread
+		 */
+		public void set(String value) {
+			this.value = value;
+		}
+
+		@Override
+		boolean publish() {
+			String value = source == null ? this.value : source.get();
+			if (value == null || value.equals(lastPublished)) {
+				return false;
+			}
+			SmartDashboard.putString(getKey(), value);
+			lastPublished = value;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.diagnostics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The {@code TimingHistogram} class counts how long something on the robot
+ * loop took, e.g. the {@code execute()} of a command, in a log-linear
+ * histogram: each power of two of microseconds is split into 16 linear
+ * buckets, so percentiles are within 6.25% from 1 microsecond to over two
+ * minutes. The buckets are allocated once; recording never allocates.
+ * <p>
+ * Every histogram registers itself under its name, so that all of them can
+ * be {@link #dumpAll(File) dumped} to a CSV file after a match, and puts its
+ * 50th and 99th percentiles and maximum on the {@link Telemetry} bus at low
+ * priority. Histograms may be recorded and read from any thread.
+ * </p>
+ */
+public class TimingHistogram {
+	private static final List<TimingHistogram> histograms = new CopyOnWriteArrayList<TimingHistogram>();
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // per power of two
+	private static final int MAX_EXPONENT = 26; // of the power of two of microseconds in the last bucket
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final double MICROS_IN_MILLI = 1000;
+	private static final long NANOS_IN_MICRO = 1000;
+	private static final double TELEMETRY_DEADBAND_MILLIS = 0.01;
+
+	private final String name;
+	private final long[] counts = new long[BUCKETS];
+	private long count = 0;
+	private long totalMicros = 0;
+	private long maxMicros = 0;
+
+	private TimingHistogram(String name) {
+		this.name = name;
+		Telemetry telemetry = Telemetry.getInstance();
+		telemetry.addNumber("Timing: " + name + " p50 ms", Telemetry.LOW, TELEMETRY_DEADBAND_MILLIS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return getPercentileMillis(50);
+					}
+				});
+		telemetry.addNumber("Timing: " + name + " p99 ms", Telemetry.LOW, TELEMETRY_DEADBAND_MILLIS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return getPercentileMillis(99);
+					}
+				});
+		telemetry.addNumber("Timing: " + name + " max ms", Telemetry.LOW, TELEMETRY_DEADBAND_MILLIS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return getMaxMillis();
+					}
+				});
+	}
+
+	/**
+	 * <pre>
+	 * public static synchronized TimingHistogram get(String name)
+	 * </pre>
+	 *
+	 * Gets the histogram with a name, creating it the first time, so that
+	 * every instance of a command records into the same histograms.
+	 *
+	 * @param name what is timed, e.g. "MoveDistance execute"
+	 * @return the histogram
+	 */
+	public static synchronized TimingHistogram get(String name) {
+		for (TimingHistogram histogram : histograms) {
+			if (histogram.name.equals(name)) {
+				return histogram;
+			}
+		}
+		TimingHistogram histogram = new TimingHistogram(name);
+		histograms.add(histogram);
+		return histogram;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void record(long nanos)
+	 * </pre>
+	 *
+	 * Counts one duration.
+	 *
+	 * @param nanos the duration in nanoseconds, e.g. a difference of {@code System.nanoTime()}
+	 */
+	public synchronized void record(long nanos) {
+		long micros = Math.max(0, nanos / NANOS_IN_MICRO);
+		counts[bucketOf(micros)]++;
+		count++;
+		totalMicros += micros;
+		maxMicros = Math.max(maxMicros, micros);
+	}
+
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKETS - 1;
+		}
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS
+				+ (int) ((micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	private static long lowerBoundMicros(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized double getPercentileMillis(double percentile)
+	 * </pre>
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the top of the bucket the percentile falls in, but not more than
+	 *         the maximum, in milliseconds; 0 if nothing was recorded
+	 */
+	public synchronized double getPercentileMillis(double percentile) {
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS && count > 0; bucket++) {
+			seen += counts[bucket];
+			if (seen >= rank) {
+				long top = bucket + 1 < BUCKETS ? lowerBoundMicros(bucket + 1) - 1 : maxMicros;
+				return Math.min(top, maxMicros) / MICROS_IN_MILLI;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the name of the histogram
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of durations recorded
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the mean duration in milliseconds, or 0 if nothing was recorded
+	 */
+	public synchronized double getMeanMillis() {
+		return count == 0 ? 0 : totalMicros / MICROS_IN_MILLI / count;
+	}
+
+	/**
+	 * @return the longest duration in milliseconds
+	 */
+	public synchronized double getMaxMillis() {
+		return maxMicros / MICROS_IN_MILLI;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void reset()
+	 * </pre>
+	 *
+	 * Forgets all durations.
+	 */
+	public synchronized void reset() {
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			counts[bucket] = 0;
+		}
+		count = 0;
+		totalMicros = 0;
+		maxMicros = 0;
+	}
+
+	// Writes one CSV line; the buckets are "lower bound in microseconds:count" for each bucket used
+	private synchronized void dump(Writer out) throws IOException {
+		out.write(name.replace(',', ' ') + "," + count + "," + getMeanMillis() + "," + getPercentileMillis(50) + ","
+				+ getPercentileMillis(90) + "," + getPercentileMillis(99) + "," + getMaxMillis() + ",");
+		String separator = "";
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			if (counts[bucket] != 0) {
+				out.write(separator + lowerBoundMicros(bucket) + ":" + counts[bucket]);
+				separator = " ";
+			}
+		}
+		out.write("\n");
+	}
+
+	/**
+	 * @return every histogram, in the order they were created
+	 */
+	public static List<TimingHistogram> getHistograms() {
+		return Collections.unmodifiableList(histograms);
+	}
+
+	/**
+	 * <pre>
+	 * public static void dumpAll(File file) throws IOException
+	 * </pre>
+	 *
+	 * Writes every histogram to a CSV file, one line each, with the columns
+	 * name, count, mean_ms, p50_ms, p90_ms, p99_ms, max_ms and buckets.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void dumpAll(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write("name,count,mean_ms,p50_ms,p90_ms,p99_ms,max_ms,buckets\n");
+			for (TimingHistogram histogram : histograms) {
+				histogram.dump(out);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public static void resetAll()
+	 * </pre>
+	 *
+	 * {@link #reset() Resets} every histogram, e.g. after dumping them.
+	 */
+	public static void resetAll() {
+		for (TimingHistogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+}
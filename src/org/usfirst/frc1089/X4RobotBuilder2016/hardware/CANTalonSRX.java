@@ -0,0 +1,158 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.CANTalon;
+import edu.wpi.first.wpilibj.CANTalon.FeedbackDevice;
+import edu.wpi.first.wpilibj.CANTalon.MotionProfileStatus;
+import edu.wpi.first.wpilibj.CANTalon.TalonControlMode;
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+
+/**
+ * The {@code CANTalonSRX} class is a {@link TalonSRX} on the CAN bus: every
+ * call goes straight to a {@code CANTalon}.
+ */
+public class CANTalonSRX implements TalonSRX {
+	private final CANTalon talon;
+
+	/**
+	 * <pre>
+	 * public CANTalonSRX(CANTalon talon)
+	 * </pre>
+	 *
+	 * @param talon the Talon to control
+	 */
+	public CANTalonSRX(CANTalon talon) {
+		this.talon = talon;
+	}
+
+	/**
+	 * @return the Talon, e.g. for {@code RobotDrive} or {@code LiveWindow}
+	 */
+	public CANTalon getCANTalon() {
+		return talon;
+	}
+
+	@Override
+	public int getDeviceID() {
+		return talon.getDeviceID();
+	}
+
+	@Override
+	public void set(double value) {
+		talon.set(value);
+	}
+
+	@Override
+	public double get() {
+		return talon.get();
+	}
+
+	@Override
+	public void changeControlMode(TalonControlMode mode) {
+		talon.changeControlMode(mode);
+	}
+
+	@Override
+	public void setProfile(int profile) {
+		talon.setProfile(profile);
+	}
+
+	@Override
+	public void setPID(double p, double i, double d, double f, int izone, double closeLoopRampRate, int profile) {
+		talon.setPID(p, i, d, f, izone, closeLoopRampRate, profile);
+	}
+
+	@Override
+	public void enableBrakeMode(boolean brake) {
+		talon.enableBrakeMode(brake);
+	}
+
+	@Override
+	public void setFeedbackDevice(FeedbackDevice device) {
+		talon.setFeedbackDevice(device);
+	}
+
+	@Override
+	public void configEncoderCodesPerRev(int codesPerRev) {
+		talon.configEncoderCodesPerRev(codesPerRev);
+	}
+
+	@Override
+	public void reverseSensor(boolean flip) {
+		talon.reverseSensor(flip);
+	}
+
+	@Override
+	public double getPosition() {
+		return talon.getPosition();
+	}
+
+	@Override
+	public void setPosition(double position) {
+		talon.setPosition(position);
+	}
+
+	@Override
+	public double getSpeed() {
+		return talon.getSpeed();
+	}
+
+	@Override
+	public double getOutputCurrent() {
+		return talon.getOutputCurrent();
+	}
+
+	@Override
+	public double getOutputVoltage() {
+		return talon.getOutputVoltage();
+	}
+
+	@Override
+	public double getBusVoltage() {
+		return talon.getBusVoltage();
+	}
+
+	@Override
+	public void setExpiration(double timeout) {
+		talon.setExpiration(timeout);
+	}
+
+	@Override
+	public void setSafetyEnabled(boolean enabled) {
+		talon.setSafetyEnabled(enabled);
+	}
+
+	@Override
+	public void clearMotionProfileTrajectories() {
+		talon.clearMotionProfileTrajectories();
+	}
+
+	@Override
+	public void clearMotionProfileHasUnderrun() {
+		talon.clearMotionProfileHasUnderrun();
+	}
+
+	@Override
+	public void changeMotionControlFramePeriod(int periodMs) {
+		talon.changeMotionControlFramePeriod(periodMs);
+	}
+
+	@Override
+	public boolean isMotionProfileTopLevelBufferFull() {
+		return talon.isMotionProfileTopLevelBufferFull();
+	}
+
+	@Override
+	public boolean pushMotionProfileTrajectory(TrajectoryPoint point) {
+		return talon.pushMotionProfileTrajectory(point);
+	}
+
+	@Override
+	public void processMotionProfileBuffer() {
+		talon.processMotionProfileBuffer();
+	}
+
+	@Override
+	public void getMotionProfileStatus(MotionProfileStatus status) {
+		talon.getMotionProfileStatus(status);
+	}
+}
@@ -0,0 +1,230 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@code CoalescedOutput} class is the base of the output layer between
+ * the subsystems and the devices in {@code RobotMap}: it decides which writes
+ * reach the device, so that commands can write their outputs every loop
+ * without a CAN or PCM frame going out each time.
+ * <p>
+ * A write of the value the device already holds is dropped, unless the last
+ * frame is older than the keep-alive period, which subclasses set to half
+ * the motor safety expiration so that motor safety is still fed. A changed
+ * value is sent at once, unless the last frame went out less than the
+ * minimum interval ago; then it is held, and sent by the next write once
+ * the interval has passed or by {@link #flush()} at the end of the loop,
+ * whichever comes first. The newest value always wins. The minimum interval
+ * is zero, so nothing is held, until {@link #setMinInterval(double)} is
+ * called.
+ * </p>
+ * <p>
+ * Every output registers itself, so the robot loop can
+ * {@link #flushAll() flush} held values and
+ * {@link #invalidateAll() invalidate} the cache after something else (e.g.
+ * LiveWindow) wrote the devices directly. Writes may come from any thread.
+ * </p>
+ */
+public abstract class CoalescedOutput {
+	private static final List<CoalescedOutput> outputs = new CopyOnWriteArrayList<CoalescedOutput>();
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final long NEVER = Long.MAX_VALUE;
+
+	private final String name;
+	private long minIntervalNanos = 0;
+	private long keepAliveNanos = NEVER;
+	private boolean valid = false; // whether the device holds the last value sent
+	private boolean pending = false; // whether a changed value is held back
+	private long lastFrameTime;
+	private long requests = 0;
+	private long frames = 0;
+
+	/**
+	 * <pre>
+	 * protected CoalescedOutput(String name)
+	 * </pre>
+	 *
+	 * @param name the name of the device, e.g. "DriveTrain LeftFront"
+	 */
+	protected CoalescedOutput(String name) {
+		this.name = name;
+		outputs.add(this);
+	}
+
+	/**
+	 * <pre>
+	 * protected abstract void send()
+	 * </pre>
+	 *
+	 * Writes the newest value to the device. Called with the lock of this
+	 * output held.
+	 */
+	protected abstract void send();
+
+	/**
+	 * <pre>
+	 * protected final synchronized boolean offer(boolean changed)
+	 * </pre>
+	 *
+	 * Counts a write of a new value and decides whether it is sent now.
+	 * Subclasses call it from their synchronized write methods after storing
+	 * the value, and call {@link #send()} if it returns true.
+	 *
+	 * @param changed whether the value differs from the last value sent
+	 * @return whether to send the value now
+	 */
+	protected final synchronized boolean offer(boolean changed) {
+		requests++;
+		long now = RobotClock.getInstance().nanoTime();
+		long age = now - lastFrameTime;
+		if (!valid || (changed && age >= minIntervalNanos) || age >= keepAliveNanos) {
+			valid = true;
+			pending = false;
+			lastFrameTime = now;
+			frames++;
+			return true;
+		}
+		pending = changed;
+		return false;
+	}
+
+	/**
+	 * <pre>
+	 * public final synchronized void flush()
+	 * </pre>
+	 *
+	 * Sends a held value now, whatever the minimum interval.
+	 */
+	public final synchronized void flush() {
+		if (pending) {
+			pending = false;
+			lastFrameTime = RobotClock.getInstance().nanoTime();
+			frames++;
+			send();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public final synchronized void invalidate()
+	 * </pre>
+	 *
+	 * Forgets what the device holds, so the next write is sent. Call it after
+	 * writing the device some other way.
+	 */
+	public final synchronized void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * <pre>
+	 * public final synchronized void setMinInterval(double secs)
+	 * </pre>
+	 *
+	 * Sets how long a changed value waits after the last frame. Zero sends
+	 * every change at once.
+	 *
+	 * @param secs the minimum time between frames in seconds
+	 */
+	public final synchronized void setMinInterval(double secs) {
+		minIntervalNanos = Math.round(secs * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * <pre>
+	 * protected final synchronized void setKeepAlive(double secs)
+	 * </pre>
+	 *
+	 * Sets how old the last frame may get before an unchanged value is sent
+	 * again.
+	 *
+	 * @param secs the keep-alive period in seconds, or
+	 *            {@code Double.POSITIVE_INFINITY} to never resend
+	 */
+	protected final synchronized void setKeepAlive(double secs) {
+		keepAliveNanos = Double.isInfinite(secs) ? NEVER : Math.round(secs * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * @return the name of the device
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the {@link RobotClock} time of the last frame in nanoseconds,
+	 *         or 0 if none was sent
+	 */
+	public synchronized long getLastFrameTime() {
+		return frames == 0 ? 0 : lastFrameTime;
+	}
+
+	/**
+	 * @return the number of writes made to this output
+	 */
+	public synchronized long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * @return the number of frames sent to the device
+	 */
+	public synchronized long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return the number of writes that did not need a frame
+	 */
+	public synchronized long getFramesSaved() {
+		return requests - frames;
+	}
+
+	/**
+	 * @return every output, in the order they were created
+	 */
+	public static List<CoalescedOutput> getOutputs() {
+		return Collections.unmodifiableList(outputs);
+	}
+
+	/**
+	 * @return the number of frames saved by all outputs
+	 */
+	public static long getTotalFramesSaved() {
+		long saved = 0;
+		for (CoalescedOutput output : outputs) {
+			saved += output.getFramesSaved();
+		}
+		return saved;
+	}
+
+	/**
+	 * <pre>
+	 * public static void flushAll()
+	 * </pre>
+	 *
+	 * {@link #flush() Flushes} all outputs. Call it once per robot loop, after
+	 * the scheduler, so that no value is held for longer than a loop.
+	 */
+	public static void flushAll() {
+		for (CoalescedOutput output : outputs) {
+			output.flush();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public static void invalidateAll()
+	 * </pre>
+	 *
+	 * {@link #invalidate() Invalidates} all outputs.
+	 */
+	public static void invalidateAll() {
+		for (CoalescedOutput output : outputs) {
+			output.invalidate();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+
+/**
+ * The {@code CoalescingDoubleSolenoid} class only passes {@link #set(Value)}
+ * on to its {@link DoubleSolenoidValve} when the value changed, as described in
+ * {@link CoalescedOutput}. The PCM holds a valve until told otherwise, so an
+ * unchanged value is never sent again.
+ */
+public class CoalescingDoubleSolenoid extends CoalescedOutput {
+	private final DoubleSolenoidValve solenoid;
+	private DoubleSolenoid.Value value;
+	private DoubleSolenoid.Value sentValue = null;
+
+	/**
+	 * <pre>
+	 * public CoalescingDoubleSolenoid(String name, DoubleSolenoidValve solenoid)
+	 * </pre>
+	 *
+	 * @param name the name of the solenoid, e.g. "Shooter LowElevator"
+	 * @param solenoid the solenoid to control
+	 */
+	public CoalescingDoubleSolenoid(String name, DoubleSolenoidValve solenoid) {
+		super(name);
+		this.solenoid = solenoid;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void set(DoubleSolenoid.Value value)
+	 * </pre>
+	 *
+	 * @param value the new state of the valve
+	 */
+	public synchronized void set(DoubleSolenoid.Value value) {
+		this.value = value;
+		if (offer(value != sentValue)) {
+			send();
+		}
+	}
+
+	@Override
+	protected void send() {
+		solenoid.set(value);
+		sentValue = value;
+	}
+
+	/**
+	 * @return the state of the valve, read from the PCM on the robot
+	 */
+	public DoubleSolenoid.Value get() {
+		return solenoid.get();
+	}
+}
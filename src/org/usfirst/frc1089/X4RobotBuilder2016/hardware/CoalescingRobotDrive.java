@@ -0,0 +1,92 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.RobotDrive;
+
+/**
+ * The {@code CoalescingRobotDrive} class only passes
+ * {@link #tankDrive(double, double)} on to its {@code RobotDrive} when the
+ * stick values changed, as described in {@link CoalescedOutput}.
+ * <p>
+ * While motor safety is enabled unchanged sticks are still sent every half
+ * expiration, so {@code RobotDrive} stays fed, and the first write after a
+ * motor safety stop always reaches the motors.
+ * </p>
+ */
+public class CoalescingRobotDrive extends CoalescedOutput {
+	private final RobotDrive robotDrive;
+	private double leftValue;
+	private double rightValue;
+	private double sentLeftValue;
+	private double sentRightValue;
+	private boolean squaredInputs;
+	private boolean sentSquaredInputs;
+
+	/**
+	 * <pre>
+	 * public CoalescingRobotDrive(String name, RobotDrive robotDrive)
+	 * </pre>
+	 *
+	 * @param name the name of the drive, e.g. "DriveTrain RobotDrive"
+	 * @param robotDrive the drive to control
+	 */
+	public CoalescingRobotDrive(String name, RobotDrive robotDrive) {
+		super(name);
+		this.robotDrive = robotDrive;
+		updateKeepAlive();
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void tankDrive(double leftValue, double rightValue)
+	 * </pre>
+	 *
+	 * Drives like {@code RobotDrive.tankDrive(double, double)}, with squared inputs.
+	 *
+	 * @param leftValue the left stick Y value
+	 * @param rightValue the right stick Y value
+	 */
+	public void tankDrive(double leftValue, double rightValue) {
+		tankDrive(leftValue, rightValue, true);
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void tankDrive(double leftValue, double rightValue, boolean squaredInputs)
+	 * </pre>
+	 *
+	 * Drives like {@code RobotDrive.tankDrive(double, double, boolean)}.
+	 *
+	 * @param leftValue the left stick Y value
+	 * @param rightValue the right stick Y value
+	 * @param squaredInputs whether to square the values, for finer control at low speed
+	 */
+	public synchronized void tankDrive(double leftValue, double rightValue, boolean squaredInputs) {
+		this.leftValue = leftValue;
+		this.rightValue = rightValue;
+		this.squaredInputs = squaredInputs;
+		if (offer(leftValue != sentLeftValue || rightValue != sentRightValue
+				|| squaredInputs != sentSquaredInputs)) {
+			send();
+		}
+	}
+
+	@Override
+	protected void send() {
+		robotDrive.tankDrive(leftValue, rightValue, squaredInputs);
+		sentLeftValue = leftValue;
+		sentRightValue = rightValue;
+		sentSquaredInputs = squaredInputs;
+	}
+
+	/**
+	 * @param enabled whether {@code RobotDrive} runs motor safety
+	 */
+	public synchronized void setSafetyEnabled(boolean enabled) {
+		robotDrive.setSafetyEnabled(enabled);
+		updateKeepAlive();
+	}
+
+	private void updateKeepAlive() {
+		setKeepAlive(robotDrive.isSafetyEnabled() ? robotDrive.getExpiration() / 2 : Double.POSITIVE_INFINITY);
+	}
+}
@@ -0,0 +1,196 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.CANTalon.FeedbackDevice;
+import edu.wpi.first.wpilibj.CANTalon.MotionProfileStatus;
+import edu.wpi.first.wpilibj.CANTalon.TalonControlMode;
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+
+/**
+ * The {@code CoalescingTalonSRX} class is a {@link TalonSRX} that only passes
+ * {@link #set(double)} on to its Talon when the value or the control mode
+ * changed, as described in {@link CoalescedOutput}. All other calls go
+ * straight through.
+ * <p>
+ * While motor safety is enabled an unchanged value is still sent every half
+ * expiration, so a command writing every loop keeps the Talon fed. A Talon
+ * stopped by motor safety has not had a frame for a whole expiration, so the
+ * next write always reaches it and restarts it.
+ * </p>
+ */
+public class CoalescingTalonSRX extends CoalescedOutput implements TalonSRX {
+	private static final double DEFAULT_EXPIRATION_SECS = 0.1; // as in MotorSafety
+
+	private final TalonSRX talon;
+	private TalonControlMode mode = null;
+	private double value;
+	private double sentValue;
+	private double expiration = DEFAULT_EXPIRATION_SECS;
+	private boolean safetyEnabled = false;
+
+	/**
+	 * <pre>
+	 * public CoalescingTalonSRX(String name, TalonSRX talon)
+	 * </pre>
+	 *
+	 * @param name the name of the Talon, e.g. "DriveTrain LeftFront"
+	 * @param talon the Talon to control, with motor safety off
+	 */
+	public CoalescingTalonSRX(String name, TalonSRX talon) {
+		super(name);
+		this.talon = talon;
+	}
+
+	/**
+	 * @return the Talon written to
+	 */
+	public TalonSRX getTalon() {
+		return talon;
+	}
+
+	@Override
+	public synchronized void set(double value) {
+		this.value = value;
+		if (offer(value != sentValue)) {
+			send();
+		}
+	}
+
+	@Override
+	protected void send() {
+		talon.set(value);
+		sentValue = value;
+	}
+
+	@Override
+	public synchronized void changeControlMode(TalonControlMode mode) {
+		if (mode != this.mode) {
+			this.mode = mode;
+			talon.changeControlMode(mode);
+			// The next value means something else in the new mode, so it must be sent
+			invalidate();
+		}
+	}
+
+	@Override
+	public synchronized void setExpiration(double timeout) {
+		expiration = timeout;
+		talon.setExpiration(timeout);
+		updateKeepAlive();
+	}
+
+	@Override
+	public synchronized void setSafetyEnabled(boolean enabled) {
+		safetyEnabled = enabled;
+		talon.setSafetyEnabled(enabled);
+		updateKeepAlive();
+	}
+
+	private void updateKeepAlive() {
+		setKeepAlive(safetyEnabled ? expiration / 2 : Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public int getDeviceID() {
+		return talon.getDeviceID();
+	}
+
+	@Override
+	public double get() {
+		return talon.get();
+	}
+
+	@Override
+	public void setProfile(int profile) {
+		talon.setProfile(profile);
+	}
+
+	@Override
+	public void setPID(double p, double i, double d, double f, int izone, double closeLoopRampRate, int profile) {
+		talon.setPID(p, i, d, f, izone, closeLoopRampRate, profile);
+	}
+
+	@Override
+	public void enableBrakeMode(boolean brake) {
+		talon.enableBrakeMode(brake);
+	}
+
+	@Override
+	public void setFeedbackDevice(FeedbackDevice device) {
+		talon.setFeedbackDevice(device);
+	}
+
+	@Override
+	public void configEncoderCodesPerRev(int codesPerRev) {
+		talon.configEncoderCodesPerRev(codesPerRev);
+	}
+
+	@Override
+	public void reverseSensor(boolean flip) {
+		talon.reverseSensor(flip);
+	}
+
+	@Override
+	public double getPosition() {
+		return talon.getPosition();
+	}
+
+	@Override
+	public void setPosition(double position) {
+		talon.setPosition(position);
+	}
+
+	@Override
+	public double getSpeed() {
+		return talon.getSpeed();
+	}
+
+	@Override
+	public double getOutputCurrent() {
+		return talon.getOutputCurrent();
+	}
+
+	@Override
+	public double getOutputVoltage() {
+		return talon.getOutputVoltage();
+	}
+
+	@Override
+	public double getBusVoltage() {
+		return talon.getBusVoltage();
+	}
+
+	@Override
+	public void clearMotionProfileTrajectories() {
+		talon.clearMotionProfileTrajectories();
+	}
+
+	@Override
+	public void clearMotionProfileHasUnderrun() {
+		talon.clearMotionProfileHasUnderrun();
+	}
+
+	@Override
+	public void changeMotionControlFramePeriod(int periodMs) {
+		talon.changeMotionControlFramePeriod(periodMs);
+	}
+
+	@Override
+	public boolean isMotionProfileTopLevelBufferFull() {
+		return talon.isMotionProfileTopLevelBufferFull();
+	}
+
+	@Override
+	public boolean pushMotionProfileTrajectory(TrajectoryPoint point) {
+		return talon.pushMotionProfileTrajectory(point);
+	}
+
+	@Override
+	public void processMotionProfileBuffer() {
+		talon.processMotionProfileBuffer();
+	}
+
+	@Override
+	public void getMotionProfileStatus(MotionProfileStatus status) {
+		talon.getMotionProfileStatus(status);
+	}
+}
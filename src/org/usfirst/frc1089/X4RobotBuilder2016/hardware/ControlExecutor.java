@@ -0,0 +1,256 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import java.util.Arrays;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.TimingHistogram;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * The {@code ControlExecutor} class runs the control loops of the robot, e.g.
+ * profiled turns and sensor sampling, at a fixed rate of its own, away from
+ * the scheduler loop and the jitter of driver station packets.
+ * <p>
+ * One {@link Periodic} on the {@link RobotClock} ticks every
+ * {@code DEFAULT_PERIOD_SECS}. Each tick runs the tasks that fall due, in the
+ * order they were created, so every loop sees the samples of the loops
+ * before it from the same tick. A task's period is a whole number of ticks.
+ * Starting and stopping tasks, and ticking, never lock or allocate; commands
+ * pass setpoints to the tasks through volatile fields or a {@link Handoff}.
+ * A task that throws is stopped and reported, and the others keep running.
+ * </p>
+ * <p>
+ * The executor measures its jitter: how late each tick starts against the
+ * fixed schedule, in the "Control lateness" {@link TimingHistogram}, how
+ * long each tick and each task takes, and how many ticks were missed or
+ * overran their period. The counts are put on the {@link Telemetry} bus.
+ * </p>
+ */
+public class ControlExecutor {
+	public static final double DEFAULT_PERIOD_SECS = 0.005; // 200 Hz
+
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static ControlExecutor instance = null;
+
+	private final RobotClock clock;
+	private final double periodSecs;
+	private final long periodNanos;
+	private final TimingHistogram lateness = TimingHistogram.get("Control lateness");
+	private final TimingHistogram tickTiming = TimingHistogram.get("Control tick");
+	private final Telemetry.NumberChannel missedTicksChannel = Telemetry.getInstance()
+			.addNumber("Control: missed ticks", Telemetry.NORMAL, 0);
+	private final Telemetry.NumberChannel overrunsChannel = Telemetry.getInstance().addNumber("Control: overruns",
+			Telemetry.NORMAL, 0);
+	private final Periodic ticker;
+	private volatile Task[] tasks = new Task[0]; // in the order they were created
+	private volatile long ticks = 0;
+	private volatile long missedTicks = 0;
+	private volatile long overruns = 0;
+
+	// Tick state, on the ticker
+	private boolean ticked = false;
+	private long nextTickTime;
+
+	/**
+	 * <pre>
+	 * public ControlExecutor(RobotClock clock, double periodSecs)
+	 * </pre>
+	 *
+	 * Constructs a new {@code ControlExecutor} with no tasks. Call
+	 * {@link #start()} to begin ticking.
+	 *
+	 * @param clock the clock to tick on
+	 * @param periodSecs the time between ticks in seconds
+	 */
+	public ControlExecutor(RobotClock clock, double periodSecs) {
+		this.clock = clock;
+		this.periodSecs = periodSecs;
+		periodNanos = Math.round(periodSecs * NANOS_IN_SECOND);
+		ticker = clock.newPeriodic(new Runnable() {
+			@Override
+			public void run() {
+				tick();
+			}
+		});
+	}
+
+	/**
+	 * <pre>
+	 * public static synchronized ControlExecutor getInstance()
+	 * </pre>
+	 *
+	 * Gets the executor of the robot, ticking every DEFAULT_PERIOD_SECS on the
+	 * {@link RobotClock} in use when it is first asked for. A simulation must
+	 * install its clock before.
+	 *
+	 * @return the executor
+	 */
+	public static synchronized ControlExecutor getInstance() {
+		if (instance == null) {
+			instance = new ControlExecutor(RobotClock.getInstance(), DEFAULT_PERIOD_SECS);
+			instance.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized Periodic newPeriodic(String name, Runnable task)
+	 * </pre>
+	 *
+	 * Creates a stopped task on this executor. Its period is rounded to a whole
+	 * number of ticks, at least one. Like a {@code Notifier}, the first run is
+	 * one period after it is started.
+	 *
+	 * @param name what the task does, e.g. "DriveTrain turn"; its run times
+	 *            are recorded in the {@link TimingHistogram} "Control " + name
+	 * @param task the task to run
+	 * @return the periodic task
+	 */
+	public synchronized Periodic newPeriodic(String name, Runnable task) {
+		Task periodic = new Task(name, task);
+		Task[] added = Arrays.copyOf(tasks, tasks.length + 1);
+		added[tasks.length] = periodic;
+		tasks = added;
+		return periodic;
+	}
+
+	/**
+	 * <pre>
+	 * public void start()
+	 * </pre>
+	 *
+	 * Starts ticking.
+	 */
+	public void start() {
+		ticker.startPeriodic(periodSecs);
+	}
+
+	/**
+	 * <pre>
+	 * public void stop()
+	 * </pre>
+	 *
+	 * Stops ticking, and so every task. A tick in progress is not interrupted.
+	 */
+	public void stop() {
+		ticker.stop();
+	}
+
+	private void tick() {
+		long start = System.nanoTime();
+		long now = clock.nanoTime();
+		if (!ticked) {
+			ticked = true;
+			nextTickTime = now;
+		}
+		long late = now - nextTickTime;
+		lateness.record(Math.abs(late));
+		if (late >= periodNanos) {
+			// This tick stands for the last one due; the ones before it never ran
+			long missed = late / periodNanos;
+			missedTicks += missed;
+			missedTicksChannel.set(missedTicks);
+			nextTickTime += missed * periodNanos;
+		}
+		long tick = ticks + 1;
+		ticks = tick;
+		Task[] tasks = this.tasks;
+		for (int i = 0; i < tasks.length; i++) {
+			tasks[i].tick(tick);
+		}
+		nextTickTime += periodNanos;
+
+		long elapsed = System.nanoTime() - start;
+		tickTiming.record(elapsed);
+		if (elapsed > periodNanos) {
+			overruns++;
+			overrunsChannel.set(overruns);
+		}
+	}
+
+	/**
+	 * @return the time between ticks in seconds
+	 */
+	public double getPeriodSecs() {
+		return periodSecs;
+	}
+
+	/**
+	 * @return the number of ticks run
+	 */
+	public long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * @return the number of ticks that never ran because a tick started a period or more late
+	 */
+	public long getMissedTicks() {
+		return missedTicks;
+	}
+
+	/**
+	 * @return the number of ticks whose tasks took longer than the period
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return how late each tick started against the fixed schedule
+	 */
+	public TimingHistogram getLateness() {
+		return lateness;
+	}
+
+	/**
+	 * A task run every few ticks. It is started and stopped with volatile
+	 * writes only, so a command can do it while the executor ticks.
+	 */
+	private class Task implements Periodic {
+		private final String name;
+		private final Runnable task;
+		private final TimingHistogram timing;
+		private volatile long startTick;
+		private volatile int divider = 0; // ticks between runs, 0 when stopped
+
+		Task(String name, Runnable task) {
+			this.name = name;
+			this.task = task;
+			timing = TimingHistogram.get("Control " + name);
+		}
+
+		@Override
+		public void startPeriodic(double periodSecs) {
+			int divider = (int) Math.max(1, Math.round(periodSecs / ControlExecutor.this.periodSecs));
+			// The tick reads divider first, so it sees this start tick with the new divider
+			this.divider = 0;
+			startTick = ticks;
+			this.divider = divider;
+		}
+
+		@Override
+		public void stop() {
+			divider = 0;
+		}
+
+		void tick(long tick) {
+			int divider = this.divider;
+			long sinceStart = tick - startTick;
+			if (divider == 0 || sinceStart <= 0 || sinceStart % divider != 0) {
+				return;
+			}
+			long start = System.nanoTime();
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				this.divider = 0;
+				DriverStation.reportError("Control task " + name + " stopped: " + e + "\n", true);
+			} finally {
+				timing.record(System.nanoTime() - start);
+			}
+		}
+	}
+}
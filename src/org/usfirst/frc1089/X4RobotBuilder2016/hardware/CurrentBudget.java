@@ -0,0 +1,391 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.DoubleSupplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+
+/**
+ * The {@code CurrentBudget} class keeps the Talons under a total output
+ * current budget, so that a pushing match slows the robot down instead of
+ * browning out the roboRIO, which disables every output.
+ * <p>
+ * Each subsystem registers a {@link Channel} with its Talons, a priority, a
+ * reserve and a lowest output scale, and multiplies its outputs by
+ * {@link Channel#getScale()}. Every 20 ms the budget samples the output
+ * current of every Talon and the lowest bus voltage they see, and allocates
+ * the current allowed:
+ * </p>
+ * <ol>
+ * <li>The current allowed is the total budget, cut in proportion to how far
+ * the bus voltage has fallen from the guard voltage towards the 6.8 V
+ * brownout.</li>
+ * <li>Each channel's demand is its current divided by its scale, i.e. what
+ * it would draw unthrottled.</li>
+ * <li>Each channel gets its reserve, or its demand if that is smaller; the
+ * rest goes to the channels in priority order, each taking its full demand
+ * before the next gets any.</li>
+ * <li>A channel given less than its demand scales its outputs by the ratio,
+ * but not below its lowest scale. Scales drop at once and rise back at a
+ * limited rate, so a throttled drive does not oscillate against the
+ * budget.</li>
+ * </ol>
+ * <p>
+ * Each channel counts the times and total time it was throttled and its
+ * lowest scale, and the budget puts these and the current of each channel
+ * on the {@link Telemetry} bus. Sampling never allocates.
+ * </p>
+ */
+public class CurrentBudget {
+	private static final double SAMPLE_PERIOD_SECS = 0.02;
+	private static final double BROWNOUT_VOLTS = 6.8; // the roboRIO disables outputs below this
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final double TELEMETRY_DEADBAND_AMPS = 1;
+	private static final double TELEMETRY_DEADBAND_VOLTS = 0.05;
+	private static final double TELEMETRY_DEADBAND_SCALE = 0.01;
+	private static final double TELEMETRY_DEADBAND_SECS = 0.1;
+
+	private final double budgetAmps;
+	private final double guardVolts;
+	private final double recoveryPerSec;
+	private final Periodic sampler = ControlExecutor.getInstance().newPeriodic("CurrentBudget", new Runnable() {
+		@Override
+		public void run() {
+			sample();
+		}
+	});
+	private volatile Channel[] channels = new Channel[0]; // highest priority first
+	private volatile double busVoltage = 0;
+	private volatile double totalCurrent = 0;
+	private volatile double allowedCurrent;
+	private long lastSampleTime;
+	private boolean sampled = false;
+
+	/**
+	 * <pre>
+	 * public CurrentBudget(double budgetAmps, double guardVolts, double recoveryPerSec)
+	 * </pre>
+	 *
+	 * Constructs a new {@code CurrentBudget} with no channels. Call
+	 * {@link #start()} to begin sampling.
+	 *
+	 * @param budgetAmps the total output current allowed
+	 * @param guardVolts the bus voltage under which less current is allowed, above 6.8 V
+	 * @param recoveryPerSec the fastest rise of an output scale, in full scale per second
+	 */
+	public CurrentBudget(double budgetAmps, double guardVolts, double recoveryPerSec) {
+		this.budgetAmps = budgetAmps;
+		this.guardVolts = guardVolts;
+		this.recoveryPerSec = recoveryPerSec;
+		allowedCurrent = budgetAmps;
+		Telemetry telemetry = Telemetry.getInstance();
+		telemetry.addNumber("Current budget: bus volts", Telemetry.NORMAL, TELEMETRY_DEADBAND_VOLTS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return busVoltage;
+					}
+				});
+		telemetry.addNumber("Current budget: total amps", Telemetry.NORMAL, TELEMETRY_DEADBAND_AMPS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return totalCurrent;
+					}
+				});
+		telemetry.addNumber("Current budget: allowed amps", Telemetry.NORMAL, TELEMETRY_DEADBAND_AMPS,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return allowedCurrent;
+					}
+				});
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized Channel addChannel(String name, int priority, double reserveAmps,
+	 *                                        double minScale, TalonSRX... talons)
+	 * </pre>
+	 *
+	 * Registers the Talons of a subsystem.
+	 *
+	 * @param name the name of the subsystem, e.g. "DriveTrain"
+	 * @param priority the priority of the channel for current above the reserves; higher goes first
+	 * @param reserveAmps the current the channel may always draw
+	 * @param minScale the lowest output scale, above 0
+	 * @param talons the Talons whose output current is measured
+	 * @return the new channel
+	 */
+	public synchronized Channel addChannel(String name, int priority, double reserveAmps, double minScale,
+			TalonSRX... talons) {
+		Channel channel = new Channel(name, priority, reserveAmps, minScale, talons);
+		channel.addTelemetry();
+		channel.addFlightRecord();
+		Channel[] added = Arrays.copyOf(channels, channels.length + 1);
+		added[channels.length] = channel;
+		Arrays.sort(added, new Comparator<Channel>() {
+			@Override
+			public int compare(Channel a, Channel b) {
+				return Integer.compare(b.priority, a.priority);
+			}
+		});
+		channels = added;
+		return channel;
+	}
+
+	/**
+	 * <pre>
+	 * public void start()
+	 * </pre>
+	 *
+	 * Starts sampling on the {@link ControlExecutor}.
+	 */
+	public void start() {
+		sampler.startPeriodic(SAMPLE_PERIOD_SECS);
+	}
+
+	/**
+	 * <pre>
+	 * public void stop()
+	 * </pre>
+	 *
+	 * Stops sampling. Scales keep their last values.
+	 */
+	public void stop() {
+		sampler.stop();
+	}
+
+	private void sample() {
+		long now = RobotClock.getInstance().nanoTime();
+		double dt = sampled ? (now - lastSampleTime) / NANOS_IN_SECOND : SAMPLE_PERIOD_SECS;
+		lastSampleTime = now;
+		sampled = true;
+
+		Channel[] channels = this.channels;
+		double total = 0;
+		double volts = Double.MAX_VALUE;
+		for (Channel channel : channels) {
+			total += channel.measure();
+			volts = Math.min(volts, channel.busVoltage);
+		}
+		double allowed = budgetAmps;
+		if (volts < guardVolts) {
+			// Cut the budget, not the current drawn, or each sample would cut it again while the voltage recovers
+			double headroom = Math.max(0, (volts - BROWNOUT_VOLTS) / (guardVolts - BROWNOUT_VOLTS));
+			allowed = budgetAmps * headroom;
+		}
+
+		double remaining = allowed;
+		for (Channel channel : channels) {
+			channel.allocation = Math.min(channel.demand, channel.reserveAmps);
+			remaining -= channel.allocation;
+		}
+		for (Channel channel : channels) {
+			double extra = Math.min(channel.demand - channel.allocation, Math.max(0, remaining));
+			channel.allocation += extra;
+			remaining -= extra;
+		}
+		for (Channel channel : channels) {
+			channel.update(dt, recoveryPerSec);
+		}
+
+		busVoltage = volts == Double.MAX_VALUE ? 0 : volts;
+		totalCurrent = total;
+		allowedCurrent = allowed;
+	}
+
+	/**
+	 * @return the lowest bus voltage seen by a Talon at the last sample
+	 */
+	public double getBusVoltage() {
+		return busVoltage;
+	}
+
+	/**
+	 * @return the total output current of all channels at the last sample, in amps
+	 */
+	public double getTotalCurrent() {
+		return totalCurrent;
+	}
+
+	/**
+	 * @return the current allowed at the last sample, in amps
+	 */
+	public double getAllowedCurrent() {
+		return allowedCurrent;
+	}
+
+	/**
+	 * The {@code Channel} class is the share of the budget of one subsystem.
+	 */
+	public static class Channel {
+		private final String name;
+		private final int priority;
+		private final double reserveAmps;
+		private final double minScale;
+		private final TalonSRX[] talons;
+		private volatile double scale = 1;
+		private volatile Runnable listener = null;
+
+		// Sampler state
+		private volatile double current = 0;
+		private double busVoltage;
+		private double demand;
+		private double allocation;
+
+		// Statistics
+		private double lowestScale = 1;
+		private double throttledSecs = 0;
+		private long throttleEvents = 0;
+
+		private Channel(String name, int priority, double reserveAmps, double minScale, TalonSRX[] talons) {
+			this.name = name;
+			this.priority = priority;
+			this.reserveAmps = reserveAmps;
+			this.minScale = minScale;
+			this.talons = talons.clone();
+		}
+
+		// The current and scale at normal priority, the statistics at low
+		private void addTelemetry() {
+			Telemetry telemetry = Telemetry.getInstance();
+			telemetry.addNumber("Current budget: " + name + " amps", Telemetry.NORMAL, TELEMETRY_DEADBAND_AMPS,
+					new DoubleSupplier() {
+						@Override
+						public double getAsDouble() {
+							return getCurrent();
+						}
+					});
+			telemetry.addNumber("Current budget: " + name + " scale", Telemetry.NORMAL, TELEMETRY_DEADBAND_SCALE,
+					new DoubleSupplier() {
+						@Override
+						public double getAsDouble() {
+							return getScale();
+						}
+					});
+			telemetry.addNumber("Current budget: " + name + " throttled secs", Telemetry.LOW,
+					TELEMETRY_DEADBAND_SECS, new DoubleSupplier() {
+						@Override
+						public double getAsDouble() {
+							return getThrottledSecs();
+						}
+					});
+			telemetry.addNumber("Current budget: " + name + " throttle events", Telemetry.LOW, 0,
+					new DoubleSupplier() {
+						@Override
+						public double getAsDouble() {
+							return getThrottleEvents();
+						}
+					});
+		}
+
+		private void addFlightRecord() {
+			FlightRecorder.getInstance().addFloat("CurrentBudget " + name + " amps", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return getCurrent();
+				}
+			});
+		}
+
+		// Reads the Talons; returns the output current
+		private double measure() {
+			double amps = 0;
+			double volts = Double.MAX_VALUE;
+			for (TalonSRX talon : talons) {
+				amps += talon.getOutputCurrent();
+				volts = Math.min(volts, talon.getBusVoltage());
+			}
+			current = amps;
+			busVoltage = volts;
+			demand = amps / scale;
+			return amps;
+		}
+
+		private void update(double dt, double recoveryPerSec) {
+			double target = allocation >= demand ? 1 : Math.max(minScale, allocation / demand);
+			double oldScale = scale;
+			double newScale = target < oldScale ? target : Math.min(target, oldScale + recoveryPerSec * dt);
+			synchronized (this) {
+				if (newScale < 1) {
+					if (oldScale >= 1) {
+						throttleEvents++;
+					}
+					throttledSecs += dt;
+				}
+				lowestScale = Math.min(lowestScale, newScale);
+			}
+			scale = newScale;
+			Runnable listener = this.listener;
+			if (newScale != oldScale && listener != null) {
+				listener.run();
+			}
+		}
+
+		/**
+		 * @return the name of the subsystem
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the scale to multiply the outputs by, from the lowest scale to 1
+		 */
+		public double getScale() {
+			return scale;
+		}
+
+		/**
+		 * @param listener run on the sampler thread when the scale changes, e.g.
+		 *            to rewrite an output that is not written every loop; null for none
+		 */
+		public void setListener(Runnable listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * @return the output current of the Talons at the last sample, in amps
+		 */
+		public double getCurrent() {
+			return current;
+		}
+
+		/**
+		 * @return the lowest scale since the statistics were reset
+		 */
+		public synchronized double getLowestScale() {
+			return lowestScale;
+		}
+
+		/**
+		 * @return the time spent throttled since the statistics were reset, in seconds
+		 */
+		public synchronized double getThrottledSecs() {
+			return throttledSecs;
+		}
+
+		/**
+		 * @return the number of times throttling started since the statistics were reset
+		 */
+		public synchronized long getThrottleEvents() {
+			return throttleEvents;
+		}
+
+		/**
+		 * <pre>
+		 * public synchronized void resetStats()
+		 * </pre>
+		 *
+		 * Clears the throttling statistics.
+		 */
+		public synchronized void resetStats() {
+			lowestScale = scale;
+			throttledSecs = 0;
+			throttleEvents = 0;
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+
+/**
+ * The {@code DoubleSolenoidValve} interface is the part of the
+ * {@code DoubleSolenoid} API the robot code uses. Methods have the same names
+ * and meaning as in {@code DoubleSolenoid}.
+ * <p>
+ * Subsystems hold double solenoids through this interface so that they can
+ * run against simulated valves off the robot. On the robot every valve is a
+ * {@link PCMDoubleSolenoidValve}.
+ * </p>
+ */
+public interface DoubleSolenoidValve {
+	/**
+	 * <pre>
+	 * void set(DoubleSolenoid.Value value)
+	 * </pre>
+	 *
+	 * @param value the new state of the valve
+	 */
+	void set(DoubleSolenoid.Value value);
+
+	/**
+	 * @return the state of the valve
+	 */
+	DoubleSolenoid.Value get();
+}
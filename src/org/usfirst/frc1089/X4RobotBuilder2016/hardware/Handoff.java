@@ -0,0 +1,92 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code Handoff} class passes the latest of a series of values from one
+ * thread to another without locks or allocation, e.g. a turn planned by a
+ * command at 50 Hz to the {@link ControlExecutor} that follows it at 200 Hz.
+ * <p>
+ * It is a triple buffer of three objects the caller allocates once. The
+ * writer fills {@link #getBack()} and {@link #publish() publishes} it; the
+ * reader {@link #update() takes} the latest object published and reads
+ * {@link #getFront()} for as long as it needs. Neither ever waits for the
+ * other, neither sees an object the other is using, and the reader skips
+ * values published faster than it takes them. There must be one writer
+ * thread and one reader thread.
+ * </p>
+ *
+ * @param <T> the type of the objects passed
+ */
+public class Handoff<T> {
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4; // set on the middle index when it was published and not taken
+
+	private final Object[] slots;
+	private final AtomicInteger middle = new AtomicInteger(1);
+	private int back = 0; // the writer's
+	private int front = 2; // the reader's
+
+	/**
+	 * <pre>
+	 * public Handoff(T first, T second, T third)
+	 * </pre>
+	 *
+	 * Constructs a new {@code Handoff}. The reader starts on the third object,
+	 * the writer on the first.
+	 *
+	 * @param first an object to fill
+	 * @param second an object to fill
+	 * @param third an object to fill, which the reader sees until the first is published
+	 */
+	public Handoff(T first, T second, T third) {
+		slots = new Object[] { first, second, third };
+	}
+
+	/**
+	 * @return the object the writer fills next; only the writer may use it
+	 */
+	@SuppressWarnings("unchecked")
+	public T getBack() {
+		return (T) slots[back];
+	}
+
+	/**
+	 * <pre>
+	 * public void publish()
+	 * </pre>
+	 *
+	 * Hands the object filled by the writer to the reader. The writer must then
+	 * get its next object from {@link #getBack()}.
+	 */
+	public void publish() {
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * <pre>
+	 * public boolean update()
+	 * </pre>
+	 *
+	 * Takes the latest object published, if there is one the reader has not
+	 * taken yet.
+	 *
+	 * @return true if {@link #getFront()} changed
+	 */
+	public boolean update() {
+		if ((middle.get() & FRESH) == 0) {
+			return false;
+		}
+		// Only the reader clears FRESH, so a newer object may be taken here but none is lost
+		front = middle.getAndSet(front) & INDEX_MASK;
+		return true;
+	}
+
+	/**
+	 * @return the object the reader took last; only the reader may use it
+	 */
+	@SuppressWarnings("unchecked")
+	public T getFront() {
+		return (T) slots[front];
+	}
+}
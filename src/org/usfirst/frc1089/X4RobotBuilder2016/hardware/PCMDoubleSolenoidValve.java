@@ -0,0 +1,40 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.DoubleSolenoid;
+
+/**
+ * The {@code PCMDoubleSolenoidValve} class is a {@link DoubleSolenoidValve} on
+ * the pneumatics control module: every call goes straight to a
+ * {@code DoubleSolenoid}.
+ */
+public class PCMDoubleSolenoidValve implements DoubleSolenoidValve {
+	private final DoubleSolenoid solenoid;
+
+	/**
+	 * <pre>
+	 * public PCMDoubleSolenoidValve(DoubleSolenoid solenoid)
+	 * </pre>
+	 *
+	 * @param solenoid the solenoid to control
+	 */
+	public PCMDoubleSolenoidValve(DoubleSolenoid solenoid) {
+		this.solenoid = solenoid;
+	}
+
+	/**
+	 * @return the solenoid, e.g. for {@code LiveWindow}
+	 */
+	public DoubleSolenoid getDoubleSolenoid() {
+		return solenoid;
+	}
+
+	@Override
+	public void set(DoubleSolenoid.Value value) {
+		solenoid.set(value);
+	}
+
+	@Override
+	public DoubleSolenoid.Value get() {
+		return solenoid.get();
+	}
+}
@@ -0,0 +1,39 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.Solenoid;
+
+/**
+ * The {@code PCMSolenoidValve} class is a {@link SolenoidValve} on the
+ * pneumatics control module: every call goes straight to a {@code Solenoid}.
+ */
+public class PCMSolenoidValve implements SolenoidValve {
+	private final Solenoid solenoid;
+
+	/**
+	 * <pre>
+	 * public PCMSolenoidValve(Solenoid solenoid)
+	 * </pre>
+	 *
+	 * @param solenoid the solenoid to control
+	 */
+	public PCMSolenoidValve(Solenoid solenoid) {
+		this.solenoid = solenoid;
+	}
+
+	/**
+	 * @return the solenoid, e.g. for {@code LiveWindow}
+	 */
+	public Solenoid getSolenoid() {
+		return solenoid;
+	}
+
+	@Override
+	public void set(boolean on) {
+		solenoid.set(on);
+	}
+
+	@Override
+	public boolean get() {
+		return solenoid.get();
+	}
+}
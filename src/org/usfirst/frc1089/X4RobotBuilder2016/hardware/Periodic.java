@@ -0,0 +1,30 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+/**
+ * The {@code Periodic} interface runs a task at a fixed rate in the
+ * background, like WPILib's {@code Notifier}. Get one from
+ * {@link RobotClock#newPeriodic(Runnable)} so it follows the clock the robot
+ * runs on, or, for a control loop, from
+ * {@link ControlExecutor#newPeriodic(String, Runnable)}.
+ */
+public interface Periodic {
+	/**
+	 * <pre>
+	 * void startPeriodic(double periodSecs)
+	 * </pre>
+	 *
+	 * Starts running the task, or restarts it with a new period.
+	 *
+	 * @param periodSecs the time between runs in seconds
+	 */
+	void startPeriodic(double periodSecs);
+
+	/**
+	 * <pre>
+	 * void stop()
+	 * </pre>
+	 *
+	 * Stops running the task. A run in progress is not interrupted.
+	 */
+	void stop();
+}
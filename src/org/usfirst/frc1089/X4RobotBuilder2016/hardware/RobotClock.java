@@ -0,0 +1,82 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.Notifier;
+
+/**
+ * The {@code RobotClock} class is the time base of the robot code: the
+ * monotonic time used for time stamps and the periodic tasks that run in the
+ * background of the scheduler loop.
+ * <p>
+ * On the robot it is the system clock and WPILib {@code Notifier}s. A
+ * simulation installs its own clock with {@link #setInstance(RobotClock)}
+ * before creating any subsystem, so that background tasks run in simulated
+ * time instead of real time.
+ * </p>
+ */
+public abstract class RobotClock {
+	private static volatile RobotClock instance = new SystemClock();
+
+	/**
+	 * @return the clock in use
+	 */
+	public static RobotClock getInstance() {
+		return instance;
+	}
+
+	/**
+	 * <pre>
+	 * public static void setInstance(RobotClock clock)
+	 * </pre>
+	 *
+	 * Replaces the clock in use. Periodic tasks already created keep the clock
+	 * they were created on.
+	 *
+	 * @param clock the new clock
+	 */
+	public static void setInstance(RobotClock clock) {
+		instance = clock;
+	}
+
+	/**
+	 * @return the current time in nanoseconds, which never goes back
+	 */
+	public abstract long nanoTime();
+
+	/**
+	 * <pre>
+	 * public abstract Periodic newPeriodic(Runnable task)
+	 * </pre>
+	 *
+	 * Creates a stopped periodic task on this clock.
+	 *
+	 * @param task the task to run
+	 * @return the periodic task
+	 */
+	public abstract Periodic newPeriodic(Runnable task);
+
+	/**
+	 * The clock of the robot: {@code System.nanoTime()} and {@code Notifier}s.
+	 */
+	private static class SystemClock extends RobotClock {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public Periodic newPeriodic(Runnable task) {
+			final Notifier notifier = new Notifier(task);
+			return new Periodic() {
+				@Override
+				public void startPeriodic(double periodSecs) {
+					notifier.startPeriodic(periodSecs);
+				}
+
+				@Override
+				public void stop() {
+					notifier.stop();
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+/**
+ * The {@code SolenoidValve} interface is the part of the {@code Solenoid} API
+ * the robot code uses. Methods have the same names and meaning as in
+ * {@code Solenoid}.
+ * <p>
+ * Subsystems hold single solenoids through this interface so that they can
+ * run against simulated valves off the robot. On the robot every valve is a
+ * {@link PCMSolenoidValve}.
+ * </p>
+ */
+public interface SolenoidValve {
+	/**
+	 * <pre>
+	 * void set(boolean on)
+	 * </pre>
+	 *
+	 * @param on true to open the valve
+	 */
+	void set(boolean on);
+
+	/**
+	 * @return true if the valve is open
+	 */
+	boolean get();
+}
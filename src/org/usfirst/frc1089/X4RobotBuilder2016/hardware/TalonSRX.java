@@ -0,0 +1,164 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.hardware;
+
+import edu.wpi.first.wpilibj.CANTalon.FeedbackDevice;
+import edu.wpi.first.wpilibj.CANTalon.MotionProfileStatus;
+import edu.wpi.first.wpilibj.CANTalon.TalonControlMode;
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+
+/**
+ * The {@code TalonSRX} interface is the part of the {@code CANTalon} API the
+ * robot code uses. Methods have the same names, units and meaning as in
+ * {@code CANTalon}.
+ * <p>
+ * Subsystems hold Talons through this interface so that they can run against
+ * simulated Talons off the robot. On the robot every Talon is a
+ * {@link CANTalonSRX}.
+ * </p>
+ */
+public interface TalonSRX {
+	/**
+	 * @return the CAN ID of the Talon
+	 */
+	int getDeviceID();
+
+	/**
+	 * <pre>
+	 * void set(double value)
+	 * </pre>
+	 *
+	 * Sets the output or closed loop target, depending on the control mode.
+	 * Also feeds motor safety.
+	 *
+	 * @param value the output, speed (RPM), position (revolutions), motion
+	 *            profile command or leader ID
+	 */
+	void set(double value);
+
+	/**
+	 * @return the last value set
+	 */
+	double get();
+
+	/**
+	 * @param mode the new control mode
+	 */
+	void changeControlMode(TalonControlMode mode);
+
+	/**
+	 * @param profile the closed loop gain slot to use, 0 or 1
+	 */
+	void setProfile(int profile);
+
+	/**
+	 * <pre>
+	 * void setPID(double p, double i, double d, double f, int izone, double closeLoopRampRate, int profile)
+	 * </pre>
+	 *
+	 * Sets the closed loop gains of a slot, in native units.
+	 *
+	 * @param p the proportional gain
+	 * @param i the integral gain
+	 * @param d the derivative gain
+	 * @param f the feedforward gain
+	 * @param izone the error beyond which the integral is cleared, 0 for none
+	 * @param closeLoopRampRate the output ramp rate in volts per second, 0 for none
+	 * @param profile the slot, 0 or 1
+	 */
+	void setPID(double p, double i, double d, double f, int izone, double closeLoopRampRate, int profile);
+
+	/**
+	 * @param brake true to short the motor when the output is neutral, false to let it coast
+	 */
+	void enableBrakeMode(boolean brake);
+
+	/**
+	 * @param device the sensor used for closed loop control
+	 */
+	void setFeedbackDevice(FeedbackDevice device);
+
+	/**
+	 * @param codesPerRev the encoder cycles per revolution, so positions are in revolutions
+	 */
+	void configEncoderCodesPerRev(int codesPerRev);
+
+	/**
+	 * @param flip true if the sensor counts down when the output is positive
+	 */
+	void reverseSensor(boolean flip);
+
+	/**
+	 * @return the sensor position in revolutions
+	 */
+	double getPosition();
+
+	/**
+	 * @param position the new sensor position in revolutions
+	 */
+	void setPosition(double position);
+
+	/**
+	 * @return the sensor speed in RPM
+	 */
+	double getSpeed();
+
+	/**
+	 * @return the output current in amps
+	 */
+	double getOutputCurrent();
+
+	/**
+	 * @return the output voltage in volts
+	 */
+	double getOutputVoltage();
+
+	/**
+	 * @return the supply voltage in volts
+	 */
+	double getBusVoltage();
+
+	/**
+	 * @param timeout the motor safety timeout in seconds
+	 */
+	void setExpiration(double timeout);
+
+	/**
+	 * @param enabled true to stop the motor when {@link #set(double)} is not called within the timeout
+	 */
+	void setSafetyEnabled(boolean enabled);
+
+	/**
+	 * Clears the motion profile buffers.
+	 */
+	void clearMotionProfileTrajectories();
+
+	/**
+	 * Clears the motion profile underrun flag.
+	 */
+	void clearMotionProfileHasUnderrun();
+
+	/**
+	 * @param periodMs the period of the frames moving points to the Talon
+	 */
+	void changeMotionControlFramePeriod(int periodMs);
+
+	/**
+	 * @return true if no more points can be pushed
+	 */
+	boolean isMotionProfileTopLevelBufferFull();
+
+	/**
+	 * @param point the point to add to the top buffer
+	 * @return false if the top buffer is full
+	 */
+	boolean pushMotionProfileTrajectory(TrajectoryPoint point);
+
+	/**
+	 * Moves points from the top buffer towards the Talon.
+	 */
+	void processMotionProfileBuffer();
+
+	/**
+	 * @param status the status to fill
+	 */
+	void getMotionProfileStatus(MotionProfileStatus status);
+}
@@ -0,0 +1,124 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.input;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+/**
+ * The {@code StickShaper} class turns one joystick axis into a drive output.
+ * Each value goes through, in order:
+ * <ol>
+ * <li>a deadband, with the travel outside it stretched back to the full
+ * range, so the output starts from zero at the edge of the deadband;</li>
+ * <li>an expo response curve, {@code (1 - expo) x + expo x^3}, read from a
+ * table computed once at construction;</li>
+ * <li>the precision scale, while precision mode is asked for;</li>
+ * <li>a slew rate limit on the output. Only a rise in the size of the
+ * output is limited: letting go of the stick stops at once, and reversing
+ * goes through zero at once.</li>
+ * </ol>
+ * <p>
+ * The curve is symmetric, so sign conventions pass through unchanged.
+ * Shaping never allocates. The class is not thread safe and is meant to be
+ * used from the scheduler thread.
+ * </p>
+ */
+public class StickShaper {
+	private static final int TABLE_SIZE = 256; // intervals of the response curve table
+	private static final double NOMINAL_PERIOD_SECS = 0.02; // the scheduler period, for the first value
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final double deadband;
+	private final double slewRatePerSec;
+	private final double precisionScale;
+	private final double[] curve = new double[TABLE_SIZE + 1];
+	private double output = 0;
+	private long lastTime;
+	private boolean started = false;
+
+	/**
+	 * <pre>
+	 * public StickShaper(double deadband, double expo, double slewRatePerSec, double precisionScale)
+	 * </pre>
+	 *
+	 * Constructs a new {@code StickShaper} and computes its response curve.
+	 *
+	 * @param deadband the stick travel ignored around the center, from 0 to less than 1
+	 * @param expo the blend of the response curve, from 0 (linear) to 1 (cubic)
+	 * @param slewRatePerSec the fastest rise of the output, in full output per second
+	 * @param precisionScale the output scale in precision mode, from 0 to 1
+	 */
+	public StickShaper(double deadband, double expo, double slewRatePerSec, double precisionScale) {
+		this.deadband = deadband;
+		this.slewRatePerSec = slewRatePerSec;
+		this.precisionScale = precisionScale;
+		for (int i = 0; i <= TABLE_SIZE; i++) {
+			double x = (double) i / TABLE_SIZE;
+			curve[i] = (1 - expo) * x + expo * x * x * x;
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public double shape(double value, boolean precision)
+	 * </pre>
+	 *
+	 * Shapes the next value of the axis.
+	 *
+	 * @param value the axis value, between -1 and 1
+	 * @param precision whether to scale the output down for precise driving
+	 * @return the output, between -1 and 1
+	 */
+	public double shape(double value, boolean precision) {
+		double target = lookUp((Math.abs(value) - deadband) / (1 - deadband));
+		if (precision) {
+			target *= precisionScale;
+		}
+		if (value < 0) {
+			target = -target;
+		}
+
+		long now = RobotClock.getInstance().nanoTime();
+		double maxStep = slewRatePerSec * (started ? (now - lastTime) / NANOS_IN_SECOND : NOMINAL_PERIOD_SECS);
+		lastTime = now;
+		started = true;
+		if (target * output >= 0 && Math.abs(target) <= Math.abs(output)) {
+			output = target; // slowing down
+		} else {
+			double from = target * output < 0 ? 0 : output;
+			output = from + Math.max(-maxStep, Math.min(maxStep, target - from));
+		}
+		return output;
+	}
+
+	// Reads the response curve at a stick travel, interpolating the table
+	private double lookUp(double travel) {
+		if (travel <= 0) {
+			return 0;
+		}
+		if (travel >= 1) {
+			return curve[TABLE_SIZE];
+		}
+		double position = travel * TABLE_SIZE;
+		int index = (int) position;
+		double fraction = position - index;
+		return curve[index] + fraction * (curve[index + 1] - curve[index]);
+	}
+
+	/**
+	 * <pre>
+	 * public void reset()
+	 * </pre>
+	 *
+	 * Sets the output back to zero, e.g. when a command starts driving.
+	 */
+	public void reset() {
+		output = 0;
+		started = false;
+	}
+
+	/**
+	 * @return the last output
+	 */
+	public double getOutput() {
+		return output;
+	}
+}
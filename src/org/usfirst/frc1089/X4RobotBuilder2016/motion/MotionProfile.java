@@ -0,0 +1,139 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+
+/**
+ * The {@code MotionProfile} class holds the Talon trajectory points that drive
+ * the robot straight for a given distance, as fast as the velocity and
+ * acceleration limits in {@link Config} allow.
+ * <p>
+ * The profile is a {@link TrapezoidProfile} sampled every
+ * {@code Config.PROFILE_POINT_MILLIS}. Points are already in Talon units (encoder
+ * revolutions and RPM) for each side. Positions are relative to the start of
+ * the profile: the drive train offsets them by the wheel positions as it
+ * streams them, since zeroing the encoders would make the odometry jump.
+ * Profiles are cached by distance; build them when the robot starts with
+ * {@link #forDistance(double)} so autonomous does not pay for them.
+ * </p>
+ */
+public class MotionProfile {
+	private static final double MILLIS_IN_SECOND = 1000.0;
+	private static final double SECS_IN_MINUTE = 60.0;
+	private static final int PROFILE_SLOT = 0; // the velocity slot, whose F gain is the velocity feedforward
+
+	private static final Map<Double, MotionProfile> cache = new HashMap<Double, MotionProfile>();
+
+	private final double distanceInches;
+	private final double durationSecs;
+	private final TrajectoryPoint[] leftPoints;
+	private final TrajectoryPoint[] rightPoints;
+
+	/**
+	 * <pre>
+	 * public static synchronized MotionProfile forDistance(double distanceInches)
+	 * </pre>
+	 *
+	 * Gets the profile for a distance, building it the first time.
+	 *
+	 * @param distanceInches the distance to drive, negative to drive backwards
+	 * @return the profile
+	 */
+	public static synchronized MotionProfile forDistance(double distanceInches) {
+		MotionProfile profile = cache.get(distanceInches);
+		if (profile == null) {
+			profile = new MotionProfile(distanceInches, Config.getInstance());
+			cache.put(distanceInches, profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * <pre>
+	 * public MotionProfile(double distanceInches, Config config)
+	 * </pre>
+	 *
+	 * Builds a profile without caching it.
+	 *
+	 * @param distanceInches the distance to drive, negative to drive backwards
+	 * @param config the robot whose drive train and limits to use
+	 */
+	public MotionProfile(double distanceInches, Config config) {
+		this.distanceInches = distanceInches;
+		double sign = Math.signum(distanceInches);
+		TrapezoidProfile trapezoid = new TrapezoidProfile(Math.abs(distanceInches),
+				config.PROFILE_MAX_VELOCITY_INCHES_PER_SEC, config.PROFILE_MAX_ACCEL_INCHES_PER_SEC_SQ);
+		durationSecs = trapezoid.getDurationSecs();
+
+		double pointSecs = config.PROFILE_POINT_MILLIS / MILLIS_IN_SECOND;
+		int count = Math.max(1, (int) Math.ceil(durationSecs / pointSecs));
+		leftPoints = new TrajectoryPoint[count];
+		rightPoints = new TrajectoryPoint[count];
+		double leftScale = sign * config.LEFT_DRIVE_SIGN / config.DRIVE_INCHES_PER_ENCODER_REV;
+		double rightScale = sign * config.RIGHT_DRIVE_SIGN / config.DRIVE_INCHES_PER_ENCODER_REV;
+
+		for (int i = 0; i < count; i++) {
+			double t = Math.min((i + 1) * pointSecs, durationSecs);
+			double position = trapezoid.getPosition(t);
+			double velocity = trapezoid.getVelocity(t);
+			boolean last = i == count - 1;
+			leftPoints[i] = point(position * leftScale, velocity * leftScale * SECS_IN_MINUTE,
+					config.PROFILE_POINT_MILLIS, last);
+			rightPoints[i] = point(position * rightScale, velocity * rightScale * SECS_IN_MINUTE,
+					config.PROFILE_POINT_MILLIS, last);
+		}
+	}
+
+	private static TrajectoryPoint point(double position, double velocity, int durationMillis, boolean last) {
+		TrajectoryPoint point = new TrajectoryPoint();
+		point.position = position;
+		point.velocity = velocity;
+		point.timeDurMs = durationMillis;
+		point.profileSlotSelect = PROFILE_SLOT;
+		point.velocityOnly = false;
+		point.zeroPos = false; // the streamer offsets the positions instead
+		point.isLastPoint = last;
+		return point;
+	}
+
+	/**
+	 * @return the distance driven by this profile in inches
+	 */
+	public double getDistanceInches() {
+		return distanceInches;
+	}
+
+	/**
+	 * @return the time the profile takes in seconds
+	 */
+	public double getDurationSecs() {
+		return durationSecs;
+	}
+
+	/**
+	 * @return the number of points per side
+	 */
+	public int getPointCount() {
+		return leftPoints.length;
+	}
+
+	/**
+	 * @param index the index of the point
+	 * @return the point for the left Talon
+	 */
+	public TrajectoryPoint getLeftPoint(int index) {
+		return leftPoints[index];
+	}
+
+	/**
+	 * @param index the index of the point
+	 * @return the point for the right Talon
+	 */
+	public TrajectoryPoint getRightPoint(int index) {
+		return rightPoints[index];
+	}
+}
@@ -0,0 +1,243 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+import java.util.function.DoubleSupplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.ControlExecutor;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.VisionFrame;
+
+import edu.wpi.first.wpilibj.interfaces.Gyro;
+
+/**
+ * The {@code Odometry} class tracks the robot pose by dead reckoning at a
+ * fixed rate, much faster than the 50 Hz scheduler loop.
+ * <p>
+ * The distance driven comes from the mean of both drive side encoders and the
+ * heading from the gyro, which unlike the encoders does not suffer from wheel
+ * scrub when a skid steer robot turns. Each step is integrated along the mean
+ * of the old and new headings.
+ * </p>
+ * <p>
+ * The pose is written by a single thread and read lock-free through a
+ * sequence counter: the writer makes it odd while updating, and readers retry
+ * until they read the same even value before and after copying the pose.
+ * Time stamps use the same clock as {@link VisionFrame#now()}.
+ * </p>
+ */
+public class Odometry {
+	public static final double DEFAULT_PERIOD_SECS = 0.005; // 200 Hz
+
+	private final DoubleSupplier leftInches;
+	private final DoubleSupplier rightInches;
+	private final Gyro gyro;
+
+	// State of the updating thread
+	private boolean initialized = false;
+	private double lastLeft;
+	private double lastRight;
+	private double lastHeading;
+	private double headingOffset;
+	private double stateX;
+	private double stateY;
+
+	// Published pose
+	private volatile int version = 0;
+	private volatile double x;
+	private volatile double y;
+	private volatile double heading;
+	private volatile long timeStamp;
+
+	// Reset requested by another thread, applied by the updating thread
+	private volatile boolean resetRequested = false;
+	private volatile double resetX;
+	private volatile double resetY;
+	private volatile double resetHeading;
+
+	private final Periodic periodic = ControlExecutor.getInstance().newPeriodic("Odometry", new Runnable() {
+		@Override
+		public void run() {
+			update();
+		}
+	});
+	private boolean running = false;
+
+	/**
+	 * <pre>
+	 * public Odometry(DoubleSupplier leftInches, DoubleSupplier rightInches, Gyro gyro)
+	 * </pre>
+	 *
+	 * Constructs a new {@code Odometry} starting at the origin, facing along X.
+	 *
+	 * @param leftInches the distance driven by the left wheels, positive forward
+	 * @param rightInches the distance driven by the right wheels, positive forward
+	 * @param gyro the gyro giving the heading, clockwise positive
+	 */
+	public Odometry(DoubleSupplier leftInches, DoubleSupplier rightInches, Gyro gyro) {
+		this.leftInches = leftInches;
+		this.rightInches = rightInches;
+		this.gyro = gyro;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void start()
+	 * </pre>
+	 *
+	 * Starts updating the pose every DEFAULT_PERIOD_SECS on the {@link ControlExecutor}.
+	 */
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			periodic.startPeriodic(DEFAULT_PERIOD_SECS);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void stop()
+	 * </pre>
+	 *
+	 * Stops updating the pose.
+	 */
+	public synchronized void stop() {
+		if (running) {
+			running = false;
+			periodic.stop();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void update()
+	 * </pre>
+	 *
+	 * Reads the sensors and advances the pose. Must only be called from one thread.
+	 */
+	public void update() {
+		update(VisionFrame.now(), leftInches.getAsDouble(), rightInches.getAsDouble(), gyro.getAngle());
+	}
+
+	/**
+	 * <pre>
+	 * public void update(long timeStamp, double left, double right, double gyroAngle)
+	 * </pre>
+	 *
+	 * Advances the pose with sensor readings taken at the given time. Must only
+	 * be called from one thread.
+	 *
+	 * @param timeStamp the time of the readings in nanoseconds
+	 * @param left the left encoder distance in inches
+	 * @param right the right encoder distance in inches
+	 * @param gyroAngle the gyro angle in degrees
+	 */
+	public void update(long timeStamp, double left, double right, double gyroAngle) {
+		if (resetRequested || !initialized) {
+			if (resetRequested) {
+				resetRequested = false;
+				stateX = resetX;
+				stateY = resetY;
+				headingOffset = resetHeading - gyroAngle;
+			} else {
+				headingOffset = -gyroAngle;
+			}
+			initialized = true;
+			lastLeft = left;
+			lastRight = right;
+			lastHeading = gyroAngle + headingOffset;
+			publish(stateX, stateY, lastHeading, timeStamp);
+			return;
+		}
+
+		double newHeading = gyroAngle + headingOffset;
+		double distance = ((left - lastLeft) + (right - lastRight)) / 2;
+		double midHeading = Math.toRadians((lastHeading + newHeading) / 2);
+		stateX += distance * Math.cos(midHeading);
+		stateY += distance * Math.sin(midHeading);
+		lastLeft = left;
+		lastRight = right;
+		lastHeading = newHeading;
+		publish(stateX, stateY, newHeading, timeStamp);
+	}
+
+	private void publish(double newX, double newY, double newHeading, long newTimeStamp) {
+		int v = version;
+		version = v + 1; // odd while writing
+		x = newX;
+		y = newY;
+		heading = newHeading;
+		timeStamp = newTimeStamp;
+		version = v + 2;
+	}
+
+	/**
+	 * <pre>
+	 * public void reset(double x, double y, double heading)
+	 * </pre>
+	 *
+	 * Sets the pose; applied by the next update. May be called from any thread.
+	 *
+	 * @param x the X position in inches
+	 * @param y the Y position in inches
+	 * @param heading the heading in degrees, clockwise positive
+	 */
+	public void reset(double x, double y, double heading) {
+		resetX = x;
+		resetY = y;
+		resetHeading = heading;
+		resetRequested = true;
+	}
+
+	/**
+	 * <pre>
+	 * public Pose getPose(Pose pose)
+	 * </pre>
+	 *
+	 * Copies the latest pose. May be called from any thread; does not allocate.
+	 *
+	 * @param pose the pose to fill
+	 * @return the filled pose
+	 */
+	public Pose getPose(Pose pose) {
+		double readX, readY, readHeading;
+		long readTimeStamp;
+		int before, after;
+		do {
+			before = version;
+			readX = x;
+			readY = y;
+			readHeading = heading;
+			readTimeStamp = timeStamp;
+			after = version;
+		} while ((before & 1) != 0 || before != after);
+		pose.set(readX, readY, readHeading, readTimeStamp);
+		return pose;
+	}
+
+	/**
+	 * @return the latest X position in inches
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * @return the latest Y position in inches
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * @return the latest heading in degrees, clockwise positive
+	 */
+	public double getHeading() {
+		return heading;
+	}
+
+	/**
+	 * @return the time of the latest pose in nanoseconds
+	 */
+	public long getTimeStamp() {
+		return timeStamp;
+	}
+}
@@ -0,0 +1,52 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+/**
+ * The {@code Pose} class holds a robot position and heading on the field at
+ * an instant. It is mutable so callers can keep one and refill it every loop
+ * (see {@link Odometry#getPose(Pose)}).
+ * <p>
+ * X is forward and Y is to the right of the robot's pose at the last reset;
+ * the heading is in degrees, clockwise positive, like the gyro.
+ * </p>
+ */
+public class Pose {
+	private double x;
+	private double y;
+	private double heading;
+	private long timeStamp;
+
+	void set(double x, double y, double heading, long timeStamp) {
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+		this.timeStamp = timeStamp;
+	}
+
+	/**
+	 * @return the X position in inches
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * @return the Y position in inches
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * @return the heading in degrees, clockwise positive
+	 */
+	public double getHeading() {
+		return heading;
+	}
+
+	/**
+	 * @return the time of the pose in nanoseconds, on the clock of {@link org.usfirst.frc1089.X4RobotBuilder2016.sensors.VisionFrame#now()}
+	 */
+	public long getTimeStamp() {
+		return timeStamp;
+	}
+}
@@ -0,0 +1,191 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+
+/**
+ * The {@code ProfiledTurn} class computes the drive output that turns the robot
+ * in place by a given angle as fast as the rate and acceleration limits allow,
+ * without overshoot.
+ * <p>
+ * The heading setpoint follows a {@link TrapezoidProfile} instead of jumping
+ * to the target. The output is a feedforward from the profiled rate and
+ * acceleration, which does most of the work, plus PID on the tracking error,
+ * with the derivative taken on the difference between the profiled and the
+ * measured rate. The turn is settled once the profile is over and both the
+ * heading error and the turn rate are within the tolerances in {@link Config}.
+ * </p>
+ * <p>
+ * Angles are in degrees, clockwise positive, and not wrapped, like
+ * {@code Gyro.getAngle()}. A {@code ProfiledTurn} is not thread safe.
+ * </p>
+ */
+public class ProfiledTurn {
+	private final double maxRate;
+	private final double maxAccel;
+	private double kV;
+	private double kA;
+	private double kS;
+	private final double settleDegrees;
+	private final double settleRate;
+	private double p;
+	private double i;
+	private double d;
+
+	private TrapezoidProfile profile = new TrapezoidProfile(0, 1, 1);
+	private double startHeading;
+	private double direction;
+	private double errorSum;
+	private double lastTime;
+
+	/**
+	 * <pre>
+	 * public ProfiledTurn(Config config)
+	 * </pre>
+	 *
+	 * Constructs a new {@code ProfiledTurn} with the limits and untuned gains of a robot.
+	 *
+	 * @param config the robot to use
+	 */
+	public ProfiledTurn(Config config) {
+		this(config, TurnGains.fromConfig(config));
+	}
+
+	/**
+	 * <pre>
+	 * public ProfiledTurn(Config config, TurnGains gains)
+	 * </pre>
+	 *
+	 * Constructs a new {@code ProfiledTurn} with the limits of a robot and the given gains.
+	 *
+	 * @param config the robot to use
+	 * @param gains the feedforward and PID gains
+	 */
+	public ProfiledTurn(Config config, TurnGains gains) {
+		maxRate = config.TURN_MAX_RATE_DEGREES_PER_SEC;
+		maxAccel = config.TURN_MAX_ACCEL_DEGREES_PER_SEC_SQ;
+		settleDegrees = config.TURN_SETTLE_DEGREES;
+		settleRate = config.TURN_SETTLE_RATE_DEGREES_PER_SEC;
+		setGains(gains);
+	}
+
+	/**
+	 * <pre>
+	 * public void setGains(TurnGains gains)
+	 * </pre>
+	 *
+	 * Sets the feedforward and feedback gains, e.g. after tuning.
+	 *
+	 * @param gains the new gains
+	 */
+	public void setGains(TurnGains gains) {
+		kV = gains.kV;
+		kA = gains.kA;
+		kS = gains.kS;
+		setPID(gains.turnP, gains.turnI, gains.turnD);
+	}
+
+	/**
+	 * <pre>
+	 * public void setPID(double p, double i, double d)
+	 * </pre>
+	 *
+	 * Sets the feedback gains, in output per degree of tracking error.
+	 *
+	 * @param p the proportional gain
+	 * @param i the integral gain, per degree second
+	 * @param d the derivative gain, per degree per second
+	 */
+	public void setPID(double p, double i, double d) {
+		this.p = p;
+		this.i = i;
+		this.d = d;
+	}
+
+	/**
+	 * <pre>
+	 * public void start(double heading, double degrees)
+	 * </pre>
+	 *
+	 * Starts a turn at time 0.
+	 *
+	 * @param heading the current heading
+	 * @param degrees the angle to turn, positive clockwise
+	 */
+	public void start(double heading, double degrees) {
+		profile = new TrapezoidProfile(Math.abs(degrees), maxRate, maxAccel);
+		startHeading = heading;
+		direction = Math.signum(degrees);
+		errorSum = 0;
+		lastTime = 0;
+	}
+
+	/**
+	 * <pre>
+	 * public double calculate(double t, double heading, double rate)
+	 * </pre>
+	 *
+	 * Computes the drive output for the current state.
+	 *
+	 * @param t the time since the start of the turn in seconds
+	 * @param heading the measured heading
+	 * @param rate the measured turn rate in degrees per second
+	 * @return the output, positive to turn clockwise, between -1 and 1
+	 */
+	public double calculate(double t, double heading, double rate) {
+		double profileRate = direction * profile.getVelocity(t);
+		double profileAccel = direction * profile.getAcceleration(t);
+		double error = getSetpoint(t) - heading;
+		errorSum += error * Math.max(0, t - lastTime);
+		lastTime = t;
+
+		// Overcome static friction in the direction of the profile, or of the
+		// remaining error once the profile is over
+		double friction;
+		if (profileRate != 0) {
+			friction = Math.signum(profileRate);
+		} else {
+			friction = Math.abs(error) > settleDegrees / 2 ? Math.signum(error) : 0;
+		}
+
+		double output = kV * profileRate + kA * profileAccel + kS * friction + p * error + i * errorSum
+				+ d * (profileRate - rate);
+		return Math.max(-1, Math.min(1, output));
+	}
+
+	/**
+	 * @param t the time since the start of the turn in seconds
+	 * @return the profiled heading at that time
+	 */
+	public double getSetpoint(double t) {
+		return startHeading + direction * profile.getPosition(t);
+	}
+
+	/**
+	 * @return the heading at the end of the turn
+	 */
+	public double getTarget() {
+		return startHeading + direction * profile.getDistance();
+	}
+
+	/**
+	 * @return the time the profile takes in seconds
+	 */
+	public double getDurationSecs() {
+		return profile.getDurationSecs();
+	}
+
+	/**
+	 * <pre>
+	 * public boolean isSettled(double t, double heading, double rate)
+	 * </pre>
+	 *
+	 * @param t the time since the start of the turn in seconds
+	 * @param heading the measured heading
+	 * @param rate the measured turn rate in degrees per second
+	 * @return true if the profile is over and the robot is stopped on the target
+	 */
+	public boolean isSettled(double t, double heading, double rate) {
+		return t >= profile.getDurationSecs() && Math.abs(getTarget() - heading) <= settleDegrees
+				&& Math.abs(rate) <= settleRate;
+	}
+}
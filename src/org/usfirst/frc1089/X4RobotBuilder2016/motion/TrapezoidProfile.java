@@ -0,0 +1,109 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+/**
+ * The {@code TrapezoidProfile} class describes the fastest move over a
+ * distance under velocity and acceleration limits: accelerate at the limit,
+ * cruise at the velocity limit, then decelerate at the limit. Moves too short
+ * to reach the velocity limit have no cruise (a triangular velocity profile).
+ * <p>
+ * Units are up to the caller (inches, degrees...). The profile starts and
+ * ends at rest, and positions are measured from the start of the move.
+ * </p>
+ */
+public class TrapezoidProfile {
+	private final double distance;
+	private final double accel;
+	private final double cruiseVelocity;
+	private final double accelSecs;
+	private final double cruiseSecs;
+	private final double accelDistance;
+	private final double durationSecs;
+
+	/**
+	 * <pre>
+	 * public TrapezoidProfile(double distance, double maxVelocity, double maxAccel)
+	 * </pre>
+	 *
+	 * @param distance the length of the move, not negative
+	 * @param maxVelocity the velocity limit, positive
+	 * @param maxAccel the acceleration limit, positive
+	 */
+	public TrapezoidProfile(double distance, double maxVelocity, double maxAccel) {
+		this.distance = distance;
+		this.accel = maxAccel;
+		double t = maxVelocity / maxAccel;
+		double v = maxVelocity;
+		if (maxAccel * t * t > distance) {
+			// Too short to reach the velocity limit
+			t = Math.sqrt(distance / maxAccel);
+			v = maxAccel * t;
+		}
+		accelSecs = t;
+		cruiseVelocity = v;
+		accelDistance = 0.5 * maxAccel * t * t;
+		cruiseSecs = v > 0 ? (distance - 2 * accelDistance) / v : 0;
+		durationSecs = 2 * accelSecs + cruiseSecs;
+	}
+
+	/**
+	 * @return the time the move takes in seconds
+	 */
+	public double getDurationSecs() {
+		return durationSecs;
+	}
+
+	/**
+	 * @return the length of the move
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @param t the time since the start of the move in seconds
+	 * @return the position at that time
+	 */
+	public double getPosition(double t) {
+		if (t <= 0) {
+			return 0;
+		} else if (t < accelSecs) {
+			return 0.5 * accel * t * t;
+		} else if (t < accelSecs + cruiseSecs) {
+			return accelDistance + cruiseVelocity * (t - accelSecs);
+		} else if (t < durationSecs) {
+			double remaining = durationSecs - t;
+			return distance - 0.5 * accel * remaining * remaining;
+		}
+		return distance;
+	}
+
+	/**
+	 * @param t the time since the start of the move in seconds
+	 * @return the velocity at that time
+	 */
+	public double getVelocity(double t) {
+		if (t <= 0 || t >= durationSecs) {
+			return 0;
+		} else if (t < accelSecs) {
+			return accel * t;
+		} else if (t < accelSecs + cruiseSecs) {
+			return cruiseVelocity;
+		}
+		return accel * (durationSecs - t);
+	}
+
+	/**
+	 * @param t the time since the start of the move in seconds
+	 * @return the acceleration at that time
+	 */
+	public double getAcceleration(double t) {
+		if (t <= 0 || t >= durationSecs) {
+			return 0;
+		} else if (t < accelSecs) {
+			return accel;
+		} else if (t < accelSecs + cruiseSecs) {
+			return 0;
+		}
+		return -accel;
+	}
+}
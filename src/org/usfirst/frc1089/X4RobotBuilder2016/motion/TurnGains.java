@@ -0,0 +1,143 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config.ConfigType;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.PropertiesFile;
+
+/**
+ * The {@code TurnGains} class holds the gains of the turns of the drive
+ * train: the feedforward and PID of a {@link ProfiledTurn}.
+ * <p>
+ * The defaults come from {@link Config}. Gains tuned on a robot by a
+ * {@link TurnTuner} are saved to a properties file per
+ * {@link ConfigType}, which the {@code DriveTrain} loads when it is
+ * constructed. A {@code TurnGains} is immutable.
+ * </p>
+ */
+public class TurnGains {
+	private static final String DIRECTORY = "/home/lvuser";
+
+	public final double kS; // output to overcome static friction
+	public final double kV; // output per degree per second
+	public final double kA; // output per degree per second squared
+	public final double turnP;
+	public final double turnI; // per degree second
+	public final double turnD; // per degree per second
+
+	/**
+	 * <pre>
+	 * public TurnGains(double kS, double kV, double kA, double turnP, double turnI, double turnD)
+	 * </pre>
+	 *
+	 * Constructs a new {@code TurnGains}.
+	 *
+	 * @param kS the output that overcomes static friction
+	 * @param kV the output per degree per second of turn rate
+	 * @param kA the output per degree per second squared of turn acceleration
+	 * @param turnP the proportional gain of a profiled turn, per degree
+	 * @param turnI the integral gain of a profiled turn, per degree second
+	 * @param turnD the derivative gain of a profiled turn, per degree per second
+	 */
+	public TurnGains(double kS, double kV, double kA, double turnP, double turnI, double turnD) {
+		this.kS = kS;
+		this.kV = kV;
+		this.kA = kA;
+		this.turnP = turnP;
+		this.turnI = turnI;
+		this.turnD = turnD;
+	}
+
+	/**
+	 * <pre>
+	 * public static TurnGains fromConfig(Config config)
+	 * </pre>
+	 *
+	 * @param config the robot to use
+	 * @return the untuned gains of the robot
+	 */
+	public static TurnGains fromConfig(Config config) {
+		return new TurnGains(config.TURN_KS, config.TURN_KV, config.TURN_KA, config.TURN_P, config.TURN_I,
+				config.TURN_D);
+	}
+
+	/**
+	 * <pre>
+	 * public static File getFile(ConfigType configType)
+	 * </pre>
+	 *
+	 * @param configType the robot
+	 * @return the file the tuned gains of the robot are kept in on the roboRIO
+	 */
+	public static File getFile(ConfigType configType) {
+		return new File(DIRECTORY, "turn-gains-" + configType + ".properties");
+	}
+
+	/**
+	 * <pre>
+	 * public static TurnGains load(File file, Config config) throws IOException
+	 * </pre>
+	 *
+	 * Reads gains saved by {@link #save(File, String)}. Gains missing from
+	 * the file are taken from the robot's {@link Config}. A file edited by
+	 * hand must have its checksum line removed.
+	 *
+	 * @param file the file to read
+	 * @param config the robot, for the missing gains
+	 * @return the gains
+	 * @throws IOException if the file cannot be read, is damaged or a gain is not a number
+	 */
+	public static TurnGains load(File file, Config config) throws IOException {
+		Properties properties = PropertiesFile.load(file, false);
+		TurnGains defaults = fromConfig(config);
+		try {
+			return new TurnGains(get(properties, "kS", defaults.kS), get(properties, "kV", defaults.kV),
+					get(properties, "kA", defaults.kA), get(properties, "turnP", defaults.turnP),
+					get(properties, "turnI", defaults.turnI), get(properties, "turnD", defaults.turnD));
+		} catch (NumberFormatException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static double get(Properties properties, String key, double defaultValue) {
+		String value = properties.getProperty(key);
+		return value == null ? defaultValue : Double.parseDouble(value.trim());
+	}
+
+	/**
+	 * <pre>
+	 * public void save(File file, String comment) throws IOException
+	 * </pre>
+	 *
+	 * Writes the gains with a checksum, replacing the file in one step.
+	 *
+	 * @param file the file to write
+	 * @param comment written at the top of the file, e.g. how the gains were found
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file, String comment) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("kS", Double.toString(kS));
+		properties.setProperty("kV", Double.toString(kV));
+		properties.setProperty("kA", Double.toString(kA));
+		properties.setProperty("turnP", Double.toString(turnP));
+		properties.setProperty("turnI", Double.toString(turnI));
+		properties.setProperty("turnD", Double.toString(turnD));
+		PropertiesFile.save(file, properties, comment);
+	}
+
+	/**
+	 * <pre>
+	 * public String toString()
+	 * </pre>
+	 *
+	 * @return the gains on one line
+	 */
+	@Override
+	public String toString() {
+		return String.format("kS %.4f, kV %.6f, kA %.6f, turn PID %.4f/%.4f/%.5f", kS, kV, kA, turnP, turnI, turnD);
+	}
+}
@@ -0,0 +1,438 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.motion;
+
+import java.util.Arrays;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+
+/**
+ * The {@code TurnTuner} class finds the {@link TurnGains} of a drive train by
+ * experiment. It is fed the heading and turn rate every period, returns the
+ * turn output to apply, and goes through these states:
+ * <ol>
+ * <li>{@code MEASURING_NOISE}: holds the output at zero and measures the
+ * noise of the heading about its drift.</li>
+ * <li>{@code STEPPING} and {@code RESTING}: turns in place from rest at a low
+ * and a high output each way, and measures the steady turn rate, the dead
+ * time and the time constant of each step response (the two point method, at
+ * 28.3% and 63.2% of the steady rate).</li>
+ * <li>{@code SEARCHING}: fits the model
+ * {@code output = kS sgn(rate) + kV rate + kA accel}, delayed by the dead
+ * time, to the steps. Then it simulates turns on the model, and on a harder
+ * one with more friction, inertia and delay so the gains have some margin,
+ * with each combination of a grid of PID gains of a {@link ProfiledTurn} on
+ * 10 to 180 degree turns. The gains that settle soonest in total are kept.
+ * The search takes seconds, so it is not done by {@link #update(double, double, double)},
+ * which only holds the output at zero meanwhile, but by {@link #search()}.</li>
+ * <li>{@code DONE} or {@code FAILED}, with the output at zero.</li>
+ * </ol>
+ * <p>
+ * The robot needs about 12 seconds and a few feet of clear floor around it,
+ * as it turns almost a full circle each way. A {@code TurnTuner} is not
+ * thread safe: once it is {@code SEARCHING}, the thread that updated it must
+ * leave it to the thread that searches, e.g. one of low priority.
+ * </p>
+ */
+public class TurnTuner {
+	/**
+	 * The {@code State} enum is the progress of the tuning.
+	 */
+	public enum State {
+		MEASURING_NOISE, STEPPING, RESTING, SEARCHING, DONE, FAILED;
+	}
+
+	private static final double NOISE_SECS = 1.0;
+	private static final double STEP_SECS = 1.5;
+	private static final double REST_SECS = 1.0;
+	private static final double LOW_OUTPUT = 0.3; // well above static friction
+	private static final double HIGH_OUTPUT = 0.6;
+	private static final double[] STEP_OUTPUTS = { LOW_OUTPUT, -LOW_OUTPUT, HIGH_OUTPUT, -HIGH_OUTPUT };
+	private static final double STEADY_FRACTION = 1.0 / 3; // the end of each step, averaged for the steady rate
+
+	private static final double MODEL_STEP_SECS = 0.001;
+	private static final double[] TEST_TURNS_DEGREES = { 10, 45, 90, 180 };
+	private static final double MAX_SETTLE_SECS = 2.0; // after the end of the profile
+	private static final double TIMEOUT_SECS_PER_DEGREE = 0.1; // cost of the error left at a timeout
+	private static final double HARD_FRICTION = 1.25;
+	private static final double HARD_INERTIA = 1.25;
+
+	private static final double[] PROPORTIONAL_GAINS = { 0.005, 0.01, 0.015, 0.02, 0.03, 0.045, 0.065, 0.1, 0.15 };
+	private static final double[] TURN_INTEGRAL_GAINS = { 0, 0.02, 0.05, 0.1 };
+	private static final double[] TURN_DERIVATIVE_GAINS = { 0, 0.0005, 0.001, 0.002, 0.003, 0.005, 0.008 };
+	private static final int TURN_CANDIDATES = PROPORTIONAL_GAINS.length * TURN_INTEGRAL_GAINS.length
+			* TURN_DERIVATIVE_GAINS.length;
+
+	private final Config config;
+	private final double periodSecs;
+	private volatile State state = State.MEASURING_NOISE; // read by other threads, e.g. for the dashboard
+	private String failure = null;
+	private boolean started = false;
+	private double phaseStart;
+	private int step = 0;
+
+	// Measurements
+	private final double[] noiseTimes;
+	private final double[] noiseHeadings;
+	private int noiseCount = 0;
+	private final double[][] stepTimes;
+	private final double[][] stepRates;
+	private final int[] stepCounts = new int[STEP_OUTPUTS.length];
+
+	// Identified plant
+	private double headingNoise;
+	private double kS;
+	private double kV;
+	private double kA;
+	private double deadTimeSecs;
+
+	// Search
+	private TurnModel nominal;
+	private TurnModel hard;
+	private ProfiledTurn trial;
+	private double bestTurnCost = Double.MAX_VALUE;
+	private int bestTurn;
+	private TurnGains gains = null;
+
+	/**
+	 * <pre>
+	 * public TurnTuner(Config config, double periodSecs)
+	 * </pre>
+	 *
+	 * Constructs a new {@code TurnTuner} in the {@code MEASURING_NOISE}
+	 * state. The robot must be at rest.
+	 *
+	 * @param config the robot to tune, for the turn limits and settle tolerance
+	 * @param periodSecs the period {@link #update(double, double, double)}
+	 *            will be called at, which is also the period of profiled turns
+	 */
+	public TurnTuner(Config config, double periodSecs) {
+		this.config = config;
+		this.periodSecs = periodSecs;
+		noiseTimes = new double[(int) Math.ceil(NOISE_SECS / periodSecs) + 2];
+		noiseHeadings = new double[noiseTimes.length];
+		int stepSamples = (int) Math.ceil(STEP_SECS / periodSecs) + 2;
+		stepTimes = new double[STEP_OUTPUTS.length][stepSamples];
+		stepRates = new double[STEP_OUTPUTS.length][stepSamples];
+	}
+
+	/**
+	 * <pre>
+	 * public double update(double t, double heading, double rate)
+	 * </pre>
+	 *
+	 * Records the state of the robot and moves the tuning on.
+	 *
+	 * @param t the time in seconds, from any start
+	 * @param heading the gyro heading in degrees, clockwise positive
+	 * @param rate the gyro turn rate in degrees per second
+	 * @return the turn output to apply, positive to turn clockwise, between -1 and 1
+	 */
+	public double update(double t, double heading, double rate) {
+		if (!started) {
+			started = true;
+			phaseStart = t;
+		}
+		double elapsed = t - phaseStart;
+		switch (state) {
+		case MEASURING_NOISE:
+			if (noiseCount < noiseTimes.length) {
+				noiseTimes[noiseCount] = elapsed;
+				noiseHeadings[noiseCount] = heading;
+				noiseCount++;
+			}
+			if (elapsed >= NOISE_SECS) {
+				measureNoise();
+				startPhase(State.STEPPING, t);
+				return STEP_OUTPUTS[step];
+			}
+			return 0;
+		case STEPPING:
+			int count = stepCounts[step];
+			if (count < stepTimes[step].length) {
+				stepTimes[step][count] = elapsed;
+				stepRates[step][count] = rate;
+				stepCounts[step]++;
+			}
+			if (elapsed >= STEP_SECS) {
+				startPhase(State.RESTING, t);
+				return 0;
+			}
+			return STEP_OUTPUTS[step];
+		case RESTING:
+			if (elapsed >= REST_SECS) {
+				if (++step < STEP_OUTPUTS.length) {
+					startPhase(State.STEPPING, t);
+					return STEP_OUTPUTS[step];
+				}
+				if (identify()) {
+					startPhase(State.SEARCHING, t);
+				}
+			}
+			return 0;
+		case SEARCHING:
+			return 0; // wait for search()
+		default:
+			return 0;
+		}
+	}
+
+	private void startPhase(State state, double t) {
+		this.state = state;
+		phaseStart = t;
+	}
+
+	private void fail(String reason) {
+		failure = reason; // before the state, which publishes it
+		state = State.FAILED;
+	}
+
+	// Takes the standard deviation of the heading about a straight line fit, which is the drift
+	private void measureNoise() {
+		double meanT = 0;
+		double meanHeading = 0;
+		for (int i = 0; i < noiseCount; i++) {
+			meanT += noiseTimes[i];
+			meanHeading += noiseHeadings[i];
+		}
+		meanT /= noiseCount;
+		meanHeading /= noiseCount;
+		double covariance = 0;
+		double variance = 0;
+		for (int i = 0; i < noiseCount; i++) {
+			covariance += (noiseTimes[i] - meanT) * (noiseHeadings[i] - meanHeading);
+			variance += (noiseTimes[i] - meanT) * (noiseTimes[i] - meanT);
+		}
+		double drift = variance > 0 ? covariance / variance : 0;
+		double sumSquares = 0;
+		for (int i = 0; i < noiseCount; i++) {
+			double residual = noiseHeadings[i] - meanHeading - drift * (noiseTimes[i] - meanT);
+			sumSquares += residual * residual;
+		}
+		headingNoise = Math.sqrt(sumSquares / Math.max(1, noiseCount - 1));
+	}
+
+	// Fits the model to the step responses; returns false and fails if they make no sense
+	private boolean identify() {
+		double lowRate = 0;
+		double highRate = 0;
+		double timeConstant = 0;
+		double deadTime = 0;
+		for (int k = 0; k < STEP_OUTPUTS.length; k++) {
+			double direction = Math.signum(STEP_OUTPUTS[k]);
+			int count = stepCounts[k];
+			int from = (int) (count * (1 - STEADY_FRACTION));
+			double steady = 0;
+			for (int i = from; i < count; i++) {
+				steady += direction * stepRates[k][i];
+			}
+			steady /= Math.max(1, count - from);
+			if (steady < 0) {
+				fail("the robot turned the wrong way at output " + STEP_OUTPUTS[k] + "; check the drive signs");
+				return false;
+			}
+			double t28 = crossingTime(k, direction, 0.283 * steady);
+			double t63 = crossingTime(k, direction, 0.632 * steady);
+			if (steady == 0 || Double.isNaN(t28) || Double.isNaN(t63)) {
+				fail("the robot did not turn at output " + STEP_OUTPUTS[k]);
+				return false;
+			}
+			double tau = 1.5 * (t63 - t28);
+			timeConstant += tau;
+			deadTime += Math.max(0, t63 - tau);
+			if (Math.abs(STEP_OUTPUTS[k]) == LOW_OUTPUT) {
+				lowRate += steady / 2;
+			} else {
+				highRate += steady / 2;
+			}
+		}
+		if (highRate <= lowRate) {
+			fail("the robot turned no faster at output " + HIGH_OUTPUT + " than at " + LOW_OUTPUT);
+			return false;
+		}
+		timeConstant = Math.max(2 * MODEL_STEP_SECS, timeConstant / STEP_OUTPUTS.length);
+		kV = (HIGH_OUTPUT - LOW_OUTPUT) / (highRate - lowRate);
+		kS = Math.max(0, LOW_OUTPUT - kV * lowRate);
+		kA = kV * timeConstant;
+		deadTimeSecs = deadTime / STEP_OUTPUTS.length;
+
+		nominal = new TurnModel(kS, kV, kA, deadTimeSecs);
+		hard = new TurnModel(HARD_FRICTION * kS, kV, HARD_INERTIA * kA, deadTimeSecs + periodSecs);
+		trial = new ProfiledTurn(config, new TurnGains(kS, kV, kA, 0, 0, 0));
+		return true;
+	}
+
+	// Returns the time the direction-corrected rate of a step first reached a level, or NaN if it never did
+	private double crossingTime(int k, double direction, double level) {
+		double[] times = stepTimes[k];
+		double[] rates = stepRates[k];
+		for (int i = 0; i < stepCounts[k]; i++) {
+			double value = direction * rates[i];
+			if (value >= level) {
+				if (i == 0) {
+					return times[0];
+				}
+				double previous = direction * rates[i - 1];
+				return times[i - 1] + (times[i] - times[i - 1]) * (level - previous) / (value - previous);
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * <pre>
+	 * public void search()
+	 * </pre>
+	 *
+	 * Finds the gains once the tuning is {@code SEARCHING}, which takes a few
+	 * seconds, and moves it on to {@code DONE} or {@code FAILED}. Fails if the
+	 * thread is interrupted meanwhile. Does nothing in other states.
+	 */
+	public void search() {
+		if (state != State.SEARCHING) {
+			return;
+		}
+		for (int candidate = 0; candidate < TURN_CANDIDATES; candidate++) {
+			if (Thread.currentThread().isInterrupted()) {
+				fail("the search was stopped");
+				return;
+			}
+			double cost = turnCost(nominal, candidate) + turnCost(hard, candidate);
+			if (cost < bestTurnCost) {
+				bestTurnCost = cost;
+				bestTurn = candidate;
+			}
+		}
+		if (bestTurnCost >= 2 * TEST_TURNS_DEGREES.length * MAX_SETTLE_SECS) {
+			fail("no turn gains settle the identified model");
+			return;
+		}
+		int d = bestTurn % TURN_DERIVATIVE_GAINS.length;
+		int i = bestTurn / TURN_DERIVATIVE_GAINS.length % TURN_INTEGRAL_GAINS.length;
+		int p = bestTurn / TURN_DERIVATIVE_GAINS.length / TURN_INTEGRAL_GAINS.length;
+		gains = new TurnGains(kS, kV, kA, PROPORTIONAL_GAINS[p], TURN_INTEGRAL_GAINS[i], TURN_DERIVATIVE_GAINS[d]);
+		state = State.DONE;
+	}
+
+	// Sums the time profiled turns take to settle after their profile ends
+	private double turnCost(TurnModel model, int index) {
+		double d = TURN_DERIVATIVE_GAINS[index % TURN_DERIVATIVE_GAINS.length];
+		double i = TURN_INTEGRAL_GAINS[index / TURN_DERIVATIVE_GAINS.length % TURN_INTEGRAL_GAINS.length];
+		double p = PROPORTIONAL_GAINS[index / TURN_DERIVATIVE_GAINS.length / TURN_INTEGRAL_GAINS.length];
+		trial.setPID(p, i, d);
+		int stepsPerUpdate = (int) Math.round(periodSecs / MODEL_STEP_SECS);
+		double cost = 0;
+		for (double degrees : TEST_TURNS_DEGREES) {
+			model.reset();
+			trial.start(0, degrees);
+			double duration = trial.getDurationSecs();
+			int steps = (int) ((duration + MAX_SETTLE_SECS) / MODEL_STEP_SECS);
+			double output = 0;
+			double settleSecs = -1;
+			for (int n = 0; n < steps; n++) {
+				if (n % stepsPerUpdate == 0) {
+					double t = n * MODEL_STEP_SECS;
+					if (trial.isSettled(t, model.heading, model.rate)) {
+						settleSecs = t - duration;
+						break;
+					}
+					output = trial.calculate(t, model.heading, model.rate);
+				}
+				model.step(output);
+			}
+			cost += settleSecs >= 0 ? settleSecs
+					: MAX_SETTLE_SECS + TIMEOUT_SECS_PER_DEGREE * Math.abs(trial.getTarget() - model.heading);
+		}
+		return cost;
+	}
+
+	/**
+	 * @return the state of the tuning
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return true once the tuning is done or has failed
+	 */
+	public boolean isFinished() {
+		return state == State.DONE || state == State.FAILED;
+	}
+
+	/**
+	 * @return why the tuning failed, or null if it has not
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return the tuned gains, or null until the tuning is done
+	 */
+	public TurnGains getGains() {
+		return gains;
+	}
+
+	/**
+	 * @return the standard deviation of the heading at rest in degrees, once measured
+	 */
+	public double getHeadingNoiseDegrees() {
+		return headingNoise;
+	}
+
+	/**
+	 * @return the identified delay from output to turn rate in seconds, once identified
+	 */
+	public double getDeadTimeSecs() {
+		return deadTimeSecs;
+	}
+
+	/**
+	 * @return the identified time constant of the turn rate, kA / kV, in seconds, once identified
+	 */
+	public double getTimeConstantSecs() {
+		return kV == 0 ? 0 : kA / kV;
+	}
+
+	/**
+	 * The {@code TurnModel} class simulates turning in place: an output
+	 * delayed by the dead time, friction that holds the robot still until the
+	 * output overcomes it and stops but never reverses it, and a rate that
+	 * follows the output with the time constant kA / kV.
+	 */
+	private static class TurnModel {
+		private final double kS;
+		private final double kV;
+		private final double kA;
+		private final double[] delayed; // outputs on their way, applied in turn
+		private int next = 0;
+		private double heading;
+		private double rate;
+
+		private TurnModel(double kS, double kV, double kA, double deadTimeSecs) {
+			this.kS = kS;
+			this.kV = kV;
+			this.kA = kA;
+			delayed = new double[Math.max(1, (int) Math.round(deadTimeSecs / MODEL_STEP_SECS))];
+		}
+
+		private void reset() {
+			Arrays.fill(delayed, 0);
+			next = 0;
+			heading = 0;
+			rate = 0;
+		}
+
+		private void step(double output) {
+			double applied = delayed[next];
+			delayed[next] = output;
+			next = (next + 1) % delayed.length;
+			if (rate == 0 && Math.abs(applied) <= kS) {
+				return; // stuck
+			}
+			double friction = kS * Math.signum(rate != 0 ? rate : applied);
+			double newRate = rate + (applied - friction - kV * rate) / kA * MODEL_STEP_SECS;
+			rate = Math.signum(newRate) == -Math.signum(rate) ? 0 : newRate;
+			heading += rate * MODEL_STEP_SECS;
+		}
+	}
+}
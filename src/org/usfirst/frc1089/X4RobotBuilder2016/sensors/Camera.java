@@ -1,8 +1,12 @@
 package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
 
-import java.util.Calendar;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
 
-import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 
 /**
@@ -15,20 +19,33 @@ public class Camera {
 	private double largestRectArea;
 	private int largestRectNum;
 	private double perceivedOpeningWidth;
-	private double[] rectWidth, rectHeight, rectCenterX, rectCenterY, rectArea;
+	private final VisionFrame targets = new VisionFrame(); // preallocated, filled in place
+	private boolean coherent = false;
 	private double diagTargetDistance, horizTargetDistance;
-	private double diff;
 	private CameraNTListener ntListener;
+	private HeadingHistory headingHistory;
+	private final TargetTracker tracker = new TargetTracker();
+	private final double[] contourDistance = new double[VisionFrame.MAX_TARGETS];
+
+	// Frame latency statistics, updated each time getNTInfo() consumes a new frame
+	private final RollingPercentile frameAge = new RollingPercentile(LATENCY_WINDOW_SIZE);
+	private final RollingPercentile frameInterval = new RollingPercentile(LATENCY_WINDOW_SIZE);
+	private long lastFrameSequence = -1;
+	private long lastFrameTimeStamp;
+	private long droppedFrames = 0;
 
-	private static final double TARGET_WIDTH_INCHES = 20;
 	private static final double TARGET_HEIGHT_INCHES = 12;
-	private static final double INCHES_IN_FEET = 12.0;
-	private static final double TARGET_ELEVATION_FEET = 6.5;
 
 	private static final int MAX_NT_RETRY = 5;
-	private static final double NT_LISTENER_RETRY_DELAY = 0.05; // Time in seconds to wait before re-checking the NT listenner
+	private static final double[] NO_RECTANGLES = {}; // Returned by the NT when a key is missing
 	public static final double AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS = 0.500;
+	private static final int LATENCY_WINDOW_SIZE = 128; // Number of frames kept for latency percentiles
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final double TELEMETRY_DEADBAND_FEET = 0.1;
+	private static final double TELEMETRY_DEADBAND_DEGREES = 0.1;
+	private static final int RECORDED_TARGETS = 4; // of the MAX_TARGETS, to bound the flight record
 	private Config config;
+	private CameraCalibration calibration;
 	
 
 	/**
@@ -44,8 +61,115 @@ public class Camera {
 	 */
 	public Camera(String tableLoc) {
 		config = Config.getInstance();
+		calibration = config.getCameraCalibration();
 		nt = NetworkTable.getTable(tableLoc);
 		ntListener = new CameraNTListener(nt);
+		runListener();
+		addTelemetry();
+		addFlightRecord();
+	}
+
+	// What the drivers aim by, at high priority
+	private void addTelemetry() {
+		Telemetry telemetry = Telemetry.getInstance();
+		telemetry.addBoolean("Camera: target found", Telemetry.HIGH, new BooleanSupplier() {
+			@Override
+			public boolean getAsBoolean() {
+				return isTargetFound();
+			}
+		});
+		telemetry.addBoolean("Camera: in distance", Telemetry.HIGH, new BooleanSupplier() {
+			@Override
+			public boolean getAsBoolean() {
+				return isInDistance();
+			}
+		});
+		telemetry.addNumber("Camera: distance feet", Telemetry.HIGH, TELEMETRY_DEADBAND_FEET, new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getHorizontalDist();
+			}
+		});
+		telemetry.addNumber("Camera: turn angle", Telemetry.HIGH, TELEMETRY_DEADBAND_DEGREES, new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getTurnAngle();
+			}
+		});
+	}
+
+	// The targeting results and the first rectangles of the frame in use
+	private void addFlightRecord() {
+		FlightRecorder recorder = FlightRecorder.getInstance();
+		recorder.addInt("Camera targets", new IntSupplier() {
+			@Override
+			public int getAsInt() {
+				return getTargetCount();
+			}
+		});
+		recorder.addFloat("Camera turn angle", new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getTurnAngle();
+			}
+		});
+		recorder.addFloat("Camera distance feet", new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getHorizontalDist();
+			}
+		});
+		for (int i = 0; i < RECORDED_TARGETS; i++) {
+			final int rect = i;
+			recorder.addFloat("Camera rect " + i + " area", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return rect < getTargetCount() ? getRectArea()[rect] : Double.NaN;
+				}
+			});
+			recorder.addFloat("Camera rect " + i + " width", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return rect < getTargetCount() ? getRectWidth()[rect] : Double.NaN;
+				}
+			});
+			recorder.addFloat("Camera rect " + i + " height", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return rect < getTargetCount() ? getRectHeight()[rect] : Double.NaN;
+				}
+			});
+			recorder.addFloat("Camera rect " + i + " centerX", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return rect < getTargetCount() ? getCenterX()[rect] : Double.NaN;
+				}
+			});
+			recorder.addFloat("Camera rect " + i + " centerY", new DoubleSupplier() {
+				@Override
+				public double getAsDouble() {
+					return rect < getTargetCount() ? getCenterY()[rect] : Double.NaN;
+				}
+			});
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public Camera(CameraNTListener ntListener)
+	 * </pre>
+	 * 
+	 * Constructs a new {@code Camera} fed by the specified listener instead of a
+	 * NetworkTable, e.g. by a {@link VisionReplayer} off the robot. The listener is
+	 * not started.
+	 * 
+	 * @param ntListener the listener receiving the GRIP updates
+	 */
+	public Camera(CameraNTListener ntListener) {
+		config = Config.getInstance();
+		calibration = config.getCameraCalibration();
+		this.ntListener = ntListener;
+		addFlightRecord();
 	}
 
 	/**
@@ -69,6 +193,20 @@ public class Camera {
 	public void stopListener() {
 		ntListener.stop();
 	}
+
+	/**
+	 * <pre>
+	 * public void setHeadingHistory(HeadingHistory headingHistory)
+	 * </pre>
+	 * 
+	 * Use a gyro heading history to compensate turn angles for robot rotation
+	 * since the frame was captured.
+	 * 
+	 * @param headingHistory the heading history of the drive train gyro, or null to disable compensation
+	 */
+	public void setHeadingHistory(HeadingHistory headingHistory) {
+		this.headingHistory = headingHistory;
+	}
 	
 	/**
 	 * <pre>
@@ -80,10 +218,7 @@ public class Camera {
 	 * @return true if all arrays are the same length, false otherwise
 	 */
 	public boolean isCoherent() {
-		return (rectArea != null && rectWidth != null && rectHeight != null && rectCenterX != null
-				&& rectCenterY != null && rectArea.length == rectWidth.length
-				&& rectArea.length == rectHeight.length && rectArea.length == rectCenterX.length
-				&& rectArea.length == rectCenterY.length);
+		return coherent;
 	}
 
 	/**
@@ -91,7 +226,7 @@ public class Camera {
 	 * public void setRectangles(double[] rectArea, double[] rectWidth, double[] rectHeight, double[] rectCenterX,  double[] rectCenterY)
 	 * </pre>
 	 * 
-	 * Assign new rectangle values to the Camera instance
+	 * Copy new rectangle values into the Camera instance
 	 * 
 	 * @param rectArea Array of rectangle areas
 	 * @param rectWidth Array of rectangle widths
@@ -100,43 +235,45 @@ public class Camera {
 	 * @param rectCenterY Array of rectangle center Ys
 	 */
 	public void setRectangles(double[] rectArea, double[] rectWidth, double[] rectHeight, double[] rectCenterX,  double[] rectCenterY) {
-		this.rectArea = rectArea;
-		this.rectWidth = rectWidth;
-		this.rectHeight = rectHeight;
-		this.rectCenterX = rectCenterX;
-		this.rectCenterY = rectCenterY;
+		coherent = targets.set(targets.getSequence() + 1, VisionFrame.now(), rectArea, rectWidth, rectHeight, rectCenterX, rectCenterY);
+	}
+
+	/**
+	 * <pre>
+	 * public void setRectangles(VisionFrame frame)
+	 * </pre>
+	 * 
+	 * Copy the rectangles of a complete frame into the Camera instance
+	 * 
+	 * @param frame the frame to copy; frames with a negative sequence were never received
+	 */
+	public void setRectangles(VisionFrame frame) {
+		targets.copyFrom(frame);
+		coherent = frame.getSequence() >= 0;
 	}
 	
 	/**
 	 * 
 	 * <pre>
-	 * private void updateFromNT(boolean waitForNewInfo)
+	 * private void updateFromNT()
 	 * </pre>
 	 * 
 	 * Updates rectangles directly from the network table.
 	 * Retries until they all rectangles are coherent
-	 * 
-	 * @param waitForNewInfo  true if the camera should wait for updated data, false otherwise.
 	 */
-	private void updateFromNT(boolean waitForNewInfo) {
-		double[] def = {}; // Return an empty array by default.
+	private void updateFromNT() {
 		int retry_count = 0;
-		setRectangles(null, null, null, null, null);
-		
-		if (waitForNewInfo) {
-			Timer.delay(AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS);
-		}
 
 		// We cannot get arrays atomically but at least we can make sure they
 		// have the same size
 		do {
 			// Get data from NetworkTable
 			setRectangles(
-					nt.getNumberArray("area", def),
-					nt.getNumberArray("width", def),
-					nt.getNumberArray("height", def),
-					nt.getNumberArray("centerX", def),
-					nt.getNumberArray("centerY", def));
+					nt.getNumberArray("area", NO_RECTANGLES),
+					nt.getNumberArray("width", NO_RECTANGLES),
+					nt.getNumberArray("height", NO_RECTANGLES),
+					nt.getNumberArray("centerX", NO_RECTANGLES),
+					nt.getNumberArray("centerY", NO_RECTANGLES));
 
 			retry_count++;
 		} while (!isCoherent() && retry_count < MAX_NT_RETRY);
@@ -146,57 +283,80 @@ public class Camera {
 	/**
 	 * 
 	 * <pre>
-	 * private void updateFromNT(boolean waitForNewInfo)
+	 * private void updateFromListener()
 	 * </pre>
 	 * 
-	 * Updates rectangles from the network table listener. Waits for new data (if not already present).
-	 * Retries until they all rectangles are coherent
+	 * Updates rectangles from the network table listener.
+	 * The listener only publishes complete frames, so a single read is always coherent.
+	 */
+	private void updateFromListener() {
+		ntListener.getRectangles(this);
+	}
+
+	/**
+	 * <pre>
+	 * public FrameTicket requestFrameAfter(long notBefore, double timeoutSecs)
+	 * </pre>
 	 * 
-	 * @param waitForNewInfo  true if the camera should wait for updated data, false otherwise.
+	 * Requests the first frame newer than the given time without blocking.
+	 * Poll the returned ticket (e.g. from a command's {@code isFinished()}) and
+	 * call {@link #getNTInfo()} once it is done.
+	 * 
+	 * @param notBefore the frame must have started arriving after this time (see {@link VisionFrame#now()})
+	 * @param timeoutSecs how long to wait before giving up on a new frame
+	 * @return a ticket to poll
 	 */
-	private void updateFromListener(boolean waitForNewInfo) {
-		Calendar time_stamp = Calendar.getInstance();
-		double wait_secs = 0;
-		int retry_count = 0;
-		setRectangles(null, null, null, null, null);
-		
-		// Wait up to AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS for new data in the listener, or take what it has
-		while(waitForNewInfo && wait_secs < AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS && ntListener.getModificationTime().before(time_stamp)) {
-			wait_secs += NT_LISTENER_RETRY_DELAY;
-			Timer.delay(NT_LISTENER_RETRY_DELAY);
-		}
+	public FrameTicket requestFrameAfter(long notBefore, double timeoutSecs) {
+		return new FrameTicket(ntListener, notBefore, timeoutSecs);
+	}
 
-		do {
-			ntListener.getRectangles(this);
-			retry_count++;
-		} while (!isCoherent() && retry_count < MAX_NT_RETRY);
+	/**
+	 * <pre>
+	 * public FrameTicket requestNextFrame()
+	 * </pre>
+	 * 
+	 * Requests the first frame that starts arriving from now on, waiting at most
+	 * AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS. Use this after the robot moves so the
+	 * rectangles reflect its new position.
+	 * 
+	 * @return a ticket to poll
+	 */
+	public FrameTicket requestNextFrame() {
+		return requestFrameAfter(VisionFrame.now(), AUTOROTATE_CAMERA_CATCHUP_DELAY_SECS);
 	}
 
-	
 	/**
 	 * <pre>
-	 * public void getNTInfo(boolean waitForNewInfo)
+	 * public void getNTInfo()
 	 * </pre>
 	 * 
 	 * Gets data from the NetworkTable, then calculates distance based on the
 	 * rectangle and camera's horizontal FOV.
-	 * 
-	 * @param waitForNewInfo
-	 * 		Wait for a new copy of the NT info
+	 * <p>
+	 * Data comes from the listener, which copies it into preallocated frames,
+	 * so this method does not allocate once the listener has been started.
+	 * It never waits for new data; use {@link #requestNextFrame()} for that.
+	 * </p>
 	 */
-	public void getNTInfo(boolean waitForNewInfo) {
+	public void getNTInfo() {
 
 		// Comment/uncomment one of the following to directly use the NT or use the listener
-		updateFromNT(waitForNewInfo);
-		//updateFromListener(waitForNewInfo);
+		//updateFromNT();
+		updateFromListener();
+		boolean newFrame = recordFrameLatency();
+
+		double[] rectArea = targets.getRectArea();
+		double[] rectWidth = targets.getRectWidth();
+		double[] rectHeight = targets.getRectHeight();
 
-		if (isCoherent() && rectArea.length > 0) { // searches array for largest
-													// target
+		if (isTargetFound()) { // searches array for largest
+								// target
 			largestRectArea = rectArea[0];
 			largestRectNum = 0;
-			for (int i = 1; i < rectArea.length; i++) { // saves an iteration by
+			for (int i = 1; i < targets.getLength(); i++) { // saves an iteration by
 														// starting at 1
 				if (rectArea[i] >= largestRectArea) {
+					largestRectArea = rectArea[i];
 					largestRectNum = i;
 				}
 			}
@@ -204,13 +364,7 @@ public class Camera {
 			perceivedOpeningWidth = rectWidth[largestRectNum] * .8
 					* (TARGET_HEIGHT_INCHES / rectHeight[largestRectNum]);
 
-			// Calculate distance in feet based off of rectangle width and
-			// horizontal
-			// FOV of camera
-			// NOTE: Between .25 and .5 ft. off of actual distance
-			diagTargetDistance = (TARGET_WIDTH_INCHES / INCHES_IN_FEET)
-					* (config.HORIZONTAL_CAMERA_RES_PIXELS / rectWidth[largestRectNum]) / 2.0
-					/ Math.tan(Math.toRadians(config.HFOV_DEGREES / 2));
+			horizTargetDistance = calibration.getHorizontalDistance(rectWidth[largestRectNum]);
 		} else {
 			largestRectArea = 0;
 
@@ -218,52 +372,236 @@ public class Camera {
 
 			perceivedOpeningWidth = 0;
 
-			diagTargetDistance = Double.POSITIVE_INFINITY;
+			horizTargetDistance = Double.POSITIVE_INFINITY;
 		}
 
-		horizTargetDistance = Math
-				.sqrt(diagTargetDistance * diagTargetDistance - (TARGET_ELEVATION_FEET - config.CAM_ELEVATION_FEET)
-						* (TARGET_ELEVATION_FEET - config.CAM_ELEVATION_FEET));
+		if (newFrame) {
+			for (int i = 0; i < targets.getLength(); i++) {
+				contourDistance[i] = calibration.getHorizontalDistance(rectWidth[i]);
+			}
+			tracker.update(targets.getTimeStamp(), targets.getLength(), targets.getCenterX(), rectWidth,
+					contourDistance);
+		}
+		if (isTracked()) {
+			horizTargetDistance = tracker.getDistance();
+		}
+		diagTargetDistance = calibration.getDiagonalDistance(horizTargetDistance);
 	}
-	
+
+	/**
+	 * <pre>
+	 * private boolean recordFrameLatency()
+	 * </pre>
+	 * 
+	 * Updates the latency statistics if the current frame has not been seen before.
+	 * 
+	 * @return true if the current frame is new
+	 */
+	private boolean recordFrameLatency() {
+		long sequence = targets.getSequence();
+		if (sequence < 0 || sequence == lastFrameSequence) {
+			return false;
+		}
+		frameAge.record(VisionFrame.now() - targets.getTimeStamp());
+		if (lastFrameSequence >= 0 && sequence > lastFrameSequence) {
+			frameInterval.record(targets.getTimeStamp() - lastFrameTimeStamp);
+			droppedFrames += sequence - lastFrameSequence - 1;
+		}
+		lastFrameSequence = sequence;
+		lastFrameTimeStamp = targets.getTimeStamp();
+		return true;
+	}
+
+	/**
+	 * <pre>
+	 * public double getFrameAgeSecs()
+	 * </pre>
+	 * 
+	 * Gets how long ago the current rectangles were received from GRIP.
+	 * 
+	 * @return the age of the current frame in seconds, or positive infinity if no frame was received
+	 */
+	public double getFrameAgeSecs() {
+		if (targets.getSequence() < 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return (VisionFrame.now() - targets.getTimeStamp()) / NANOS_IN_SECOND;
+	}
+
+	/**
+	 * <pre>
+	 * public double getFrameAgePercentileSecs(double percentile)
+	 * </pre>
+	 * 
+	 * Gets a percentile of the frame age at the time each recent frame was consumed.
+	 * 
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the frame age in seconds
+	 */
+	public double getFrameAgePercentileSecs(double percentile) {
+		return frameAge.getPercentileSecs(percentile);
+	}
+
+	/**
+	 * <pre>
+	 * public double getFrameIntervalPercentileSecs(double percentile)
+	 * </pre>
+	 * 
+	 * Gets a percentile of the interval between recent consecutive frames.
+	 * 
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the inter-frame interval in seconds
+	 */
+	public double getFrameIntervalPercentileSecs(double percentile) {
+		return frameInterval.getPercentileSecs(percentile);
+	}
+
+	/**
+	 * <pre>
+	 * public long getDroppedFrames()
+	 * </pre>
+	 * 
+	 * Gets the number of frames published by the listener that were replaced
+	 * before getNTInfo() had a chance to use them.
+	 * 
+	 * @return the number of dropped frames
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	/**
+	 * <pre>
+	 * public void resetLatencyStats()
+	 * </pre>
+	 * 
+	 * Clears the latency statistics and the dropped frame count.
+	 */
+	public void resetLatencyStats() {
+		frameAge.reset();
+		frameInterval.reset();
+		droppedFrames = 0;
+	}
+
 	/**
 	 * <pre>
 	 * public double getTurnAngle()
 	 * </pre>
 	 * 
 	 * Gets the turn angle between the robot and the target.
+	 * <p>
+	 * If a heading history is set, the angle is corrected for any rotation of
+	 * the robot since the frame was captured, so it stays valid while turning.
+	 * </p>
 	 * 
 	 * @return the turn angle in degrees between the robot and the target
 	 */
 	public double getTurnAngle() {
 		if (isTargetFound()) {
-			diff = (getCenterX()[getLargestRectNum()] - (config.HORIZONTAL_CAMERA_RES_PIXELS / 2))
-					/ config.HORIZONTAL_CAMERA_RES_PIXELS;
-			return diff * config.HFOV_DEGREES + 1.3;//3.6 is an offset
+			double frameAngle = getFrameTurnAngle();
+			if (headingHistory == null) {
+				return frameAngle;
+			}
+			return headingHistory.getHeadingAt(getCaptureTime()) + frameAngle - headingHistory.getLatestHeading();
 		} else {
 			return 0; // we don't know where to turn if target is not found, so
 						// we don't turn
 		}
 	}
 
+	/**
+	 * <pre>
+	 * public double getTargetHeading()
+	 * </pre>
+	 * 
+	 * Gets the gyro heading the robot has to face to point at the target. Unlike
+	 * the turn angle, this does not change as the robot rotates.
+	 * 
+	 * @return the target heading in degrees, the current heading if the target
+	 *         is not found, or 0 if no heading history is set
+	 */
+	public double getTargetHeading() {
+		if (headingHistory == null) {
+			return 0;
+		}
+		if (isTargetFound()) {
+			return headingHistory.getHeadingAt(getCaptureTime()) + getFrameTurnAngle();
+		} else {
+			return headingHistory.getLatestHeading();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * private double getFrameTurnAngle()
+	 * </pre>
+	 * 
+	 * Gets the turn angle to the target as seen in the current frame, i.e.
+	 * relative to the robot heading at capture time. Uses the tracked target
+	 * when there is one, so the angle does not jump between contours.
+	 * 
+	 * @return the turn angle in degrees
+	 */
+	private double getFrameTurnAngle() {
+		double centerX = isTracked() ? tracker.getCenterX() : getCenterX()[getLargestRectNum()];
+		return calibration.getBearing(centerX);
+	}
+
+	/**
+	 * <pre>
+	 * private boolean isTracked()
+	 * </pre>
+	 * 
+	 * Indicates if the tracked target can stand in for the largest contour.
+	 * The tracker coasts through frames without contours, so it is only used
+	 * while a target is found, keeping every output gated on
+	 * {@link #isTargetFound()}.
+	 * 
+	 * @return true if a target is found and the tracker follows it
+	 */
+	private boolean isTracked() {
+		return isTargetFound() && tracker.hasTarget();
+	}
+
+	/**
+	 * <pre>
+	 * private long getCaptureTime()
+	 * </pre>
+	 * 
+	 * @return the estimated time the current frame was captured by the camera
+	 */
+	private long getCaptureTime() {
+		return targets.getTimeStamp() - (long) (config.CAMERA_CAPTURE_LATENCY_SECS * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * @return the number of valid entries in the rectangle arrays
+	 */
+	public int getTargetCount() {
+		return targets.getLength();
+	}
+
+	/**
+	 * Only the first {@link #getTargetCount()} entries are valid.
+	 */
 	public double[] getRectArea() {
-		return rectArea;
+		return targets.getRectArea();
 	}
 
 	public double[] getRectWidth() {
-		return rectWidth;
+		return targets.getRectWidth();
 	}
 
 	public double[] getRectHeight() {
-		return rectHeight;
+		return targets.getRectHeight();
 	}
 
 	public double[] getCenterX() {
-		return rectCenterX;
+		return targets.getCenterX();
 	}
 
 	public double[] getCenterY() {
-		return rectCenterY;
+		return targets.getCenterY();
 	}
 
 	public double getDiagonalDist() {
@@ -282,6 +620,13 @@ public class Camera {
 		return perceivedOpeningWidth;
 	}
 
+	/**
+	 * @return the tracker following the target across frames
+	 */
+	public TargetTracker getTracker() {
+		return tracker;
+	}
+
 	public CameraNTListener getNTListenner() {
 		return this.ntListener;
 	}
@@ -298,14 +643,7 @@ public class Camera {
 	 * @return true if at least one target was found, false otherwise
 	 */
 	public boolean isTargetFound() {
-		if ((rectArea != null && rectWidth != null && rectHeight != null && rectCenterX != null && rectCenterY != null
-				&& rectArea.length == rectWidth.length && rectArea.length == rectHeight.length
-				&& rectArea.length == rectCenterX.length && rectArea.length == rectCenterY.length)
-				&& rectArea.length > 0) {
-			return true;
-		} else {
-			return false;
-		}
+		return coherent && targets.getLength() > 0;
 	}
 
 	/**
@@ -371,7 +709,7 @@ public class Camera {
 	 */
 	public boolean isInLineWithGoal() {
 		if (isTargetFound()) {
-			return Math.abs(rectWidth[largestRectNum] / rectHeight[largestRectNum]) > config.IN_LINE_MIN;
+			return Math.abs(getRectWidth()[largestRectNum] / getRectHeight()[largestRectNum]) > config.IN_LINE_MIN;
 		} else {
 			return false; // if we cannot see the target then we are not in line
 							// for sure
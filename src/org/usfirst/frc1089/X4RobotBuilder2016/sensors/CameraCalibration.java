@@ -0,0 +1,162 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+/**
+ * The {@code CameraCalibration} class maps target pixel measurements to
+ * distances and bearings with lookup tables built once per {@link Config}.
+ * <p>
+ * The tables have one entry per pixel and are interpolated linearly, so the
+ * hot path is an array lookup instead of trigonometry. Where the {@code Config}
+ * provides measured calibration points, the tables interpolate between them;
+ * otherwise they come from a pinhole camera model of the configured field of
+ * view, which uses the real (arctangent) pixel to bearing relationship.
+ * </p>
+ */
+public class CameraCalibration {
+	public static final double TARGET_WIDTH_INCHES = 20;
+	public static final double TARGET_ELEVATION_FEET = 6.5;
+	private static final double INCHES_IN_FEET = 12.0;
+
+	private final double focalLengthPixels;
+	private final double imageCenterPixels;
+	private final double elevationDiffSquared;
+	private final double bearingOffsetDegrees;
+
+	private final double[] horizDistByWidth; // index = target width in pixels
+	private final double[] bearingByCenterX; // index = target center X in pixels
+
+	/**
+	 * <pre>
+	 * public CameraCalibration(Config config)
+	 * </pre>
+	 *
+	 * Builds the calibration tables for the specified configuration.
+	 *
+	 * @param config the robot configuration
+	 */
+	public CameraCalibration(Config config) {
+		int resolution = (int) config.HORIZONTAL_CAMERA_RES_PIXELS;
+		double elevationDiff = TARGET_ELEVATION_FEET - config.CAM_ELEVATION_FEET;
+
+		imageCenterPixels = config.HORIZONTAL_CAMERA_RES_PIXELS / 2;
+		focalLengthPixels = imageCenterPixels / Math.tan(Math.toRadians(config.HFOV_DEGREES / 2));
+		elevationDiffSquared = elevationDiff * elevationDiff;
+		bearingOffsetDegrees = config.CAMERA_BEARING_OFFSET_DEGREES;
+
+		horizDistByWidth = new double[resolution + 1];
+		for (int width = 0; width <= resolution; width++) {
+			horizDistByWidth[width] = config.CAL_TARGET_WIDTH_PIXELS.length >= 2
+					? interpolate(config.CAL_TARGET_WIDTH_PIXELS, config.CAL_HORIZ_DIST_FEET, width)
+					: modelHorizontalDistance(width);
+		}
+
+		bearingByCenterX = new double[resolution + 1];
+		for (int x = 0; x <= resolution; x++) {
+			bearingByCenterX[x] = config.CAL_CENTER_X_PIXELS.length >= 2
+					? interpolate(config.CAL_CENTER_X_PIXELS, config.CAL_BEARING_DEGREES, x)
+					: modelBearing(x);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * private double modelHorizontalDistance(double widthPixels)
+	 * </pre>
+	 *
+	 * @param widthPixels the width of the target in pixels
+	 * @return the floor distance to the target in feet from the pinhole model
+	 */
+	private double modelHorizontalDistance(double widthPixels) {
+		double diagonal = (TARGET_WIDTH_INCHES / INCHES_IN_FEET) * focalLengthPixels / widthPixels;
+		return Math.sqrt(diagonal * diagonal - elevationDiffSquared);
+	}
+
+	/**
+	 * <pre>
+	 * private double modelBearing(double centerXPixels)
+	 * </pre>
+	 *
+	 * @param centerXPixels the center X of the target in pixels
+	 * @return the bearing of the target in degrees from the pinhole model
+	 */
+	private double modelBearing(double centerXPixels) {
+		return Math.toDegrees(Math.atan((centerXPixels - imageCenterPixels) / focalLengthPixels))
+				+ bearingOffsetDegrees;
+	}
+
+	/**
+	 * <pre>
+	 * private static double interpolate(double[] xs, double[] ys, double x)
+	 * </pre>
+	 *
+	 * Piecewise linear interpolation through calibration points sorted by x,
+	 * extrapolating from the end segments.
+	 */
+	private static double interpolate(double[] xs, double[] ys, double x) {
+		int i = 1;
+		while (i < xs.length - 1 && x > xs[i]) {
+			i++;
+		}
+		double fraction = (x - xs[i - 1]) / (xs[i] - xs[i - 1]);
+		return ys[i - 1] + (ys[i] - ys[i - 1]) * fraction;
+	}
+
+	/**
+	 * <pre>
+	 * private static double lookup(double[] table, double index)
+	 * </pre>
+	 *
+	 * Reads a per-pixel table, interpolating between entries and clamping at the ends.
+	 */
+	private static double lookup(double[] table, double index) {
+		if (index <= 0) {
+			return table[0];
+		}
+		int last = table.length - 1;
+		if (index >= last) {
+			return table[last];
+		}
+		int i = (int) index;
+		double fraction = index - i;
+		return table[i] + (table[i + 1] - table[i]) * fraction;
+	}
+
+	/**
+	 * <pre>
+	 * public double getHorizontalDistance(double widthPixels)
+	 * </pre>
+	 *
+	 * @param widthPixels the width of the target in pixels
+	 * @return the distance along the floor to the target in feet, infinite for a zero width
+	 */
+	public double getHorizontalDistance(double widthPixels) {
+		if (widthPixels < 1) {
+			// The model changes too fast below one pixel to interpolate
+			return widthPixels > 0 ? modelHorizontalDistance(widthPixels) : Double.POSITIVE_INFINITY;
+		}
+		return lookup(horizDistByWidth, widthPixels);
+	}
+
+	/**
+	 * <pre>
+	 * public double getDiagonalDistance(double horizontalDistance)
+	 * </pre>
+	 *
+	 * @param horizontalDistance the distance along the floor to the target in feet
+	 * @return the straight line distance from the camera to the target in feet
+	 */
+	public double getDiagonalDistance(double horizontalDistance) {
+		return Math.sqrt(horizontalDistance * horizontalDistance + elevationDiffSquared);
+	}
+
+	/**
+	 * <pre>
+	 * public double getBearing(double centerXPixels)
+	 * </pre>
+	 *
+	 * @param centerXPixels the center X of the target in pixels
+	 * @return the angle in degrees the robot has to turn to face the target (positive is clockwise)
+	 */
+	public double getBearing(double centerXPixels) {
+		return lookup(bearingByCenterX, centerXPixels);
+	}
+}
@@ -1,7 +1,7 @@
 package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
 
 //import java.util.Arrays;
-import java.util.Calendar;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
 import edu.wpi.first.wpilibj.tables.ITable;
@@ -9,38 +9,64 @@ import edu.wpi.first.wpilibj.tables.ITableListener;
 
 public class CameraNTListener implements ITableListener{
 
+	private static final int AREA = 1, WIDTH = 2, HEIGHT = 4, CENTER_X = 8, CENTER_Y = 16;
+	private static final int ALL_KEYS = AREA | WIDTH | HEIGHT | CENTER_X | CENTER_Y;
+
+	// Triple buffer slot encoding: the low bits hold the slot index, FRESH marks an unread frame
+	private static final int INDEX_MASK = 3;
+	private static final int FRESH = 4;
+
 	private NetworkTable nt;
 	private boolean isListening = false;
-	
+
+	// Frame under construction. Only touched by the NT listener thread.
 	private double[] rectWidth, rectHeight, rectCenterX, rectCenterY, rectArea;
-	private Calendar tsRectWidth, tsRectHeight, tsRectCenterX, tsRectCenterY, tsRectArea;
+	private long tsFrameStart;
+	private int receivedKeys = 0;
+	private volatile long nextSequence = 0; // written by the listener thread only
+	private volatile long incoherentFrames = 0; // written by the listener thread only
+
+	// Preallocated frames shared as a lock-free triple buffer. The listener thread
+	// fills frames[back], the reader owns frames[front] and the third slot is
+	// handed between them through readySlot. No slot is written by two threads.
+	private final VisionFrame[] frames = { new VisionFrame(), new VisionFrame(), new VisionFrame() };
+	private final AtomicInteger readySlot = new AtomicInteger(1);
+	private int back = 0; // listener thread only
+	private int front = 2; // reader thread only
+	private volatile long tsLatestFrame;
 
 	public CameraNTListener(NetworkTable nt){
 		this.nt = nt;
 		rectWidth = rectHeight = rectCenterX = rectCenterY = rectArea = null;
-		tsRectWidth = tsRectHeight = tsRectCenterX = tsRectCenterY = tsRectArea = Calendar.getInstance();
+		tsFrameStart = tsLatestFrame = VisionFrame.now();
 	}
 	/**
 	 * <pre>
 	 * public void run()
 	 * </pre>
 	 */
-	
+
 	public synchronized void run(){
 		if (!isListening) {
 			nt.addTableListener(this);
 			isListening = true;
 		}
 		//double[] def = {}; // Return an empty array by default.
-		
+
 	}
-	
+
 	/**
 	 * <pre>
 	 * public void valueChanged(ITable source, String string , Object o, boolean bln)
 	 * </pre>
-	 * Runs every time a value changes in the network table and logs the change
-	 * @param source 
+	 * Runs every time a value changes in the network table and logs the change.
+	 * <p>
+	 * Keys are gathered into a pending frame. Once all five keys of a frame have
+	 * arrived the frame is published. NetworkTables only notifies on changed values,
+	 * so when a key repeats before the pending frame is complete the missing keys are
+	 * assumed unchanged and carried forward from the last published frame.
+	 * </p>
+	 * @param source
 	 * 		  The table from which to get the data and the table to check for changes
 	 * @param key
 	 * 		  The key associated with the value that changed
@@ -51,46 +77,100 @@ public class CameraNTListener implements ITableListener{
 	 */
 	@Override
 	public void valueChanged(ITable source, String key , Object value, boolean isNew){
-		Calendar ts = Calendar.getInstance(); // Get the time before synchronized so time is accurate as possible
-		synchronized(this) {
-			switch (key) {
-				case "area": {
-					rectArea = (double[]) value;
-					tsRectArea = ts;
-					break;
-				}
-				case "width": {
-					rectWidth = (double[]) value;
-					tsRectWidth = ts;
-					break;
-				}
-				case "height": {
-					rectHeight = (double[]) value;
-					tsRectHeight = ts;
-					break;
-				}
-				case "centerX": {
-					rectCenterX = (double[]) value;
-					tsRectCenterX = ts;
-					break;
-				}
-				case "centerY": {
-					rectCenterY = (double[]) value;
-					tsRectCenterY = ts;
-					break;
-				}
-			    default:{
-					break;
-				}
+		int keyBit = keyBit(key);
+		if (keyBit == 0) {
+			return;
+		}
+
+		if ((receivedKeys & keyBit) != 0) {
+			// A new GRIP frame started before the pending one saw every key
+			completeFrame();
+		}
+		if (receivedKeys == 0) {
+			tsFrameStart = VisionFrame.now();
+		}
+
+		switch (keyBit) {
+			case AREA: {
+				rectArea = (double[]) value;
+				break;
+			}
+			case WIDTH: {
+				rectWidth = (double[]) value;
+				break;
+			}
+			case HEIGHT: {
+				rectHeight = (double[]) value;
+				break;
 			}
+			case CENTER_X: {
+				rectCenterX = (double[]) value;
+				break;
+			}
+			default: { // CENTER_Y
+				rectCenterY = (double[]) value;
+				break;
+			}
+		}
+		receivedKeys |= keyBit;
+
+		if (receivedKeys == ALL_KEYS) {
+			completeFrame();
 		}
 	}
 
+	/**
+	 * <pre>
+	 * private static int keyBit(String key)
+	 * </pre>
+	 *
+	 * Maps a GRIP key to its bit in the received key mask.
+	 *
+	 * @param key the NetworkTable key
+	 * @return the key bit, or 0 if the key is not one we track
+	 */
+	private static int keyBit(String key) {
+		switch (key) {
+			case "area":
+				return AREA;
+			case "width":
+				return WIDTH;
+			case "height":
+				return HEIGHT;
+			case "centerX":
+				return CENTER_X;
+			case "centerY":
+				return CENTER_Y;
+			default:
+				return 0;
+		}
+	}
+
+	/**
+	 * <pre>
+	 * private void completeFrame()
+	 * </pre>
+	 *
+	 * Publishes the pending frame if its arrays are coherent, then starts a new one.
+	 * Keys that did not arrive keep their value from the previous frame.
+	 */
+	private void completeFrame() {
+		if (frames[back].set(nextSequence, tsFrameStart,
+				rectArea, rectWidth, rectHeight, rectCenterX, rectCenterY)) {
+			nextSequence++;
+			tsLatestFrame = tsFrameStart;
+			back = readySlot.getAndSet(back | FRESH) & INDEX_MASK;
+		} else {
+			incoherentFrames++;
+		}
+		receivedKeys = 0;
+	}
+
 	/**
 	 * <pre>
 	 * public void stop()
 	 * </pre>
-	 * 
+	 *
 	 * Stop listening for updates.
 	 */
 	public synchronized void stop() {
@@ -102,33 +182,76 @@ public class CameraNTListener implements ITableListener{
 
 	/**
 	 * <pre>
-	 * public Calendar getModificationTime()
+	 * public long getModificationTime()
 	 * </pre>
-	 * 
+	 *
 	 * Get the last modification time of the rectangle data.
-	 * 
-	 * @return The modification time of the <em>oldest</em> rectangle.
+	 *
+	 * @return The time in nanoseconds (see {@link VisionFrame#now()}) the first key of
+	 *         the latest complete frame was received, or the listener creation time if
+	 *         no frame has been published yet.
+	 */
+	public long getModificationTime() {
+		return tsLatestFrame;
+	}
+
+	/**
+	 * <pre>
+	 * public long getFrameCount()
+	 * </pre>
+	 *
+	 * Get the number of complete frames published so far.
+	 *
+	 * @return the number of published frames
+	 */
+	public long getFrameCount() {
+		return nextSequence;
+	}
+
+	/**
+	 * <pre>
+	 * public long getIncoherentFrameCount()
+	 * </pre>
+	 *
+	 * Get the number of frames discarded because their arrays had different sizes.
+	 *
+	 * @return the number of incoherent frames
 	 */
-	public synchronized Calendar getModificationTime() {
-		Calendar ts = tsRectArea.before(tsRectWidth) ? tsRectArea : tsRectWidth;
-		ts = ts.before(tsRectHeight) ? ts : tsRectHeight;
-		ts = ts.before(tsRectCenterX) ? ts : tsRectCenterX;
-		ts = ts.before(tsRectCenterY) ? ts : tsRectCenterY;
-		return ts;
+	public long getIncoherentFrameCount() {
+		return incoherentFrames;
 	}
-	
+
+	/**
+	 * <pre>
+	 * public VisionFrame acquireLatestFrame()
+	 * </pre>
+	 *
+	 * Gets the latest complete frame without blocking or allocating.
+	 * <p>
+	 * The returned frame is owned by the caller until the next call, which may
+	 * recycle it. Only one thread may call this method.
+	 * </p>
+	 *
+	 * @return the latest coherent frame; its sequence is -1 if none has been received yet
+	 */
+	public VisionFrame acquireLatestFrame() {
+		if ((readySlot.get() & FRESH) != 0) {
+			front = readySlot.getAndSet(front) & INDEX_MASK;
+		}
+		return frames[front];
+	}
+
 	/**
 	 * <pre>
 	 * public void getRectangles(Camera camera)
 	 * </pre>
-	 * 
+	 *
 	 * Copy the current rectangle data into the supplied Camera instance.
 	 * Relies on the Camera.setRectangles() method.
-	 * 
+	 *
 	 * @param camera the Camera instance to update the data of.
 	 */
-	public synchronized void getRectangles(Camera camera) {
-		// Copy the current rectangles to the camera instance
-		camera.setRectangles(rectArea, rectWidth, rectHeight, rectCenterX, rectCenterY);
-	}	
+	public void getRectangles(Camera camera) {
+		camera.setRectangles(acquireLatestFrame());
+	}
 }
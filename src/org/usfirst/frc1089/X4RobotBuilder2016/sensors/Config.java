@@ -8,6 +8,15 @@ public class Config {
 								// should be greater)
 	public final double CAM_ELEVATION_FEET;
 	public final double HORIZONTAL_CAMERA_RES_PIXELS;
+	public final double CAMERA_CAPTURE_LATENCY_SECS; // time from image capture until GRIP starts publishing it
+	public final double CAMERA_BEARING_OFFSET_DEGREES;
+	
+	// Measured calibration points, sorted by pixel value. Leave a pair empty to
+	// use the camera model computed from the values above instead.
+	public final double[] CAL_TARGET_WIDTH_PIXELS;
+	public final double[] CAL_HORIZ_DIST_FEET;
+	public final double[] CAL_CENTER_X_PIXELS;
+	public final double[] CAL_BEARING_DEGREES;
 	public final double TURN_ANGLE_MIN_DEGREES;
 	public final double TURN_ANGLE_MAX_DEGREES;
 	public final double COARSE_TURN_ANGLE_MIN_DEGREES;
@@ -26,6 +35,59 @@ public class Config {
 	public final double WHEEL_SIZE_INCHES;
 	public final double GEAR_RATIO;
 	
+	// Talon SRX closed loop drive: encoder speed in RPM and position in revolutions
+	public final int DRIVE_ENCODER_CODES_PER_REV;
+	public final double DRIVE_MAX_SPEED_RPM; // encoder speed at full output, sets the velocity feedforward
+	public final double DRIVE_VELOCITY_P;
+	public final double DRIVE_VELOCITY_I;
+	public final double DRIVE_VELOCITY_D;
+	public final double DRIVE_POSITION_P;
+	public final double DRIVE_POSITION_I;
+	public final double DRIVE_POSITION_D;
+	public final double DRIVE_INCHES_PER_ENCODER_REV; // computed from the wheel size and gear ratio
+	
+	// Motion profiles streamed to the Talons by MoveDistance
+	public final double PROFILE_MAX_VELOCITY_INCHES_PER_SEC;
+	public final double PROFILE_MAX_ACCEL_INCHES_PER_SEC_SQ;
+	public final int PROFILE_POINT_MILLIS;
+	
+	// Profiled turns in place (DegreeRotate); outputs are fractions of full output
+	public final double TURN_MAX_RATE_DEGREES_PER_SEC;
+	public final double TURN_MAX_ACCEL_DEGREES_PER_SEC_SQ;
+	public final double TURN_KV; // output per degree per second
+	public final double TURN_KA; // output per degree per second squared
+	public final double TURN_KS; // output to overcome static friction
+	public final double TURN_P;
+	public final double TURN_I;
+	public final double TURN_D;
+	public final double TURN_SETTLE_DEGREES;
+	public final double TURN_SETTLE_RATE_DEGREES_PER_SEC;
+	
+	public final double GYRO_SENSITIVITY_VOLTS_PER_DEGREE_PER_SEC; // of the AnalogGyro
+	
+	// Drive train physics, used by the drive train simulator
+	public final double ROBOT_MASS_LBS; // with bumpers and battery
+	public final double ROBOT_RADIUS_OF_GYRATION_INCHES; // sqrt(moment of inertia / mass) about the center
+	public final int DRIVE_MOTORS_PER_SIDE; // CIMs
+	public final double DRIVE_MOTOR_REDUCTION; // defined as motor speed / wheel speed
+	public final double WHEEL_FRICTION_COEFFICIENT; // traction of the wheels on carpet
+	public final double DRIVE_SCRUB_COEFFICIENT; // turning resistance, as a friction coefficient at half the axle track
+	
+	// Driver stick shaping in DriveWithJoysticks; values are fractions of full stick or output
+	public final double STICK_DEADBAND; // stick travel ignored around the center
+	public final double STICK_EXPO; // blend of the response curve, 0 linear to 1 cubic
+	public final double STICK_SLEW_RATE_PER_SEC; // fastest rise of the output; slowing down is not limited
+	public final double STICK_PRECISION_SCALE; // output scale while the precision button is held
+	
+	// Current budget of the drive and intake Talons (CurrentBudget)
+	public final double CURRENT_BUDGET_AMPS; // total output current allowed
+	public final double CURRENT_BUDGET_GUARD_VOLTS; // bus voltage under which less is allowed; brownout is 6.8 V
+	public final double CURRENT_BUDGET_RECOVERY_PER_SEC; // fastest rise of an output scale after throttling
+	public final double DRIVE_CURRENT_RESERVE_AMPS; // always allowed to the drive train
+	public final double DRIVE_MIN_OUTPUT_SCALE;
+	public final double INTAKE_CURRENT_RESERVE_AMPS; // always allowed to the intake roller
+	public final double INTAKE_MIN_OUTPUT_SCALE;
+	
 	public final double TILT_THRESH_DEGREES;
 
 	/**
@@ -43,6 +105,8 @@ public class Config {
 	
 	private final ConfigType _configType; // Do not initialize - constructor will do it
 	
+	private final CameraCalibration _cameraCalibration; // Built once the values above are set
+	
 	private static Config _current = null; // Do not initialize - getCurrent() does it if necessary.
 
 	/**
@@ -66,6 +130,15 @@ public class Config {
             // need to match size used in GRIP
 			HORIZONTAL_CAMERA_RES_PIXELS = 320;
 			
+			// estimated exposure + MJPEG streaming + GRIP processing time
+			CAMERA_CAPTURE_LATENCY_SECS = 0.1;
+			CAMERA_BEARING_OFFSET_DEGREES = 1.3;
+			
+			CAL_TARGET_WIDTH_PIXELS = new double[] {};
+			CAL_HORIZ_DIST_FEET = new double[] {};
+			CAL_CENTER_X_PIXELS = new double[] {};
+			CAL_BEARING_DEGREES = new double[] {};
+			
 			TURN_ANGLE_MIN_DEGREES = -1.0;
 			TURN_ANGLE_MAX_DEGREES = 1.0;
 			COARSE_TURN_ANGLE_MIN_DEGREES = -2.0;
@@ -84,6 +157,52 @@ public class Config {
 			WHEEL_SIZE_INCHES = 4.0;
 			GEAR_RATIO = 1.0;
 			
+			DRIVE_ENCODER_CODES_PER_REV = 256;
+			DRIVE_MAX_SPEED_RPM = 600;
+			DRIVE_VELOCITY_P = 0.2;
+			DRIVE_VELOCITY_I = 0.0;
+			DRIVE_VELOCITY_D = 0.0;
+			DRIVE_POSITION_P = 0.6;
+			DRIVE_POSITION_I = 0.0;
+			DRIVE_POSITION_D = 0.0;
+			
+			PROFILE_MAX_VELOCITY_INCHES_PER_SEC = 80;
+			PROFILE_MAX_ACCEL_INCHES_PER_SEC_SQ = 100;
+			PROFILE_POINT_MILLIS = 10;
+			
+			TURN_MAX_RATE_DEGREES_PER_SEC = 240;
+			TURN_MAX_ACCEL_DEGREES_PER_SEC_SQ = 720;
+			TURN_KV = 0.0025;
+			TURN_KA = 0.0003;
+			TURN_KS = 0.08;
+			TURN_P = 0.03;
+			TURN_I = 0.0;
+			TURN_D = 0.002;
+			TURN_SETTLE_DEGREES = 0.5;
+			TURN_SETTLE_RATE_DEGREES_PER_SEC = 5.0;
+			
+			GYRO_SENSITIVITY_VOLTS_PER_DEGREE_PER_SEC = 0.007;
+			
+			ROBOT_MASS_LBS = 80.0;
+			ROBOT_RADIUS_OF_GYRATION_INCHES = 9.0;
+			DRIVE_MOTORS_PER_SIDE = 2;
+			DRIVE_MOTOR_REDUCTION = 8.45;
+			WHEEL_FRICTION_COEFFICIENT = 1.0;
+			DRIVE_SCRUB_COEFFICIENT = 0.4;
+			
+			STICK_DEADBAND = 0.08;
+			STICK_EXPO = 0.6;
+			STICK_SLEW_RATE_PER_SEC = 6.0;
+			STICK_PRECISION_SCALE = 0.4;
+			
+			CURRENT_BUDGET_AMPS = 200;
+			CURRENT_BUDGET_GUARD_VOLTS = 8.0;
+			CURRENT_BUDGET_RECOVERY_PER_SEC = 1.0;
+			DRIVE_CURRENT_RESERVE_AMPS = 120;
+			DRIVE_MIN_OUTPUT_SCALE = 0.3;
+			INTAKE_CURRENT_RESERVE_AMPS = 15;
+			INTAKE_MIN_OUTPUT_SCALE = 0.5;
+			
 			TILT_THRESH_DEGREES = 15.0;	
 			break;
 		default: // COMPETITION
@@ -95,6 +214,15 @@ public class Config {
             // need to match size used in GRIP
 			HORIZONTAL_CAMERA_RES_PIXELS = 320;
 			
+			// estimated exposure + MJPEG streaming + GRIP processing time
+			CAMERA_CAPTURE_LATENCY_SECS = 0.1;
+			CAMERA_BEARING_OFFSET_DEGREES = 1.3;
+			
+			CAL_TARGET_WIDTH_PIXELS = new double[] {};
+			CAL_HORIZ_DIST_FEET = new double[] {};
+			CAL_CENTER_X_PIXELS = new double[] {};
+			CAL_BEARING_DEGREES = new double[] {};
+			
 			TURN_ANGLE_MIN_DEGREES = -.7;
 			TURN_ANGLE_MAX_DEGREES = .7;
 			COARSE_TURN_ANGLE_MIN_DEGREES = -2.0;
@@ -113,9 +241,58 @@ public class Config {
 			WHEEL_SIZE_INCHES = 9.9;
 			GEAR_RATIO = 4.0 / 3.0; // defined as speed in / speed out
 			
+			DRIVE_ENCODER_CODES_PER_REV = 256;
+			DRIVE_MAX_SPEED_RPM = 520;
+			DRIVE_VELOCITY_P = 0.2;
+			DRIVE_VELOCITY_I = 0.0;
+			DRIVE_VELOCITY_D = 0.0;
+			DRIVE_POSITION_P = 0.6;
+			DRIVE_POSITION_I = 0.0;
+			DRIVE_POSITION_D = 0.0;
+			
+			PROFILE_MAX_VELOCITY_INCHES_PER_SEC = 150;
+			PROFILE_MAX_ACCEL_INCHES_PER_SEC_SQ = 120;
+			PROFILE_POINT_MILLIS = 10;
+			
+			TURN_MAX_RATE_DEGREES_PER_SEC = 240;
+			TURN_MAX_ACCEL_DEGREES_PER_SEC_SQ = 720;
+			TURN_KV = 0.0025;
+			TURN_KA = 0.0003;
+			TURN_KS = 0.08;
+			TURN_P = 0.03;
+			TURN_I = 0.0;
+			TURN_D = 0.002;
+			TURN_SETTLE_DEGREES = 0.5;
+			TURN_SETTLE_RATE_DEGREES_PER_SEC = 5.0;
+			
+			GYRO_SENSITIVITY_VOLTS_PER_DEGREE_PER_SEC = 0.007;
+			
+			ROBOT_MASS_LBS = 140.0;
+			ROBOT_RADIUS_OF_GYRATION_INCHES = 12.0;
+			DRIVE_MOTORS_PER_SIDE = 2;
+			DRIVE_MOTOR_REDUCTION = 12.75;
+			WHEEL_FRICTION_COEFFICIENT = 1.1; // pneumatic
+			DRIVE_SCRUB_COEFFICIENT = 0.35;
+			
+			STICK_DEADBAND = 0.08;
+			STICK_EXPO = 0.6;
+			STICK_SLEW_RATE_PER_SEC = 4.0; // full stick starts draw enough to brown out the battery
+			STICK_PRECISION_SCALE = 0.4;
+			
+			CURRENT_BUDGET_AMPS = 240;
+			CURRENT_BUDGET_GUARD_VOLTS = 8.0;
+			CURRENT_BUDGET_RECOVERY_PER_SEC = 1.0;
+			DRIVE_CURRENT_RESERVE_AMPS = 160;
+			DRIVE_MIN_OUTPUT_SCALE = 0.3;
+			INTAKE_CURRENT_RESERVE_AMPS = 15;
+			INTAKE_MIN_OUTPUT_SCALE = 0.5;
+			
 			TILT_THRESH_DEGREES = 15.0;
 			break;
 		}
+		
+		DRIVE_INCHES_PER_ENCODER_REV = Math.PI * WHEEL_SIZE_INCHES / GEAR_RATIO;
+		_cameraCalibration = new CameraCalibration(this);
 	}
 
 	/**
@@ -159,6 +336,17 @@ public class Config {
 		return getInstance()._configType;
 	}
 	
+	/**
+	 * <pre>
+	 * public CameraCalibration getCameraCalibration()
+	 * </pre>
+	 * Gets the camera lookup tables built for this {@code Config}.
+	 * @return the camera calibration of this {@code Config}
+	 */
+	public CameraCalibration getCameraCalibration() {
+		return _cameraCalibration;
+	}
+	
 	/**
 	 * <pre>
 	 * public String toString()
@@ -0,0 +1,300 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.ControlExecutor;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+import edu.wpi.first.wpilibj.AnalogGyro;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.interfaces.Gyro;
+
+/**
+ * The {@code DriftCorrectedGyro} class is a gyro that takes the drift left
+ * after calibration out of the heading of another gyro.
+ * <p>
+ * Every {@code SAMPLE_PERIOD_SECS} it measures the turn rate from the change
+ * in heading. While the robot is disabled and has turned slower than
+ * {@code MOTION_DEGREES_PER_SEC} for {@code STILL_SECS}, that rate is all
+ * drift, and a scalar Kalman filter folds it into the drift estimate. The
+ * estimate is allowed to wander slowly, since drift changes as the gyro warms
+ * up. Enabled or moving, the estimate is held. Either way, the heading is
+ * corrected by the estimate integrated over time, from when the gyro was last
+ * reset.
+ * </p>
+ * <p>
+ * Once the estimate is good, it is saved with the {@link GyroCalibration},
+ * at most every {@code SAVE_PERIOD_SECS} while disabled, so the next boot
+ * starts from it. A drift over {@code MAX_DRIFT_DEGREES_PER_SEC} means the
+ * calibration does not fit this gyro any more, so the file is deleted and
+ * the next boot calibrates again. The estimate is put on the
+ * {@link Telemetry} bus. Sampling never allocates.
+ * </p>
+ */
+public class DriftCorrectedGyro implements Gyro {
+	public static final double SAMPLE_PERIOD_SECS = 0.02;
+
+	private static final double STILL_SECS = 1.0; // quiet time before rates count as drift
+	private static final double MOTION_DEGREES_PER_SEC = 1.0; // faster than the drift estimate is moving
+	private static final double MEASUREMENT_VARIANCE = 0.01; // of the rate over one sample, (degrees/s)^2
+	private static final double DRIFT_WALK_VARIANCE_PER_SEC = 4.0e-6; // how fast drift changes, (degrees/s)^2/s
+	private static final double INITIAL_VARIANCE = 0.01; // of the drift at boot, (degrees/s)^2
+	private static final double SAVE_MAX_DEVIATION = 0.005; // degrees per second
+	private static final double SAVE_MIN_CHANGE = 0.002; // degrees per second
+	private static final double SAVE_PERIOD_SECS = 30;
+	private static final double MAX_DRIFT_DEGREES_PER_SEC = 1.0;
+	private static final double TELEMETRY_DEADBAND_DEGREES_PER_SEC = 0.0005;
+	private static final double TELEMETRY_DEADBAND_DEGREES = 0.05;
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final Gyro gyro;
+	private final File calibrationFile;
+	private final BooleanSupplier disabled;
+	private final Periodic sampler = ControlExecutor.getInstance().newPeriodic("Gyro drift", new Runnable() {
+		@Override
+		public void run() {
+			sample();
+		}
+	});
+	private volatile GyroCalibration calibration;
+	private volatile double drift; // degrees per second
+	private volatile double correction = 0; // degrees, subtracted from the heading
+	private volatile boolean still = false;
+
+	// Sampler state, guarded by this
+	private double variance = INITIAL_VARIANCE;
+	private boolean sampled = false;
+	private long lastTime;
+	private double lastAngle;
+	private double stillSecs = 0;
+
+	// Saving, on the sampler thread
+	private double savedDrift;
+	private long lastSaveTime;
+	private boolean calibrationDeleted = false;
+
+	/**
+	 * <pre>
+	 * public DriftCorrectedGyro(Gyro gyro, GyroCalibration calibration, File calibrationFile,
+	 *                           BooleanSupplier disabled)
+	 * </pre>
+	 *
+	 * Constructs a new {@code DriftCorrectedGyro}, starting from the drift in
+	 * the calibration. Call {@link #start()} to begin estimating.
+	 *
+	 * @param gyro the gyro to correct
+	 * @param calibration the calibration of the gyro
+	 * @param calibrationFile the file to save the calibration to, or null to never save it
+	 * @param disabled whether the robot is disabled, so that it is not being driven
+	 */
+	public DriftCorrectedGyro(Gyro gyro, GyroCalibration calibration, File calibrationFile,
+			BooleanSupplier disabled) {
+		this.gyro = gyro;
+		this.calibration = calibration;
+		this.calibrationFile = calibrationFile;
+		this.disabled = disabled;
+		drift = calibration.driftDegreesPerSec;
+		savedDrift = drift;
+		lastSaveTime = RobotClock.getInstance().nanoTime();
+		addTelemetry();
+	}
+
+	private void addTelemetry() {
+		Telemetry telemetry = Telemetry.getInstance();
+		telemetry.addNumber("Gyro: drift degrees per sec", Telemetry.LOW, TELEMETRY_DEADBAND_DEGREES_PER_SEC,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return getDriftDegreesPerSec();
+					}
+				});
+		telemetry.addNumber("Gyro: drift deviation", Telemetry.LOW, TELEMETRY_DEADBAND_DEGREES_PER_SEC,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return getDriftDeviation();
+					}
+				});
+		telemetry.addNumber("Gyro: correction degrees", Telemetry.LOW, TELEMETRY_DEADBAND_DEGREES,
+				new DoubleSupplier() {
+					@Override
+					public double getAsDouble() {
+						return correction;
+					}
+				});
+	}
+
+	/**
+	 * <pre>
+	 * public void start()
+	 * </pre>
+	 *
+	 * Starts sampling every SAMPLE_PERIOD_SECS on the {@link ControlExecutor}.
+	 */
+	public void start() {
+		sampler.startPeriodic(SAMPLE_PERIOD_SECS);
+	}
+
+	/**
+	 * <pre>
+	 * public void stop()
+	 * </pre>
+	 *
+	 * Stops sampling. The heading is still corrected by the drift estimate,
+	 * but only up to the last sample.
+	 */
+	public void stop() {
+		sampler.stop();
+	}
+
+	private void sample() {
+		long now = RobotClock.getInstance().nanoTime();
+		double angle = gyro.getAngle();
+		estimate(now, angle, disabled.getAsBoolean());
+
+		if (calibrationFile != null && disabled.getAsBoolean()) {
+			double drift = this.drift;
+			if (Math.abs(drift) > MAX_DRIFT_DEGREES_PER_SEC) {
+				if (!calibrationDeleted) {
+					calibrationDeleted = true;
+					calibrationFile.delete();
+					DriverStation.reportWarning("Gyro drifts " + drift
+							+ " degrees per second; it will be calibrated at the next boot\n", false);
+				}
+			} else if (getDriftDeviation() <= SAVE_MAX_DEVIATION && Math.abs(drift - savedDrift) >= SAVE_MIN_CHANGE
+					&& (now - lastSaveTime) / NANOS_IN_SECOND >= SAVE_PERIOD_SECS) {
+				saveCalibration();
+			}
+		}
+	}
+
+	private synchronized void estimate(long now, double angle, boolean disabled) {
+		if (!sampled) {
+			sampled = true;
+			lastTime = now;
+			lastAngle = angle;
+			return;
+		}
+		double dt = (now - lastTime) / NANOS_IN_SECOND;
+		if (dt <= 0) {
+			return;
+		}
+		double rate = (angle - lastAngle) / dt;
+		lastTime = now;
+		lastAngle = angle;
+
+		double drift = this.drift;
+		correction += drift * dt;
+		variance += DRIFT_WALK_VARIANCE_PER_SEC * dt;
+		boolean quiet = disabled && Math.abs(rate - drift) < MOTION_DEGREES_PER_SEC;
+		stillSecs = quiet ? stillSecs + dt : 0;
+		still = stillSecs >= STILL_SECS;
+		if (still) {
+			double gain = variance / (variance + MEASUREMENT_VARIANCE);
+			this.drift = drift + gain * (rate - drift);
+			variance *= 1 - gain;
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void saveCalibration()
+	 * </pre>
+	 *
+	 * Saves the calibration with the current drift estimate, if there is a
+	 * file to save it to. Errors are reported to the driver station.
+	 */
+	public void saveCalibration() {
+		if (calibrationFile == null) {
+			return;
+		}
+		double drift = this.drift;
+		try {
+			calibration.withDrift(drift).save(calibrationFile);
+		} catch (IOException e) {
+			DriverStation.reportError("Cannot save the gyro calibration: " + e.getMessage() + "\n", false);
+		}
+		savedDrift = drift;
+		lastSaveTime = RobotClock.getInstance().nanoTime();
+	}
+
+	/**
+	 * @return the drift estimate in degrees per second, clockwise positive
+	 */
+	public double getDriftDegreesPerSec() {
+		return drift;
+	}
+
+	/**
+	 * @return the standard deviation of the drift estimate in degrees per second
+	 */
+	public synchronized double getDriftDeviation() {
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * @return true if the last sample was used to estimate the drift
+	 */
+	public boolean isStill() {
+		return still;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void calibrate()
+	 * </pre>
+	 *
+	 * Calibrates the gyro again, which blocks for a few seconds, and starts
+	 * estimating the drift from zero. The new calibration of an
+	 * {@code AnalogGyro} is saved.
+	 */
+	@Override
+	public synchronized void calibrate() {
+		gyro.calibrate();
+		drift = 0;
+		variance = INITIAL_VARIANCE;
+		correction = 0;
+		sampled = false;
+		stillSecs = 0;
+		if (gyro instanceof AnalogGyro) {
+			AnalogGyro analog = (AnalogGyro) gyro;
+			calibration = new GyroCalibration(analog.getCenter(), analog.getOffset(), 0);
+			saveCalibration();
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		gyro.reset();
+		correction = 0;
+		sampled = false; // the heading jumped
+	}
+
+	/**
+	 * @return the heading in degrees, clockwise positive and not wrapped, less the drift since the last reset
+	 */
+	@Override
+	public double getAngle() {
+		return gyro.getAngle() - correction;
+	}
+
+	/**
+	 * @return the turn rate in degrees per second, clockwise positive, less the drift
+	 */
+	@Override
+	public double getRate() {
+		return gyro.getRate() - drift;
+	}
+
+	@Override
+	public void free() {
+		stop();
+		gyro.free();
+	}
+}
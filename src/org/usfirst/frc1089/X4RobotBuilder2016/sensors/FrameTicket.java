@@ -0,0 +1,70 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+/**
+ * The {@code FrameTicket} class is a poll-able request for the first vision
+ * frame newer than a given time.
+ * <p>
+ * Polling only reads the listener's volatile modification time, so commands
+ * can check a ticket from {@code isFinished()} every loop without blocking the
+ * scheduler. Once the ticket is ready, {@link Camera#getNTInfo()} will use a
+ * frame at least as new as the one requested.
+ * </p>
+ */
+public class FrameTicket {
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final CameraNTListener ntListener;
+	private final long notBefore;
+	private final long deadline;
+
+	/**
+	 * <pre>
+	 * FrameTicket(CameraNTListener ntListener, long notBefore, double timeoutSecs)
+	 * </pre>
+	 *
+	 * Constructs a new {@code FrameTicket}. Use {@link Camera#requestFrameAfter(long, double)}.
+	 *
+	 * @param ntListener the listener publishing frames
+	 * @param notBefore the frame must have started arriving after this time (see {@link VisionFrame#now()})
+	 * @param timeoutSecs how long to wait before giving up on a new frame
+	 */
+	FrameTicket(CameraNTListener ntListener, long notBefore, double timeoutSecs) {
+		this.ntListener = ntListener;
+		this.notBefore = notBefore;
+		this.deadline = VisionFrame.now() + (long) (timeoutSecs * NANOS_IN_SECOND);
+	}
+
+	/**
+	 * <pre>
+	 * public boolean isReady()
+	 * </pre>
+	 *
+	 * @return true if a frame newer than the requested time has been published
+	 */
+	public boolean isReady() {
+		return ntListener.getModificationTime() > notBefore;
+	}
+
+	/**
+	 * <pre>
+	 * public boolean isTimedOut()
+	 * </pre>
+	 *
+	 * @return true if the timeout has elapsed
+	 */
+	public boolean isTimedOut() {
+		return VisionFrame.now() > deadline;
+	}
+
+	/**
+	 * <pre>
+	 * public boolean isDone()
+	 * </pre>
+	 *
+	 * @return true if the ticket is ready or has timed out; the caller should then
+	 *         use whatever frame is available
+	 */
+	public boolean isDone() {
+		return isReady() || isTimedOut();
+	}
+}
@@ -0,0 +1,103 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * The {@code GyroCalibration} class holds what the {@code AnalogGyro}
+ * calibration measured, the accumulator center and offset, together with the
+ * drift left after it as estimated by a {@link DriftCorrectedGyro}. It is
+ * kept in a file on the roboRIO so the next boot can skip the 5 second
+ * calibration. The file is saved with a checksum, so a damaged one makes the
+ * next boot calibrate again (see {@link PropertiesFile}). A
+ * {@code GyroCalibration} is immutable.
+ */
+public class GyroCalibration {
+	private static final String FILE = "/home/lvuser/gyro-calibration.properties";
+
+	public final int center; // accumulator center, in raw ADC counts
+	public final double offset; // accumulator offset, in raw ADC counts
+	public final double driftDegreesPerSec; // left after the center and offset
+
+	/**
+	 * <pre>
+	 * public GyroCalibration(int center, double offset, double driftDegreesPerSec)
+	 * </pre>
+	 *
+	 * Constructs a new {@code GyroCalibration}.
+	 *
+	 * @param center the accumulator center, from {@code AnalogGyro.getCenter()}
+	 * @param offset the accumulator offset, from {@code AnalogGyro.getOffset()}
+	 * @param driftDegreesPerSec the drift of the heading with this center and offset, clockwise positive
+	 */
+	public GyroCalibration(int center, double offset, double driftDegreesPerSec) {
+		this.center = center;
+		this.offset = offset;
+		this.driftDegreesPerSec = driftDegreesPerSec;
+	}
+
+	/**
+	 * <pre>
+	 * public GyroCalibration withDrift(double driftDegreesPerSec)
+	 * </pre>
+	 *
+	 * @param driftDegreesPerSec the new drift, clockwise positive
+	 * @return a calibration with the same center and offset and the new drift
+	 */
+	public GyroCalibration withDrift(double driftDegreesPerSec) {
+		return new GyroCalibration(center, offset, driftDegreesPerSec);
+	}
+
+	/**
+	 * @return the file the calibration is kept in on the roboRIO
+	 */
+	public static File getFile() {
+		return new File(FILE);
+	}
+
+	/**
+	 * <pre>
+	 * public static GyroCalibration load(File file) throws IOException
+	 * </pre>
+	 *
+	 * Reads a calibration saved by {@link #save(File)}.
+	 *
+	 * @param file the file to read
+	 * @return the calibration
+	 * @throws IOException if the file cannot be read, is incomplete or damaged
+	 */
+	public static GyroCalibration load(File file) throws IOException {
+		Properties properties = PropertiesFile.load(file, true);
+		String center = properties.getProperty("center");
+		String offset = properties.getProperty("offset");
+		String drift = properties.getProperty("driftDegreesPerSec", "0");
+		if (center == null || offset == null) {
+			throw new IOException(file + ": no center or offset");
+		}
+		try {
+			return new GyroCalibration(Integer.parseInt(center.trim()), Double.parseDouble(offset.trim()),
+					Double.parseDouble(drift.trim()));
+		} catch (NumberFormatException e) {
+			throw new IOException(file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void save(File file) throws IOException
+	 * </pre>
+	 *
+	 * Writes the calibration, replacing the file in one step.
+	 *
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty("center", Integer.toString(center));
+		properties.setProperty("offset", Double.toString(offset));
+		properties.setProperty("driftDegreesPerSec", Double.toString(driftDegreesPerSec));
+		PropertiesFile.save(file, properties, "AnalogGyro calibration; delete to calibrate again at the next boot");
+	}
+}
@@ -0,0 +1,159 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.ControlExecutor;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+
+import edu.wpi.first.wpilibj.interfaces.Gyro;
+
+/**
+ * The {@code HeadingHistory} class samples a gyro at a high fixed rate into a
+ * ring buffer of time stamped headings, so the heading at any recent instant
+ * (e.g. when a camera frame was captured) can be looked up.
+ * <p>
+ * Samples are written by a single sampling thread and read lock-free: the
+ * write index is published through a volatile field after each sample, and
+ * readers stay {@code GUARD_SAMPLES} away from the slot being overwritten.
+ * Time stamps use the same clock as {@link VisionFrame#now()}.
+ * </p>
+ */
+public class HeadingHistory {
+	public static final double DEFAULT_PERIOD_SECS = 0.005; // 200 Hz
+
+	private static final int CAPACITY = 256; // 1.28 seconds at 200 Hz
+	private static final int GUARD_SAMPLES = 8;
+
+	private final Gyro gyro;
+	private final long[] timeStamps = new long[CAPACITY];
+	private final double[] headings = new double[CAPACITY];
+	private volatile long written = 0; // total samples written, index of the next sample
+
+	private final Periodic periodic = ControlExecutor.getInstance().newPeriodic("HeadingHistory", new Runnable() {
+		@Override
+		public void run() {
+			sample();
+		}
+	});
+	private boolean running = false;
+
+	/**
+	 * <pre>
+	 * public HeadingHistory(Gyro gyro)
+	 * </pre>
+	 *
+	 * Constructs a new {@code HeadingHistory} for the specified gyro.
+	 *
+	 * @param gyro the gyro to sample
+	 */
+	public HeadingHistory(Gyro gyro) {
+		this.gyro = gyro;
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void start()
+	 * </pre>
+	 *
+	 * Starts sampling the gyro every DEFAULT_PERIOD_SECS on the {@link ControlExecutor}.
+	 */
+	public synchronized void start() {
+		if (!running) {
+			running = true;
+			periodic.startPeriodic(DEFAULT_PERIOD_SECS);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void stop()
+	 * </pre>
+	 *
+	 * Stops sampling the gyro.
+	 */
+	public synchronized void stop() {
+		if (running) {
+			running = false;
+			periodic.stop();
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void sample()
+	 * </pre>
+	 *
+	 * Records the current gyro heading. Must only be called from one thread.
+	 */
+	public void sample() {
+		record(VisionFrame.now(), gyro.getAngle());
+	}
+
+	/**
+	 * <pre>
+	 * public void record(long timeStamp, double heading)
+	 * </pre>
+	 *
+	 * Records a heading measured at the given time. Must only be called from one
+	 * thread, with increasing time stamps.
+	 *
+	 * @param timeStamp the time of the measurement in nanoseconds
+	 * @param heading the heading in degrees
+	 */
+	public void record(long timeStamp, double heading) {
+		long n = written;
+		int slot = (int) (n % CAPACITY);
+		timeStamps[slot] = timeStamp;
+		headings[slot] = heading;
+		written = n + 1;
+	}
+
+	/**
+	 * <pre>
+	 * public double getLatestHeading()
+	 * </pre>
+	 *
+	 * Gets the most recent sampled heading, or reads the gyro if nothing has been sampled yet.
+	 *
+	 * @return the heading in degrees
+	 */
+	public double getLatestHeading() {
+		long n = written;
+		if (n == 0) {
+			return gyro.getAngle();
+		}
+		return headings[(int) ((n - 1) % CAPACITY)];
+	}
+
+	/**
+	 * <pre>
+	 * public double getHeadingAt(long timeStamp)
+	 * </pre>
+	 *
+	 * Gets the heading at the given time, interpolating between the two closest
+	 * samples. Times older than the history return the oldest heading kept;
+	 * times newer than the last sample return the latest heading.
+	 *
+	 * @param timeStamp the time in nanoseconds (see {@link VisionFrame#now()})
+	 * @return the heading in degrees
+	 */
+	public double getHeadingAt(long timeStamp) {
+		long n = written;
+		if (n == 0) {
+			return gyro.getAngle();
+		}
+		long oldest = Math.max(0, n - (CAPACITY - GUARD_SAMPLES));
+		int newer = (int) ((n - 1) % CAPACITY);
+		if (timeStamp >= timeStamps[newer]) {
+			return headings[newer];
+		}
+		for (long i = n - 2; i >= oldest; i--) {
+			int older = (int) (i % CAPACITY);
+			if (timeStamps[older] <= timeStamp) {
+				double span = timeStamps[newer] - timeStamps[older];
+				double fraction = span > 0 ? (timeStamp - timeStamps[older]) / span : 0;
+				return headings[older] + (headings[newer] - headings[older]) * fraction;
+			}
+			newer = older;
+		}
+		return headings[newer];
+	}
+}
@@ -0,0 +1,108 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code PropertiesFile} class reads and writes the properties files the
+ * robot keeps what it measured in, so that a power cut while saving never
+ * leaves a damaged file behind.
+ * <p>
+ * A file is written to a temporary file in the same directory, synced to the
+ * flash and then renamed over the old file, which replaces it in one step: a
+ * power cut leaves either the old file or the new one. A "checksum" key, the
+ * CRC-32 of the other keys and values, tells a damaged file from a good one.
+ * </p>
+ */
+public class PropertiesFile {
+	private static final String CHECKSUM_KEY = "checksum";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private PropertiesFile() {
+	}
+
+	/**
+	 * <pre>
+	 * public static Properties load(File file, boolean checksumRequired) throws IOException
+	 * </pre>
+	 *
+	 * Reads a file saved by {@link #save(File, Properties, String)}, checking
+	 * its checksum.
+	 *
+	 * @param file the file to read
+	 * @param checksumRequired false to accept a file without a checksum, e.g.
+	 *            one edited by hand
+	 * @return the properties, without the checksum
+	 * @throws IOException if the file cannot be read, or its checksum is
+	 *             missing when required or does not match
+	 */
+	public static Properties load(File file, boolean checksumRequired) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		String checksum = (String) properties.remove(CHECKSUM_KEY);
+		if (checksum == null) {
+			if (checksumRequired) {
+				throw new IOException(file + ": no checksum");
+			}
+		} else if (!checksum.trim().equals(checksum(properties))) {
+			throw new IOException(file + ": checksum does not match, the file is damaged");
+		}
+		return properties;
+	}
+
+	/**
+	 * <pre>
+	 * public static void save(File file, Properties properties, String comment) throws IOException
+	 * </pre>
+	 *
+	 * Writes the properties and their checksum, replacing the file in one step.
+	 *
+	 * @param file the file to write
+	 * @param properties the properties to write
+	 * @param comment written at the top of the file
+	 * @throws IOException if the file cannot be written; the old file is then left as it was
+	 */
+	public static void save(File file, Properties properties, String comment) throws IOException {
+		Properties checked = new Properties();
+		checked.putAll(properties);
+		checked.setProperty(CHECKSUM_KEY, checksum(properties));
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + TEMP_SUFFIX);
+		FileOutputStream fileOut = new FileOutputStream(temp);
+		try {
+			OutputStream out = new BufferedOutputStream(fileOut);
+			checked.store(out, comment);
+			out.flush();
+			fileOut.getFD().sync(); // on the flash before it replaces the old file
+		} finally {
+			fileOut.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	// The CRC-32 of the keys and values in key order, as hex
+	private static String checksum(Properties properties) {
+		CRC32 crc = new CRC32();
+		for (String key : new TreeSet<String>(properties.stringPropertyNames())) {
+			crc.update((key + '=' + properties.getProperty(key) + '\n').getBytes(StandardCharsets.UTF_8));
+		}
+		return Long.toHexString(crc.getValue());
+	}
+}
@@ -0,0 +1,98 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.util.Arrays;
+
+/**
+ * The {@code RollingPercentile} class keeps the most recent samples of a
+ * time measurement in a fixed-size ring and reports percentiles over them.
+ * <p>
+ * Samples are stored in nanoseconds and reported in seconds. Recording and
+ * reporting never allocate; percentiles sort a preallocated scratch copy.
+ * The class is not thread safe and is meant to be used from a single thread.
+ * </p>
+ */
+public class RollingPercentile {
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final long[] samples;
+	private final long[] sorted;
+	private int next = 0;
+	private int count = 0;
+	private boolean sortedValid = false;
+
+	/**
+	 * <pre>
+	 * public RollingPercentile(int windowSize)
+	 * </pre>
+	 *
+	 * Constructs a new {@code RollingPercentile} over the given number of samples.
+	 *
+	 * @param windowSize the number of most recent samples to keep
+	 */
+	public RollingPercentile(int windowSize) {
+		samples = new long[windowSize];
+		sorted = new long[windowSize];
+	}
+
+	/**
+	 * <pre>
+	 * public void record(long nanos)
+	 * </pre>
+	 *
+	 * Adds a sample, replacing the oldest one once the window is full.
+	 *
+	 * @param nanos the sample in nanoseconds
+	 */
+	public void record(long nanos) {
+		samples[next] = nanos;
+		next = (next + 1) % samples.length;
+		if (count < samples.length) {
+			count++;
+		}
+		sortedValid = false;
+	}
+
+	/**
+	 * <pre>
+	 * public double getPercentileSecs(double percentile)
+	 * </pre>
+	 *
+	 * Gets a percentile of the samples in the window (nearest rank).
+	 *
+	 * @param percentile the percentile, from 0 to 100
+	 * @return the percentile in seconds, or 0 if no sample has been recorded
+	 */
+	public double getPercentileSecs(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		if (!sortedValid) {
+			System.arraycopy(samples, 0, sorted, 0, count);
+			Arrays.sort(sorted, 0, count);
+			sortedValid = true;
+		}
+		int rank = (int) Math.ceil(percentile / 100.0 * count) - 1;
+		rank = Math.max(0, Math.min(count - 1, rank));
+		return sorted[rank] / NANOS_IN_SECOND;
+	}
+
+	/**
+	 * @return the number of samples currently in the window
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * <pre>
+	 * public void reset()
+	 * </pre>
+	 *
+	 * Discards all samples.
+	 */
+	public void reset() {
+		next = 0;
+		count = 0;
+		sortedValid = false;
+	}
+}
@@ -0,0 +1,236 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+/**
+ * The {@code TargetTracker} class follows vision targets from frame to frame.
+ * <p>
+ * Each frame's contours are associated with existing tracks by nearest center X.
+ * Every track keeps alpha-beta filtered estimates of its center X, width and
+ * horizontal distance, plus their rates of change. Tracks gain confidence each
+ * frame they are seen and lose it each frame they are missed. The best track is
+ * the most confident one, with ties going to the widest (closest) target.
+ * </p>
+ * <p>
+ * All state lives in preallocated primitive arrays, so updates do not allocate.
+ * The class is not thread safe; {@link Camera} updates it from getNTInfo().
+ * </p>
+ */
+public class TargetTracker {
+	public static final int MAX_TRACKS = 8;
+
+	private static final double ALPHA = 0.5; // position gain of the alpha-beta filters
+	private static final double BETA = 0.1; // velocity gain of the alpha-beta filters
+	private static final double GATE_PIXELS = 30.0; // max center X distance for a contour to match a track
+	private static final double MAX_CONFIDENCE = 1.0;
+	private static final double HIT_CONFIDENCE = 0.25; // confidence gained per frame seen
+	private static final double MISS_CONFIDENCE = 0.2; // confidence lost per frame missed
+	private static final double NEW_TRACK_CONFIDENCE = 0.25;
+	private static final double MIN_REPORT_CONFIDENCE = 0.5; // below this a track is not reported as a target
+	private static final double NANOS_IN_SECOND = 1.0e9;
+
+	private final boolean[] active = new boolean[MAX_TRACKS];
+	private final boolean[] matched = new boolean[MAX_TRACKS];
+	private final double[] confidence = new double[MAX_TRACKS];
+	private final long[] lastUpdate = new long[MAX_TRACKS];
+	private final double[] centerX = new double[MAX_TRACKS];
+	private final double[] centerXRate = new double[MAX_TRACKS];
+	private final double[] width = new double[MAX_TRACKS];
+	private final double[] widthRate = new double[MAX_TRACKS];
+	private final double[] distance = new double[MAX_TRACKS];
+	private final double[] distanceRate = new double[MAX_TRACKS];
+
+	private final boolean[] contourUsed = new boolean[VisionFrame.MAX_TARGETS];
+	private int bestTrack = -1;
+
+	/**
+	 * <pre>
+	 * public void update(long timeStamp, int count, double[] contourCenterX, double[] contourWidth, double[] contourDistance)
+	 * </pre>
+	 *
+	 * Updates the tracks with the contours of a new frame.
+	 *
+	 * @param timeStamp the frame time stamp in nanoseconds
+	 * @param count the number of valid contours
+	 * @param contourCenterX the contour center Xs in pixels
+	 * @param contourWidth the contour widths in pixels
+	 * @param contourDistance the horizontal distances to the contours in feet
+	 */
+	public void update(long timeStamp, int count, double[] contourCenterX, double[] contourWidth,
+			double[] contourDistance) {
+		count = Math.min(count, VisionFrame.MAX_TARGETS);
+		for (int c = 0; c < count; c++) {
+			contourUsed[c] = false;
+		}
+
+		// Associate each active track with the nearest unused contour inside the gate
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			matched[t] = false;
+			if (!active[t]) {
+				continue;
+			}
+			double dt = (timeStamp - lastUpdate[t]) / NANOS_IN_SECOND;
+			double predictedX = centerX[t] + centerXRate[t] * dt;
+			int nearest = -1;
+			double nearestError = GATE_PIXELS;
+			for (int c = 0; c < count; c++) {
+				double error = Math.abs(contourCenterX[c] - predictedX);
+				if (!contourUsed[c] && error <= nearestError) {
+					nearest = c;
+					nearestError = error;
+				}
+			}
+			if (nearest >= 0) {
+				contourUsed[nearest] = true;
+				matched[t] = true;
+				correct(t, dt, contourCenterX[nearest], contourWidth[nearest], contourDistance[nearest]);
+				lastUpdate[t] = timeStamp;
+				confidence[t] = Math.min(MAX_CONFIDENCE, confidence[t] + HIT_CONFIDENCE);
+			}
+		}
+
+		// Age tracks that were not seen
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			if (active[t] && !matched[t]) {
+				confidence[t] -= MISS_CONFIDENCE;
+				if (confidence[t] <= 0) {
+					active[t] = false;
+				}
+			}
+		}
+
+		// Start tracks for new contours
+		for (int c = 0; c < count; c++) {
+			if (!contourUsed[c]) {
+				int t = freeTrack();
+				if (t < 0) {
+					break;
+				}
+				active[t] = true;
+				confidence[t] = NEW_TRACK_CONFIDENCE;
+				lastUpdate[t] = timeStamp;
+				centerX[t] = contourCenterX[c];
+				width[t] = contourWidth[c];
+				distance[t] = contourDistance[c];
+				centerXRate[t] = widthRate[t] = distanceRate[t] = 0;
+			}
+		}
+
+		selectBestTrack();
+	}
+
+	/**
+	 * <pre>
+	 * private void correct(int t, double dt, double measuredX, double measuredWidth, double measuredDistance)
+	 * </pre>
+	 *
+	 * Applies the alpha-beta correction of a track with a matched measurement.
+	 */
+	private void correct(int t, double dt, double measuredX, double measuredWidth, double measuredDistance) {
+		double predicted = centerX[t] + centerXRate[t] * dt;
+		double residual = measuredX - predicted;
+		centerX[t] = predicted + ALPHA * residual;
+		centerXRate[t] += dt > 0 ? BETA * residual / dt : 0;
+
+		predicted = width[t] + widthRate[t] * dt;
+		residual = measuredWidth - predicted;
+		width[t] = predicted + ALPHA * residual;
+		widthRate[t] += dt > 0 ? BETA * residual / dt : 0;
+
+		if (Double.isInfinite(measuredDistance) || Double.isNaN(measuredDistance)) {
+			// keep the previous estimate
+		} else if (Double.isInfinite(distance[t]) || Double.isNaN(distance[t])) {
+			distance[t] = measuredDistance;
+			distanceRate[t] = 0;
+		} else {
+			predicted = distance[t] + distanceRate[t] * dt;
+			residual = measuredDistance - predicted;
+			distance[t] = predicted + ALPHA * residual;
+			distanceRate[t] += dt > 0 ? BETA * residual / dt : 0;
+		}
+	}
+
+	/**
+	 * @return the index of an inactive track, or -1 if all are in use
+	 */
+	private int freeTrack() {
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			if (!active[t]) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	private void selectBestTrack() {
+		bestTrack = -1;
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			if (active[t] && confidence[t] >= MIN_REPORT_CONFIDENCE
+					&& (bestTrack < 0 || confidence[t] > confidence[bestTrack]
+							|| (confidence[t] == confidence[bestTrack] && width[t] > width[bestTrack]))) {
+				bestTrack = t;
+			}
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public void reset()
+	 * </pre>
+	 *
+	 * Drops all tracks.
+	 */
+	public void reset() {
+		for (int t = 0; t < MAX_TRACKS; t++) {
+			active[t] = false;
+		}
+		bestTrack = -1;
+	}
+
+	/**
+	 * @return true if a track is confident enough to be reported as the target
+	 */
+	public boolean hasTarget() {
+		return bestTrack >= 0;
+	}
+
+	/**
+	 * @return the confidence of the target track, from 0 to 1, or 0 if there is no target
+	 */
+	public double getConfidence() {
+		return hasTarget() ? confidence[bestTrack] : 0;
+	}
+
+	/**
+	 * @return the filtered center X of the target in pixels
+	 */
+	public double getCenterX() {
+		return hasTarget() ? centerX[bestTrack] : 0;
+	}
+
+	/**
+	 * @return the rate of change of the target center X in pixels per second
+	 */
+	public double getCenterXRate() {
+		return hasTarget() ? centerXRate[bestTrack] : 0;
+	}
+
+	/**
+	 * @return the filtered width of the target in pixels
+	 */
+	public double getWidth() {
+		return hasTarget() ? width[bestTrack] : 0;
+	}
+
+	/**
+	 * @return the filtered horizontal distance to the target in feet, or positive infinity if there is no target
+	 */
+	public double getDistance() {
+		return hasTarget() ? distance[bestTrack] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * @return the rate of change of the horizontal distance in feet per second
+	 */
+	public double getDistanceRate() {
+		return hasTarget() ? distanceRate[bestTrack] : 0;
+	}
+}
@@ -0,0 +1,174 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+
+/**
+ * The {@code VisionFrame} class holds one complete set of GRIP contour reports
+ * (area, width, height, centerX and centerY) as preallocated parallel arrays.
+ * <p>
+ * Frames are pooled: the {@link CameraNTListener} and the {@link Camera} copy
+ * contour data into them in place instead of allocating new arrays for every
+ * frame. Only the first {@link #getLength()} entries of each array are valid.
+ * A frame is only ever written by the thread that currently owns it, so the
+ * arrays must not be modified by callers of the getters.
+ * </p>
+ * <p>
+ * Time stamps come from {@link #now()}, a monotonic nanosecond clock.
+ * </p>
+ */
+public final class VisionFrame {
+	/**
+	 * Maximum number of contours kept per frame. Extra contours reported by GRIP are dropped.
+	 */
+	public static final int MAX_TARGETS = 64;
+
+	private final double[] rectArea = new double[MAX_TARGETS];
+	private final double[] rectWidth = new double[MAX_TARGETS];
+	private final double[] rectHeight = new double[MAX_TARGETS];
+	private final double[] rectCenterX = new double[MAX_TARGETS];
+	private final double[] rectCenterY = new double[MAX_TARGETS];
+	private int length = 0;
+	private long sequence = -1;
+	private long timeStamp = 0;
+
+	/**
+	 * <pre>
+	 * public static long now()
+	 * </pre>
+	 *
+	 * Gets the monotonic clock used to time stamp frames. Unlike the wall clock it
+	 * never jumps, and unlike the FPGA clock it is also available off the robot.
+	 * It is the {@link RobotClock}, so it runs in simulated time in a simulation.
+	 *
+	 * @return the current time in nanoseconds
+	 */
+	public static long now() {
+		return RobotClock.getInstance().nanoTime();
+	}
+
+	/**
+	 * <pre>
+	 * public static boolean isCoherent(double[] rectArea, double[] rectWidth, double[] rectHeight, double[] rectCenterX, double[] rectCenterY)
+	 * </pre>
+	 *
+	 * Are the supplied arrays consistently sized?
+	 *
+	 * @return true if all arrays are non-null and the same length, false otherwise
+	 */
+	public static boolean isCoherent(double[] rectArea, double[] rectWidth, double[] rectHeight,
+			double[] rectCenterX, double[] rectCenterY) {
+		return (rectArea != null && rectWidth != null && rectHeight != null && rectCenterX != null
+				&& rectCenterY != null && rectArea.length == rectWidth.length
+				&& rectArea.length == rectHeight.length && rectArea.length == rectCenterX.length
+				&& rectArea.length == rectCenterY.length);
+	}
+
+	/**
+	 * <pre>
+	 * public boolean set(long sequence, long timeStamp, double[] rectArea, double[] rectWidth,
+	 *                    double[] rectHeight, double[] rectCenterX, double[] rectCenterY)
+	 * </pre>
+	 *
+	 * Copies the supplied arrays into this frame. If the arrays are not coherent
+	 * the frame is left empty.
+	 *
+	 * @param sequence the frame sequence number
+	 * @param timeStamp the time the first key of this frame was received, in nanoseconds
+	 * @param rectArea Array of rectangle areas
+	 * @param rectWidth Array of rectangle widths
+	 * @param rectHeight Array of rectangle heights
+	 * @param rectCenterX Array of rectangle center Xs
+	 * @param rectCenterY Array of rectangle center Ys
+	 * @return true if the arrays were coherent and copied, false otherwise
+	 */
+	public boolean set(long sequence, long timeStamp, double[] rectArea, double[] rectWidth,
+			double[] rectHeight, double[] rectCenterX, double[] rectCenterY) {
+		this.sequence = sequence;
+		this.timeStamp = timeStamp;
+		if (!isCoherent(rectArea, rectWidth, rectHeight, rectCenterX, rectCenterY)) {
+			length = 0;
+			return false;
+		}
+		length = Math.min(rectArea.length, MAX_TARGETS);
+		System.arraycopy(rectArea, 0, this.rectArea, 0, length);
+		System.arraycopy(rectWidth, 0, this.rectWidth, 0, length);
+		System.arraycopy(rectHeight, 0, this.rectHeight, 0, length);
+		System.arraycopy(rectCenterX, 0, this.rectCenterX, 0, length);
+		System.arraycopy(rectCenterY, 0, this.rectCenterY, 0, length);
+		return true;
+	}
+
+	/**
+	 * <pre>
+	 * public void copyFrom(VisionFrame other)
+	 * </pre>
+	 *
+	 * Copies the valid contents of another frame into this one.
+	 *
+	 * @param other the frame to copy
+	 */
+	public void copyFrom(VisionFrame other) {
+		sequence = other.sequence;
+		timeStamp = other.timeStamp;
+		length = other.length;
+		System.arraycopy(other.rectArea, 0, rectArea, 0, length);
+		System.arraycopy(other.rectWidth, 0, rectWidth, 0, length);
+		System.arraycopy(other.rectHeight, 0, rectHeight, 0, length);
+		System.arraycopy(other.rectCenterX, 0, rectCenterX, 0, length);
+		System.arraycopy(other.rectCenterY, 0, rectCenterY, 0, length);
+	}
+
+	/**
+	 * <pre>
+	 * public void clear()
+	 * </pre>
+	 *
+	 * Empties the frame and marks it as never received.
+	 */
+	public void clear() {
+		length = 0;
+		sequence = -1;
+		timeStamp = 0;
+	}
+
+	/**
+	 * @return the frame sequence number, or -1 if this frame has never been filled
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the time the first key of this frame was received, in nanoseconds
+	 */
+	public long getTimeStamp() {
+		return timeStamp;
+	}
+
+	/**
+	 * @return the number of valid contours in this frame
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public double[] getRectArea() {
+		return rectArea;
+	}
+
+	public double[] getRectWidth() {
+		return rectWidth;
+	}
+
+	public double[] getRectHeight() {
+		return rectHeight;
+	}
+
+	public double[] getCenterX() {
+		return rectCenterX;
+	}
+
+	public double[] getCenterY() {
+		return rectCenterY;
+	}
+}
@@ -0,0 +1,141 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import edu.wpi.first.wpilibj.tables.ITable;
+import edu.wpi.first.wpilibj.tables.ITableListener;
+
+/**
+ * The {@code VisionRecorder} class captures the GRIP contour updates of a
+ * NetworkTable into a compact append-only binary log, for use with
+ * {@link VisionReplayer}.
+ * <p>
+ * The log starts with a header ({@code MAGIC}, {@code VERSION}) followed by
+ * one record per update: the time in nanoseconds since recording started
+ * (long), the key index (byte), the number of values (int) and the values
+ * (doubles). Only the keys in {@code KEYS} are recorded.
+ * </p>
+ */
+public class VisionRecorder implements ITableListener {
+	public static final int MAGIC = 0x47524950; // "GRIP"
+	public static final int VERSION = 1;
+	public static final String[] KEYS = { "area", "width", "height", "centerX", "centerY" };
+
+	private final DataOutputStream out;
+	private final long startTime;
+	private ITable table;
+	private IOException error;
+
+	/**
+	 * <pre>
+	 * public VisionRecorder(File logFile) throws IOException
+	 * </pre>
+	 *
+	 * Creates a recorder appending to the specified log file. A header is written
+	 * if the file is new or empty.
+	 *
+	 * @param logFile the file to append to
+	 * @throws IOException if the file cannot be opened
+	 */
+	public VisionRecorder(File logFile) throws IOException {
+		boolean needsHeader = !logFile.exists() || logFile.length() == 0;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+		startTime = VisionFrame.now();
+		if (needsHeader) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void start(ITable table)
+	 * </pre>
+	 *
+	 * Start recording updates of the specified table.
+	 *
+	 * @param table the GRIP table to record
+	 */
+	public synchronized void start(ITable table) {
+		if (this.table == null) {
+			this.table = table;
+			table.addTableListener(this);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void stop() throws IOException
+	 * </pre>
+	 *
+	 * Stop recording and close the log.
+	 *
+	 * @throws IOException if writing to the log failed at any point
+	 */
+	public synchronized void stop() throws IOException {
+		if (table != null) {
+			table.removeTableListener(this);
+			table = null;
+		}
+		out.close();
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public static int keyIndex(String key)
+	 * </pre>
+	 *
+	 * @param key the NetworkTable key
+	 * @return the index of the key in {@code KEYS}, or -1 if it is not recorded
+	 */
+	public static int keyIndex(String key) {
+		for (int i = 0; i < KEYS.length; i++) {
+			if (KEYS[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void valueChanged(ITable source, String key, Object value, boolean isNew) {
+		int index = keyIndex(key);
+		if (index >= 0 && value instanceof double[]) {
+			record(VisionFrame.now() - startTime, index, (double[]) value);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public synchronized void record(long timeNanos, int keyIndex, double[] values)
+	 * </pre>
+	 *
+	 * Appends one update to the log. Write errors are kept and reported by stop().
+	 *
+	 * @param timeNanos the time of the update in nanoseconds since the start of the log
+	 * @param keyIndex the index of the key in {@code KEYS}
+	 * @param values the new value of the key
+	 */
+	public synchronized void record(long timeNanos, int keyIndex, double[] values) {
+		if (error != null) {
+			return;
+		}
+		try {
+			out.writeLong(timeNanos);
+			out.writeByte(keyIndex);
+			out.writeInt(values.length);
+			for (int i = 0; i < values.length; i++) {
+				out.writeDouble(values[i]);
+			}
+		} catch (IOException e) {
+			error = e;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package org.usfirst.frc1089.X4RobotBuilder2016.sensors;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import edu.wpi.first.wpilibj.tables.ITableListener;
+
+/**
+ * The {@code VisionReplayer} class feeds a log written by {@link VisionRecorder}
+ * back into a table listener, either at the recorded pace or as fast as possible.
+ * <p>
+ * Run it as a program to replay a log through a {@link Camera} off the robot
+ * and print the targeting results of every frame as CSV:
+ * </p>
+ * <pre>
+ * java -cp ... org.usfirst.frc1089.X4RobotBuilder2016.sensors.VisionReplayer vision.log [--realtime]
+ * </pre>
+ */
+public class VisionReplayer {
+	private static final double NANOS_IN_SECOND = 1.0e9;
+	private static final long NANOS_IN_MILLI = 1000000;
+
+	private final DataInputStream in;
+	private final boolean realTime;
+	private long replayStart = -1;
+	private long lastRecordTime = 0;
+
+	/**
+	 * <pre>
+	 * public VisionReplayer(File logFile, boolean realTime) throws IOException
+	 * </pre>
+	 *
+	 * Opens a log for replay.
+	 *
+	 * @param logFile the log to replay
+	 * @param realTime true to replay at the recorded pace, false to replay as fast as possible
+	 * @throws IOException if the file cannot be read or is not a vision log
+	 */
+	public VisionReplayer(File logFile, boolean realTime) throws IOException {
+		this.realTime = realTime;
+		in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+		if (in.readInt() != VisionRecorder.MAGIC) {
+			in.close();
+			throw new IOException(logFile + " is not a vision log");
+		}
+		int version = in.readInt();
+		if (version != VisionRecorder.VERSION) {
+			in.close();
+			throw new IOException("Unsupported vision log version " + version);
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public boolean replayNext(ITableListener listener) throws IOException
+	 * </pre>
+	 *
+	 * Reads the next update from the log and passes it to the listener, waiting
+	 * first for its recorded time when replaying in real time.
+	 *
+	 * @param listener the listener to feed, e.g. a {@link CameraNTListener}
+	 * @return true if an update was replayed, false at the end of the log
+	 * @throws IOException if the log cannot be read
+	 */
+	public boolean replayNext(ITableListener listener) throws IOException {
+		long recordTime;
+		try {
+			recordTime = in.readLong();
+		} catch (EOFException e) {
+			return false;
+		}
+		int keyIndex = in.readByte();
+		double[] values = new double[in.readInt()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readDouble();
+		}
+
+		if (realTime) {
+			if (replayStart < 0) {
+				replayStart = VisionFrame.now() - recordTime;
+			}
+			long wait = replayStart + recordTime - VisionFrame.now();
+			if (wait > 0) {
+				try {
+					Thread.sleep(wait / NANOS_IN_MILLI, (int) (wait % NANOS_IN_MILLI));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+		lastRecordTime = recordTime;
+		listener.valueChanged(null, VisionRecorder.KEYS[keyIndex], values, false);
+		return true;
+	}
+
+	/**
+	 * @return the recorded time of the last replayed update, in nanoseconds since the start of the log
+	 */
+	public long getLastRecordTime() {
+		return lastRecordTime;
+	}
+
+	/**
+	 * <pre>
+	 * public void close() throws IOException
+	 * </pre>
+	 *
+	 * Closes the log.
+	 *
+	 * @throws IOException if the log cannot be closed
+	 */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: VisionReplayer <log file> [--realtime]");
+			System.exit(1);
+		}
+		boolean realTime = args.length > 1 && args[1].equals("--realtime");
+		VisionReplayer replayer = new VisionReplayer(new File(args[0]), realTime);
+		CameraNTListener listener = new CameraNTListener(null);
+		Camera camera = new Camera(listener);
+		long frames = 0;
+
+		System.out.println("time_secs,targets,turn_angle_deg,horiz_dist_ft,track_confidence");
+		while (replayer.replayNext(listener)) {
+			if (listener.getFrameCount() != frames) {
+				frames = listener.getFrameCount();
+				camera.getNTInfo();
+				System.out.println(replayer.getLastRecordTime() / NANOS_IN_SECOND + "," + camera.getTargetCount()
+						+ "," + camera.getTurnAngle() + "," + camera.getHorizontalDist() + ","
+						+ camera.getTracker().getConfidence());
+			}
+		}
+		replayer.close();
+	}
+}
@@ -11,14 +11,41 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.subsystems;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
-import edu.wpi.first.wpilibj.AnalogGyro;
-import edu.wpi.first.wpilibj.CANTalon;
-import edu.wpi.first.wpilibj.Joystick;
-import edu.wpi.first.wpilibj.RobotDrive;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescingRobotDrive;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescingTalonSRX;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.ControlExecutor;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CurrentBudget;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Handoff;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.TalonSRX;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.MotionProfile;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.Odometry;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.ProfiledTurn;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.TurnGains;
+import org.usfirst.frc1089.X4RobotBuilder2016.motion.TurnTuner;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.VisionFrame;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.GenericHID;
 import edu.wpi.first.wpilibj.CANTalon.FeedbackDevice;
+import edu.wpi.first.wpilibj.CANTalon.MotionProfileStatus;
+import edu.wpi.first.wpilibj.CANTalon.SetValueMotionProfile;
+import edu.wpi.first.wpilibj.CANTalon.TrajectoryPoint;
+import edu.wpi.first.wpilibj.CANTalon.TalonControlMode;
+import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.PIDSubsystem;
+import edu.wpi.first.wpilibj.interfaces.Gyro;
 import edu.wpi.first.wpilibj.livewindow.LiveWindow;
 
 /**
@@ -26,12 +53,114 @@ import edu.wpi.first.wpilibj.livewindow.LiveWindow;
  */
 public class DriveTrain extends PIDSubsystem {
 
-    private final AnalogGyro gyro = RobotMap.driveTrainGyro;
-    private final CANTalon leftBack = RobotMap.driveTrainLeftBack;
-    private final CANTalon rightBack = RobotMap.driveTrainRightBack;
-    private final CANTalon leftFront = RobotMap.driveTrainLeftFront;
-    private final CANTalon rightFront = RobotMap.driveTrainRightFront;
-    private final RobotDrive robotDrive = RobotMap.driveTrainRobotDrive;
+    /**
+     * The {@code ControlMode} enum selects how drive outputs reach the front Talons.
+     */
+    public enum ControlMode {
+        /** Outputs are fractions of the bus voltage, as computed on the roboRIO. */
+        PERCENT_VBUS,
+        /**
+         * Outputs are wheel speeds and positions held by the Talons' own 1 kHz
+         * closed loop on the drive encoders. Selected by driveVelocity(),
+         * driveToPosition() and motion profiles. The sticks, turns and
+         * stopMotionProfile() return to {@code PERCENT_VBUS}.
+         */
+        TALON_CLOSED_LOOP;
+    }
+
+    private static final int VELOCITY_PROFILE = 0;
+    private static final int POSITION_PROFILE = 1;
+    private static final double TALON_FULL_OUTPUT = 1023; // closed loop output units at full output
+    private static final int EDGES_PER_CODE = 4; // the Talon counts every quadrature edge
+    private static final double VELOCITY_PERIODS_PER_MINUTE = 600; // native speed is per 100 ms
+    private static final double SAFETY_EXPIRATION_SECS = 0.1;
+    private static final double DEGREES_IN_CIRCLE = 360;
+    private static final double SECS_IN_MINUTE = 60;
+    private static final double PROFILE_STREAM_PERIOD_SECS = 0.005;
+    private static final int PROFILE_MIN_BUFFERED_POINTS = 5; // points in the Talons before starting
+    private static final double TURN_PERIOD_SECS = 0.01;
+    private static final double NANOS_IN_SECOND = 1.0e9;
+    // Half the Talon control frame period, so loops running at the frame rate are never held back
+    private static final double MIN_FRAME_INTERVAL_SECS = 0.005;
+    private static final int CURRENT_PRIORITY = 1; // sustained driving comes before the intake
+    private static final double TELEMETRY_DEADBAND_DEGREES = 0.1;
+
+    private final Gyro gyro = RobotMap.driveTrainGyro;
+    private final TalonSRX leftBack = RobotMap.driveTrainLeftBack;
+    private final TalonSRX rightBack = RobotMap.driveTrainRightBack;
+    private final CoalescingTalonSRX leftFront = new CoalescingTalonSRX("DriveTrain LeftFront",
+            RobotMap.driveTrainLeftFront);
+    private final CoalescingTalonSRX rightFront = new CoalescingTalonSRX("DriveTrain RightFront",
+            RobotMap.driveTrainRightFront);
+    private final CoalescingRobotDrive robotDrive = RobotMap.driveTrainRobotDrive == null ? null // in simulation
+            : new CoalescingRobotDrive("DriveTrain RobotDrive", RobotMap.driveTrainRobotDrive);
+
+    private final Config config = Config.getInstance();
+    private final double inchesPerEncoderRev;
+    // The scheduler, the ControlExecutor loops and the PIDController thread all drive the
+    // motors, so the modes below change and the outputs are written only under outputLock
+    private final Object outputLock = new Object();
+    private volatile ControlMode controlMode = ControlMode.PERCENT_VBUS;
+    private boolean robotDriveSafety; // whether RobotDrive or the front Talons run motor safety
+    private volatile TalonControlMode talonMode = TalonControlMode.PercentVbus;
+    private final Odometry odometry;
+    private final CurrentBudget.Channel current;
+    // The fraction of full output last asked of each side, positive forward, for the flight recorder
+    private volatile double leftDemand = 0;
+    private volatile double rightDemand = 0;
+
+    // Profiled turns, planned by startTurn and handed to turnLoop
+    private final Handoff<TurnPlan> turnPlans = new Handoff<TurnPlan>(new TurnPlan(config), new TurnPlan(config),
+            new TurnPlan(config));
+    private final Periodic turnLoop = ControlExecutor.getInstance().newPeriodic("DriveTrain turn", new Runnable() {
+    	@Override
+    	public void run() {
+    		runTurn();
+    	}
+    });
+    // Stopping the loop does not stop a run of it already going, so the run checks this
+    // under outputLock before it writes, and stopTurn() clears it under outputLock
+    private volatile boolean turning = false;
+    private volatile int turnsStarted = 0;
+    private volatile int lastTurnSettled = 0;
+    private volatile double turnDurationSecs = 0;
+
+    // Turn gain tuning: the experiment is run by tuneLoop, the search for the gains by searcher
+    private volatile TurnGains gains;
+    private final Periodic tuneLoop = ControlExecutor.getInstance().newPeriodic("DriveTrain tuning", new Runnable() {
+    	@Override
+    	public void run() {
+    		runTuning();
+    	}
+    });
+    private volatile TurnTuner tuner = null;
+    private volatile File tunedGainsFile;
+    private volatile long tuneStartTime;
+    private volatile boolean tuning = false;
+    private volatile Thread searcher = null;
+    private final Object tuningLock = new Object();
+
+    // Motion profile streaming, done by profileStreamer
+    private final MotionProfileStatus leftProfileStatus = new MotionProfileStatus();
+    private final MotionProfileStatus rightProfileStatus = new MotionProfileStatus();
+    private final Periodic profileStreamer = ControlExecutor.getInstance().newPeriodic("DriveTrain profile",
+            new Runnable() {
+    	@Override
+    	public void run() {
+    		streamProfile();
+    	}
+    });
+    private volatile MotionProfile profile = null;
+    private volatile int nextProfilePoint = 0;
+    private volatile int profileSetValue = SetValueMotionProfile.Disable.value;
+    // Profile points are relative; they are pushed offset by the encoder zero
+    private final TrajectoryPoint leftProfilePoint = new TrajectoryPoint();
+    private final TrajectoryPoint rightProfilePoint = new TrajectoryPoint();
+
+    // Talon positions at the last resetEncoders(). The Talon sensors are never zeroed, so
+    // odometry sees one continuous position whatever the commands do.
+    private volatile double leftZeroRevs = 0;
+    private volatile double rightZeroRevs = 0;
 
     // Initialize your subsystem here
     public DriveTrain() {
@@ -40,6 +169,8 @@ public class DriveTrain extends PIDSubsystem {
         getPIDController().setContinuous(true);
         LiveWindow.addActuator("DriveTrain", "PIDSubsystem Controller", getPIDController());
         getPIDController().setInputRange(0.0, 360.0);
+        // Profiled turns use the gains tuned on this robot, if any
+        gains = loadGains();
 
         // Enable brake mode on all Talons
 		leftFront.enableBrakeMode(true);
@@ -49,34 +180,877 @@ public class DriveTrain extends PIDSubsystem {
 		leftFront.setFeedbackDevice(FeedbackDevice.QuadEncoder);
 		rightFront.setFeedbackDevice(FeedbackDevice.QuadEncoder);
 		// Configure back talons as followers.
-		leftBack.changeControlMode(CANTalon.TalonControlMode.Follower);
-		rightBack.changeControlMode(CANTalon.TalonControlMode.Follower);
+		leftBack.changeControlMode(TalonControlMode.Follower);
+		rightBack.changeControlMode(TalonControlMode.Follower);
 		leftBack.set(leftFront.getDeviceID());
 		rightBack.set(rightFront.getDeviceID());
+
+		// Load the closed loop gains into the front Talons once, so switching
+		// modes later only changes the control mode.
+		inchesPerEncoderRev = config.DRIVE_INCHES_PER_ENCODER_REV;
+		double maxNativeSpeed = config.DRIVE_MAX_SPEED_RPM * config.DRIVE_ENCODER_CODES_PER_REV * EDGES_PER_CODE
+				/ VELOCITY_PERIODS_PER_MINUTE;
+		double velocityF = TALON_FULL_OUTPUT / maxNativeSpeed;
+		configureClosedLoop(leftFront, config.LEFT_ENC_SIGN * config.LEFT_DRIVE_SIGN < 0, velocityF);
+		configureClosedLoop(rightFront, config.RIGHT_ENC_SIGN * config.RIGHT_DRIVE_SIGN < 0, velocityF);
+		leftFront.setExpiration(SAFETY_EXPIRATION_SECS);
+		rightFront.setExpiration(SAFETY_EXPIRATION_SECS);
+		leftFront.setMinInterval(MIN_FRAME_INTERVAL_SECS);
+		rightFront.setMinInterval(MIN_FRAME_INTERVAL_SECS);
+		setRobotDriveSafety(robotDrive != null);
+		current = RobotMap.currentBudget.addChannel("DriveTrain", CURRENT_PRIORITY, config.DRIVE_CURRENT_RESERVE_AMPS,
+				config.DRIVE_MIN_OUTPUT_SCALE, RobotMap.driveTrainLeftFront, RobotMap.driveTrainRightFront,
+				RobotMap.driveTrainLeftBack, RobotMap.driveTrainRightBack);
+
+		odometry = new Odometry(new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getLeftTravelInches();
+			}
+		}, new DoubleSupplier() {
+			@Override
+			public double getAsDouble() {
+				return getRightTravelInches();
+			}
+		}, gyro);
+		odometry.start();
+		addTelemetry();
+		addFlightRecord();
+    }
+
+    private void addTelemetry() {
+    	Telemetry telemetry = Telemetry.getInstance();
+    	telemetry.addNumber("DriveTrain: heading", Telemetry.NORMAL, TELEMETRY_DEADBAND_DEGREES, new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getHeading();
+    		}
+    	});
+    	telemetry.addString("DriveTrain: tuning", Telemetry.NORMAL, new Supplier<String>() {
+    		@Override
+    		public String get() {
+    			TurnTuner tuner = DriveTrain.this.tuner;
+    			if (tuner == null) {
+    				return "NOT STARTED";
+    			}
+    			return !tuning && !tuner.isFinished() ? "STOPPED" : tuner.getState().toString();
+    		}
+    	});
+    }
+
+    // What the drive train senses and what it asks of the front Talons
+    private void addFlightRecord() {
+    	FlightRecorder recorder = FlightRecorder.getInstance();
+    	recorder.addFloat("DriveTrain heading", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getHeading();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain heading rate", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return gyro.getRate();
+    		}
+    	});
+    	// What the Talons measure, unaffected by resetEncoders(), so a replay can feed it back
+    	recorder.addFloat("DriveTrain left inches", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getLeftTravelInches();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain right inches", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getRightTravelInches();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain left inches per sec", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getLeftVelocityInchesPerSec();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain right inches per sec", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return getRightVelocityInchesPerSec();
+    		}
+    	});
+    	recorder.addSymbol("DriveTrain talon mode", new Supplier<String>() {
+    		@Override
+    		public String get() {
+    			return talonMode.name();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain left demand", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return leftDemand;
+    		}
+    	});
+    	recorder.addFloat("DriveTrain right demand", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return rightDemand;
+    		}
+    	});
+    	recorder.addFloat("DriveTrain left volts", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return leftFront.getOutputVoltage();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain right volts", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return rightFront.getOutputVoltage();
+    		}
+    	});
+    	recorder.addFloat("DriveTrain current scale", new DoubleSupplier() {
+    		@Override
+    		public double getAsDouble() {
+    			return current.getScale();
+    		}
+    	});
+    }
+
+    private void configureClosedLoop(TalonSRX talon, boolean reverseSensor, double velocityF) {
+    	talon.configEncoderCodesPerRev(config.DRIVE_ENCODER_CODES_PER_REV);
+    	// The sensor must count up when the output is positive
+    	talon.reverseSensor(reverseSensor);
+    	talon.setPID(config.DRIVE_VELOCITY_P, config.DRIVE_VELOCITY_I, config.DRIVE_VELOCITY_D, velocityF, 0, 0,
+    			VELOCITY_PROFILE);
+    	talon.setPID(config.DRIVE_POSITION_P, config.DRIVE_POSITION_I, config.DRIVE_POSITION_D, 0, 0, 0,
+    			POSITION_PROFILE);
     }
 
     public void initDefaultCommand() {
         setDefaultCommand(new DriveWithJoysticks());
     }
 
+    /**
+     * <pre>
+     * public void setDefaultCommand(Command command)
+     * </pre>
+     *
+     * Replaces the default command, e.g. with a {@code DriveWithJoysticks} on
+     * simulated sticks.
+     *
+     * @param command the new default command
+     */
+    @Override
+    public void setDefaultCommand(Command command) {
+    	getDefaultCommand(); // run initDefaultCommand first, so it does not replace this one later
+    	super.setDefaultCommand(command);
+    }
+
     protected double returnPIDInput() {
         // Return your input value for the PID loop
         // e.g. a sensor, like a potentiometer:
         // yourPot.getAverageVoltage() / kYourMaxVoltage;
-        return gyro.pidGet();
+        // The heading is corrected for drift (see RobotMap). The input range is
+        // 0 to 360, but the gyro angle keeps counting.
+        double angle = gyro.getAngle() % DEGREES_IN_CIRCLE;
+        return angle < 0 ? angle + DEGREES_IN_CIRCLE : angle;
     }
 
     protected void usePIDOutput(double output) {
     	// Removed the autogenerated code comments.
-    	leftFront.pidWrite(output);
-    	rightFront.pidWrite(output);
+    	// A positive output must turn towards a larger heading
+    	turnOutput(output);
+    }
+
+    // Reads the gains tuned on this robot, or falls back on the untuned gains in Config
+    private TurnGains loadGains() {
+    	File file = TurnGains.getFile(config.getConfigType());
+    	if (file.exists()) {
+    		try {
+    			return TurnGains.load(file, config);
+    		} catch (IOException e) {
+    			DriverStation.reportError("Cannot load turn gains: " + e.getMessage() + "\n", false);
+    		}
+    	}
+    	return TurnGains.fromConfig(config);
+    }
+
+    /**
+     * @return the gains of profiled turns in use
+     */
+    public TurnGains getGains() {
+    	return gains;
+    }
+
+    // Turns in place; positive outputs turn clockwise
+    private void turnOutput(double output) {
+    	setOutputs(config.LEFT_DRIVE_SIGN * output, -config.RIGHT_DRIVE_SIGN * output);
+    }
+
+    // Sets the raw outputs of the front Talons, as fractions of full output, within the current budget.
+    // Motion profiles and positions are planned within the limits of the drive and are not scaled.
+    private void setOutputs(double left, double right) {
+    	synchronized (outputLock) {
+    		double scale = current.getScale();
+    		left *= scale;
+    		right *= scale;
+    		leftDemand = config.LEFT_DRIVE_SIGN * left;
+    		rightDemand = config.RIGHT_DRIVE_SIGN * right;
+    		if (controlMode == ControlMode.TALON_CLOSED_LOOP) {
+    			// The outputs become wheel speeds the Talons hold
+    			setSpeeds(left, right);
+    		} else {
+    			if (robotDriveSafety) {
+    				// RobotDrive is not fed now, so it would stop the motors
+    				setRobotDriveSafety(false);
+    			}
+    			leftFront.set(left);
+    			rightFront.set(right);
+    		}
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void setControlMode(ControlMode mode)
+     * </pre>
+     *
+     * Selects how drive outputs reach the Talons. In {@code TALON_CLOSED_LOOP}
+     * the front Talons run their own motor safety, since {@code RobotDrive} is
+     * no longer called.
+     *
+     * @param mode the new control mode
+     */
+    public void setControlMode(ControlMode mode) {
+    	synchronized (outputLock) {
+    		if (mode == controlMode) {
+    			return;
+    		}
+    		controlMode = mode;
+    		setRobotDriveSafety(mode == ControlMode.PERCENT_VBUS && robotDrive != null);
+    		if (mode == ControlMode.TALON_CLOSED_LOOP) {
+    			setSpeeds(0, 0);
+    		} else {
+    			setTalonMode(TalonControlMode.PercentVbus, VELOCITY_PROFILE);
+    			leftFront.set(0);
+    			rightFront.set(0);
+    		}
+    	}
+    }
+
+    // Motor safety is RobotDrive's job while it drives, the front Talons' otherwise. Call with outputLock held.
+    private void setRobotDriveSafety(boolean enabled) {
+    	robotDriveSafety = enabled;
+    	if (robotDrive != null) {
+    		robotDrive.setSafetyEnabled(enabled);
+    	}
+    	leftFront.setSafetyEnabled(!enabled);
+    	rightFront.setSafetyEnabled(!enabled);
+    	// RobotDrive and the front Talons write the same motors, so neither knows what they hold
+    	leftFront.invalidate();
+    	rightFront.invalidate();
+    	if (robotDrive != null) {
+    		robotDrive.invalidate();
+    	}
+    }
+
+    /**
+     * @return the current control mode
+     */
+    public ControlMode getControlMode() {
+    	return controlMode;
+    }
+
+    public void tankDrive(GenericHID leftStick, GenericHID rightStick) {
+    	tankDrive(leftStick.getY(), rightStick.getY());
+    }
+
+    /**
+     * <pre>
+     * public void tankDrive(double leftY, double rightY)
+     * </pre>
+     *
+     * Drives each side from the Y axis of a joystick, negative forward, with
+     * squared inputs.
+     *
+     * @param leftY the left stick Y value, between -1 and 1
+     * @param rightY the right stick Y value, between -1 and 1
+     */
+    public void tankDrive(double leftY, double rightY) {
+    	tankDrive(leftY, rightY, true);
+    }
+
+    /**
+     * <pre>
+     * public void tankDrive(double leftY, double rightY, boolean squaredInputs)
+     * </pre>
+     *
+     * Drives each side from the Y axis of a joystick, negative forward.
+     *
+     * @param leftY the left stick Y value, between -1 and 1
+     * @param rightY the right stick Y value, between -1 and 1
+     * @param squaredInputs whether to square the values like {@code RobotDrive};
+     *            false for values already shaped
+     */
+    public void tankDrive(double leftY, double rightY, boolean squaredInputs) {
+    	if (squaredInputs) {
+    		leftY = squareInput(leftY);
+    		rightY = squareInput(rightY);
+    	}
+    	synchronized (outputLock) {
+    		if (controlMode == ControlMode.PERCENT_VBUS && robotDrive != null) {
+    			if (!robotDriveSafety) {
+    				setRobotDriveSafety(true);
+    			}
+    			double scale = current.getScale();
+    			leftDemand = -scale * leftY;
+    			rightDemand = -scale * rightY;
+    			robotDrive.tankDrive(scale * leftY, scale * rightY, false);
+    		} else {
+    			// Pushing a stick forward drives its side forward
+    			setOutputs(-config.LEFT_DRIVE_SIGN * leftY, -config.RIGHT_DRIVE_SIGN * rightY);
+    		}
+    	}
+    }
+
+    private static double squareInput(double value) {
+    	return value * Math.abs(value);
+    }
+
+    /**
+     * @return the drive train's share of the current budget
+     */
+    public CurrentBudget.Channel getCurrentChannel() {
+    	return current;
+    }
+
+    /**
+     * <pre>
+     * public long getLastOutputFrameTime()
+     * </pre>
+     *
+     * Gets when the drive outputs last reached the motors, through
+     * {@code RobotDrive} or the front Talons.
+     *
+     * @return the {@link RobotClock} time of the last frame in nanoseconds
+     */
+    public long getLastOutputFrameTime() {
+    	long time = Math.max(leftFront.getLastFrameTime(), rightFront.getLastFrameTime());
+    	return robotDrive == null ? time : Math.max(time, robotDrive.getLastFrameTime());
+    }
+
+    /**
+     * <pre>
+     * public void driveVelocity(double leftInchesPerSec, double rightInchesPerSec)
+     * </pre>
+     *
+     * Has the Talons hold the given wheel speeds. Switches to {@code TALON_CLOSED_LOOP}.
+     *
+     * @param leftInchesPerSec the left wheel speed, positive forward
+     * @param rightInchesPerSec the right wheel speed, positive forward
+     */
+    public void driveVelocity(double leftInchesPerSec, double rightInchesPerSec) {
+    	synchronized (outputLock) {
+    		setControlMode(ControlMode.TALON_CLOSED_LOOP);
+    		setTalonMode(TalonControlMode.Speed, VELOCITY_PROFILE);
+    		leftFront.set(config.LEFT_DRIVE_SIGN * leftInchesPerSec * SECS_IN_MINUTE / inchesPerEncoderRev);
+    		rightFront.set(config.RIGHT_DRIVE_SIGN * rightInchesPerSec * SECS_IN_MINUTE / inchesPerEncoderRev);
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void driveToPosition(double leftInches, double rightInches)
+     * </pre>
+     *
+     * Has the Talons drive each side to the given distance from the last
+     * {@link #resetEncoders()} and hold it there. Switches to {@code TALON_CLOSED_LOOP}.
+     *
+     * @param leftInches the left wheel position, positive forward
+     * @param rightInches the right wheel position, positive forward
+     */
+    public void driveToPosition(double leftInches, double rightInches) {
+    	synchronized (outputLock) {
+    		setControlMode(ControlMode.TALON_CLOSED_LOOP);
+    		setTalonMode(TalonControlMode.Position, POSITION_PROFILE);
+    		leftFront.set(leftZeroRevs + config.LEFT_DRIVE_SIGN * leftInches / inchesPerEncoderRev);
+    		rightFront.set(rightZeroRevs + config.RIGHT_DRIVE_SIGN * rightInches / inchesPerEncoderRev);
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void turnByPosition(double degrees)
+     * </pre>
+     *
+     * Turns in place by moving the wheels along the turning circle under Talon
+     * position control. Call it again with the remaining gyro error to correct
+     * for wheel slip.
+     *
+     * @param degrees the angle to turn, positive clockwise
+     */
+    public void turnByPosition(double degrees) {
+    	double arcInches = degrees / DEGREES_IN_CIRCLE * Math.PI * config.AXLE_TRACK_INCHES;
+    	driveToPosition(getLeftDistanceInches() + arcInches, getRightDistanceInches() - arcInches);
+    }
+
+    /**
+     * <pre>
+     * public void holdPosition()
+     * </pre>
+     *
+     * Has the Talons hold the wheels where they are, e.g. while shooting.
+     */
+    public void holdPosition() {
+    	driveToPosition(getLeftDistanceInches(), getRightDistanceInches());
+    }
+
+    /**
+     * <pre>
+     * public void startMotionProfile(MotionProfile profile)
+     * </pre>
+     *
+     * Streams a profile into the Talons' motion profile buffers in the
+     * background and starts it once enough points are buffered. The profile
+     * starts from wherever the wheels are, which also becomes the zero of
+     * {@link #resetEncoders()}. Switches to {@code TALON_CLOSED_LOOP}.
+     *
+     * @param profile the profile to drive
+     */
+    public void startMotionProfile(MotionProfile profile) {
+    	profileStreamer.stop();
+    	synchronized (outputLock) {
+    		setControlMode(ControlMode.TALON_CLOSED_LOOP);
+    		setTalonMode(TalonControlMode.MotionProfile, VELOCITY_PROFILE);
+    		profileSetValue = SetValueMotionProfile.Disable.value;
+    		leftFront.set(profileSetValue);
+    		rightFront.set(profileSetValue);
+    		leftFront.clearMotionProfileTrajectories();
+    		rightFront.clearMotionProfileTrajectories();
+    		leftFront.clearMotionProfileHasUnderrun();
+    		rightFront.clearMotionProfileHasUnderrun();
+    		// Move points to the Talons twice as fast as they use them
+    		leftFront.changeMotionControlFramePeriod(config.PROFILE_POINT_MILLIS / 2);
+    		rightFront.changeMotionControlFramePeriod(config.PROFILE_POINT_MILLIS / 2);
+    		nextProfilePoint = 0;
+    		resetEncoders();
+    		this.profile = profile;
+    		profileStreamer.startPeriodic(PROFILE_STREAM_PERIOD_SECS);
+    	}
+    }
+
+    private void streamProfile() {
+    	synchronized (outputLock) {
+    		MotionProfile profile = this.profile;
+    		if (profile == null) {
+    			return;
+    		}
+    		int next = nextProfilePoint;
+    		while (next < profile.getPointCount() && !leftFront.isMotionProfileTopLevelBufferFull()
+    				&& !rightFront.isMotionProfileTopLevelBufferFull()) {
+    			// The Talons copy the points, so the same two can be reused
+    			leftFront.pushMotionProfileTrajectory(
+    					offsetPoint(leftProfilePoint, profile.getLeftPoint(next), leftZeroRevs));
+    			rightFront.pushMotionProfileTrajectory(
+    					offsetPoint(rightProfilePoint, profile.getRightPoint(next), rightZeroRevs));
+    			next++;
+    		}
+    		nextProfilePoint = next;
+    		leftFront.processMotionProfileBuffer();
+    		rightFront.processMotionProfileBuffer();
+
+    		leftFront.getMotionProfileStatus(leftProfileStatus);
+    		rightFront.getMotionProfileStatus(rightProfileStatus);
+    		if (profileSetValue == SetValueMotionProfile.Disable.value) {
+    			if (next == profile.getPointCount() || (leftProfileStatus.btmBufferCnt >= PROFILE_MIN_BUFFERED_POINTS
+    					&& rightProfileStatus.btmBufferCnt >= PROFILE_MIN_BUFFERED_POINTS)) {
+    				profileSetValue = SetValueMotionProfile.Enable.value;
+    			}
+    		} else if (profileSetValue == SetValueMotionProfile.Enable.value && isLastPointActive(leftProfileStatus)
+    				&& isLastPointActive(rightProfileStatus)) {
+    			// Hold the final position
+    			profileSetValue = SetValueMotionProfile.Hold.value;
+    		}
+    		// Setting the value every period also feeds motor safety
+    		leftFront.set(profileSetValue);
+    		rightFront.set(profileSetValue);
+    	}
+    }
+
+    private static TrajectoryPoint offsetPoint(TrajectoryPoint to, TrajectoryPoint from, double zeroRevs) {
+    	to.position = zeroRevs + from.position;
+    	to.velocity = from.velocity;
+    	to.timeDurMs = from.timeDurMs;
+    	to.profileSlotSelect = from.profileSlotSelect;
+    	to.velocityOnly = from.velocityOnly;
+    	to.zeroPos = false;
+    	to.isLastPoint = from.isLastPoint;
+    	return to;
     }
-    
-    public void tankDrive(Joystick leftStick, Joystick rightStick) {
-    	robotDrive.tankDrive(leftStick, rightStick);
+
+    private static boolean isLastPointActive(MotionProfileStatus status) {
+    	return status.activePointValid && status.activePoint.isLastPoint;
+    }
+
+    /**
+     * @return true once both Talons reached the last point of the motion profile, or if none is running
+     */
+    public boolean isMotionProfileFinished() {
+    	return profile == null || profileSetValue == SetValueMotionProfile.Hold.value;
+    }
+
+    /**
+     * <pre>
+     * public void stopMotionProfile()
+     * </pre>
+     *
+     * Stops streaming the motion profile, stops the motors and returns the
+     * drive to {@code PERCENT_VBUS}.
+     */
+    public void stopMotionProfile() {
+    	profileStreamer.stop();
+    	synchronized (outputLock) {
+    		profile = null;
+    		leftFront.clearMotionProfileTrajectories();
+    		rightFront.clearMotionProfileTrajectories();
+    		stop();
+    		setControlMode(ControlMode.PERCENT_VBUS);
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void resetControlMode()
+     * </pre>
+     *
+     * Stops any turn or motion profile and returns the drive to
+     * {@code PERCENT_VBUS}, e.g. when the robot changes modes, before the
+     * commands that started them are cancelled.
+     */
+    public void resetControlMode() {
+    	stopTurn();
+    	stopMotionProfile();
+    }
+
+    /**
+     * <pre>
+     * public void startTurn(double degrees)
+     * </pre>
+     *
+     * Starts turning in place by the given angle along a rate and acceleration
+     * limited profile (see {@link ProfiledTurn}), computed every
+     * TURN_PERIOD_SECS on the {@link ControlExecutor}. The turn holds the final heading until
+     * {@link #stopTurn()}. Call it from the scheduler thread only.
+     *
+     * @param degrees the angle to turn, positive clockwise
+     */
+    public void startTurn(double degrees) {
+    	stopTuning();
+    	disable(); // the heading PID would fight the turn
+    	setControlMode(ControlMode.PERCENT_VBUS); // the turn gains are in fractions of full output
+    	// Plan the turn in a profile the turn loop is not using; it takes it on its next run
+    	TurnPlan plan = turnPlans.getBack();
+    	plan.turn.setGains(gains);
+    	plan.turn.start(gyro.getAngle(), degrees);
+    	plan.number = turnsStarted + 1;
+    	plan.startTime = VisionFrame.now();
+    	turnDurationSecs = plan.turn.getDurationSecs();
+    	turnPlans.publish();
+    	turnsStarted = plan.number;
+    	turning = true;
+    	turnLoop.startPeriodic(TURN_PERIOD_SECS);
+    }
+
+    private void runTurn() {
+    	turnPlans.update();
+    	TurnPlan plan = turnPlans.getFront();
+    	double t = (VisionFrame.now() - plan.startTime) / NANOS_IN_SECOND;
+    	double heading = gyro.getAngle();
+    	double rate = gyro.getRate();
+    	if (plan.turn.isSettled(t, heading, rate)) {
+    		lastTurnSettled = plan.number;
+    	}
+    	double output = plan.turn.calculate(t, heading, rate);
+    	synchronized (outputLock) {
+    		if (turning) {
+    			turnOutput(output);
+    		}
+    	}
+    }
+
+    /**
+     * @return true once the turn started by {@link #startTurn(double)} is stopped on its target heading
+     */
+    public boolean isTurnSettled() {
+    	int started = turnsStarted;
+    	return started != 0 && lastTurnSettled == started;
+    }
+
+    /**
+     * @return the time the profile of the current turn takes in seconds
+     */
+    public double getTurnDurationSecs() {
+    	return turnDurationSecs;
+    }
+
+    /**
+     * <pre>
+     * public void stopTurn()
+     * </pre>
+     *
+     * Stops the turn started by {@link #startTurn(double)} and the motors.
+     */
+    public void stopTurn() {
+    	turnLoop.stop();
+    	synchronized (outputLock) {
+    		// A run of the turn loop still going cannot write after the zero
+    		turning = false;
+    		stop();
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void startTuning(File saveTo)
+     * </pre>
+     *
+     * Starts finding the turn gains of this robot with a {@link TurnTuner}. The
+     * experiment runs every TURN_PERIOD_SECS on the {@link ControlExecutor}; the
+     * search for the gains that follows takes seconds, so it runs on a low
+     * priority thread of its own. The robot must be at rest with room to turn
+     * in place; it turns for about 12 seconds. Once done, the new gains are
+     * used and saved. The tuning state is put on the {@link Telemetry} bus.
+     *
+     * @param saveTo the file to save the gains to, or null to only use them
+     */
+    public void startTuning(File saveTo) {
+    	stopTurn();
+    	disable(); // the heading PID would fight the experiment
+    	stopTuning();
+    	setControlMode(ControlMode.PERCENT_VBUS); // the tuner measures the response to output fractions
+    	tuner = new TurnTuner(config, TURN_PERIOD_SECS);
+    	tunedGainsFile = saveTo;
+    	tuneStartTime = VisionFrame.now();
+    	tuning = true;
+    	tuneLoop.startPeriodic(TURN_PERIOD_SECS);
+    }
+
+    /**
+     * <pre>
+     * public void startTuning()
+     * </pre>
+     *
+     * Starts tuning, saving the gains where the next {@code DriveTrain} on
+     * this robot loads them from (see {@link #startTuning(File)}).
+     */
+    public void startTuning() {
+    	startTuning(TurnGains.getFile(config.getConfigType()));
+    }
+
+    private void runTuning() {
+    	if (!tuning) {
+    		return; // stopped while this run was waiting
+    	}
+    	TurnTuner tuner = this.tuner;
+    	double t = (VisionFrame.now() - tuneStartTime) / NANOS_IN_SECOND;
+    	double output = tuner.update(t, gyro.getAngle(), gyro.getRate());
+    	if (tuner.getState() == TurnTuner.State.SEARCHING) {
+    		// The experiment is over; leave the tuner to the searcher
+    		tuneLoop.stop();
+    		stop();
+    		startSearch(tuner);
+    	} else if (tuner.isFinished()) {
+    		tuneLoop.stop();
+    		stop();
+    		finishTuning(tuner);
+    	} else {
+    		synchronized (outputLock) {
+    			// stopTuning() may have stopped the motors since the check above
+    			if (tuning) {
+    				turnOutput(output);
+    			}
+    		}
+    	}
+    }
+
+    private void startSearch(final TurnTuner tuner) {
+    	Thread thread = new Thread(new Runnable() {
+    		@Override
+    		public void run() {
+    			tuner.search();
+    			finishTuning(tuner);
+    		}
+    	}, "DriveTrain tuning search");
+    	thread.setDaemon(true);
+    	thread.setPriority(Thread.MIN_PRIORITY);
+    	searcher = thread;
+    	thread.start();
+    }
+
+    // Uses and saves the gains found, unless the tuning was stopped meanwhile
+    private void finishTuning(TurnTuner tuner) {
+    	synchronized (tuningLock) {
+    		if (!tuning || tuner != this.tuner) {
+    			return;
+    		}
+    		tuning = false;
+    		searcher = null;
+    	}
+    	if (tuner.getState() == TurnTuner.State.DONE) {
+    		gains = tuner.getGains(); // for the next turn
+    		saveGains(tuner.getGains());
+    	} else {
+    		DriverStation.reportError("Turn tuning failed: " + tuner.getFailure() + "\n", false);
+    	}
+    }
+
+    private void saveGains(TurnGains gains) {
+    	File file = tunedGainsFile;
+    	if (file != null) {
+    		try {
+    			gains.save(file, "Turn gains of the " + config + " robot, found by TurnTuner");
+    		} catch (IOException e) {
+    			DriverStation.reportError("Cannot save turn gains: " + e.getMessage() + "\n", false);
+    		}
+    	}
+    }
+
+    /**
+     * <pre>
+     * public void stopTuning()
+     * </pre>
+     *
+     * Stops the tuning started by {@link #startTuning(File)}, if it is still
+     * running, and the motors. The gains are left as they were.
+     */
+    public void stopTuning() {
+    	Thread thread;
+    	synchronized (tuningLock) {
+    		if (!tuning) {
+    			return;
+    		}
+    		tuning = false;
+    		thread = searcher;
+    		searcher = null;
+    	}
+    	tuneLoop.stop();
+    	if (thread != null) {
+    		thread.interrupt();
+    	}
+    	stop();
     }
-    
+
+    /**
+     * @return true while the tuning started by {@link #startTuning(File)} is running
+     */
+    public boolean isTuning() {
+    	return tuning;
+    }
+
+    /**
+     * @return the last tuner started, e.g. for what it identified, or null if none was
+     */
+    public TurnTuner getTuner() {
+    	return tuner;
+    }
+
+    /**
+     * @return the gyro heading in degrees, clockwise positive, corrected for drift
+     */
+    public double getHeading() {
+    	return gyro.getAngle();
+    }
+
+    /**
+     * @return the pose tracker of the drive train, updated at a high rate in the background
+     */
+    public Odometry getOdometry() {
+    	return odometry;
+    }
+
+    /**
+     * <pre>
+     * public void resetEncoders()
+     * </pre>
+     *
+     * Makes the current wheel positions the zero of {@link #getLeftDistanceInches()},
+     * {@link #getRightDistanceInches()} and {@link #driveToPosition(double, double)}.
+     * The Talon sensors themselves are left alone so the odometry does not jump.
+     */
+    public void resetEncoders() {
+    	leftZeroRevs = leftFront.getPosition();
+    	rightZeroRevs = rightFront.getPosition();
+    }
+
+    /**
+     * @return the distance driven by the left wheels since the last reset, in inches, positive forward
+     */
+    public double getLeftDistanceInches() {
+    	return config.LEFT_DRIVE_SIGN * (leftFront.getPosition() - leftZeroRevs) * inchesPerEncoderRev;
+    }
+
+    /**
+     * @return the distance driven by the right wheels since the last reset, in inches, positive forward
+     */
+    public double getRightDistanceInches() {
+    	return config.RIGHT_DRIVE_SIGN * (rightFront.getPosition() - rightZeroRevs) * inchesPerEncoderRev;
+    }
+
+    // The distances driven since the robot started, which the Talons measure
+    private double getLeftTravelInches() {
+    	return config.LEFT_DRIVE_SIGN * leftFront.getPosition() * inchesPerEncoderRev;
+    }
+
+    private double getRightTravelInches() {
+    	return config.RIGHT_DRIVE_SIGN * rightFront.getPosition() * inchesPerEncoderRev;
+    }
+
+    /**
+     * @return the speed of the left wheels in inches per second, positive forward
+     */
+    public double getLeftVelocityInchesPerSec() {
+    	return config.LEFT_DRIVE_SIGN * leftFront.getSpeed() * inchesPerEncoderRev / SECS_IN_MINUTE;
+    }
+
+    /**
+     * @return the speed of the right wheels in inches per second, positive forward
+     */
+    public double getRightVelocityInchesPerSec() {
+    	return config.RIGHT_DRIVE_SIGN * rightFront.getSpeed() * inchesPerEncoderRev / SECS_IN_MINUTE;
+    }
+
+    // Sets the raw outputs of the front Talons, as fractions of full speed. Call with outputLock held.
+    private void setSpeeds(double left, double right) {
+    	setTalonMode(TalonControlMode.Speed, VELOCITY_PROFILE);
+    	leftFront.set(left * config.DRIVE_MAX_SPEED_RPM);
+    	rightFront.set(right * config.DRIVE_MAX_SPEED_RPM);
+    }
+
+    // Changes the Talon mode only when needed, to save CAN frames. Call with outputLock held.
+    private void setTalonMode(TalonControlMode mode, int profile) {
+    	if (mode != talonMode) {
+    		talonMode = mode;
+    		leftFront.changeControlMode(mode);
+    		rightFront.changeControlMode(mode);
+    		leftFront.setProfile(profile);
+    		rightFront.setProfile(profile);
+    	}
+    }
+
     public void stop() {
-    	robotDrive.tankDrive(0, 0);
+    	setOutputs(0, 0);
+    }
+
+    /**
+     * A turn planned by {@link #startTurn(double)}, handed to the turn loop.
+     */
+    private static class TurnPlan {
+    	final ProfiledTurn turn;
+    	int number; // of the turns started
+    	long startTime;
+
+    	TurnPlan(Config config) {
+    		turn = new ProfiledTurn(config);
+    	}
     }
 }
@@ -11,9 +11,14 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.subsystems;
 
+import java.util.function.DoubleSupplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
-import edu.wpi.first.wpilibj.CANTalon;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescingTalonSRX;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CurrentBudget;
+import org.usfirst.frc1089.X4RobotBuilder2016.sensors.Config;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 
 import edu.wpi.first.wpilibj.command.Subsystem;
@@ -28,18 +33,56 @@ public class Intake extends Subsystem {
     public static final double ROLLER_OUT = 1.0;
     public static final double ROLLER_OFF = 0.0;
 
-    private final CANTalon roller = RobotMap.intakeRoller;
+    private static final int CURRENT_PRIORITY = 0; // the drive train comes first
+
+    private final CoalescingTalonSRX roller = new CoalescingTalonSRX("Intake Roller", RobotMap.intakeRoller);
+    private final CurrentBudget.Channel current;
+    private volatile double speed = ROLLER_OFF;
+    // The budget sampler thread and the scheduler thread both set the roller; this keeps a
+    // scale applied on the sampler from overwriting a newer speed with the old one
+    private final Object rollerLock = new Object();
+
+    public Intake() {
+        Config config = Config.getInstance();
+        current = RobotMap.currentBudget.addChannel("Intake", CURRENT_PRIORITY, config.INTAKE_CURRENT_RESERVE_AMPS,
+                config.INTAKE_MIN_OUTPUT_SCALE, RobotMap.intakeRoller);
+        // The roller is only set when a command starts, so apply new scales here
+        current.setListener(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (rollerLock) {
+                    roller.set(speed * current.getScale());
+                }
+            }
+        });
+        FlightRecorder recorder = FlightRecorder.getInstance();
+        recorder.addFloat("Intake speed", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return speed;
+            }
+        });
+        recorder.addFloat("Intake roller volts", new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return roller.getOutputVoltage();
+            }
+        });
+    }
 
     // Put methods for controlling this subsystem here. Call these from Commands.
 	/**
 	 * <pre>
 	 * public void moveBall(int speed)
 	 * </pre>
-	 * Sets the speed of the intake to move the ball.
+	 * Sets the speed of the intake to move the ball, within the current budget.
 	 * @param speed speed to set the intake wheels
 	 */
 	public void moveBall(double speed) {	
-		roller.set(speed);	
+		synchronized (rollerLock) {
+			this.speed = speed;
+			roller.set(speed * current.getScale());
+		}
 	}
 	
     public void initDefaultCommand() {
@@ -11,8 +11,12 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.subsystems;
 
+import java.util.function.Supplier;
+
 import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescingDoubleSolenoid;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
 
 import edu.wpi.first.wpilibj.command.Subsystem;
@@ -23,7 +27,18 @@ import edu.wpi.first.wpilibj.command.Subsystem;
  */
 public class IntakeDoor extends Subsystem {
 
-    private final DoubleSolenoid elevator = RobotMap.intakeDoorElevator;
+    private final CoalescingDoubleSolenoid elevator = new CoalescingDoubleSolenoid("IntakeDoor Elevator",
+            RobotMap.intakeDoorElevator);
+
+    public IntakeDoor() {
+        FlightRecorder.getInstance().addSymbol("IntakeDoor elevator", new Supplier<String>() {
+            @Override
+            public String get() {
+                DoubleSolenoid.Value value = elevator.get();
+                return value == null ? null : value.name();
+            }
+        });
+    }
 
     // Put methods for controlling this subsystem here. Call these from Commands.
 	/**
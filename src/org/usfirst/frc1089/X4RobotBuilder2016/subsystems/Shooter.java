@@ -11,13 +11,21 @@
 
 package org.usfirst.frc1089.X4RobotBuilder2016.subsystems;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
 import org.usfirst.frc1089.X4RobotBuilder2016.RobotMap;
 import org.usfirst.frc1089.X4RobotBuilder2016.commands.*;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.FlightRecorder;
+import org.usfirst.frc1089.X4RobotBuilder2016.diagnostics.Telemetry;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.CoalescingDoubleSolenoid;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.ControlExecutor;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.Periodic;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.RobotClock;
+import org.usfirst.frc1089.X4RobotBuilder2016.hardware.SolenoidValve;
 import edu.wpi.first.wpilibj.DoubleSolenoid;
-import edu.wpi.first.wpilibj.Solenoid;
 
 import edu.wpi.first.wpilibj.command.Subsystem;
 
@@ -34,13 +42,71 @@ public class Shooter extends Subsystem {
 
 	protected static final long SHOOTER_RELEASE_DELAY_MS = 500;
 	public static final double RAISE_SHOOTER_CATCHUP_DELAY_SECS = .500;
-
-    private final DoubleSolenoid lowElevator = RobotMap.shooterLowElevator;
-    private final DoubleSolenoid highElevator = RobotMap.shooterHighElevator;
-    private final Solenoid shooter = RobotMap.shooterShooter;
+	private static final long NANOS_IN_MILLI = 1000000;
+
+    private final CoalescingDoubleSolenoid lowElevator = new CoalescingDoubleSolenoid("Shooter LowElevator",
+            RobotMap.shooterLowElevator);
+    private final CoalescingDoubleSolenoid highElevator = new CoalescingDoubleSolenoid("Shooter HighElevator",
+            RobotMap.shooterHighElevator);
+    private final SolenoidValve shooter = RobotMap.shooterShooter;
+    private final Periodic releaseLoop = ControlExecutor.getInstance().newPeriodic("Shooter release", new Runnable() {
+        @Override
+        public void run() {
+            release();
+        }
+    });
+    private volatile long releaseTime;
+    private volatile boolean firing = false;
 
 	private int position = HIGH;
 
+    public Shooter() {
+        Telemetry telemetry = Telemetry.getInstance();
+        telemetry.addNumber("Shooter: position", Telemetry.HIGH, 0, new DoubleSupplier() {
+            @Override
+            public double getAsDouble() {
+                return position;
+            }
+        });
+        telemetry.addBoolean("Shooter: firing", Telemetry.NORMAL, new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                return firing;
+            }
+        });
+        addFlightRecord();
+    }
+
+    private void addFlightRecord() {
+        FlightRecorder recorder = FlightRecorder.getInstance();
+        recorder.addInt("Shooter position", new IntSupplier() {
+            @Override
+            public int getAsInt() {
+                return position;
+            }
+        });
+        recorder.addSymbol("Shooter low elevator", new Supplier<String>() {
+            @Override
+            public String get() {
+                DoubleSolenoid.Value value = lowElevator.get();
+                return value == null ? null : value.name();
+            }
+        });
+        recorder.addSymbol("Shooter high elevator", new Supplier<String>() {
+            @Override
+            public String get() {
+                DoubleSolenoid.Value value = highElevator.get();
+                return value == null ? null : value.name();
+            }
+        });
+        recorder.addBoolean("Shooter firing", new BooleanSupplier() {
+            @Override
+            public boolean getAsBoolean() {
+                return firing;
+            }
+        });
+    }
+
     // Put methods for controlling this subsystem
     // here. Call these from Commands.
 
@@ -64,7 +130,7 @@ public class Shooter extends Subsystem {
 	 * <pre>
 	 * public void raise(int pos)
 	 * </pre>
-	 * Raises the elevator to specified position.
+	 * Raises the elevator to specified position. Valves already in place are not written.
 	 * @param pos the position to set the elevator
 	 */
 	public void raise(int pos) {
@@ -97,40 +163,27 @@ public class Shooter extends Subsystem {
 	 * <pre>
 	 * public void shoot()
 	 * </pre>
-	 * Schedules a {@code ShooterReleaseTask} if the shooter is ready to fire.
+	 * Fires the shooter piston if the shooter is ready to fire. The piston is released
+	 * SHOOTER_RELEASE_DELAY_MS later by the {@link ControlExecutor}, to within one of its ticks.
 	 */
 	public void shoot() {
-		if (shooter.get()) {
+		if (firing) {
 			return;
 		}
 		shooter.set(true);
-		Timer timer = new Timer();
-		timer.schedule(new ShooterReleaseTask(shooter), SHOOTER_RELEASE_DELAY_MS);
+		releaseTime = RobotClock.getInstance().nanoTime() + SHOOTER_RELEASE_DELAY_MS * NANOS_IN_MILLI;
+		firing = true;
+		releaseLoop.startPeriodic(ControlExecutor.DEFAULT_PERIOD_SECS);
 		//Logger.debug(LoggerType.SHOOTING_DATA, "SHOT!");
 	}
-	
-	/**
-	 * The {@code ShooterReleaseTask} is a {@code TimerTask} used to trigger the release of the shooter piston.
-	 */
-	private class ShooterReleaseTask extends TimerTask {
-		Solenoid _shooter;
-
-		/**
-		 * <pre>
-		 * public ShooterReleaseTask(Solenoid shooter)
-		 * </pre>
-		 * Constructs a new {@code ShooterReleaseTask} with the specified {@code Solenoid} to be used
-		 * to control the shooter piston.
-		 * @param shooter {@code Solenoid} used to control the shooter piston
-		 */
-		public ShooterReleaseTask(Solenoid shooter) {
-			this._shooter = shooter;
-		}
 
-		@Override
-		public void run() {
-			_shooter.set(false);
+	// Releases the shooter piston once the shot is over, on the ControlExecutor
+	private void release() {
+		if (RobotClock.getInstance().nanoTime() - releaseTime >= 0) {
+			shooter.set(false);
+			releaseLoop.stop();
+			firing = false; // last, so a new shot cannot start before this one is stopped
 		}
-	}	
+	}
 }
 